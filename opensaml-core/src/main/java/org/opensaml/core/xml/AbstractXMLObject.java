@@ -29,11 +29,13 @@ import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
 import net.shibboleth.utilities.java.support.collection.LockableClassToInstanceMultiMap;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 import net.shibboleth.utilities.java.support.primitive.StringSupport;
-import net.shibboleth.utilities.java.support.xml.QNameSupport;
 import net.shibboleth.utilities.java.support.xml.XMLConstants;
 
+import org.opensaml.core.xml.io.DeferredChildUnmarshaller;
+import org.opensaml.core.xml.io.UnmarshallingException;
 import org.opensaml.core.xml.schema.XSBooleanValue;
 import org.opensaml.core.xml.util.IDIndex;
+import org.opensaml.core.xml.util.InternSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Element;
@@ -41,7 +43,7 @@ import org.w3c.dom.Element;
 /**
  * An abstract implementation of XMLObject.
  */
-public abstract class AbstractXMLObject implements XMLObject {
+public abstract class AbstractXMLObject implements FreezableXMLObject {
 
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(AbstractXMLObject.class);
@@ -67,11 +69,14 @@ public abstract class AbstractXMLObject implements XMLObject {
     /** The value of the <code>xsi:nil</code> attribute. */
     private  XSBooleanValue nil;
     
-    /** The namespace manager for this XML object. */
-    private NamespaceManager nsManager;
+    /** The namespace manager for this XML object; created on first use. */
+    @Nullable private volatile NamespaceManager nsManager;
     
-    /** The multimap holding class-indexed instances of additional info associated with this XML object. */
-    @Nonnull private final LockableClassToInstanceMultiMap<Object> objectMetadata;
+    /**
+     * The multimap holding class-indexed instances of additional info associated with this XML object; created on
+     * first use, since few objects carry any.
+     */
+    @Nullable private volatile LockableClassToInstanceMultiMap<Object> objectMetadata;
 
     /**
      * Mapping of ID attributes to XMLObjects in the subtree rooted at this object. This allows constant-time
@@ -79,6 +84,15 @@ public abstract class AbstractXMLObject implements XMLObject {
      */
     private final IDIndex idIndex;
 
+    /** Unmarshalling of the children of the cached DOM, if it has been deferred and not yet run. */
+    @Nullable private volatile DeferredChildUnmarshaller deferredChildren;
+
+    /** Whether the deferred unmarshalling of the children is running. */
+    private boolean unmarshallingDeferredChildren;
+
+    /** Whether this object and its subtree have been frozen. */
+    private volatile boolean frozen;
+
     /**
      * Constructor.
      * 
@@ -88,17 +102,16 @@ public abstract class AbstractXMLObject implements XMLObject {
      */
     protected AbstractXMLObject(@Nullable final String namespaceURI, @Nonnull @NotEmpty final String elementLocalName,
             @Nullable final String namespacePrefix) {
-        nsManager = new NamespaceManager(this);
         idIndex = new IDIndex(this);
-        elementQname = QNameSupport.constructQName(namespaceURI, elementLocalName, namespacePrefix);
+        elementQname = InternSupport.constructQName(namespaceURI, elementLocalName, namespacePrefix);
         if(namespaceURI != null){
             setElementNamespacePrefix(namespacePrefix);
         }
-        objectMetadata = new LockableClassToInstanceMultiMap<>(true);
     }
 
     /** {@inheritDoc} */
     public void detach(){
+        checkNotFrozen();
         releaseParentDOM(true);
         parent = null;
     }
@@ -120,7 +133,17 @@ public abstract class AbstractXMLObject implements XMLObject {
     
     /** {@inheritDoc} */
     @Nonnull public NamespaceManager getNamespaceManager() {
-        return nsManager;
+        NamespaceManager manager = nsManager;
+        if (manager == null) {
+            synchronized (this) {
+                manager = nsManager;
+                if (manager == null) {
+                    manager = new NamespaceManager(this);
+                    nsManager = manager;
+                }
+            }
+        }
+        return manager;
     }
 
     /** {@inheritDoc} */
@@ -167,10 +190,14 @@ public abstract class AbstractXMLObject implements XMLObject {
      * @param hasValue true to indicate that the attribute has a value, false to indicate it has no value
      */
     protected void manageQualifiedAttributeNamespace(@Nonnull final QName attributeName, boolean hasValue) {
+        checkNotFrozen();
         if (hasValue) {
             getNamespaceManager().registerAttributeName(attributeName);
         } else {
-            getNamespaceManager().deregisterAttributeName(attributeName);
+            final NamespaceManager manager = nsManager;
+            if (manager != null) {
+                manager.deregisterAttributeName(attributeName);
+            }
         }
     }
     
@@ -186,6 +213,7 @@ public abstract class AbstractXMLObject implements XMLObject {
      */
     @Nullable protected QName prepareElementContentForAssignment(@Nullable final QName oldValue,
             @Nullable final QName newValue) {
+        checkNotFrozen();
         if (oldValue == null) {
             if (newValue != null) {
                 getNamespaceManager().registerContentValue(newValue);
@@ -224,6 +252,7 @@ public abstract class AbstractXMLObject implements XMLObject {
      */
     @Nullable protected QName prepareAttributeValueForAssignment(@Nonnull final String attributeID,
             @Nullable final QName oldValue, @Nullable final QName newValue) {
+        checkNotFrozen();
         if (oldValue == null) {
             if (newValue != null) {
                 getNamespaceManager().registerAttributeValue(attributeID, newValue);
@@ -258,7 +287,8 @@ public abstract class AbstractXMLObject implements XMLObject {
      * @return the value that should be assigned
      */
     @Nullable protected String prepareForAssignment(@Nullable final String oldValue, @Nullable final String newValue) {
-        String newString = StringSupport.trimOrNull(newValue);
+        checkNotFrozen();
+        String newString = InternSupport.intern(StringSupport.trimOrNull(newValue));
 
         if (!Objects.equals(oldValue, newString)) {
             releaseThisandParentDOM();
@@ -283,6 +313,7 @@ public abstract class AbstractXMLObject implements XMLObject {
      */
     @Nullable protected <T extends Object> T prepareForAssignment(@Nullable final T oldValue,
             @Nullable final T newValue) {
+        checkNotFrozen();
         if (oldValue == null) {
             if (newValue != null) {
                 releaseThisandParentDOM();
@@ -316,6 +347,7 @@ public abstract class AbstractXMLObject implements XMLObject {
      */
     @Nullable protected <T extends XMLObject> T prepareForAssignment(@Nullable final T oldValue,
             @Nullable final T newValue) {
+        checkNotFrozen();
 
         if (newValue != null && newValue.hasParent()) {
             throw new IllegalArgumentException(newValue.getClass().getName()
@@ -356,6 +388,7 @@ public abstract class AbstractXMLObject implements XMLObject {
      * @param newID the new value of the ID-typed attribute
      */
     protected void registerOwnID(@Nullable final String oldID, @Nullable final String newID) {
+        checkNotFrozen();
         String newString = StringSupport.trimOrNull(newID);
 
         if (!Objects.equals(oldID, newString)) {
@@ -385,14 +418,31 @@ public abstract class AbstractXMLObject implements XMLObject {
         }
     }
 
-    /** {@inheritDoc} */
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>Any deferred children are unmarshalled first, since the cached DOM is the only copy of them. While they are
+     * being unmarshalled, the DOM is not released.</p>
+     */
     public void releaseDOM() {
+        if (unmarshallingDeferredChildren) {
+            return;
+        }
+        unmarshallDeferredChildren();
         log.trace("Releasing cached DOM reprsentation for {}", getElementQName());
         setDOM(null);
     }
 
-    /** {@inheritDoc} */
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>While deferred children are being unmarshalled, the parent DOM is not released, since adding them to this
+     * object does not change its content.</p>
+     */
     public void releaseParentDOM(boolean propagateRelease) {
+        if (unmarshallingDeferredChildren) {
+            return;
+        }
         log.trace("Releasing cached DOM reprsentation for parent of {} with propagation set to {}", getElementQName(),
                 propagateRelease);
         XMLObject parentElement = getParent();
@@ -426,9 +476,19 @@ public abstract class AbstractXMLObject implements XMLObject {
         }
     }
 
-    /** {@inheritDoc} */
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>The IDs within a subtree whose children have been deferred are not indexed until those children are
+     * unmarshalled, so if the ID is not found, any deferred children in the subtree are unmarshalled and the lookup
+     * is retried.</p>
+     */
     @Nullable public XMLObject resolveID(@Nonnull @NotEmpty final String id) {
-        return idIndex.lookup(id);
+        final XMLObject referent = idIndex.lookup(id);
+        if (referent == null && unmarshallDeferredDescendants()) {
+            return idIndex.lookup(id);
+        }
+        return referent;
     }
 
     /** {@inheritDoc} */
@@ -440,23 +500,171 @@ public abstract class AbstractXMLObject implements XMLObject {
         return root.resolveID(id);
     }
 
-    /** {@inheritDoc} */
+    /**
+     * Defer the unmarshalling of the children of this object until they are first accessed through one of its
+     * {@link org.opensaml.core.xml.util.XMLObjectChildrenList}s, or until its cached DOM is released.
+     * 
+     * <p>This is used by unmarshallers for elements registered as deferred, after they have cached the element as the
+     * DOM of this object.</p>
+     * 
+     * <p>The IDs within the deferred children are not registered in the {@link IDIndex} of this object or its
+     * ancestors until the children are unmarshalled. {@link #resolveID(String)} unmarshalls any deferred children
+     * of the subtree before reporting that an ID is not found.</p>
+     * 
+     * @param unmarshaller the deferred unmarshalling of the children, or null to cancel it
+     */
+    public void setDeferredChildren(@Nullable final DeferredChildUnmarshaller unmarshaller) {
+        checkNotFrozen();
+        deferredChildren = unmarshaller;
+    }
+
+    /**
+     * Get whether the unmarshalling of the children of this object has been deferred and not yet run.
+     * 
+     * @return true if the children of this object have yet to be unmarshalled
+     */
+    public boolean hasDeferredChildren() {
+        return deferredChildren != null;
+    }
+
+    /**
+     * Unmarshall the children of this object if their unmarshalling has been deferred and not yet run.
+     * 
+     * <p>This is safe to call from several threads at once: the children are unmarshalled once, and callers wait for
+     * that to complete.</p>
+     */
+    public void unmarshallDeferredChildren() {
+        if (deferredChildren == null) {
+            return;
+        }
+
+        synchronized (this) {
+            final DeferredChildUnmarshaller unmarshaller = deferredChildren;
+            if (unmarshaller == null || unmarshallingDeferredChildren) {
+                return;
+            }
+
+            log.trace("Unmarshalling deferred children of {}", getElementQName());
+            unmarshallingDeferredChildren = true;
+            try {
+                unmarshaller.unmarshallChildren();
+            } catch (final UnmarshallingException e) {
+                throw new XMLRuntimeException("Unable to unmarshall deferred children of " + getElementQName(), e);
+            } finally {
+                unmarshallingDeferredChildren = false;
+                deferredChildren = null;
+            }
+        }
+    }
+
+    /**
+     * Unmarshall any deferred children of this object and of its descendants.
+     * 
+     * @return true if any deferred children were unmarshalled
+     */
+    private boolean unmarshallDeferredDescendants() {
+        boolean unmarshalled = false;
+        if (deferredChildren != null) {
+            unmarshallDeferredChildren();
+            unmarshalled = true;
+        }
+
+        final List<XMLObject> children = getOrderedChildren();
+        if (children != null) {
+            for (final XMLObject child : children) {
+                if (child instanceof AbstractXMLObject
+                        && ((AbstractXMLObject) child).unmarshallDeferredDescendants()) {
+                    unmarshalled = true;
+                }
+            }
+        }
+        return unmarshalled;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>A frozen object never caches a DOM, so this does nothing once the object has been frozen.</p>
+     */
     public void setDOM(@Nullable final Element newDom) {
+        if (frozen) {
+            return;
+        }
         dom = newDom;
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>Any deferred children are unmarshalled, and the cached DOM of the subtree is released since a DOM cannot be
+     * read safely by several threads. Namespace information is computed in advance. Once frozen, marshalling builds a
+     * new DOM each time rather than caching it. The object metadata remains modifiable, being separately locked.</p>
+     * 
+     * <p>Only modifications made through the mutators of this class, the <code>prepareForAssignment</code> methods,
+     * the children lists, the {@link org.opensaml.core.xml.util.AttributeMap}s and the {@link NamespaceManager} are
+     * refused automatically. A subclass whose mutators write directly to its own fields or collections must call
+     * {@link #checkNotFrozen()} itself, and a frozen subtree may only be read without locking if every object in it
+     * does so.</p>
+     * 
+     * @throws UnsupportedOperationException if a child does not implement {@link FreezableXMLObject} and so cannot
+     *             be frozen
+     */
+    public void freeze() {
+        if (frozen) {
+            return;
+        }
+
+        log.trace("Freezing {}", getElementQName());
+        releaseDOM();
+        final List<XMLObject> children = getOrderedChildren();
+        if (children != null) {
+            for (final XMLObject child : children) {
+                if (child instanceof FreezableXMLObject) {
+                    ((FreezableXMLObject) child).freeze();
+                } else if (child != null) {
+                    throw new UnsupportedOperationException("Child " + child.getElementQName() + " of "
+                            + getElementQName() + " cannot be frozen");
+                }
+            }
+        }
+        getNamespaceManager().getNamespaces();
+        getObjectMetadata();
+        frozen = true;
+    }
+
+    /** {@inheritDoc} */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Check that this object may be modified, as it has not been frozen.
+     * 
+     * @throws UnsupportedOperationException if this object has been frozen
+     */
+    protected void checkNotFrozen() {
+        if (frozen) {
+            throw new UnsupportedOperationException(getElementQName() + " is frozen and cannot be modified");
+        }
+    }
+
     /**
      * Sets the prefix for this element's namespace.
      * 
      * @param prefix the prefix for this element's namespace
      */
     public void setElementNamespacePrefix(@Nullable final String prefix) {
+        checkNotFrozen();
         if (prefix == null) {
-            elementQname = new QName(elementQname.getNamespaceURI(), elementQname.getLocalPart());
+            elementQname = InternSupport.intern(new QName(elementQname.getNamespaceURI(), elementQname.getLocalPart()));
         } else {
-            elementQname = new QName(elementQname.getNamespaceURI(), elementQname.getLocalPart(), prefix);
+            elementQname = InternSupport.intern(
+                    new QName(elementQname.getNamespaceURI(), elementQname.getLocalPart(), prefix));
+        }
+        final NamespaceManager manager = nsManager;
+        if (manager != null) {
+            manager.registerElementName(elementQname);
         }
-        getNamespaceManager().registerElementName(elementQname);
     }
 
     /**
@@ -465,13 +673,18 @@ public abstract class AbstractXMLObject implements XMLObject {
      * @param name the element's QName
      */
     protected void setElementQName(@Nonnull final QName name) {
+        checkNotFrozen();
         Constraint.isNotNull(name, "Element QName cannot be null");
-        elementQname = QNameSupport.constructQName(name.getNamespaceURI(), name.getLocalPart(), name.getPrefix());
-        getNamespaceManager().registerElementName(elementQname);
+        elementQname = InternSupport.constructQName(name.getNamespaceURI(), name.getLocalPart(), name.getPrefix());
+        final NamespaceManager manager = nsManager;
+        if (manager != null) {
+            manager.registerElementName(elementQname);
+        }
     }
 
     /** {@inheritDoc} */
     public void setNoNamespaceSchemaLocation(@Nullable final String location) {
+        checkNotFrozen();
         noNamespaceSchemaLocation = StringSupport.trimOrNull(location);
         manageQualifiedAttributeNamespace(XMLConstants.XSI_NO_NAMESPACE_SCHEMA_LOCATION_ATTRIB_NAME,
                 noNamespaceSchemaLocation != null);
@@ -479,11 +692,13 @@ public abstract class AbstractXMLObject implements XMLObject {
 
     /** {@inheritDoc} */
     public void setParent(@Nullable final XMLObject newParent) {
+        checkNotFrozen();
         parent = newParent;
     }
 
     /** {@inheritDoc} */
     public void setSchemaLocation(@Nullable final String location) {
+        checkNotFrozen();
         schemaLocation = StringSupport.trimOrNull(location);
         manageQualifiedAttributeNamespace(XMLConstants.XSI_SCHEMA_LOCATION_ATTRIB_NAME, schemaLocation != null);
     }
@@ -496,8 +711,12 @@ public abstract class AbstractXMLObject implements XMLObject {
      * @param type the schema type
      */
     protected void setSchemaType(@Nullable final QName type) {
-        typeQname = type;
-        getNamespaceManager().registerElementType(typeQname);
+        checkNotFrozen();
+        typeQname = InternSupport.intern(type);
+        final NamespaceManager manager = nsManager;
+        if (manager != null) {
+            manager.registerElementType(typeQname);
+        }
         manageQualifiedAttributeNamespace(XMLConstants.XSI_TYPE_ATTRIB_NAME, typeQname != null);
     }
     
@@ -533,7 +752,17 @@ public abstract class AbstractXMLObject implements XMLObject {
 
     /** {@inheritDoc} */
     @Nonnull public LockableClassToInstanceMultiMap<Object> getObjectMetadata() {
-        return objectMetadata;
+        LockableClassToInstanceMultiMap<Object> metadata = objectMetadata;
+        if (metadata == null) {
+            synchronized (this) {
+                metadata = objectMetadata;
+                if (metadata == null) {
+                    metadata = new LockableClassToInstanceMultiMap<>(true);
+                    objectMetadata = metadata;
+                }
+            }
+        }
+        return metadata;
     }
 
 }
\ No newline at end of file
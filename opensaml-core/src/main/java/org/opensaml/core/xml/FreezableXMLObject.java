@@ -0,0 +1,46 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml;
+
+/**
+ * An XMLObject whose subtree may be frozen, so that it may be shared by any number of threads and read by them
+ * without locking.
+ * 
+ * <p>Objects handed out through their interface types, such as those returned by metadata resolvers, may be tested
+ * for this interface to freeze a shared tree.</p>
+ */
+public interface FreezableXMLObject extends XMLObject {
+
+    /**
+     * Freeze this object and its subtree.
+     * 
+     * <p>Thereafter any attempt to modify the subtree, including its children, attributes and parent, fails with an
+     * {@link UnsupportedOperationException}. A modifiable copy of a frozen object may be obtained with
+     * {@link org.opensaml.core.xml.util.XMLObjectSupport#copyXMLObject(XMLObject)}.</p>
+     * 
+     * @throws UnsupportedOperationException if an object in the subtree cannot be frozen
+     */
+    public void freeze();
+
+    /**
+     * Get whether this object has been frozen by {@link #freeze()}.
+     * 
+     * @return true if this object is frozen and cannot be modified
+     */
+    public boolean isFrozen();
+}
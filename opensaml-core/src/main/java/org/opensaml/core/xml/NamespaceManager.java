@@ -34,6 +34,8 @@ import net.shibboleth.utilities.java.support.logic.Constraint;
 import net.shibboleth.utilities.java.support.primitive.StringSupport;
 import net.shibboleth.utilities.java.support.xml.XMLConstants;
 
+import org.opensaml.core.xml.util.InternSupport;
+
 import com.google.common.base.Strings;
 
 /**
@@ -66,14 +68,14 @@ public class NamespaceManager {
     /** XMLObject type namespace. */
     private Namespace elementType;
     
-    /** Explicitly declared namespaces. */
-    @Nonnull private final Set<Namespace> decls;
+    /** Explicitly declared namespaces; null until the first registration. */
+    @Nullable private Set<Namespace> decls;
     
-    /** Registered namespaces of attribute names. */
-    @Nonnull private final Set<Namespace> attrNames;
+    /** Registered namespaces of attribute names; null until the first registration. */
+    @Nullable private Set<Namespace> attrNames;
     
-    /** Registered namespaces of attribute values. */
-    @Nonnull private final Map<String, Namespace> attrValues;
+    /** Registered namespaces of attribute values; null until the first registration. */
+    @Nullable private Map<String, Namespace> attrValues;
     
     /** Registered namespaces of content values. */
     private Namespace contentValue;
@@ -85,10 +87,6 @@ public class NamespaceManager {
      */
     public NamespaceManager(@Nonnull final XMLObject owningObject) {
         owner = Constraint.isNotNull(owningObject, "Owner XMLObject cannot be null");
-        
-        decls = new LazySet<>();
-        attrNames = new LazySet<>();
-        attrValues = new LazyMap<>();
     }
     
     /**
@@ -118,7 +116,8 @@ public class NamespaceManager {
      * @return the unmodifiable set of namespaces
      */
     @Nonnull public Set<Namespace> getNamespaces() {
-        Set<Namespace> namespaces = mergeNamespaceCollections(decls, attrNames, attrValues.values());
+        Set<Namespace> namespaces = mergeNamespaceCollections(nullToEmpty(decls), nullToEmpty(attrNames),
+                attrValues != null ? attrValues.values() : Collections.<Namespace>emptySet());
         addNamespace(namespaces, getElementNameNamespace());
         addNamespace(namespaces, getElementTypeNamespace());
         addNamespace(namespaces, contentValue);
@@ -131,6 +130,13 @@ public class NamespaceManager {
      * @param namespace the namespace to register
      */
     public void registerNamespaceDeclaration(@Nonnull final Namespace namespace) {
+        checkNotFrozen();
+        if (namespace == null) {
+            return;
+        }
+        if (decls == null) {
+            decls = new LazySet<>();
+        }
         addNamespace(decls, namespace);
     }
     
@@ -140,7 +146,10 @@ public class NamespaceManager {
      * @param namespace the namespace to deregister
      */
     public void deregisterNamespaceDeclaration(@Nonnull final Namespace namespace) {
-        removeNamespace(decls, namespace);
+        checkNotFrozen();
+        if (decls != null) {
+            removeNamespace(decls, namespace);
+        }
     }
     
     /**
@@ -149,7 +158,7 @@ public class NamespaceManager {
      * @return the set of namespace declarations
      */
     @Nonnull public Set<Namespace> getNamespaceDeclarations() {
-        return Collections.unmodifiableSet(decls);
+        return Collections.unmodifiableSet(nullToEmpty(decls));
     }
     
     /**
@@ -158,7 +167,11 @@ public class NamespaceManager {
      * @param attributeName the attribute name to register
      */
     public void registerAttributeName(@Nonnull final QName attributeName) {
+        checkNotFrozen();
         if (checkQName(attributeName)) {
+            if (attrNames == null) {
+                attrNames = new LazySet<>();
+            }
             addNamespace(attrNames, buildNamespace(attributeName));
         }
     }
@@ -169,7 +182,8 @@ public class NamespaceManager {
      * @param attributeName the attribute name to deregister
      */
     public void deregisterAttributeName(@Nonnull final QName attributeName) {
-        if (checkQName(attributeName)) {
+        checkNotFrozen();
+        if (attrNames != null && checkQName(attributeName)) {
             removeNamespace(attrNames, buildNamespace(attributeName));
         }
     }
@@ -181,7 +195,11 @@ public class NamespaceManager {
      * @param attributeValue the QName value to register
      */
     public void registerAttributeValue(@Nonnull final String attributeID, @Nonnull final QName attributeValue) {
+        checkNotFrozen();
         if (checkQName(attributeValue)) {
+            if (attrValues == null) {
+                attrValues = new LazyMap<>();
+            }
             attrValues.put(attributeID, buildNamespace(attributeValue));
         }
     }
@@ -192,7 +210,10 @@ public class NamespaceManager {
      * @param attributeID unique identifier for the attribute within the XMLObject's content model
      */
     public void deregisterAttributeValue(@Nonnull final String attributeID) {
-        attrValues.remove(attributeID);
+        checkNotFrozen();
+        if (attrValues != null) {
+            attrValues.remove(attributeID);
+        }
     }
     
     /**
@@ -201,6 +222,7 @@ public class NamespaceManager {
      * @param content the QName value to register
      */
     public void registerContentValue(@Nonnull final QName content) {
+        checkNotFrozen();
         if (checkQName(content)) {
             contentValue = buildNamespace(content);
         }
@@ -211,6 +233,7 @@ public class NamespaceManager {
      * 
      */
     public void deregisterContentValue() {
+        checkNotFrozen();
         contentValue = null;
     }
     
@@ -309,6 +332,7 @@ public class NamespaceManager {
      * @param name the element name to register
      */
     public void registerElementName(@Nonnull final QName name) {
+        checkNotFrozen();
         if (checkQName(name)) {
             elementName = buildNamespace(name);
         }
@@ -320,6 +344,7 @@ public class NamespaceManager {
      * @param type the element type to register
      */
     public void registerElementType(@Nullable final QName type) {
+        checkNotFrozen();
         if (type != null) {
             if (checkQName(type)) {
                 elementType = buildNamespace(type);
@@ -329,6 +354,18 @@ public class NamespaceManager {
         }
     }
     
+    /**
+     * Check that the namespace information may be modified, as the owner has not been frozen.
+     * 
+     * @throws UnsupportedOperationException if the owner has been frozen
+     */
+    private void checkNotFrozen() {
+        if (owner instanceof FreezableXMLObject && ((FreezableXMLObject) owner).isFrozen()) {
+            throw new UnsupportedOperationException("Namespaces of " + owner.getElementQName()
+                    + " are frozen and cannot be modified");
+        }
+    }
+    
     /**
      * Return a Namespace instance representing the namespace of the element name.
      * 
@@ -367,7 +404,7 @@ public class NamespaceManager {
         String uri = Constraint.isNotNull(StringSupport.trimOrNull(name.getNamespaceURI()),
                 "Namespace URI of QName cannot be null");
         String prefix = StringSupport.trimOrNull(name.getPrefix());
-        return new Namespace(uri, prefix);
+        return InternSupport.intern(new Namespace(uri, prefix));
     }
     
     /**
@@ -438,7 +475,7 @@ public class NamespaceManager {
         }
         
         // Add namespaces from attribute names
-        for (Namespace attribName : attrNames) {
+        for (Namespace attribName : nullToEmpty(attrNames)) {
             if (attribName != null) {
                 namespaces.add(attribName);
             }
@@ -462,9 +499,11 @@ public class NamespaceManager {
         }
         
         // Add prefixes from attribute and content values
-        for (Namespace attribValue : attrValues.values()) {
-            if (attribValue != null) {
-                namespaces.add(attribValue);
+        if (attrValues != null) {
+            for (Namespace attribValue : attrValues.values()) {
+                if (attribValue != null) {
+                    namespaces.add(attribValue);
+                }
             }
         }
         if (contentValue != null) {
@@ -475,6 +514,16 @@ public class NamespaceManager {
     }
 
     
+    /**
+     * Return the supplied set, or an empty set if it has not yet been created.
+     * 
+     * @param namespaces the set of namespaces, possibly null
+     * @return the supplied set, or an empty set
+     */
+    @Nonnull private static Set<Namespace> nullToEmpty(@Nullable final Set<Namespace> namespaces) {
+        return namespaces != null ? namespaces : Collections.<Namespace>emptySet();
+    }
+    
     /**
      * Add the prefixes from a collection of namespaces to a set of prefixes. The 
      * value used to represent the default namespace will be normalized to {@link NamespaceManager#DEFAULT_NS_TOKEN}.
@@ -28,9 +28,8 @@ import javax.xml.namespace.QName;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotLive;
 import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
 import net.shibboleth.utilities.java.support.logic.Constraint;
-import net.shibboleth.utilities.java.support.xml.DOMTypeSupport;
-import net.shibboleth.utilities.java.support.xml.QNameSupport;
 
+import org.opensaml.core.xml.util.ElementDispatchTable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Element;
@@ -48,6 +47,9 @@ public class XMLObjectBuilderFactory {
     /** Registered builders. */
     @Nonnull private final Map<QName, XMLObjectBuilder<?>> builders;
 
+    /** Dispatch table over the registered builders, built on first use after a change. */
+    @Nullable private volatile ElementDispatchTable<XMLObjectBuilder<?>> dispatchTable;
+
     /** Constructor. */
     public XMLObjectBuilderFactory() {
         builders = new ConcurrentHashMap<>();
@@ -76,14 +78,26 @@ public class XMLObjectBuilderFactory {
      * @return the builder for the XMLObject the given element can be unmarshalled into, or null
      */
     @Nullable public XMLObjectBuilder<?> getBuilder(@Nullable final Element domElement) {
-    
-        XMLObjectBuilder<?> builder = getBuilder(DOMTypeSupport.getXSIType(domElement));
-    
-        if (builder == null) {
-            builder = getBuilder(QNameSupport.getNodeQName(domElement));
+        return getDispatchTable().get(domElement);
+    }
+
+    /**
+     * Gets an immutable table of the builders currently registered, for dispatching on DOM elements.
+     * 
+     * @return the dispatch table of the builders currently registered
+     */
+    @Nonnull public ElementDispatchTable<XMLObjectBuilder<?>> getDispatchTable() {
+        ElementDispatchTable<XMLObjectBuilder<?>> table = dispatchTable;
+        if (table == null) {
+            synchronized (this) {
+                table = dispatchTable;
+                if (table == null) {
+                    table = new ElementDispatchTable<>(builders);
+                    dispatchTable = table;
+                }
+            }
         }
-    
-        return builder;
+        return table;
     }
 
     /**
@@ -149,7 +163,10 @@ public class XMLObjectBuilderFactory {
         Constraint.isNotNull(builder, "Builder cannot be null");
         log.debug("Registering builder {} under key {}",  builder.getClass().getName(), builderKey);
 
-        builders.put(builderKey, builder);
+        synchronized (this) {
+            builders.put(builderKey, builder);
+            dispatchTable = null;
+        }
     }
 
     /**
@@ -163,6 +180,9 @@ public class XMLObjectBuilderFactory {
         Constraint.isNotNull(builderKey, "Builder key QName cannot be null");
         
         log.debug("Deregistering builder for object type {}", builderKey);
-        return builders.remove(builderKey);
+        synchronized (this) {
+            dispatchTable = null;
+            return builders.remove(builderKey);
+        }
     }
 }
\ No newline at end of file
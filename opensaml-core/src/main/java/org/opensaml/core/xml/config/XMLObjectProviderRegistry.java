@@ -72,6 +72,9 @@ public class XMLObjectProviderRegistry {
     /** Configured set of attribute QNames which have been globally registered as having an ID type. */
     @Nonnull private final Set<QName> idAttributeNames;
 
+    /** Configured set of element QNames whose child nodes are unmarshalled only when first accessed. */
+    @Nonnull private final Set<QName> deferredElementNames;
+
     /** Configured parser pool. */
     private ParserPool parserPool;
 
@@ -82,6 +85,7 @@ public class XMLObjectProviderRegistry {
         marshallerFactory = new MarshallerFactory();
         unmarshallerFactory = new UnmarshallerFactory();
         idAttributeNames = new CopyOnWriteArraySet<>();
+        deferredElementNames = new CopyOnWriteArraySet<>();
         
         registerIDAttribute(new QName(javax.xml.XMLConstants.XML_NS_URI, "id"));
     }
@@ -172,6 +176,20 @@ public class XMLObjectProviderRegistry {
         return unmarshallerFactory;
     }
 
+    /**
+     * Gets an immutable snapshot of the builders, marshallers and unmarshallers currently registered with the
+     * factories of this registry, for resolving providers without constructing QNames for DOM elements.
+     * 
+     * <p>The dispatch tables of the snapshot are rebuilt only when a factory has changed since the last snapshot was
+     * taken, so a snapshot is cheap to obtain once initialization is complete.</p>
+     * 
+     * @return a snapshot of the registered providers
+     */
+    @Nonnull public XMLObjectProviderSnapshot getSnapshot() {
+        return new XMLObjectProviderSnapshot(defaultProvider, builderFactory.getDispatchTable(),
+                marshallerFactory.getDispatchTable(), unmarshallerFactory.getDispatchTable());
+    }
+
     /**
      * Register an attribute as having a type of ID.
      * 
@@ -203,5 +221,42 @@ public class XMLObjectProviderRegistry {
     public boolean isIDAttribute(QName attributeName) {
         return idAttributeNames.contains(attributeName);
     }
-    
-}
\ No newline at end of file
+
+    /**
+     * Register an element as having its child nodes unmarshalled only when the children of the XMLObject unmarshalled
+     * from it are first accessed.
+     * 
+     * <p>This is intended for large subtrees which are seldom read, such as extensions or key information in metadata.
+     * The element's DOM is cached until its children have been unmarshalled, so signatures over it can still be
+     * verified. Only elements whose XMLObjects hold all their children in
+     * {@link org.opensaml.core.xml.util.XMLObjectChildrenList}s, and have no text content, should be registered;
+     * children held in other fields are not unmarshalled until the object's cached DOM is released. Elements read
+     * from a StAX reader are never deferred.</p>
+     * 
+     * @param elementName the QName of the element to be registered
+     */
+    public void registerDeferredElement(@Nonnull final QName elementName) {
+        deferredElementNames.add(elementName);
+    }
+
+    /**
+     * Deregister an element as having its child nodes unmarshalled only when first accessed.
+     * 
+     * @param elementName the QName of the element to be de-registered
+     */
+    public void deregisterDeferredElement(@Nonnull final QName elementName) {
+        deferredElementNames.remove(elementName);
+    }
+
+    /**
+     * Determine whether a given element is registered as having its child nodes unmarshalled only when first
+     * accessed.
+     * 
+     * @param elementName the QName of the element to be checked
+     * @return true if the element is registered as deferred
+     */
+    public boolean isDeferredElement(@Nonnull final QName elementName) {
+        return !deferredElementNames.isEmpty() && deferredElementNames.contains(elementName);
+    }
+
+}
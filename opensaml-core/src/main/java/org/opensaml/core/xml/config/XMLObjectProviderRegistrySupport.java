@@ -126,6 +126,15 @@ public class XMLObjectProviderRegistrySupport {
         return ConfigurationService.get(XMLObjectProviderRegistry.class).getUnmarshallerFactory();
     }
 
+    /**
+     * Gets an immutable snapshot of the currently registered builders, marshallers and unmarshallers.
+     * 
+     * @return a snapshot of the registered providers
+     */
+    public static XMLObjectProviderSnapshot getSnapshot() {
+        return ConfigurationService.get(XMLObjectProviderRegistry.class).getSnapshot();
+    }
+
     /**
      * Register an attribute as having a type of ID.
      * 
@@ -154,4 +163,35 @@ public class XMLObjectProviderRegistrySupport {
         return ConfigurationService.get(XMLObjectProviderRegistry.class).isIDAttribute(attributeName);
     }
 
-}
\ No newline at end of file
+    /**
+     * Register an element as having its child nodes unmarshalled only when first accessed.
+     * 
+     * @param elementName the QName of the element to be registered
+     * 
+     * @see XMLObjectProviderRegistry#registerDeferredElement(QName)
+     */
+    public static void registerDeferredElement(@Nonnull final QName elementName) {
+        ConfigurationService.get(XMLObjectProviderRegistry.class).registerDeferredElement(elementName);
+    }
+
+    /**
+     * Deregister an element as having its child nodes unmarshalled only when first accessed.
+     * 
+     * @param elementName the QName of the element to be de-registered
+     */
+    public static void deregisterDeferredElement(@Nonnull final QName elementName) {
+        ConfigurationService.get(XMLObjectProviderRegistry.class).deregisterDeferredElement(elementName);
+    }
+
+    /**
+     * Determine whether a given element is registered as having its child nodes unmarshalled only when first
+     * accessed.
+     * 
+     * @param elementName the QName of the element to be checked
+     * @return true if the element is registered as deferred
+     */
+    public static boolean isDeferredElement(@Nonnull final QName elementName) {
+        return ConfigurationService.get(XMLObjectProviderRegistry.class).isDeferredElement(elementName);
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.config;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.xml.namespace.QName;
+
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.XMLObjectBuilder;
+import org.opensaml.core.xml.io.Marshaller;
+import org.opensaml.core.xml.io.Unmarshaller;
+import org.opensaml.core.xml.util.ElementDispatchTable;
+import org.w3c.dom.Element;
+
+/**
+ * An immutable view of the builders, marshallers and unmarshallers registered with an
+ * {@link XMLObjectProviderRegistry} at the time the snapshot was taken.
+ * 
+ * <p>Lookups for DOM elements go through {@link ElementDispatchTable}s, so they do not construct any {@link QName}s.
+ * Providers registered or deregistered after the snapshot was taken are not reflected in it; a new snapshot should be
+ * obtained from {@link XMLObjectProviderRegistry#getSnapshot()} instead.</p>
+ */
+@Immutable
+public final class XMLObjectProviderSnapshot {
+
+    /** Name of the default object provider. */
+    @Nonnull private final QName defaultProvider;
+
+    /** Dispatch table of the builders. */
+    @Nonnull private final ElementDispatchTable<XMLObjectBuilder<?>> builders;
+
+    /** Dispatch table of the marshallers. */
+    @Nonnull private final ElementDispatchTable<Marshaller> marshallers;
+
+    /** Dispatch table of the unmarshallers. */
+    @Nonnull private final ElementDispatchTable<Unmarshaller> unmarshallers;
+
+    /**
+     * Constructor.
+     * 
+     * @param defaultProviderName name of the default object provider
+     * @param builderTable dispatch table of the builders
+     * @param marshallerTable dispatch table of the marshallers
+     * @param unmarshallerTable dispatch table of the unmarshallers
+     */
+    public XMLObjectProviderSnapshot(@Nonnull final QName defaultProviderName,
+            @Nonnull final ElementDispatchTable<XMLObjectBuilder<?>> builderTable,
+            @Nonnull final ElementDispatchTable<Marshaller> marshallerTable,
+            @Nonnull final ElementDispatchTable<Unmarshaller> unmarshallerTable) {
+        defaultProvider = Constraint.isNotNull(defaultProviderName, "Default provider name cannot be null");
+        builders = Constraint.isNotNull(builderTable, "Builder table cannot be null");
+        marshallers = Constraint.isNotNull(marshallerTable, "Marshaller table cannot be null");
+        unmarshallers = Constraint.isNotNull(unmarshallerTable, "Unmarshaller table cannot be null");
+    }
+
+    /**
+     * Get the builder for the given element. The schema type, if present, is tried first as the key with the element
+     * QName used if no schema type is present or does not have a builder registered under it.
+     * 
+     * @param element the element to retrieve the builder for
+     * @param useDefault whether to fall back to the builder of the default object provider
+     * 
+     * @return the builder, or null
+     */
+    @Nullable public XMLObjectBuilder<?> getBuilder(@Nonnull final Element element, final boolean useDefault) {
+        final XMLObjectBuilder<?> builder = builders.get(element);
+        return builder == null && useDefault ? builders.get(defaultProvider) : builder;
+    }
+
+    /**
+     * Get the marshaller for the given XMLObject. The schema type, if present, is tried first as the key with the
+     * element QName used if no schema type is present or does not have a marshaller registered under it.
+     * 
+     * @param xmlObject the XMLObject to retrieve the marshaller for
+     * @param useDefault whether to fall back to the marshaller of the default object provider
+     * 
+     * @return the marshaller, or null
+     */
+    @Nullable public Marshaller getMarshaller(@Nonnull final XMLObject xmlObject, final boolean useDefault) {
+        Marshaller marshaller = marshallers.get(xmlObject.getSchemaType());
+        if (marshaller == null) {
+            marshaller = marshallers.get(xmlObject.getElementQName());
+        }
+        return marshaller == null && useDefault ? marshallers.get(defaultProvider) : marshaller;
+    }
+
+    /**
+     * Get the unmarshaller for the given element. The schema type, if present, is tried first as the key with the
+     * element QName used if no schema type is present or does not have an unmarshaller registered under it.
+     * 
+     * @param element the element to retrieve the unmarshaller for
+     * @param useDefault whether to fall back to the unmarshaller of the default object provider
+     * 
+     * @return the unmarshaller, or null
+     */
+    @Nullable public Unmarshaller getUnmarshaller(@Nonnull final Element element, final boolean useDefault) {
+        final Unmarshaller unmarshaller = unmarshallers.get(element);
+        return unmarshaller == null && useDefault ? unmarshallers.get(defaultProvider) : unmarshaller;
+    }
+
+    /**
+     * Get the dispatch table of the builders.
+     * 
+     * @return the builder dispatch table
+     */
+    @Nonnull public ElementDispatchTable<XMLObjectBuilder<?>> getBuilders() {
+        return builders;
+    }
+
+    /**
+     * Get the dispatch table of the marshallers.
+     * 
+     * @return the marshaller dispatch table
+     */
+    @Nonnull public ElementDispatchTable<Marshaller> getMarshallers() {
+        return marshallers;
+    }
+
+    /**
+     * Get the dispatch table of the unmarshallers.
+     * 
+     * @return the unmarshaller dispatch table
+     */
+    @Nonnull public ElementDispatchTable<Unmarshaller> getUnmarshallers() {
+        return unmarshallers;
+    }
+}
@@ -23,6 +23,8 @@ import java.util.Set;
 
 import javax.annotation.Nonnull;
 import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 import net.shibboleth.utilities.java.support.primitive.StringSupport;
 import net.shibboleth.utilities.java.support.xml.ElementSupport;
@@ -54,8 +56,28 @@ import com.google.common.base.Strings;
  * <li>Setting namespaces attributes declared for the element</li>
  * <li>Marshalling of child elements</li>
  * </ul>
+ * 
+ * <p>Marshallers derived from this class are also {@link StreamingMarshaller}s. By default, the attributes and
+ * content of each object are marshalled into a detached DOM element by the same methods used to build a DOM tree,
+ * then copied to the stream writer, so no DOM tree is built but a few DOM nodes are still created per object.
+ * Subclasses can avoid this entirely by overriding
+ * {@link #marshallAttributes(XMLObject, StreamingMarshallingContext)} and
+ * {@link #marshallElementContent(XMLObject, StreamingMarshallingContext)}.</p>
  */
-public abstract class AbstractXMLObjectMarshaller implements Marshaller {
+public abstract class AbstractXMLObjectMarshaller implements Marshaller, StreamingMarshaller {
+
+    /**
+     * DOM user data key marking a cached element whose subtree has had all its visible namespaces rooted, so that it
+     * can be adopted again without walking the subtree.
+     */
+    private static final String NAMESPACES_ROOTED_KEY = AbstractXMLObjectMarshaller.class.getName()
+            + ".namespacesRooted";
+
+    /**
+     * The XMLObject whose children are being marshalled into its newly created element by the current thread. Its
+     * children need not release the DOM of their ancestors, which is done once the outermost object is marshalled.
+     */
+    private static final ThreadLocal<XMLObject> MARSHALLING_PARENT = new ThreadLocal<>();
 
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(AbstractXMLObjectMarshaller.class);
@@ -93,7 +115,7 @@ public abstract class AbstractXMLObjectMarshaller implements Marshaller {
         domElement = xmlObject.getDOM();
         if (domElement != null) {
 
-            prepareForAdoption(xmlObject);
+            prepareForAdoption(xmlObject, true);
 
             if (domElement.getOwnerDocument() != document) {
                 log.trace("Adopting DOM of XMLObject into given Document");
@@ -136,12 +158,17 @@ public abstract class AbstractXMLObjectMarshaller implements Marshaller {
             throw new MarshallingException("Given parent element is null");
         }
 
+        // A child marshalled while its parent is being marshalled leaves the release of the ancestors' DOM to the
+        // outermost marshalling, rather than every object walking up the tree.
+        final boolean releaseParentDOM = xmlObject.getParent() == null
+                || xmlObject.getParent() != MARSHALLING_PARENT.get();
+
         log.trace("Checking if {} contains a cached DOM representation", xmlObject.getElementQName());
         domElement = xmlObject.getDOM();
         if (domElement != null) {
             log.trace("{} contains a cached DOM representation", xmlObject.getElementQName());
 
-            prepareForAdoption(xmlObject);
+            prepareForAdoption(xmlObject, releaseParentDOM);
 
             log.trace("Appending DOM of XMLObject {} as child of parent element {}", xmlObject.getElementQName(),
                     QNameSupport.getNodeQName(parentElement));
@@ -163,12 +190,60 @@ public abstract class AbstractXMLObjectMarshaller implements Marshaller {
 
         log.trace("Setting created element to DOM cache for XMLObject {}", xmlObject.getElementQName());
         xmlObject.setDOM(domElement);
-        xmlObject.releaseParentDOM(true);
+        if (releaseParentDOM) {
+            xmlObject.releaseParentDOM(true);
+        }
 
         return domElement;
 
     }
 
+    /** {@inheritDoc} */
+    public void marshall(@Nonnull final XMLObject xmlObject, @Nonnull final XMLStreamWriter writer)
+            throws MarshallingException {
+        try {
+            marshall(xmlObject, new StreamingMarshallingContext(writer));
+        } catch (final XMLStreamException e) {
+            throw new MarshallingException("Unable to write " + xmlObject.getElementQName() + " to XMLStreamWriter",
+                    e);
+        }
+    }
+
+    /**
+     * Write the given XMLObject, and its children, as part of an ongoing streaming marshalling operation. The cached
+     * DOM of an object which has one is written out as is.
+     * 
+     * @param xmlObject the object to marshall
+     * @param context the streaming marshalling context
+     * 
+     * @throws MarshallingException thrown if there is a problem marshalling the object
+     * @throws XMLStreamException thrown if there is a problem writing the object
+     */
+    protected void marshall(@Nonnull final XMLObject xmlObject, @Nonnull final StreamingMarshallingContext context)
+            throws MarshallingException, XMLStreamException {
+        log.trace("Starting to stream {}", xmlObject.getElementQName());
+
+        if (xmlObject.getDOM() != null) {
+            log.trace("{} contains a cached DOM representation, writing it out", xmlObject.getElementQName());
+            context.writeDOM(xmlObject.getDOM());
+            return;
+        }
+
+        context.writeStartElement(xmlObject.getElementQName());
+
+        marshallNamespaces(xmlObject, context);
+
+        marshallSchemaInstanceAttributes(xmlObject, context);
+
+        marshallAttributes(xmlObject, context);
+
+        marshallChildElements(xmlObject, context);
+
+        marshallElementContent(xmlObject, context);
+
+        context.writeEndElement();
+    }
+
     /**
      * Sets the given element as the Document Element of the given Document. If the document already has a Document
      * Element it is replaced by the given element.
@@ -243,7 +318,14 @@ public abstract class AbstractXMLObjectMarshaller implements Marshaller {
         log.trace("Marshalling child elements for XMLObject {}", xmlObject.getElementQName());
 
         final List<XMLObject> childXMLObjects = xmlObject.getOrderedChildren();
-        if (childXMLObjects != null && childXMLObjects.size() > 0) {
+        if (childXMLObjects == null || childXMLObjects.isEmpty()) {
+            log.trace("No child elements to marshall for XMLObject {}", xmlObject.getElementQName());
+            return;
+        }
+
+        final XMLObject previousParent = MARSHALLING_PARENT.get();
+        MARSHALLING_PARENT.set(xmlObject);
+        try {
             for (final XMLObject childXMLObject : childXMLObjects) {
                 if (childXMLObject == null) {
                     continue;
@@ -270,8 +352,12 @@ public abstract class AbstractXMLObjectMarshaller implements Marshaller {
                 log.trace("Marshalling {} and adding it to DOM", childXMLObject.getElementQName());
                 marshaller.marshall(childXMLObject, domElement);
             }
-        } else {
-            log.trace("No child elements to marshall for XMLObject {}", xmlObject.getElementQName());
+        } finally {
+            if (previousParent != null) {
+                MARSHALLING_PARENT.set(previousParent);
+            } else {
+                MARSHALLING_PARENT.remove();
+            }
         }
     }
 
@@ -405,30 +491,177 @@ public abstract class AbstractXMLObjectMarshaller implements Marshaller {
         
     }
 
+    /**
+     * Writes the child elements of the given XMLObject to the streaming marshalling context.
+     * 
+     * @param xmlObject the XMLObject whose children will be marshalled
+     * @param context the streaming marshalling context
+     * 
+     * @throws MarshallingException thrown if there is a problem marshalling a child element
+     * @throws XMLStreamException thrown if there is a problem writing a child element
+     */
+    protected void marshallChildElements(@Nonnull final XMLObject xmlObject,
+            @Nonnull final StreamingMarshallingContext context) throws MarshallingException, XMLStreamException {
+        final List<XMLObject> childXMLObjects = xmlObject.getOrderedChildren();
+        if (childXMLObjects != null) {
+            for (final XMLObject childXMLObject : childXMLObjects) {
+                if (childXMLObject != null) {
+                    context.marshall(childXMLObject);
+                }
+            }
+        }
+    }
+
+    /**
+     * Declares the namespaces set on the given XMLObject which are not already in scope.
+     * 
+     * <p>Namespaces explicitly declared on the object are declared even if already in scope.</p>
+     * 
+     * @param xmlObject the XMLObject
+     * @param context the streaming marshalling context
+     * 
+     * @throws XMLStreamException thrown if there is a problem writing the declarations
+     */
+    protected void marshallNamespaces(@Nonnull final XMLObject xmlObject,
+            @Nonnull final StreamingMarshallingContext context) throws XMLStreamException {
+        final Set<Namespace> declarations = xmlObject.getNamespaceManager().getNamespaceDeclarations();
+        for (final Namespace namespace : xmlObject.getNamespaces()) {
+            final String nsURI = StringSupport.trimOrNull(namespace.getNamespaceURI());
+            final String nsPrefix = StringSupport.trimOrNull(namespace.getNamespacePrefix());
+            if (declarations.contains(namespace)) {
+                context.declareNamespace(nsPrefix, nsURI);
+            } else {
+                context.ensureNamespace(nsPrefix, nsURI);
+            }
+        }
+    }
+
+    /**
+     * Writes the XSI type, schemaLocation, noNamespaceSchemaLocation and nil attributes for an XMLObject.
+     * 
+     * @param xmlObject the XMLObject
+     * @param context the streaming marshalling context
+     * 
+     * @throws MarshallingException thrown if the schema type information is invalid
+     * @throws XMLStreamException thrown if there is a problem writing the attributes
+     */
+    protected void marshallSchemaInstanceAttributes(@Nonnull final XMLObject xmlObject,
+            @Nonnull final StreamingMarshallingContext context) throws MarshallingException, XMLStreamException {
+
+        if (!Strings.isNullOrEmpty(xmlObject.getSchemaLocation())) {
+            context.writeAttribute(XMLConstants.XSI_PREFIX, XMLConstants.XSI_NS, "schemaLocation",
+                    xmlObject.getSchemaLocation());
+        }
+
+        if (!Strings.isNullOrEmpty(xmlObject.getNoNamespaceSchemaLocation())) {
+            context.writeAttribute(XMLConstants.XSI_PREFIX, XMLConstants.XSI_NS, "noNamespaceSchemaLocation",
+                    xmlObject.getNoNamespaceSchemaLocation());
+        }
+
+        if (xmlObject.isNilXSBoolean() != null && xmlObject.isNil()) {
+            context.writeAttribute(XMLConstants.XSI_PREFIX, XMLConstants.XSI_NS, "nil",
+                    xmlObject.isNilXSBoolean().toString());
+        }
+
+        final QName type = xmlObject.getSchemaType();
+        if (type == null) {
+            return;
+        }
+
+        final String typeLocalName = StringSupport.trimOrNull(type.getLocalPart());
+        final String typePrefix = StringSupport.trimOrNull(type.getPrefix());
+
+        if (typeLocalName == null) {
+            throw new MarshallingException("The type QName on XMLObject " + xmlObject.getElementQName()
+                    + " may not have a null local name");
+        }
+
+        if (typePrefix == null) {
+            context.writeAttribute(XMLConstants.XSI_PREFIX, XMLConstants.XSI_NS, "type", typeLocalName);
+        } else {
+            context.writeAttribute(XMLConstants.XSI_PREFIX, XMLConstants.XSI_NS, "type",
+                    typePrefix + ":" + typeLocalName);
+        }
+    }
+
+    /**
+     * Writes the attributes of the given XMLObject.
+     * 
+     * <p>The default implementation marshalls the attributes into a detached DOM element using
+     * {@link #marshallAttributes(XMLObject, Element)} and copies them from there.</p>
+     * 
+     * @param xmlObject the XMLObject
+     * @param context the streaming marshalling context
+     * 
+     * @throws MarshallingException thrown if there is a problem marshalling the attributes
+     * @throws XMLStreamException thrown if there is a problem writing the attributes
+     */
+    protected void marshallAttributes(@Nonnull final XMLObject xmlObject,
+            @Nonnull final StreamingMarshallingContext context) throws MarshallingException, XMLStreamException {
+        final Element scratchElement = context.createScratchElement(xmlObject.getElementQName());
+        marshallAttributes(xmlObject, scratchElement);
+        if (scratchElement.hasAttributes()) {
+            context.writeAttributes(scratchElement);
+        }
+    }
+
+    /**
+     * Writes the content of the given XMLObject, following its child elements.
+     * 
+     * <p>The default implementation marshalls the content into a detached DOM element using
+     * {@link #marshallElementContent(XMLObject, Element)} and copies it from there.</p>
+     * 
+     * @param xmlObject the XMLObject
+     * @param context the streaming marshalling context
+     * 
+     * @throws MarshallingException thrown if there is a problem marshalling the content
+     * @throws XMLStreamException thrown if there is a problem writing the content
+     */
+    protected void marshallElementContent(@Nonnull final XMLObject xmlObject,
+            @Nonnull final StreamingMarshallingContext context) throws MarshallingException, XMLStreamException {
+        final Element scratchElement = context.createScratchElement(xmlObject.getElementQName());
+        marshallElementContent(xmlObject, scratchElement);
+        context.writeChildNodes(scratchElement);
+    }
+
     /**
      * Prepares the given DOM caching XMLObject for adoption into another document. If the XMLObject has a parent then
      * all visible namespaces used by the given XMLObject and its descendants are declared within that subtree and the
      * parent's DOM is invalidated.
      * 
+     * <p>The cached element is marked once its namespaces have been rooted, so that an unchanged subtree is only
+     * walked the first time it is adopted, however many times its ancestors are re-marshalled.</p>
+     * 
      * @param domCachingObject the XMLObject to prepare for adoption
+     * @param releaseParentDOM whether to release the DOM of the XMLObject's ancestors
      * 
      * @throws MarshallingException thrown if a namespace within the XMLObject's DOM subtree can not be resolved.
      */
-    private void prepareForAdoption(@Nonnull final XMLObject domCachingObject) throws MarshallingException {
+    private void prepareForAdoption(@Nonnull final XMLObject domCachingObject, final boolean releaseParentDOM)
+            throws MarshallingException {
         if (domCachingObject.getParent() != null) {
-            log.trace("Rooting all visible namespaces of XMLObject {} before adding it to new parent Element",
-                    domCachingObject.getElementQName());
-            try {
-                NamespaceSupport.rootNamespaces(domCachingObject.getDOM());
-            } catch (final DOMException e) {
-                final String errorMsg = "Unable to root namespaces of cached DOM element, "
-                        + domCachingObject.getElementQName();
-                log.error(errorMsg, e);
-                throw new MarshallingException(errorMsg, e);
+            final Element domElement = domCachingObject.getDOM();
+            if (domElement.getUserData(NAMESPACES_ROOTED_KEY) == null) {
+                log.trace("Rooting all visible namespaces of XMLObject {} before adding it to new parent Element",
+                        domCachingObject.getElementQName());
+                try {
+                    NamespaceSupport.rootNamespaces(domElement);
+                } catch (final DOMException e) {
+                    final String errorMsg = "Unable to root namespaces of cached DOM element, "
+                            + domCachingObject.getElementQName();
+                    log.error(errorMsg, e);
+                    throw new MarshallingException(errorMsg, e);
+                }
+                domElement.setUserData(NAMESPACES_ROOTED_KEY, Boolean.TRUE, null);
+            } else {
+                log.trace("Visible namespaces of XMLObject {} have already been rooted",
+                        domCachingObject.getElementQName());
             }
 
-            log.trace("Release DOM of XMLObject parent");
-            domCachingObject.releaseParentDOM(true);
+            if (releaseParentDOM) {
+                log.trace("Release DOM of XMLObject parent");
+                domCachingObject.releaseParentDOM(true);
+            }
         }
     }
     
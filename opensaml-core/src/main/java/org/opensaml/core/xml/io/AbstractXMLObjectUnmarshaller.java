@@ -21,18 +21,24 @@ import java.util.Objects;
 
 import javax.annotation.Nonnull;
 import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
 
 import net.shibboleth.utilities.java.support.primitive.StringSupport;
 import net.shibboleth.utilities.java.support.xml.QNameSupport;
 import net.shibboleth.utilities.java.support.xml.XMLConstants;
 
+import org.opensaml.core.config.ConfigurationService;
+import org.opensaml.core.xml.AbstractXMLObject;
 import org.opensaml.core.xml.AttributeExtensibleXMLObject;
 import org.opensaml.core.xml.Namespace;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.XMLObjectBuilder;
 import org.opensaml.core.xml.XMLObjectBuilderFactory;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistry;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
 import org.opensaml.core.xml.schema.XSBooleanValue;
+import org.opensaml.core.xml.util.InternSupport;
 import org.opensaml.core.xml.util.XMLObjectSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,12 +60,23 @@ import org.w3c.dom.Text;
  * to retrieve the textual content. This is probably exceptable in almost all cases, if, however, you need to deal with
  * elements that contain multiple text node children you will need to override
  * {@link #unmarshallTextContent(XMLObject, Text)} and do "the right thing" for your implementation.
+ * 
+ * <p>This unmarshaller is also a {@link StreamingUnmarshaller}. When reading from a StAX reader, the same hooks are
+ * invoked with a scratch element holding just the name and attributes of the element being read, while its children
+ * are read and unmarshalled one by one; see {@link StreamingUnmarshallingContext}.</p>
+ * 
+ * <p>When unmarshalling a DOM element registered as deferred with the {@link XMLObjectProviderRegistry}, the child
+ * nodes are not unmarshalled until the children of the resulting XMLObject are first accessed; see
+ * {@link XMLObjectProviderRegistry#registerDeferredElement(QName)}.</p>
  */
-public abstract class AbstractXMLObjectUnmarshaller implements Unmarshaller {
+public abstract class AbstractXMLObjectUnmarshaller implements Unmarshaller, StreamingUnmarshaller {
 
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(AbstractXMLObjectUnmarshaller.class);
 
+    /** Registry holding the elements whose child nodes are unmarshalled when first accessed. */
+    @Nonnull private final XMLObjectProviderRegistry providerRegistry;
+
     /** Factory for XMLObjectBuilders. */
     @Nonnull private final XMLObjectBuilderFactory xmlObjectBuilderFactory;
 
@@ -70,14 +87,17 @@ public abstract class AbstractXMLObjectUnmarshaller implements Unmarshaller {
      * Constructor.
      */
     protected AbstractXMLObjectUnmarshaller() {
-        xmlObjectBuilderFactory = XMLObjectProviderRegistrySupport.getBuilderFactory();
-        unmarshallerFactory = XMLObjectProviderRegistrySupport.getUnmarshallerFactory();
+        providerRegistry = ConfigurationService.get(XMLObjectProviderRegistry.class);
+        xmlObjectBuilderFactory = providerRegistry.getBuilderFactory();
+        unmarshallerFactory = providerRegistry.getUnmarshallerFactory();
     }
 
     /** {@inheritDoc} */
     @Override
     @Nonnull public XMLObject unmarshall(@Nonnull final Element domElement) throws UnmarshallingException {
-        log.trace("Starting to unmarshall DOM element {}", QNameSupport.getNodeQName(domElement));
+        if (log.isTraceEnabled()) {
+            log.trace("Starting to unmarshall DOM element {}", QNameSupport.getNodeQName(domElement));
+        }
 
         XMLObject xmlObject = buildXMLObject(domElement);
 
@@ -94,7 +114,35 @@ public abstract class AbstractXMLObjectUnmarshaller implements Unmarshaller {
                 unmarshallAttribute(xmlObject, (Attr) attribute);
             }
         }
+        declareIDAttributes(xmlObject, domElement);
+
+        if (xmlObject instanceof AbstractXMLObject && domElement.hasChildNodes()
+                && providerRegistry.isDeferredElement(xmlObject.getElementQName())) {
+            final XMLObject parent = xmlObject;
+            log.trace("Deferring unmarshalling of child nodes of {}", xmlObject.getElementQName());
+            ((AbstractXMLObject) xmlObject).setDeferredChildren(new DeferredChildUnmarshaller() {
+                public void unmarshallChildren() throws UnmarshallingException {
+                    unmarshallChildNodes(parent, domElement);
+                }
+            });
+        } else {
+            unmarshallChildNodes(xmlObject, domElement);
+        }
 
+        xmlObject.setDOM(domElement);
+        return xmlObject;
+    }
+
+    /**
+     * Unmarshalls the child nodes of the given DOM element into the given XMLObject.
+     * 
+     * @param xmlObject the XMLObject unmarshalled from the element
+     * @param domElement the DOM element
+     * 
+     * @throws UnmarshallingException thrown if a child node can not be unmarshalled
+     */
+    private void unmarshallChildNodes(@Nonnull final XMLObject xmlObject, @Nonnull final Element domElement)
+            throws UnmarshallingException {
         if (log.isTraceEnabled()) {
             log.trace("Unmarshalling other child nodes of DOM Element {}", QNameSupport.getNodeQName(domElement));
         }
@@ -111,8 +159,52 @@ public abstract class AbstractXMLObjectUnmarshaller implements Unmarshaller {
             
             childNode = childNode.getNextSibling();
         }
+    }
 
-        xmlObject.setDOM(domElement);
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public XMLObject unmarshall(@Nonnull final XMLStreamReader reader) throws UnmarshallingException {
+        final StreamingUnmarshallingContext context = new StreamingUnmarshallingContext(reader);
+        context.startElement();
+        return unmarshall(context);
+    }
+
+    /**
+     * Unmarshall the element the reader of the given context is positioned on. The element's attributes are
+     * unmarshalled from its scratch element, as are any runs of character content, while child elements are passed to
+     * {@link #unmarshallChildElement(XMLObject, StreamingUnmarshallingContext)} as they are read.
+     * 
+     * @param context the context of the unmarshalling operation
+     * 
+     * @return the unmarshalled XMLObject
+     * 
+     * @throws UnmarshallingException thrown if there is a problem reading or unmarshalling the element
+     */
+    @Nonnull protected XMLObject unmarshall(@Nonnull final StreamingUnmarshallingContext context)
+            throws UnmarshallingException {
+        final Element element = context.getElement();
+        if (log.isTraceEnabled()) {
+            log.trace("Starting to unmarshall element {} from stream", QNameSupport.getNodeQName(element));
+        }
+
+        final XMLObject xmlObject = buildXMLObject(element);
+
+        final NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            unmarshallAttribute(xmlObject, (Attr) attributes.item(i));
+        }
+        declareIDAttributes(xmlObject, element);
+        context.startContent();
+
+        for (int event = context.next(); event != XMLStreamConstants.END_ELEMENT; event = context.next()) {
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                unmarshallChildElement(xmlObject, context);
+            } else {
+                unmarshallTextContent(xmlObject, context.getText());
+            }
+        }
+
+        context.endElement(xmlObject);
         return xmlObject;
     }
 
@@ -215,7 +307,7 @@ public abstract class AbstractXMLObjectUnmarshaller implements Unmarshaller {
         } else {
             namespace = new Namespace(attribute.getValue(), attribute.getLocalName());
         }
-        xmlObject.getNamespaceManager().registerNamespaceDeclaration(namespace);
+        xmlObject.getNamespaceManager().registerNamespaceDeclaration(InternSupport.intern(namespace));
     }
 
     /**
@@ -268,6 +360,20 @@ public abstract class AbstractXMLObjectUnmarshaller implements Unmarshaller {
         }
     }
 
+    /**
+     * Called once all the attributes of the given element have been unmarshalled into the given XMLObject, and
+     * before any of its content is, so that attributes whose ID-ness depends on more than the attribute itself can be
+     * declared as such on the element.
+     * 
+     * The default implementation of this method is a no-op.
+     * 
+     * @param xmlObject the XMLObject the attributes were unmarshalled into
+     * @param domElement the element whose attributes were unmarshalled
+     */
+    protected void declareIDAttributes(@Nonnull final XMLObject xmlObject, @Nonnull final Element domElement) {
+
+    }
+
     /**
      * Unmarshalls given Element's children. For each child an unmarshaller is retrieved using
      * {@link UnmarshallerFactory#getUnmarshaller(Element)}. The unmarshaller is then used to unmarshall the child
@@ -311,6 +417,25 @@ public abstract class AbstractXMLObjectUnmarshaller implements Unmarshaller {
         processChildElement(xmlObject, unmarshaller.unmarshall(childElement));
     }
 
+    /**
+     * Unmarshalls the child element the reader of the given context is positioned on, using the unmarshaller
+     * registered for it, and passes the resultant XMLObject to {@link #processChildElement(XMLObject, XMLObject)}.
+     * 
+     * @param xmlObject the parent object of the unmarshalled child
+     * @param context the context of the unmarshalling operation
+     * 
+     * @throws UnmarshallingException thrown if an error occurs unmarshalling the child element
+     */
+    protected void unmarshallChildElement(@Nonnull final XMLObject xmlObject,
+            @Nonnull final StreamingUnmarshallingContext context) throws UnmarshallingException {
+        if (log.isTraceEnabled()) {
+            log.trace("Unmarshalling child element {} of XMLObject {} from stream", context.getReader().getName(),
+                    xmlObject.getElementQName());
+        }
+
+        processChildElement(xmlObject, context.unmarshall());
+    }
+
     /**
      * Unmarshalls the given Text node into a usable string by way of {@link Text#getWholeText()} and passes it off to
      * {@link AbstractXMLObjectUnmarshaller#processElementContent(XMLObject, String)} if the string is not null and
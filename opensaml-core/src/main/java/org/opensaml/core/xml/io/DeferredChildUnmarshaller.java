@@ -0,0 +1,37 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.io;
+
+/**
+ * The unmarshalling of the child nodes of an element, deferred until the children of the XMLObject unmarshalled from
+ * the element are first accessed.
+ * 
+ * <p>Instances are created by {@link AbstractXMLObjectUnmarshaller} for elements registered as deferred with the
+ * {@link org.opensaml.core.xml.config.XMLObjectProviderRegistry}, and held by the
+ * {@link org.opensaml.core.xml.AbstractXMLObject} they belong to until they are run.</p>
+ */
+public interface DeferredChildUnmarshaller {
+
+    /**
+     * Unmarshall the child nodes of the element into the XMLObject unmarshalled from it.
+     * 
+     * @throws UnmarshallingException thrown if there is a problem unmarshalling the child nodes
+     */
+    public void unmarshallChildren() throws UnmarshallingException;
+
+}
@@ -28,6 +28,7 @@ import javax.xml.namespace.QName;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 
 import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.util.ElementDispatchTable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,6 +37,10 @@ import org.slf4j.LoggerFactory;
  * {@link org.opensaml.core.xml.XMLObject}s into W3C DOM elements. Marshallers are stored and retrieved by a
  * {@link javax.xml.namespace.QName} key. This key is either the XML Schema Type or element QName of the XML element the
  * XMLObject is marshalled into.
+ * 
+ * <p>The factory also holds {@link StreamingMarshaller}s, which write XMLObjects directly to a StAX writer. These are
+ * stored and retrieved by the same keys, and a {@link Marshaller} which is also a {@link StreamingMarshaller} serves
+ * as the streaming marshaller for its key unless another is registered explicitly.</p>
  */
 public class MarshallerFactory {
 
@@ -45,11 +50,18 @@ public class MarshallerFactory {
     /** Map of marshallers to the elements they are for. */
     private final Map<QName, Marshaller> marshallers;
 
+    /** Map of explicitly registered streaming marshallers to the elements they are for. */
+    private final Map<QName, StreamingMarshaller> streamingMarshallers;
+
+    /** Dispatch table over the registered marshallers, built on first use after a change. */
+    @Nullable private volatile ElementDispatchTable<Marshaller> dispatchTable;
+
     /**
      * Constructor.
      */
     public MarshallerFactory() {
         marshallers = new ConcurrentHashMap<>();
+        streamingMarshallers = new ConcurrentHashMap<>();
     }
 
     /**
@@ -87,6 +99,25 @@ public class MarshallerFactory {
         return marshaller;
     }
 
+    /**
+     * Gets an immutable table of the Marshallers currently registered, for dispatching on DOM elements.
+     * 
+     * @return the dispatch table of the Marshallers currently registered
+     */
+    @Nonnull public ElementDispatchTable<Marshaller> getDispatchTable() {
+        ElementDispatchTable<Marshaller> table = dispatchTable;
+        if (table == null) {
+            synchronized (this) {
+                table = dispatchTable;
+                if (table == null) {
+                    table = new ElementDispatchTable<>(marshallers);
+                    dispatchTable = table;
+                }
+            }
+        }
+        return table;
+    }
+
     /**
      * Gets an immutable listing of all the Marshallers currently registered.
      * 
@@ -108,7 +139,10 @@ public class MarshallerFactory {
         Constraint.isNotNull(marshaller, "Marshaller cannot be null");
         log.debug("Registering marshaller, {}, for object type {}", marshaller.getClass().getName(), key);
 
-        marshallers.put(key, marshaller);
+        synchronized (this) {
+            marshallers.put(key, marshaller);
+            dispatchTable = null;
+        }
     }
 
     /**
@@ -121,9 +155,100 @@ public class MarshallerFactory {
     @Nullable public Marshaller deregisterMarshaller(@Nonnull final QName key) {
         log.debug("Deregistering marshaller for object type {}", key);
         if(key != null){
-            return marshallers.remove(key);
+            synchronized (this) {
+                dispatchTable = null;
+                return marshallers.remove(key);
+            }
         }
         
         return null;
     }
+
+    /**
+     * Gets the streaming marshaller for a particular element or null if no streaming marshaller is available for an
+     * element. A streaming marshaller registered explicitly is preferred to a {@link Marshaller} registered under the
+     * same key that is also a {@link StreamingMarshaller}.
+     * 
+     * @param key the key the marshaller was registered under
+     * 
+     * @return the StreamingMarshaller or null
+     */
+    @Nullable public StreamingMarshaller getStreamingMarshaller(@Nullable final QName key) {
+        if (key == null) {
+            return null;
+        }
+
+        final StreamingMarshaller marshaller = streamingMarshallers.get(key);
+        if (marshaller != null) {
+            return marshaller;
+        }
+
+        final Marshaller domMarshaller = marshallers.get(key);
+        if (domMarshaller instanceof StreamingMarshaller) {
+            return (StreamingMarshaller) domMarshaller;
+        }
+
+        return null;
+    }
+
+    /**
+     * Retrieves the streaming marshaller for the given XMLObject. The schema type, if present, is tried first as the
+     * key with the element QName used if no schema type is present or does not have a marshaller registered under it.
+     * 
+     * <p>If the marshaller registered for the XMLObject under the first of those keys is not a streaming marshaller,
+     * no streaming marshaller is returned, so that a streaming marshaller for the element never takes the place of
+     * a DOM marshaller for its schema type.</p>
+     * 
+     * @param xmlObject the XMLObject to retrieve the marshaller for
+     * 
+     * @return the streaming marshaller that can be used for the given XMLObject, or null
+     */
+    @Nullable public StreamingMarshaller getStreamingMarshaller(@Nonnull final XMLObject xmlObject) {
+        final QName type = xmlObject.getSchemaType();
+        if (type != null && (streamingMarshallers.containsKey(type) || marshallers.containsKey(type))) {
+            return getStreamingMarshaller(type);
+        }
+
+        return getStreamingMarshaller(xmlObject.getElementQName());
+    }
+
+    /**
+     * Gets an immutable listing of all the explicitly registered StreamingMarshallers.
+     * 
+     * @return a listing of all the explicitly registered StreamingMarshallers
+     */
+    @Nonnull public Map<QName, StreamingMarshaller> getStreamingMarshallers() {
+        return Collections.unmodifiableMap(streamingMarshallers);
+    }
+
+    /**
+     * Registers a StreamingMarshaller with this factory. If a StreamingMarshaller exists for the element name given it
+     * is replaced with the given marshaller.
+     * 
+     * @param key the key the marshaller was registered under
+     * @param marshaller the StreamingMarshaller
+     */
+    public void registerStreamingMarshaller(@Nonnull final QName key, @Nonnull final StreamingMarshaller marshaller) {
+        Constraint.isNotNull(key, "StreamingMarshaller key cannot be null");
+        Constraint.isNotNull(marshaller, "StreamingMarshaller cannot be null");
+        log.debug("Registering streaming marshaller, {}, for object type {}", marshaller.getClass().getName(), key);
+
+        streamingMarshallers.put(key, marshaller);
+    }
+
+    /**
+     * Deregisters the explicitly registered streaming marshaller for the given element.
+     * 
+     * @param key the key the marshaller was registered under
+     * 
+     * @return the StreamingMarshaller previously registered or null
+     */
+    @Nullable public StreamingMarshaller deregisterStreamingMarshaller(@Nonnull final QName key) {
+        log.debug("Deregistering streaming marshaller for object type {}", key);
+        if (key != null) {
+            return streamingMarshallers.remove(key);
+        }
+
+        return null;
+    }
 }
\ No newline at end of file
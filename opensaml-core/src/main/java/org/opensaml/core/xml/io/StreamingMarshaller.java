@@ -0,0 +1,49 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.io;
+
+import javax.annotation.Nonnull;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.opensaml.core.xml.XMLObject;
+
+/**
+ * Streaming marshallers write a {@link org.opensaml.core.xml.XMLObject} directly to a StAX {@link XMLStreamWriter},
+ * without building or caching a W3C DOM.
+ * 
+ * <p>Streaming marshallers are registered with, and retrieved from, the {@link MarshallerFactory} alongside
+ * {@link Marshaller}s. Every marshaller derived from {@link AbstractXMLObjectMarshaller} is also a streaming
+ * marshaller. As the resulting XML is never available as a DOM, it cannot be signed, so objects which are to be
+ * signed must be marshalled to a DOM first; a streaming marshaller writes out the cached DOM of any object which
+ * has one.</p>
+ */
+public interface StreamingMarshaller {
+
+    /**
+     * Write the given XMLObject, and its children, to the given writer. The object is written as a self-contained
+     * fragment, declaring all the namespaces it uses.
+     * 
+     * @param xmlObject the object to marshall
+     * @param writer the writer to which the object is written
+     * 
+     * @throws MarshallingException thrown if there is a problem marshalling the given object
+     */
+    public void marshall(@Nonnull final XMLObject xmlObject, @Nonnull final XMLStreamWriter writer)
+            throws MarshallingException;
+
+}
@@ -0,0 +1,541 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.io;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.xml.ElementSupport;
+import net.shibboleth.utilities.java.support.xml.ParserPool;
+import net.shibboleth.utilities.java.support.xml.XMLConstants;
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * The state of a single streaming marshalling operation, wrapping the {@link XMLStreamWriter} being written to.
+ * 
+ * <p>This class keeps track of the namespaces it has declared, so that each namespace used by an element or attribute
+ * is declared exactly when it is not already in scope, independently of whether the underlying writer repairs
+ * namespaces. Namespaces declared on the writer before marshalling started are not taken into account, since a
+ * writer's namespace context may reflect elements whose start tags it has already been asked to write; the first
+ * element written therefore declares every namespace it uses.</p>
+ * 
+ * <p>It also dispatches child objects to their streaming marshallers, falling back to writing out a cached or freshly
+ * marshalled DOM for objects which have one or whose marshallers cannot stream.</p>
+ * 
+ * <p>Instances are not thread-safe and are used for a single marshalling operation.</p>
+ */
+public class StreamingMarshallingContext {
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(StreamingMarshallingContext.class);
+
+    /** Writer being written to. */
+    @Nonnull private final XMLStreamWriter writer;
+
+    /** Prefixes declared so far by open elements, in order of declaration. */
+    @Nonnull private final List<String> prefixes;
+
+    /** Namespace URIs bound to the corresponding entries of {@link #prefixes}. */
+    @Nonnull private final List<String> namespaceURIs;
+
+    /** Index into {@link #prefixes} of the first declaration of each open element. */
+    @Nonnull private int[] scopes;
+
+    /** Number of open elements. */
+    private int depth;
+
+    /** Document owning the elements used to run DOM-based marshalling hooks. */
+    @Nullable private Document scratchDocument;
+
+    /**
+     * Constructor.
+     * 
+     * @param streamWriter the writer to write to
+     */
+    public StreamingMarshallingContext(@Nonnull final XMLStreamWriter streamWriter) {
+        writer = Constraint.isNotNull(streamWriter, "XMLStreamWriter cannot be null");
+        prefixes = new ArrayList<>();
+        namespaceURIs = new ArrayList<>();
+        scopes = new int[16];
+    }
+
+    /**
+     * Get the writer being written to.
+     * 
+     * @return the writer
+     */
+    @Nonnull public XMLStreamWriter getWriter() {
+        return writer;
+    }
+
+    /**
+     * Write the given XMLObject, and its children, using the streaming marshaller registered for it.
+     * 
+     * <p>The cached DOM of an object which has one is written out as is. If no streaming marshaller is available for
+     * the object, it is marshalled to a DOM, which is then written out.</p>
+     * 
+     * @param xmlObject the object to write
+     * 
+     * @throws MarshallingException thrown if there is a problem marshalling the object
+     * @throws XMLStreamException thrown if there is a problem writing to the writer
+     */
+    public void marshall(@Nonnull final XMLObject xmlObject) throws MarshallingException, XMLStreamException {
+        if (xmlObject.getDOM() != null) {
+            log.trace("{} contains a cached DOM representation, writing it out", xmlObject.getElementQName());
+            writeDOM(xmlObject.getDOM());
+            return;
+        }
+
+        final MarshallerFactory marshallerFactory = XMLObjectProviderRegistrySupport.getMarshallerFactory();
+        StreamingMarshaller marshaller = marshallerFactory.getStreamingMarshaller(xmlObject);
+        Marshaller domMarshaller = null;
+        if (marshaller == null) {
+            domMarshaller = marshallerFactory.getMarshaller(xmlObject);
+            if (domMarshaller == null) {
+                final QName defaultProvider = XMLObjectProviderRegistrySupport.getDefaultProviderQName();
+                log.trace("No marshaller was registered for {}. Using default marshaller",
+                        xmlObject.getElementQName());
+                marshaller = marshallerFactory.getStreamingMarshaller(defaultProvider);
+                domMarshaller = marshallerFactory.getMarshaller(defaultProvider);
+            }
+        }
+
+        if (marshaller instanceof AbstractXMLObjectMarshaller) {
+            ((AbstractXMLObjectMarshaller) marshaller).marshall(xmlObject, this);
+        } else if (marshaller != null) {
+            marshaller.marshall(xmlObject, writer);
+        } else if (domMarshaller != null) {
+            log.trace("No streaming marshaller available for {}, writing out its DOM", xmlObject.getElementQName());
+            writeDOM(domMarshaller.marshall(xmlObject));
+        } else {
+            final String errorMsg = "No marshaller available for " + xmlObject.getElementQName();
+            log.error(errorMsg);
+            throw new MarshallingException(errorMsg);
+        }
+    }
+
+    /**
+     * Write a start tag for the given element name, declaring its namespace if that is not already in scope.
+     * 
+     * @param name the element name
+     * 
+     * @throws XMLStreamException thrown if there is a problem writing to the writer
+     */
+    public void writeStartElement(@Nonnull final QName name) throws XMLStreamException {
+        writeStartElement(name.getPrefix(), name.getNamespaceURI(), name.getLocalPart());
+    }
+
+    /**
+     * Write a start tag for the given element name, declaring its namespace if that is not already in scope.
+     * 
+     * @param prefix the element prefix
+     * @param namespaceURI the element namespace URI
+     * @param localName the element local name
+     * 
+     * @throws XMLStreamException thrown if there is a problem writing to the writer
+     */
+    public void writeStartElement(@Nullable final String prefix, @Nullable final String namespaceURI,
+            @Nonnull final String localName) throws XMLStreamException {
+        final String elementPrefix = normalize(prefix);
+        final String elementNamespace = normalize(namespaceURI);
+        writer.writeStartElement(elementPrefix, localName, elementNamespace);
+
+        if (depth == scopes.length) {
+            scopes = Arrays.copyOf(scopes, depth * 2);
+        }
+        scopes[depth++] = prefixes.size();
+
+        ensureNamespace(elementPrefix, elementNamespace);
+    }
+
+    /**
+     * Write an end tag for the current element, ending the scope of the namespaces it declares.
+     * 
+     * @throws XMLStreamException thrown if there is a problem writing to the writer
+     */
+    public void writeEndElement() throws XMLStreamException {
+        writer.writeEndElement();
+
+        final int start = scopes[--depth];
+        for (int i = prefixes.size() - 1; i >= start; i--) {
+            prefixes.remove(i);
+            namespaceURIs.remove(i);
+        }
+    }
+
+    /**
+     * Declare a namespace on the current element, unless the current element already declares the prefix.
+     * 
+     * @param prefix the namespace prefix, empty or null for the default namespace
+     * @param namespaceURI the namespace URI
+     * 
+     * @throws XMLStreamException thrown if there is a problem writing to the writer
+     */
+    public void declareNamespace(@Nullable final String prefix, @Nullable final String namespaceURI)
+            throws XMLStreamException {
+        final String nsPrefix = normalize(prefix);
+        final String nsURI = normalize(namespaceURI);
+        if (XMLConstants.XML_PREFIX.equals(nsPrefix) || XMLConstants.XMLNS_PREFIX.equals(nsPrefix)) {
+            return;
+        }
+
+        for (int i = prefixes.size() - 1; i >= scopes[depth - 1]; i--) {
+            if (prefixes.get(i).equals(nsPrefix)) {
+                if (!namespaceURIs.get(i).equals(nsURI)) {
+                    log.warn("Prefix '{}' is already bound to '{}' on this element, not rebinding it to '{}'",
+                            nsPrefix, namespaceURIs.get(i), nsURI);
+                }
+                return;
+            }
+        }
+
+        prefixes.add(nsPrefix);
+        namespaceURIs.add(nsURI);
+        if (nsPrefix.isEmpty()) {
+            writer.writeDefaultNamespace(nsURI);
+        } else {
+            writer.writeNamespace(nsPrefix, nsURI);
+        }
+    }
+
+    /**
+     * Declare a namespace on the current element if the prefix is not already bound to it.
+     * 
+     * @param prefix the namespace prefix, empty or null for the default namespace
+     * @param namespaceURI the namespace URI
+     * 
+     * @throws XMLStreamException thrown if there is a problem writing to the writer
+     */
+    public void ensureNamespace(@Nullable final String prefix, @Nullable final String namespaceURI)
+            throws XMLStreamException {
+        final String nsPrefix = normalize(prefix);
+        final String nsURI = normalize(namespaceURI);
+        if (!nsPrefix.isEmpty() && nsURI.isEmpty()) {
+            // Prefixes cannot be undeclared in XML 1.0.
+            return;
+        }
+
+        if (!nsURI.equals(lookupNamespaceURI(nsPrefix))) {
+            declareNamespace(nsPrefix, nsURI);
+        }
+    }
+
+    /**
+     * Get the namespace URI bound to the given prefix at the current position.
+     * 
+     * @param prefix the prefix, empty or null for the default namespace
+     * 
+     * @return the bound namespace URI, empty for no namespace, or null if the prefix is not bound
+     */
+    @Nullable public String lookupNamespaceURI(@Nullable final String prefix) {
+        final String nsPrefix = normalize(prefix);
+        for (int i = prefixes.size() - 1; i >= 0; i--) {
+            if (prefixes.get(i).equals(nsPrefix)) {
+                return namespaceURIs.get(i);
+            }
+        }
+
+        if (XMLConstants.XML_PREFIX.equals(nsPrefix)) {
+            return XMLConstants.XML_NS;
+        }
+
+        return nsPrefix.isEmpty() ? "" : null;
+    }
+
+    /**
+     * Write an attribute of the current element, declaring its namespace if that is not already in scope.
+     * 
+     * @param name the attribute name
+     * @param value the attribute value
+     * 
+     * @throws XMLStreamException thrown if there is a problem writing to the writer
+     */
+    public void writeAttribute(@Nonnull final QName name, @Nonnull final String value) throws XMLStreamException {
+        writeAttribute(name.getPrefix(), name.getNamespaceURI(), name.getLocalPart(), value);
+    }
+
+    /**
+     * Write an attribute of the current element, declaring its namespace if that is not already in scope.
+     * 
+     * <p>An attribute in the XML namespace-declaration namespace is written as a namespace declaration.</p>
+     * 
+     * @param prefix the attribute prefix
+     * @param namespaceURI the attribute namespace URI
+     * @param localName the attribute local name
+     * @param value the attribute value
+     * 
+     * @throws XMLStreamException thrown if there is a problem writing to the writer
+     */
+    public void writeAttribute(@Nullable final String prefix, @Nullable final String namespaceURI,
+            @Nonnull final String localName, @Nonnull final String value) throws XMLStreamException {
+        final String attributeNamespace = normalize(namespaceURI);
+        if (attributeNamespace.isEmpty()) {
+            writer.writeAttribute(localName, value);
+            return;
+        } else if (XMLConstants.XMLNS_NS.equals(attributeNamespace)) {
+            declareNamespace(XMLConstants.XMLNS_PREFIX.equals(localName) ? null : localName, value);
+            return;
+        }
+
+        String attributePrefix = normalize(prefix);
+        if (attributePrefix.isEmpty()) {
+            attributePrefix = lookupPrefix(attributeNamespace);
+        }
+        ensureNamespace(attributePrefix, attributeNamespace);
+        writer.writeAttribute(attributePrefix, attributeNamespace, localName, value);
+    }
+
+    /**
+     * Write character content, escaping carriage returns so that they survive parsing.
+     * 
+     * @param text the content
+     * 
+     * @throws XMLStreamException thrown if there is a problem writing to the writer
+     */
+    public void writeCharacters(@Nullable final String text) throws XMLStreamException {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+
+        int start = 0;
+        int cr = text.indexOf('\r');
+        while (cr >= 0) {
+            if (cr > start) {
+                writer.writeCharacters(text.substring(start, cr));
+            }
+            writer.writeEntityRef("#xD");
+            start = cr + 1;
+            cr = text.indexOf('\r', start);
+        }
+        if (start < text.length()) {
+            writer.writeCharacters(start == 0 ? text : text.substring(start));
+        }
+    }
+
+    /**
+     * Create an element, not attached to any document tree, into which DOM-based marshalling hooks can marshall the
+     * attributes or content of an object.
+     * 
+     * @param name the element name
+     * 
+     * @return the element
+     * 
+     * @throws MarshallingException thrown if no document can be created to own the element
+     */
+    @Nonnull public Element createScratchElement(@Nonnull final QName name) throws MarshallingException {
+        if (scratchDocument == null) {
+            final ParserPool parserPool = XMLObjectProviderRegistrySupport.getParserPool();
+            if (parserPool == null) {
+                throw new MarshallingException("No ParserPool available to create Document");
+            }
+            try {
+                scratchDocument = parserPool.newDocument();
+            } catch (final XMLParserException e) {
+                throw new MarshallingException("Unable to create Document to marshall content into", e);
+            }
+        }
+
+        return ElementSupport.constructElement(scratchDocument, name);
+    }
+
+    /**
+     * Write the attributes of the given DOM element as attributes of the current element.
+     * 
+     * @param element the element whose attributes are written
+     * 
+     * @throws XMLStreamException thrown if there is a problem writing to the writer
+     */
+    public void writeAttributes(@Nonnull final Element element) throws XMLStreamException {
+        final NamedNodeMap attributes = element.getAttributes();
+        // Write namespace declarations first, so that attribute prefixes resolve as they do in the DOM.
+        for (int i = 0; i < attributes.getLength(); i++) {
+            final Attr attribute = (Attr) attributes.item(i);
+            if (XMLConstants.XMLNS_NS.equals(attribute.getNamespaceURI())) {
+                writeAttribute(null, XMLConstants.XMLNS_NS, getLocalName(attribute), attribute.getValue());
+            }
+        }
+        for (int i = 0; i < attributes.getLength(); i++) {
+            final Attr attribute = (Attr) attributes.item(i);
+            if (!XMLConstants.XMLNS_NS.equals(attribute.getNamespaceURI())) {
+                writeAttribute(attribute.getPrefix(), attribute.getNamespaceURI(), getLocalName(attribute),
+                        attribute.getValue());
+            }
+        }
+    }
+
+    /**
+     * Write the child nodes of the given DOM node as content of the current element.
+     * 
+     * @param node the node whose children are written
+     * 
+     * @throws XMLStreamException thrown if there is a problem writing to the writer
+     */
+    public void writeChildNodes(@Nonnull final Node node) throws XMLStreamException {
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            writeNode(child);
+        }
+    }
+
+    /**
+     * Write the given DOM element as the next element, declaring any namespaces it inherits from its ancestors in
+     * its DOM tree which are not in scope at the current position.
+     * 
+     * @param element the element to write
+     * 
+     * @throws XMLStreamException thrown if there is a problem writing to the writer
+     */
+    public void writeDOM(@Nonnull final Element element) throws XMLStreamException {
+        final Map<String, String> inherited = new HashMap<>();
+        for (Node ancestor = element.getParentNode(); ancestor != null
+                && ancestor.getNodeType() == Node.ELEMENT_NODE; ancestor = ancestor.getParentNode()) {
+            final NamedNodeMap attributes = ancestor.getAttributes();
+            for (int i = 0; i < attributes.getLength(); i++) {
+                final Attr attribute = (Attr) attributes.item(i);
+                if (XMLConstants.XMLNS_NS.equals(attribute.getNamespaceURI())) {
+                    final String localName = getLocalName(attribute);
+                    final String prefix = XMLConstants.XMLNS_PREFIX.equals(localName) ? "" : localName;
+                    if (!inherited.containsKey(prefix)) {
+                        inherited.put(prefix, attribute.getValue());
+                    }
+                }
+            }
+        }
+
+        writeElement(element, inherited);
+    }
+
+    /**
+     * Write the given DOM node.
+     * 
+     * @param node the node to write
+     * 
+     * @throws XMLStreamException thrown if there is a problem writing to the writer
+     */
+    public void writeNode(@Nonnull final Node node) throws XMLStreamException {
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE:
+                writeElement((Element) node, null);
+                break;
+            case Node.TEXT_NODE:
+                writeCharacters(node.getNodeValue());
+                break;
+            case Node.CDATA_SECTION_NODE:
+                writer.writeCData(node.getNodeValue());
+                break;
+            case Node.COMMENT_NODE:
+                writer.writeComment(node.getNodeValue());
+                break;
+            case Node.PROCESSING_INSTRUCTION_NODE:
+                writer.writeProcessingInstruction(node.getNodeName(), node.getNodeValue());
+                break;
+            case Node.ENTITY_REFERENCE_NODE:
+                writeChildNodes(node);
+                break;
+            default:
+                log.trace("Ignoring DOM node of type {}", node.getNodeType());
+        }
+    }
+
+    /**
+     * Write the given DOM element.
+     * 
+     * @param element the element to write
+     * @param inherited namespaces the element inherits from outside the tree being written, or null
+     * 
+     * @throws XMLStreamException thrown if there is a problem writing to the writer
+     */
+    private void writeElement(@Nonnull final Element element, @Nullable final Map<String, String> inherited)
+            throws XMLStreamException {
+        writeStartElement(element.getPrefix(), element.getNamespaceURI(), getLocalName(element));
+        writeAttributes(element);
+        if (inherited != null) {
+            for (final Map.Entry<String, String> namespace : inherited.entrySet()) {
+                // Declarations on the element itself take precedence, and are skipped by declareNamespace.
+                ensureNamespace(namespace.getKey(), namespace.getValue());
+            }
+        }
+        writeChildNodes(element);
+        writeEndElement();
+    }
+
+    /**
+     * Find or generate a non-empty prefix for the given namespace.
+     * 
+     * @param namespaceURI the namespace URI
+     * 
+     * @return a prefix bound to the namespace, or a new prefix which is not bound at all
+     */
+    @Nonnull private String lookupPrefix(@Nonnull final String namespaceURI) {
+        for (int i = prefixes.size() - 1; i >= 0; i--) {
+            final String prefix = prefixes.get(i);
+            if (!prefix.isEmpty() && namespaceURIs.get(i).equals(namespaceURI)
+                    && namespaceURI.equals(lookupNamespaceURI(prefix))) {
+                return prefix;
+            }
+        }
+
+        int counter = 1;
+        while (lookupNamespaceURI("ns" + counter) != null) {
+            counter++;
+        }
+        return "ns" + counter;
+    }
+
+    /**
+     * Get the local name of a DOM node, which is null for nodes created with DOM Level 1 methods.
+     * 
+     * @param node the node
+     * 
+     * @return the local name
+     */
+    @Nonnull private String getLocalName(@Nonnull final Node node) {
+        return node.getLocalName() != null ? node.getLocalName() : node.getNodeName();
+    }
+
+    /**
+     * Normalize a prefix or namespace URI, representing absence by the empty string.
+     * 
+     * @param value the value to normalize
+     * 
+     * @return the normalized value
+     */
+    @Nonnull private static String normalize(@Nullable final String value) {
+        return value != null ? value : "";
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.io;
+
+import javax.annotation.Nonnull;
+import javax.xml.stream.XMLStreamReader;
+
+import org.opensaml.core.xml.XMLObject;
+
+/**
+ * Streaming unmarshallers build a {@link org.opensaml.core.xml.XMLObject} directly from the events of a StAX
+ * {@link XMLStreamReader}, without first parsing the whole document into a W3C DOM.
+ * 
+ * <p>Streaming unmarshallers are registered with, and retrieved from, the {@link UnmarshallerFactory} alongside
+ * {@link Unmarshaller}s. Every unmarshaller derived from {@link AbstractXMLObjectUnmarshaller} is also a streaming
+ * unmarshaller. The resulting objects do not cache a DOM, except for content which may carry an XML signature and
+ * must therefore be available as a DOM for the signature to be verified.</p>
+ */
+public interface StreamingUnmarshaller {
+
+    /**
+     * Unmarshall the element the given reader is positioned on, and its content, into an XMLObject. On return, the
+     * reader is positioned on the end tag of that element.
+     * 
+     * @param reader the reader, positioned on the start tag of the element to unmarshall
+     * 
+     * @return the unmarshalled XMLObject
+     * 
+     * @throws UnmarshallingException thrown if there is a problem reading or unmarshalling the element
+     */
+    @Nonnull public XMLObject unmarshall(@Nonnull final XMLStreamReader reader) throws UnmarshallingException;
+
+}
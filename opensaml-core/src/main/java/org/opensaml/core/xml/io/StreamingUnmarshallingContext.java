@@ -0,0 +1,615 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.io;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
+import net.shibboleth.utilities.java.support.xml.ParserPool;
+import net.shibboleth.utilities.java.support.xml.QNameSupport;
+import net.shibboleth.utilities.java.support.xml.XMLConstants;
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+
+/**
+ * The state of a single streaming unmarshalling operation, reading from a {@link XMLStreamReader}.
+ * 
+ * <p>Each element read is represented by a scratch DOM element carrying only its name, namespace declarations and
+ * attributes, against which the DOM-based unmarshalling hooks are run. The scratch element of an open element is
+ * attached to that of its parent, so that namespace prefixes resolve as they would in a parsed document, and is
+ * discarded once the element has been read. Character content consisting only of whitespace is never
+ * materialized.</p>
+ * 
+ * <p>Content which may carry an enveloped XML signature is the exception. An element found to have an ID attribute
+ * is kept, with all of its content, as a DOM tree in a document of its own until its end tag has been read. If it
+ * turns out to contain a <code>ds:Signature</code> element, that DOM is cached on the resulting objects just as if
+ * they had been unmarshalled from a parsed document, so that the signature can be verified; otherwise it is dropped.
+ * Elements whose unmarshallers cannot stream, <code>ds:Signature</code> among them, are read into a DOM which is
+ * passed to their unmarshaller.</p>
+ * 
+ * <p>Instances are not thread-safe and are used for a single unmarshalling operation.</p>
+ */
+public class StreamingUnmarshallingContext {
+
+    /** Name of the XML Signature element. */
+    @Nonnull private static final QName SIGNATURE_NAME = new QName("http://www.w3.org/2000/09/xmldsig#", "Signature");
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(StreamingUnmarshallingContext.class);
+
+    /** Reader being read from. */
+    @Nonnull private final XMLStreamReader reader;
+
+    /** Whether content with an ID attribute is kept as a DOM in case it is signed. */
+    private final boolean retainSignedContent;
+
+    /** Scratch elements of the open elements, innermost last. */
+    @Nonnull private final List<Element> elements;
+
+    /** Character content read but not yet reported by {@link #next()}. */
+    @Nonnull private final StringBuilder text;
+
+    /** Objects unmarshalled from the content being retained. */
+    @Nonnull private final List<XMLObject> retainedObjects;
+
+    /** DOM elements corresponding to the entries of {@link #retainedObjects}. */
+    @Nonnull private final List<Element> retainedElements;
+
+    /** Number of open elements up to and including the root of the content being retained, or 0. */
+    private int retainedDepth;
+
+    /** Whether the content being retained contains a signature. */
+    private boolean retainedSigned;
+
+    /** Node holding the character content last reported by {@link #next()}. */
+    @Nullable private Text currentText;
+
+    /** Whether the event the reader is positioned on has yet to be processed by {@link #next()}. */
+    private boolean pending;
+
+    /** Document owning the scratch elements outside of retained content. */
+    @Nullable private Document scratchDocument;
+
+    /**
+     * Constructor.
+     * 
+     * @param streamReader the reader to read from
+     */
+    public StreamingUnmarshallingContext(@Nonnull final XMLStreamReader streamReader) {
+        this(streamReader, true);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param streamReader the reader to read from
+     * @param retainSigned whether content with an ID attribute is kept as a DOM in case it carries a signature; this
+     *            may be turned off when signatures in the content will not be verified
+     */
+    public StreamingUnmarshallingContext(@Nonnull final XMLStreamReader streamReader, final boolean retainSigned) {
+        reader = Constraint.isNotNull(streamReader, "XMLStreamReader cannot be null");
+        retainSignedContent = retainSigned;
+        elements = new ArrayList<>();
+        text = new StringBuilder();
+        retainedObjects = new ArrayList<>();
+        retainedElements = new ArrayList<>();
+    }
+
+    /**
+     * Get the reader being read from.
+     * 
+     * @return the reader
+     */
+    @Nonnull public XMLStreamReader getReader() {
+        return reader;
+    }
+
+    /**
+     * Unmarshall the element the reader is positioned on, and its content, using the streaming unmarshaller
+     * registered for it. If the reader is positioned at the start of a document, its document element is
+     * unmarshalled. On return, the reader is positioned on the end tag of the element.
+     * 
+     * <p>If no streaming unmarshaller is available for the element, it is read into a DOM which is unmarshalled
+     * instead.</p>
+     * 
+     * @return the unmarshalled object
+     * 
+     * @throws UnmarshallingException thrown if there is a problem reading or unmarshalling the element
+     */
+    @Nonnull public XMLObject unmarshall() throws UnmarshallingException {
+        final Element element = startElement();
+
+        final UnmarshallerFactory unmarshallerFactory = XMLObjectProviderRegistrySupport.getUnmarshallerFactory();
+        StreamingUnmarshaller unmarshaller = unmarshallerFactory.getStreamingUnmarshaller(element);
+        Unmarshaller domUnmarshaller = unmarshallerFactory.getUnmarshaller(element);
+        if (unmarshaller == null && domUnmarshaller == null) {
+            final QName defaultProvider = XMLObjectProviderRegistrySupport.getDefaultProviderQName();
+            log.trace("No unmarshaller was registered for {}. Using default unmarshaller",
+                    QNameSupport.getNodeQName(element));
+            unmarshaller = unmarshallerFactory.getStreamingUnmarshaller(defaultProvider);
+            domUnmarshaller = unmarshallerFactory.getUnmarshaller(defaultProvider);
+        }
+
+        if (unmarshaller instanceof AbstractXMLObjectUnmarshaller) {
+            return ((AbstractXMLObjectUnmarshaller) unmarshaller).unmarshall(this);
+        } else if (unmarshaller != null && (retainedDepth == 0 || domUnmarshaller == null)) {
+            final XMLObject xmlObject = unmarshaller.unmarshall(reader);
+            endElement(null);
+            return xmlObject;
+        } else if (domUnmarshaller != null) {
+            log.trace("Reading {} into a DOM for unmarshaller {}", QNameSupport.getNodeQName(element),
+                    domUnmarshaller.getClass().getName());
+            return domUnmarshaller.unmarshall(readDOM());
+        } else {
+            throw new UnmarshallingException("No unmarshaller available for " + QNameSupport.getNodeQName(element));
+        }
+    }
+
+    /**
+     * Begin reading the element the reader is positioned on, or the document element if it is positioned at the
+     * start of a document, by creating its scratch element.
+     * 
+     * @return the scratch element
+     * 
+     * @throws UnmarshallingException thrown if the reader is not positioned on an element
+     */
+    @Nonnull Element startElement() throws UnmarshallingException {
+        try {
+            if (reader.getEventType() == XMLStreamConstants.START_DOCUMENT) {
+                reader.nextTag();
+            }
+        } catch (final XMLStreamException e) {
+            throw new UnmarshallingException("Unable to read from XMLStreamReader", e);
+        }
+        if (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+            throw new UnmarshallingException("XMLStreamReader is not positioned on the start tag of an element");
+        }
+
+        final Element parent = elements.isEmpty() ? null : elements.get(elements.size() - 1);
+        final Element element = createElement(parent != null ? parent.getOwnerDocument() : getScratchDocument());
+        if (parent != null) {
+            parent.appendChild(element);
+        } else {
+            declareTypePrefix(element);
+        }
+        elements.add(element);
+
+        if (SIGNATURE_NAME.equals(reader.getName())) {
+            if (retainedDepth > 0) {
+                retainedSigned = true;
+            } else if (retainSignedContent) {
+                log.warn("Signature read outside of content with an ID attribute, the content it signs will not be "
+                        + "available as a DOM to verify it against");
+            }
+        }
+
+        return element;
+    }
+
+    /**
+     * Get the scratch element of the element being read.
+     * 
+     * @return the scratch element
+     */
+    @Nonnull Element getElement() {
+        return elements.get(elements.size() - 1);
+    }
+
+    /**
+     * Called once the attributes of the element being read have been unmarshalled, to start retaining its content
+     * as a DOM if the element has an ID attribute and is not part of content being retained already.
+     * 
+     * @throws UnmarshallingException thrown if no document can be created to hold the content
+     */
+    void startContent() throws UnmarshallingException {
+        if (!retainSignedContent || retainedDepth > 0) {
+            return;
+        }
+
+        final Element element = getElement();
+        final NamedNodeMap attributes = element.getAttributes();
+        boolean hasID = false;
+        for (int i = 0; i < attributes.getLength() && !hasID; i++) {
+            hasID = ((Attr) attributes.item(i)).isId();
+        }
+        if (!hasID) {
+            return;
+        }
+
+        log.trace("Retaining DOM of {} in case it is signed", QNameSupport.getNodeQName(element));
+        final Element retained = importElement(element, newDocument());
+        for (int i = 0; i < attributes.getLength(); i++) {
+            final Attr attribute = (Attr) attributes.item(i);
+            if (attribute.isId()) {
+                retained.setIdAttributeNS(attribute.getNamespaceURI(), getLocalName(attribute), true);
+            }
+        }
+        removeScratchElement(element);
+        elements.set(elements.size() - 1, retained);
+        retainedDepth = elements.size();
+        retainedSigned = false;
+    }
+
+    /**
+     * Read up to the next child element, end tag, or run of character content of the element being read. Comments
+     * and processing instructions are skipped, as is character content consisting only of whitespace unless it is
+     * part of content being retained.
+     * 
+     * @return {@link XMLStreamConstants#START_ELEMENT} if the reader is positioned on the start tag of a child
+     *         element, {@link XMLStreamConstants#END_ELEMENT} if it is positioned on the end tag of the element, or
+     *         {@link XMLStreamConstants#CHARACTERS} if character content is available from {@link #getText()}
+     * 
+     * @throws UnmarshallingException thrown if there is a problem reading from the reader
+     */
+    int next() throws UnmarshallingException {
+        try {
+            while (true) {
+                final int event = pending ? reader.getEventType() : reader.next();
+                pending = false;
+                switch (event) {
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        break;
+                    case XMLStreamConstants.START_ELEMENT:
+                    case XMLStreamConstants.END_ELEMENT:
+                    case XMLStreamConstants.COMMENT:
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        if (flushText()) {
+                            pending = true;
+                            return XMLStreamConstants.CHARACTERS;
+                        } else if (event == XMLStreamConstants.START_ELEMENT
+                                || event == XMLStreamConstants.END_ELEMENT) {
+                            return event;
+                        } else if (retainedDepth > 0) {
+                            getElement().appendChild(createNode(getElement().getOwnerDocument()));
+                        }
+                        break;
+                    case XMLStreamConstants.END_DOCUMENT:
+                        throw new UnmarshallingException("Unexpected end of document");
+                    default:
+                        break;
+                }
+            }
+        } catch (final XMLStreamException e) {
+            throw new UnmarshallingException("Unable to read from XMLStreamReader", e);
+        }
+    }
+
+    /**
+     * Get the character content last reported by {@link #next()}, as a text node which is a child of the scratch
+     * element of the element being read.
+     * 
+     * @return the text node
+     */
+    @Nonnull Text getText() {
+        return currentText;
+    }
+
+    /**
+     * Finish reading the current element, once the reader is positioned on its end tag.
+     * 
+     * @param xmlObject the object unmarshalled from the element, or null if its DOM is not to be cached on it
+     */
+    void endElement(@Nullable final XMLObject xmlObject) {
+        final Element element = elements.remove(elements.size() - 1);
+        currentText = null;
+
+        if (retainedDepth == 0) {
+            removeScratchElement(element);
+            return;
+        }
+
+        if (xmlObject != null) {
+            retainedObjects.add(xmlObject);
+            retainedElements.add(element);
+        }
+        if (elements.size() < retainedDepth) {
+            if (retainedSigned) {
+                log.debug("{} contains a signature, caching its DOM", QNameSupport.getNodeQName(element));
+                for (int i = 0; i < retainedObjects.size(); i++) {
+                    retainedObjects.get(i).setDOM(retainedElements.get(i));
+                }
+            } else {
+                log.trace("{} does not contain a signature, dropping its DOM", QNameSupport.getNodeQName(element));
+            }
+            retainedObjects.clear();
+            retainedElements.clear();
+            retainedDepth = 0;
+        }
+    }
+
+    /**
+     * Read the element being read, and its content, into a DOM element. Outside of retained content, the element is
+     * the document element of a new document and declares all the namespaces in scope for it. On return, the reader
+     * is positioned on the end tag of the element.
+     * 
+     * @return the DOM element
+     * 
+     * @throws UnmarshallingException thrown if there is a problem reading from the reader
+     */
+    @Nonnull private Element readDOM() throws UnmarshallingException {
+        Element root = elements.remove(elements.size() - 1);
+        if (retainedDepth == 0) {
+            final Element scratch = root;
+            root = importElement(scratch, newDocument());
+            removeScratchElement(scratch);
+        }
+
+        markIDAttributes(root);
+
+        final Document document = root.getOwnerDocument();
+        try {
+            Node current = root;
+            while (current != null) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        final Element child = createElement(document);
+                        markIDAttributes(child);
+                        current.appendChild(child);
+                        current = child;
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        current = current == root ? null : current.getParentNode();
+                        break;
+                    case XMLStreamConstants.END_DOCUMENT:
+                        throw new UnmarshallingException("Unexpected end of document");
+                    default:
+                        final Node node = createNode(document);
+                        if (node != null) {
+                            current.appendChild(node);
+                        }
+                }
+            }
+        } catch (final XMLStreamException e) {
+            throw new UnmarshallingException("Unable to read from XMLStreamReader", e);
+        }
+
+        return root;
+    }
+
+    /**
+     * Detach a scratch element which has been read from the scratch element of its parent, along with the character
+     * content before it. That content has been unmarshalled already, and would otherwise become adjacent to the
+     * content after the element, which {@link Text#getWholeText()} would then join to it.
+     * 
+     * @param element the scratch element
+     */
+    private void removeScratchElement(@Nonnull final Element element) {
+        final Node parent = element.getParentNode();
+        if (parent != null) {
+            if (element.getPreviousSibling() instanceof Text) {
+                parent.removeChild(element.getPreviousSibling());
+            }
+            parent.removeChild(element);
+        }
+    }
+
+    /**
+     * Append the character content read so far to the scratch element of the element being read, unless it consists
+     * only of whitespace outside of retained content.
+     * 
+     * @return whether the content was appended, and is available from {@link #getText()}
+     */
+    private boolean flushText() {
+        if (text.length() == 0) {
+            return false;
+        }
+
+        boolean whitespace = retainedDepth == 0;
+        for (int i = 0; i < text.length() && whitespace; i++) {
+            final char c = text.charAt(i);
+            whitespace = c == ' ' || c == '\t' || c == '\n' || c == '\r';
+        }
+        if (whitespace) {
+            text.setLength(0);
+            return false;
+        }
+
+        final Element element = getElement();
+        currentText = element.getOwnerDocument().createTextNode(text.toString());
+        element.appendChild(currentText);
+        text.setLength(0);
+        return true;
+    }
+
+    /**
+     * Create an element with the name, namespace declarations and attributes of the start tag the reader is
+     * positioned on.
+     * 
+     * @param document the document to own the element
+     * 
+     * @return the element
+     */
+    @Nonnull private Element createElement(@Nonnull final Document document) {
+        final String prefix = StringSupport.trimOrNull(reader.getPrefix());
+        final Element element = document.createElementNS(StringSupport.trimOrNull(reader.getNamespaceURI()),
+                prefix != null ? prefix + ":" + reader.getLocalName() : reader.getLocalName());
+
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            final String nsPrefix = StringSupport.trimOrNull(reader.getNamespacePrefix(i));
+            final String nsURI = reader.getNamespaceURI(i);
+            element.setAttributeNS(XMLConstants.XMLNS_NS,
+                    nsPrefix != null ? XMLConstants.XMLNS_PREFIX + ":" + nsPrefix : XMLConstants.XMLNS_PREFIX,
+                    nsURI != null ? nsURI : "");
+        }
+
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String attributePrefix = StringSupport.trimOrNull(reader.getAttributePrefix(i));
+            final String localName = reader.getAttributeLocalName(i);
+            element.setAttributeNS(StringSupport.trimOrNull(reader.getAttributeNamespace(i)),
+                    attributePrefix != null ? attributePrefix + ":" + localName : localName,
+                    reader.getAttributeValue(i));
+        }
+
+        return element;
+    }
+
+    /**
+     * Create a DOM node for the character content, comment or processing instruction the reader is positioned on.
+     * 
+     * @param document the document to own the node
+     * 
+     * @return the node, or null if the reader is positioned on some other event
+     */
+    @Nullable private Node createNode(@Nonnull final Document document) {
+        switch (reader.getEventType()) {
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.SPACE:
+                return document.createTextNode(reader.getText());
+            case XMLStreamConstants.CDATA:
+                return document.createCDATASection(reader.getText());
+            case XMLStreamConstants.COMMENT:
+                return document.createComment(reader.getText());
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                return document.createProcessingInstruction(reader.getPITarget(), reader.getPIData());
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Make the given scratch element the document element of the given document, declaring on it the namespaces it
+     * inherits from the scratch elements of its ancestors.
+     * 
+     * @param element the scratch element
+     * @param document the document
+     * 
+     * @return the copy of the scratch element, without its content, owned by the document
+     */
+    @Nonnull private Element importElement(@Nonnull final Element element, @Nonnull final Document document) {
+        final Element imported = (Element) document.importNode(element, false);
+        for (Node ancestor = element.getParentNode(); ancestor != null
+                && ancestor.getNodeType() == Node.ELEMENT_NODE; ancestor = ancestor.getParentNode()) {
+            final NamedNodeMap attributes = ancestor.getAttributes();
+            for (int i = 0; i < attributes.getLength(); i++) {
+                final Attr attribute = (Attr) attributes.item(i);
+                if (XMLConstants.XMLNS_NS.equals(attribute.getNamespaceURI())
+                        && !imported.hasAttributeNS(XMLConstants.XMLNS_NS, getLocalName(attribute))) {
+                    imported.setAttributeNS(XMLConstants.XMLNS_NS, attribute.getName(), attribute.getValue());
+                }
+            }
+        }
+        document.appendChild(imported);
+        return imported;
+    }
+
+    /**
+     * Declare the prefix of the <code>xsi:type</code> attribute of the first element read, if any, when the reader
+     * has it bound by an enclosing element, so that the type can be resolved against the scratch element.
+     * 
+     * @param element the scratch element of the first element read
+     */
+    private void declareTypePrefix(@Nonnull final Element element) {
+        final String type = StringSupport.trimOrNull(reader.getAttributeValue(XMLConstants.XSI_NS, "type"));
+        if (type == null) {
+            return;
+        }
+
+        final int colon = type.indexOf(':');
+        final String prefix = colon > 0 ? type.substring(0, colon) : null;
+        if (element.lookupNamespaceURI(prefix) == null) {
+            final String namespaceURI = reader.getNamespaceURI(prefix != null ? prefix : "");
+            if (namespaceURI != null) {
+                element.setAttributeNS(XMLConstants.XMLNS_NS,
+                        prefix != null ? XMLConstants.XMLNS_PREFIX + ":" + prefix : XMLConstants.XMLNS_PREFIX,
+                        namespaceURI);
+            }
+        }
+    }
+
+    /**
+     * Declare the attributes of the given element which are registered as ID attributes to be of type ID.
+     * 
+     * @param element the element
+     */
+    private void markIDAttributes(@Nonnull final Element element) {
+        final NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            final Attr attribute = (Attr) attributes.item(i);
+            if (XMLObjectProviderRegistrySupport.isIDAttribute(QNameSupport.getNodeQName(attribute))) {
+                element.setIdAttributeNode(attribute, true);
+            }
+        }
+    }
+
+    /**
+     * Get the document owning the scratch elements outside of retained content.
+     * 
+     * @return the scratch document
+     * 
+     * @throws UnmarshallingException thrown if no document can be created
+     */
+    @Nonnull private Document getScratchDocument() throws UnmarshallingException {
+        if (scratchDocument == null) {
+            scratchDocument = newDocument();
+        }
+        return scratchDocument;
+    }
+
+    /**
+     * Create a new, empty, document.
+     * 
+     * @return the document
+     * 
+     * @throws UnmarshallingException thrown if no document can be created
+     */
+    @Nonnull private Document newDocument() throws UnmarshallingException {
+        final ParserPool parserPool = XMLObjectProviderRegistrySupport.getParserPool();
+        if (parserPool == null) {
+            throw new UnmarshallingException("No ParserPool available to create Document");
+        }
+        try {
+            return parserPool.newDocument();
+        } catch (final XMLParserException e) {
+            throw new UnmarshallingException("Unable to create Document to unmarshall content into", e);
+        }
+    }
+
+    /**
+     * Get the local name of an attribute, which is its name for a default namespace declaration created without
+     * namespace support.
+     * 
+     * @param attribute the attribute
+     * 
+     * @return the local name
+     */
+    @Nonnull private static String getLocalName(@Nonnull final Attr attribute) {
+        return attribute.getLocalName() != null ? attribute.getLocalName() : attribute.getName();
+    }
+}
@@ -26,9 +26,8 @@ import javax.annotation.Nullable;
 import javax.xml.namespace.QName;
 
 import net.shibboleth.utilities.java.support.logic.Constraint;
-import net.shibboleth.utilities.java.support.xml.DOMTypeSupport;
-import net.shibboleth.utilities.java.support.xml.QNameSupport;
 
+import org.opensaml.core.xml.util.ElementDispatchTable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Element;
@@ -38,6 +37,10 @@ import org.w3c.dom.Element;
  * elements into {@link org.opensaml.core.xml.XMLObject}s. Unmarshallers are stored and retrieved by a
  * {@link javax.xml.namespace.QName} key. This key is either the XML Schema Type or element QName of the XML element
  * being unmarshalled.
+ * 
+ * <p>The factory also holds {@link StreamingUnmarshaller}s, which build XMLObjects directly from a StAX reader. These
+ * are stored and retrieved by the same keys, and an {@link Unmarshaller} which is also a {@link StreamingUnmarshaller}
+ * serves as the streaming unmarshaller for its key unless another is registered explicitly.</p>
  */
 public class UnmarshallerFactory {
 
@@ -47,11 +50,21 @@ public class UnmarshallerFactory {
     /** Map of unmarshallers to the elements they are for. */
     private final Map<QName, Unmarshaller> unmarshallers;
 
+    /** Map of explicitly registered streaming unmarshallers to the elements they are for. */
+    private final Map<QName, StreamingUnmarshaller> streamingUnmarshallers;
+
+    /** Dispatch table over the registered unmarshallers, built on first use after a change. */
+    @Nullable private volatile ElementDispatchTable<Unmarshaller> dispatchTable;
+
+    /** Dispatch table over the explicitly registered streaming unmarshallers, built on first use after a change. */
+    @Nullable private volatile ElementDispatchTable<StreamingUnmarshaller> streamingDispatchTable;
+
     /**
      * Constructor.
      */
     public UnmarshallerFactory() {
         unmarshallers = new ConcurrentHashMap<>();
+        streamingUnmarshallers = new ConcurrentHashMap<>();
     }
 
     /**
@@ -78,15 +91,26 @@ public class UnmarshallerFactory {
      * @return the unmarshaller for the XMLObject the given element can be unmarshalled into
      */
     @Nullable public Unmarshaller getUnmarshaller(@Nullable final Element domElement) {
-        Unmarshaller unmarshaller;
-
-        unmarshaller = getUnmarshaller(DOMTypeSupport.getXSIType(domElement));
+        return getDispatchTable().get(domElement);
+    }
 
-        if (unmarshaller == null) {
-            unmarshaller = getUnmarshaller(QNameSupport.getNodeQName(domElement));
+    /**
+     * Gets an immutable table of the Unmarshallers currently registered, for dispatching on DOM elements.
+     * 
+     * @return the dispatch table of the Unmarshallers currently registered
+     */
+    @Nonnull public ElementDispatchTable<Unmarshaller> getDispatchTable() {
+        ElementDispatchTable<Unmarshaller> table = dispatchTable;
+        if (table == null) {
+            synchronized (this) {
+                table = dispatchTable;
+                if (table == null) {
+                    table = new ElementDispatchTable<>(unmarshallers);
+                    dispatchTable = table;
+                }
+            }
         }
-
-        return unmarshaller;
+        return table;
     }
 
     /**
@@ -110,7 +134,10 @@ public class UnmarshallerFactory {
         Constraint.isNotNull(unmarshaller, "Unmarshaller cannot be null");
         log.debug("Registering unmarshaller, {}, for object type, {}", unmarshaller.getClass().getName(), key);
         
-        unmarshallers.put(key, unmarshaller);
+        synchronized (this) {
+            unmarshallers.put(key, unmarshaller);
+            dispatchTable = null;
+        }
     }
 
     /**
@@ -123,7 +150,147 @@ public class UnmarshallerFactory {
     @Nullable public Unmarshaller deregisterUnmarshaller(@Nonnull final QName key) {
         log.debug("Deregistering marshaller for object type {}", key);
         if (key != null) {
-            return unmarshallers.remove(key);
+            synchronized (this) {
+                dispatchTable = null;
+                return unmarshallers.remove(key);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets the streaming unmarshaller for a particular element or null if no streaming unmarshaller is available for
+     * an element. A streaming unmarshaller registered explicitly is preferred to an {@link Unmarshaller} registered
+     * under the same key that is also a {@link StreamingUnmarshaller}.
+     * 
+     * @param key the key the unmarshaller was registered under
+     * 
+     * @return the StreamingUnmarshaller or null
+     */
+    @Nullable public StreamingUnmarshaller getStreamingUnmarshaller(@Nullable final QName key) {
+        if (key == null) {
+            return null;
+        }
+
+        final StreamingUnmarshaller unmarshaller = streamingUnmarshallers.get(key);
+        if (unmarshaller != null) {
+            return unmarshaller;
+        }
+
+        final Unmarshaller domUnmarshaller = unmarshallers.get(key);
+        if (domUnmarshaller instanceof StreamingUnmarshaller) {
+            return (StreamingUnmarshaller) domUnmarshaller;
+        }
+
+        return null;
+    }
+
+    /**
+     * Retrieves the streaming unmarshaller for the given element. The schema type, if present, is tried first as the
+     * key with the element QName used if no schema type is present or does not have an unmarshaller registered under
+     * it.
+     * 
+     * <p>If the unmarshaller registered for the element under the first of those keys is not a streaming
+     * unmarshaller, no streaming unmarshaller is returned, so that a streaming unmarshaller for the element never
+     * takes the place of a DOM unmarshaller for its schema type.</p>
+     * 
+     * @param domElement the element, which need only carry the name and attributes of the element being read, to
+     *            retrieve the unmarshaller for
+     * 
+     * @return the streaming unmarshaller for the XMLObject the given element can be unmarshalled into, or null
+     */
+    @Nullable public StreamingUnmarshaller getStreamingUnmarshaller(@Nullable final Element domElement) {
+        if (domElement == null) {
+            return null;
+        }
+
+        final ElementDispatchTable<StreamingUnmarshaller> streamingTable = getStreamingDispatchTable();
+        final ElementDispatchTable<Unmarshaller> table = getDispatchTable();
+
+        StreamingUnmarshaller unmarshaller = streamingTable.getBySchemaType(domElement);
+        Unmarshaller domUnmarshaller = null;
+        if (unmarshaller == null) {
+            domUnmarshaller = table.getBySchemaType(domElement);
+            if (domUnmarshaller == null) {
+                unmarshaller = streamingTable.getByElementName(domElement);
+                if (unmarshaller == null) {
+                    domUnmarshaller = table.getByElementName(domElement);
+                }
+            }
+        }
+
+        if (unmarshaller != null) {
+            return unmarshaller;
+        } else if (domUnmarshaller instanceof StreamingUnmarshaller) {
+            return (StreamingUnmarshaller) domUnmarshaller;
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets an immutable table of the explicitly registered StreamingUnmarshallers, for dispatching on DOM elements.
+     * 
+     * @return the dispatch table of the explicitly registered StreamingUnmarshallers
+     */
+    @Nonnull public ElementDispatchTable<StreamingUnmarshaller> getStreamingDispatchTable() {
+        ElementDispatchTable<StreamingUnmarshaller> table = streamingDispatchTable;
+        if (table == null) {
+            synchronized (this) {
+                table = streamingDispatchTable;
+                if (table == null) {
+                    table = new ElementDispatchTable<>(streamingUnmarshallers);
+                    streamingDispatchTable = table;
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Gets an immutable listing of all the explicitly registered StreamingUnmarshallers.
+     * 
+     * @return a listing of all the explicitly registered StreamingUnmarshallers
+     */
+    @Nonnull public Map<QName, StreamingUnmarshaller> getStreamingUnmarshallers() {
+        return Collections.unmodifiableMap(streamingUnmarshallers);
+    }
+
+    /**
+     * Registers a StreamingUnmarshaller with this factory. If a StreamingUnmarshaller exists for the QName given it is
+     * replaced with the given unmarshaller.
+     * 
+     * @param key the key the unmarshaller was registered under
+     * @param unmarshaller the StreamingUnmarshaller
+     */
+    public void registerStreamingUnmarshaller(@Nonnull final QName key,
+            @Nonnull final StreamingUnmarshaller unmarshaller) {
+        Constraint.isNotNull(key, "StreamingUnmarshaller key cannot be null");
+        Constraint.isNotNull(unmarshaller, "StreamingUnmarshaller cannot be null");
+        log.debug("Registering streaming unmarshaller, {}, for object type {}", unmarshaller.getClass().getName(),
+                key);
+
+        synchronized (this) {
+            streamingUnmarshallers.put(key, unmarshaller);
+            streamingDispatchTable = null;
+        }
+    }
+
+    /**
+     * Deregisters the explicitly registered streaming unmarshaller for the given element.
+     * 
+     * @param key the key the unmarshaller was registered under
+     * 
+     * @return the StreamingUnmarshaller previously registered or null
+     */
+    @Nullable public StreamingUnmarshaller deregisterStreamingUnmarshaller(@Nonnull final QName key) {
+        log.debug("Deregistering streaming unmarshaller for object type {}", key);
+        if (key != null) {
+            synchronized (this) {
+                streamingDispatchTable = null;
+                return streamingUnmarshallers.remove(key);
+            }
         }
 
         return null;
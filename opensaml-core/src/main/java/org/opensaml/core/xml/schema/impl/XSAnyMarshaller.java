@@ -21,6 +21,7 @@ import java.util.Map.Entry;
 
 import javax.annotation.Nonnull;
 import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
 
 import net.shibboleth.utilities.java.support.xml.AttributeSupport;
 import net.shibboleth.utilities.java.support.xml.ElementSupport;
@@ -29,6 +30,7 @@ import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
 import org.opensaml.core.xml.io.AbstractXMLObjectMarshaller;
 import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.StreamingMarshallingContext;
 import org.opensaml.core.xml.schema.XSAny;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Element;
@@ -66,4 +68,24 @@ public class XSAnyMarshaller extends AbstractXMLObjectMarshaller {
             ElementSupport.appendTextContent(domElement, xsAny.getTextContent());
         }
     }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void marshallAttributes(@Nonnull final XMLObject xmlObject,
+            @Nonnull final StreamingMarshallingContext context) throws MarshallingException, XMLStreamException {
+        XSAny xsAny = (XSAny) xmlObject;
+
+        for (Entry<QName, String> entry : xsAny.getUnknownAttributes().entrySet()) {
+            context.writeAttribute(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void marshallElementContent(@Nonnull final XMLObject xmlObject,
+            @Nonnull final StreamingMarshallingContext context) throws MarshallingException, XMLStreamException {
+        XSAny xsAny = (XSAny) xmlObject;
+
+        context.writeCharacters(xsAny.getTextContent());
+    }
 }
\ No newline at end of file
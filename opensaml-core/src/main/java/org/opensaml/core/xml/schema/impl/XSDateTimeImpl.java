@@ -76,6 +76,7 @@ public class XSDateTimeImpl extends AbstractXMLObject implements XSDateTime {
 
     /** {@inheritDoc} */
     public void setDateTimeFormatter(DateTimeFormatter newFormatter) {
+        checkNotFrozen();
         formatter = Constraint.isNotNull(newFormatter, "The formatter cannot be null");
     }
 
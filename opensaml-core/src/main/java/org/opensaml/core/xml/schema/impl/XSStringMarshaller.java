@@ -17,11 +17,15 @@
 
 package org.opensaml.core.xml.schema.impl;
 
+import javax.annotation.Nonnull;
+import javax.xml.stream.XMLStreamException;
+
 import net.shibboleth.utilities.java.support.xml.ElementSupport;
 
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.io.AbstractXMLObjectMarshaller;
 import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.StreamingMarshallingContext;
 import org.opensaml.core.xml.schema.XSString;
 import org.w3c.dom.Element;
 
@@ -41,4 +45,37 @@ public class XSStringMarshaller extends AbstractXMLObjectMarshaller {
 
         ElementSupport.appendTextContent(domElement, xsiString.getValue());
     }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>The type has no attributes, but subclasses which add attributes through
+     * {@link #marshallAttributes(XMLObject, Element)} are handled by the default implementation.</p>
+     */
+    @Override
+    protected void marshallAttributes(@Nonnull final XMLObject xmlObject,
+            @Nonnull final StreamingMarshallingContext context) throws MarshallingException, XMLStreamException {
+        if (getClass() != XSStringMarshaller.class) {
+            super.marshallAttributes(xmlObject, context);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>Subclasses which override {@link #marshallElementContent(XMLObject, Element)} are handled by the default
+     * implementation.</p>
+     */
+    @Override
+    protected void marshallElementContent(@Nonnull final XMLObject xmlObject,
+            @Nonnull final StreamingMarshallingContext context) throws MarshallingException, XMLStreamException {
+        if (getClass() != XSStringMarshaller.class) {
+            super.marshallElementContent(xmlObject, context);
+            return;
+        }
+
+        final XSString xsiString = (XSString) xmlObject;
+
+        context.writeCharacters(xsiString.getValue());
+    }
 }
\ No newline at end of file
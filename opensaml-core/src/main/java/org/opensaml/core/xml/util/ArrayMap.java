@@ -0,0 +1,278 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A compact map holding its keys and values in a single array, in insertion order, for the handful of entries
+ * typically held per XMLObject.
+ * 
+ * <p>No storage is allocated until the first entry is added, and lookups are linear, so this is only suitable for
+ * small maps. Null keys are not supported.</p>
+ * 
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+@NotThreadSafe
+final class ArrayMap<K, V> extends AbstractMap<K, V> {
+
+    /** Initial number of entries for which storage is allocated. */
+    private static final int INITIAL_CAPACITY = 2;
+
+    /** Keys and values, alternating; null until the first entry is added. */
+    @Nullable private Object[] table;
+
+    /** Number of entries. */
+    private int size;
+
+    /** Number of structural modifications, for failing fast during iteration. */
+    private int modCount;
+
+    /** {@inheritDoc} */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean containsKey(@Nullable final Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nullable public V get(@Nullable final Object key) {
+        final int index = indexOf(key);
+        return index >= 0 ? valueAt(index) : null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nullable public V put(@Nonnull final K key, @Nullable final V value) {
+        if (key == null) {
+            throw new NullPointerException("Key cannot be null");
+        }
+
+        final int index = indexOf(key);
+        if (index >= 0) {
+            final V oldValue = valueAt(index);
+            table[2 * index + 1] = value;
+            return oldValue;
+        }
+
+        if (table == null) {
+            table = new Object[2 * INITIAL_CAPACITY];
+        } else if (2 * size == table.length) {
+            table = Arrays.copyOf(table, 2 * table.length);
+        }
+        table[2 * size] = key;
+        table[2 * size + 1] = value;
+        size++;
+        modCount++;
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nullable public V remove(@Nullable final Object key) {
+        final int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+
+        final V oldValue = valueAt(index);
+        removeAt(index);
+        return oldValue;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(table, 0, 2 * size, null);
+            size = 0;
+            modCount++;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public Set<Entry<K, V>> entrySet() {
+        return new EntrySet();
+    }
+
+    /**
+     * Find the index of the entry with the given key.
+     * 
+     * @param key the key
+     * 
+     * @return the index of the entry, or -1 if there is none
+     */
+    private int indexOf(@Nullable final Object key) {
+        if (key == null) {
+            return -1;
+        }
+
+        for (int i = 0; i < size; i++) {
+            final Object candidate = table[2 * i];
+            if (candidate == key || candidate.equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the key of the entry at the given index.
+     * 
+     * @param index the index of the entry
+     * 
+     * @return the key
+     */
+    @Nonnull private K keyAt(final int index) {
+        return (K) table[2 * index];
+    }
+
+    /**
+     * Get the value of the entry at the given index.
+     * 
+     * @param index the index of the entry
+     * 
+     * @return the value
+     */
+    @Nullable private V valueAt(final int index) {
+        return (V) table[2 * index + 1];
+    }
+
+    /**
+     * Remove the entry at the given index, preserving the order of the remaining entries.
+     * 
+     * @param index the index of the entry
+     */
+    private void removeAt(final int index) {
+        System.arraycopy(table, 2 * index + 2, table, 2 * index, 2 * (size - index - 1));
+        size--;
+        table[2 * size] = null;
+        table[2 * size + 1] = null;
+        modCount++;
+    }
+
+    /** View of the entries of the map. */
+    private class EntrySet extends AbstractSet<Entry<K, V>> {
+
+        /** {@inheritDoc} */
+        @Override
+        public int size() {
+            return size;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void clear() {
+            ArrayMap.this.clear();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        @Nonnull public Iterator<Entry<K, V>> iterator() {
+            return new Iterator<Entry<K, V>>() {
+
+                /** Index of the next entry. */
+                private int next;
+
+                /** Index of the last entry returned, or -1. */
+                private int last = -1;
+
+                /** Modification count expected. */
+                private int expectedModCount = modCount;
+
+                /** {@inheritDoc} */
+                public boolean hasNext() {
+                    return next < size;
+                }
+
+                /** {@inheritDoc} */
+                public Entry<K, V> next() {
+                    if (expectedModCount != modCount) {
+                        throw new ConcurrentModificationException();
+                    } else if (next >= size) {
+                        throw new NoSuchElementException();
+                    }
+                    last = next++;
+                    return new ArrayEntry(last);
+                }
+
+                /** {@inheritDoc} */
+                public void remove() {
+                    if (last < 0) {
+                        throw new IllegalStateException();
+                    } else if (expectedModCount != modCount) {
+                        throw new ConcurrentModificationException();
+                    }
+                    removeAt(last);
+                    next = last;
+                    last = -1;
+                    expectedModCount = modCount;
+                }
+            };
+        }
+    }
+
+    /** An entry of the map, reading through to the table. */
+    private class ArrayEntry extends SimpleEntry<K, V> {
+
+        /** Serial version UID. */
+        private static final long serialVersionUID = 1L;
+
+        /** Index of the entry. */
+        private final int index;
+
+        /**
+         * Constructor.
+         * 
+         * @param entryIndex index of the entry
+         */
+        ArrayEntry(final int entryIndex) {
+            super(keyAt(entryIndex), valueAt(entryIndex));
+            index = entryIndex;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public V setValue(final V value) {
+            if (!Objects.equals(table[2 * index], getKey())) {
+                throw new ConcurrentModificationException();
+            }
+            table[2 * index + 1] = value;
+            return super.setValue(value);
+        }
+    }
+}
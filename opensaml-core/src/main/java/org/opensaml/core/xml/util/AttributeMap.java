@@ -27,12 +27,13 @@ import javax.annotation.Nonnull;
 import javax.annotation.concurrent.NotThreadSafe;
 import javax.xml.namespace.QName;
 
-import net.shibboleth.utilities.java.support.collection.LazyMap;
 import net.shibboleth.utilities.java.support.collection.LazySet;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 import net.shibboleth.utilities.java.support.primitive.StringSupport;
 import net.shibboleth.utilities.java.support.xml.QNameSupport;
 
+import org.opensaml.core.xml.AbstractXMLObject;
+import org.opensaml.core.xml.FreezableXMLObject;
 import org.opensaml.core.xml.NamespaceManager;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
@@ -58,11 +59,11 @@ public class AttributeMap implements Map<QName, String> {
     private Map<QName, String> attributes;
     
     /** Set of attribute QNames which have been locally registered as having an ID type within this 
-     * AttributeMap instance. */
+     * AttributeMap instance; null until the first registration. */
     private Set<QName> idAttribNames;
     
     /** Set of attribute QNames which have been locally registered as having an QName value type within this 
-     * AttributeMap instance. */
+     * AttributeMap instance; null until the first registration. */
     private Set<QName> qnameAttribNames;
     
     /** Flag indicating whether an attempt should be made to infer QName values, 
@@ -78,13 +79,12 @@ public class AttributeMap implements Map<QName, String> {
         Constraint.isNotNull(newOwner, "Attribute owner XMLObject cannot be null");
 
         attributeOwner = newOwner;
-        attributes = new LazyMap<>();
-        idAttribNames = new LazySet<>();
-        qnameAttribNames = new LazySet<>();
+        attributes = new ArrayMap<>();
     }
 
     /** {@inheritDoc} */
     public String put(QName attributeName, String value) {
+        checkNotFrozen();
         Constraint.isNotNull(attributeName, "Attribute name cannot be null");
         String oldValue = get(attributeName);
         if (!Objects.equals(value, oldValue)) {
@@ -118,6 +118,7 @@ public class AttributeMap implements Map<QName, String> {
      * @return the old attribute value, possibly null
      */
     public QName put(QName attributeName, QName value) {
+        checkNotFrozen();
         Constraint.isNotNull(attributeName, "Attribute name cannot be null");
         String oldValueString = get(attributeName);
         
@@ -146,6 +147,7 @@ public class AttributeMap implements Map<QName, String> {
 
     /** {@inheritDoc} */
     public void clear() {
+        checkNotFrozen();
         LazySet<QName> keys = new LazySet<>();
         keys.addAll(attributes.keySet());
         for (QName attributeName : keys) {
@@ -189,6 +191,7 @@ public class AttributeMap implements Map<QName, String> {
 
     /** {@inheritDoc} */
     public String remove(Object key) {
+        checkNotFrozen();
         String removedValue = attributes.remove(key);
         if (removedValue != null) {
             releaseDOM();
@@ -236,9 +239,11 @@ public class AttributeMap implements Map<QName, String> {
      * @param attributeName the QName of the ID attribute to be registered
      */
     public void registerID(QName attributeName) {
-        if (! idAttribNames.contains(attributeName)) {
-            idAttribNames.add(attributeName);
+        checkNotFrozen();
+        if (idAttribNames == null) {
+            idAttribNames = new LazySet<>();
         }
+        idAttribNames.add(attributeName);
         
         // In case attribute already has a value,
         // register the current value mapping with the XMLObject owner.
@@ -253,7 +258,8 @@ public class AttributeMap implements Map<QName, String> {
      * @param attributeName the QName of the ID attribute to be de-registered
      */
     public void deregisterID(QName attributeName) {
-        if (idAttribNames.contains(attributeName)) {
+        checkNotFrozen();
+        if (idAttribNames != null) {
             idAttribNames.remove(attributeName);
         }
         
@@ -272,7 +278,7 @@ public class AttributeMap implements Map<QName, String> {
      * @return true if attribute is registered as having an ID type.
      */
     public boolean isIDAttribute(QName attributeName) {
-        return idAttribNames.contains(attributeName);
+        return idAttribNames != null && idAttribNames.contains(attributeName);
     }
     
     /**
@@ -281,6 +287,10 @@ public class AttributeMap implements Map<QName, String> {
      * @param attributeName the name of the QName-valued attribute to be registered
      */
     public void registerQNameAttribute(QName attributeName) {
+        checkNotFrozen();
+        if (qnameAttribNames == null) {
+            qnameAttribNames = new LazySet<>();
+        }
         qnameAttribNames.add(attributeName);
     }
     
@@ -290,7 +300,10 @@ public class AttributeMap implements Map<QName, String> {
      * @param attributeName the name of the QName-valued attribute to be registered
      */
     public void deregisterQNameAttribute(QName attributeName) {
-        qnameAttribNames.remove(attributeName);
+        checkNotFrozen();
+        if (qnameAttribNames != null) {
+            qnameAttribNames.remove(attributeName);
+        }
     }
     
     /**
@@ -300,7 +313,7 @@ public class AttributeMap implements Map<QName, String> {
      * @return true if attribute is registered as having an QName type.
      */
     public boolean isQNameAttribute(QName attributeName) {
-        return qnameAttribNames.contains(attributeName);
+        return qnameAttribNames != null && qnameAttribNames.contains(attributeName);
     }
     
     /**
@@ -322,15 +335,32 @@ public class AttributeMap implements Map<QName, String> {
      * 
      */
     public void setInferQNameValues(boolean flag) {
+        checkNotFrozen();
         inferQNameValues = flag;
     }
     
     /**
-     * Releases the DOM caching associated XMLObject and its ancestors.
+     * Check that the attributes may be modified, as their owner has not been frozen.
+     * 
+     * @throws UnsupportedOperationException if the owner has been frozen
+     */
+    private void checkNotFrozen() {
+        if (attributeOwner instanceof FreezableXMLObject && ((FreezableXMLObject) attributeOwner).isFrozen()) {
+            throw new UnsupportedOperationException("Attributes of " + attributeOwner.getElementQName()
+                    + " are frozen and cannot be modified");
+        }
+    }
+    
+    /**
+     * Releases the DOM caching associated XMLObject and its ancestors. As with
+     * {@link AbstractXMLObject#releaseThisandParentDOM()}, nothing is done if the owner has no cached DOM, since its
+     * ancestors have then already been released.
      */
     private void releaseDOM() {
-        attributeOwner.releaseDOM();
-        attributeOwner.releaseParentDOM(true);
+        if (attributeOwner.getDOM() != null) {
+            attributeOwner.releaseDOM();
+            attributeOwner.releaseParentDOM(true);
+        }
     }
     
     /**
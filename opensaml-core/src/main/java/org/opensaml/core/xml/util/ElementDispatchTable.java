@@ -0,0 +1,142 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.xml.namespace.QName;
+
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
+import net.shibboleth.utilities.java.support.xml.XMLConstants;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+
+/**
+ * An immutable table of values keyed by the element or schema type {@link QName} under which they were registered,
+ * for dispatching on DOM elements.
+ * 
+ * <p>Values are indexed by namespace URI and then by local name, so an element is looked up using the strings its
+ * DOM node already holds, without constructing a {@link QName} for it or for its <code>xsi:type</code>.</p>
+ * 
+ * @param <ValueType> the type of value held in the table
+ */
+@Immutable
+public final class ElementDispatchTable<ValueType> {
+
+    /** Values indexed by namespace URI, the empty string for none, and then by local name. */
+    @Nonnull private final Map<String, Map<String, ValueType>> table;
+
+    /**
+     * Constructor.
+     * 
+     * @param values the values to place in the table, indexed by the QName they were registered under
+     */
+    public ElementDispatchTable(@Nonnull final Map<QName, ? extends ValueType> values) {
+        final Map<String, Map<String, ValueType>> namespaces = new HashMap<>();
+        for (final Map.Entry<QName, ? extends ValueType> entry : values.entrySet()) {
+            Map<String, ValueType> localNames = namespaces.get(entry.getKey().getNamespaceURI());
+            if (localNames == null) {
+                localNames = new HashMap<>();
+                namespaces.put(entry.getKey().getNamespaceURI(), localNames);
+            }
+            localNames.put(entry.getKey().getLocalPart(), entry.getValue());
+        }
+        table = namespaces.isEmpty() ? Collections.<String, Map<String, ValueType>>emptyMap() : namespaces;
+    }
+
+    /**
+     * Get the value registered under the given name.
+     * 
+     * @param namespaceURI the namespace URI of the name, or null or the empty string for none
+     * @param localName the local part of the name
+     * 
+     * @return the value, or null
+     */
+    @Nullable public ValueType get(@Nullable final String namespaceURI, @Nullable final String localName) {
+        final Map<String, ValueType> localNames = table.get(namespaceURI != null ? namespaceURI : "");
+        return localNames != null ? localNames.get(localName) : null;
+    }
+
+    /**
+     * Get the value registered under the given name.
+     * 
+     * @param name the name, or null
+     * 
+     * @return the value, or null
+     */
+    @Nullable public ValueType get(@Nullable final QName name) {
+        return name != null ? get(name.getNamespaceURI(), name.getLocalPart()) : null;
+    }
+
+    /**
+     * Get the value for the given element. The schema type, if present, is tried first as the key with the element
+     * name used if no schema type is present or does not have a value registered under it.
+     * 
+     * @param element the element, or null
+     * 
+     * @return the value, or null
+     */
+    @Nullable public ValueType get(@Nullable final Element element) {
+        if (element == null) {
+            return null;
+        }
+
+        final ValueType value = getBySchemaType(element);
+        return value != null ? value : getByElementName(element);
+    }
+
+    /**
+     * Get the value registered under the name of the given element.
+     * 
+     * @param element the element
+     * 
+     * @return the value, or null
+     */
+    @Nullable public ValueType getByElementName(@Nonnull final Element element) {
+        return get(element.getNamespaceURI(), element.getLocalName());
+    }
+
+    /**
+     * Get the value registered under the <code>xsi:type</code> of the given element.
+     * 
+     * @param element the element
+     * 
+     * @return the value, or null if the element has no schema type or nothing is registered under it
+     */
+    @Nullable public ValueType getBySchemaType(@Nonnull final Element element) {
+        final Attr typeAttribute = element.getAttributeNodeNS(XMLConstants.XSI_NS, "type");
+        if (typeAttribute == null) {
+            return null;
+        }
+
+        final String type = StringSupport.trimOrNull(typeAttribute.getValue());
+        if (type == null) {
+            return null;
+        }
+
+        final int colon = type.indexOf(':');
+        final String namespaceURI = element.lookupNamespaceURI(colon > 0 ? type.substring(0, colon) : null);
+        return get(namespaceURI, type.substring(colon + 1));
+    }
+}
@@ -42,8 +42,9 @@ public class IDIndex {
     @Nonnull private final XMLObject owner;
     
     /** Mapping of ID attributes to XMLObjects in the subtree rooted at this object's owner.
-     * This allows constant-time dereferencing of ID-typed attributes within the subtree.  */
-    @Nonnull private Map<String, XMLObject> idMappings;
+     * This allows constant-time dereferencing of ID-typed attributes within the subtree. Null until the first
+     * mapping is registered, since most objects never index an ID. */
+    @Nullable private Map<String, XMLObject> idMappings;
 
     /**
      * Constructor.
@@ -54,7 +55,6 @@ public class IDIndex {
         Constraint.isNotNull(newOwner, "ID-owning XMLObject may not be null");
         
         owner = newOwner;
-        idMappings = new LazyMap<>();
     }
     
 
@@ -69,7 +69,7 @@ public class IDIndex {
             return;
         }
         
-        idMappings.put(id, referent);
+        getOrCreateIDMappings().put(id, referent);
         if (owner.hasParent()) {
             owner.getParent().getIDIndex().registerIDMapping(id, referent);
         }
@@ -85,7 +85,7 @@ public class IDIndex {
             return;
         }
         
-        idMappings.putAll(idIndex.getIDMappings());
+        getOrCreateIDMappings().putAll(idIndex.getIDMappings());
         if (owner.hasParent()) {
             owner.getParent().getIDIndex().registerIDMappings(idIndex);
         }
@@ -101,7 +101,9 @@ public class IDIndex {
             return;
         }
         
-        idMappings.remove(id);
+        if (idMappings != null) {
+            idMappings.remove(id);
+        }
         if (owner.hasParent()) {
             owner.getParent().getIDIndex().deregisterIDMapping(id);
         }
@@ -117,8 +119,10 @@ public class IDIndex {
             return;
         }
         
-        for (String id : idIndex.getIDs()) {
-            idMappings.remove(id);
+        if (idMappings != null) {
+            for (String id : idIndex.getIDs()) {
+                idMappings.remove(id);
+            }
         }
         if (owner.hasParent()) {
             owner.getParent().getIDIndex().deregisterIDMappings(idIndex);
@@ -132,7 +136,7 @@ public class IDIndex {
      * @return the XMLObject identified by the ID attribute value
      */
     @Nullable public XMLObject lookup(@Nonnull @NotEmpty final String id) {
-        return idMappings.get(id);
+        return idMappings != null ? idMappings.get(id) : null;
     }
     
     /**
@@ -141,7 +145,7 @@ public class IDIndex {
      * @return true if the index is currently empty
      */
     public boolean isEmpty() {
-        return idMappings.isEmpty();
+        return idMappings == null || idMappings.isEmpty();
     }
     
     /**
@@ -150,6 +154,9 @@ public class IDIndex {
      * @return the set of ID strings which are keys to the index
      */
     @Nonnull public Set<String> getIDs() {
+        if (idMappings == null) {
+            return Collections.emptySet();
+        }
         return Collections.unmodifiableSet(idMappings.keySet());
     }
     
@@ -159,7 +166,22 @@ public class IDIndex {
      * @return the ID-to-XMLObject mapping
      */
     @Nonnull protected Map<String, XMLObject> getIDMappings() {
+        if (idMappings == null) {
+            return Collections.emptyMap();
+        }
         return Collections.unmodifiableMap(idMappings);
     }
     
+    /**
+     * Get the ID-to-XMLObject mappings, creating them if necessary.
+     * 
+     * @return the modifiable ID-to-XMLObject mapping
+     */
+    @Nonnull private Map<String, XMLObject> getOrCreateIDMappings() {
+        if (idMappings == null) {
+            idMappings = new LazyMap<>();
+        }
+        return idMappings;
+    }
+    
 }
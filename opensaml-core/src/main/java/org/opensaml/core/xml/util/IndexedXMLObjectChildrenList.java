@@ -19,6 +19,7 @@ package org.opensaml.core.xml.util;
 
 import java.util.AbstractList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -85,6 +86,7 @@ public class IndexedXMLObjectChildrenList<ElementType extends XMLObject> extends
     /** {@inheritDoc} */
     @Override
     public void clear() {
+        checkNotFrozen();
         super.clear();
         objectIndex.clear();
     }
@@ -98,18 +100,23 @@ public class IndexedXMLObjectChildrenList<ElementType extends XMLObject> extends
      * @return list of SAMLObjects that have given schema type or element name or null
      */
     @Nonnull public List<ElementType> get(@Nonnull final QName typeOrName) {
+        checkDeferredChildren();
+        if (isFrozen()) {
+            final List<ElementType> objects = objectIndex.get(typeOrName);
+            return objects != null ? Collections.unmodifiableList(objects) : Collections.<ElementType>emptyList();
+        }
         checkAndCreateIndex(typeOrName);
         return objectIndex.get(typeOrName);
     }
 
     /**
      * Check for the existence of an index for the specified QName and create it
-     * if it doesn't exist.
+     * if it doesn't exist, unless the list is frozen.
      * 
      * @param index the index to check
      */
     protected void checkAndCreateIndex(@Nonnull final QName index) {
-        if (!objectIndex.containsKey(index)) {
+        if (!isFrozen() && !objectIndex.containsKey(index)) {
             objectIndex.put(index, new LazyList<ElementType>());
         }
     }
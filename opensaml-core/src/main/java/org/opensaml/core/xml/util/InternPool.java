@@ -0,0 +1,99 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.util;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+/**
+ * A bounded, weakly-referencing pool of canonical instances of an immutable type.
+ * 
+ * <p>The pool is a fixed-size table indexed by hash code, each slot weakly holding the last instance interned
+ * into it. An instance colliding with a different one simply replaces it, so the pool never holds more than its
+ * capacity, never prevents an instance from being collected, and needs no locking. Interning is therefore a
+ * best-effort de-duplication: equal instances are usually, but not always, shared.</p>
+ * 
+ * @param <T> the type of instance pooled
+ */
+@ThreadSafe
+public class InternPool<T> {
+
+    /** The slots of the pool. */
+    private final AtomicReferenceArray<WeakReference<T>> slots;
+
+    /** Mask selecting a slot from a hash code. */
+    private final int mask;
+
+    /**
+     * Constructor.
+     * 
+     * @param capacity the number of slots, rounded up to a power of two
+     */
+    public InternPool(final int capacity) {
+        Constraint.isGreaterThan(0, capacity, "Capacity must be greater than 0");
+        final int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    /**
+     * Get the pooled instance equivalent to the given one, pooling the given one if there is none.
+     * 
+     * @param value the instance to intern
+     * 
+     * @return the pooled instance, or the given one
+     */
+    @Nullable public T intern(@Nullable final T value) {
+        if (value == null) {
+            return null;
+        }
+
+        final int hash = value.hashCode();
+        final int index = (hash ^ (hash >>> 16)) & mask;
+        final WeakReference<T> ref = slots.get(index);
+        if (ref != null) {
+            final T pooled = ref.get();
+            if (pooled == value || (pooled != null && isEquivalent(pooled, value))) {
+                return pooled;
+            }
+        }
+
+        slots.set(index, new WeakReference<>(value));
+        return value;
+    }
+
+    /**
+     * Check whether a pooled instance may be used in place of the given one.
+     * 
+     * <p>The default implementation uses {@link Object#equals(Object)}.</p>
+     * 
+     * @param pooled the pooled instance
+     * @param value the instance being interned
+     * 
+     * @return true if the pooled instance may be used in place of the given one
+     */
+    protected boolean isEquivalent(final T pooled, final T value) {
+        return pooled.equals(value);
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.util;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.namespace.QName;
+
+import net.shibboleth.utilities.java.support.xml.QNameSupport;
+
+import org.opensaml.core.xml.Namespace;
+
+/**
+ * Helper methods sharing the names, namespaces and short string values which recur throughout large documents, such
+ * as the protocol enumerations, binding URIs and NameID formats of a metadata aggregate.
+ * 
+ * <p>Instances are pooled in bounded {@link InternPool}s, so interning never grows the heap without bound nor keeps
+ * otherwise unreachable instances alive.</p>
+ */
+public final class InternSupport {
+
+    /** Strings longer than this are not interned, being unlikely to recur. */
+    public static final int MAX_STRING_LENGTH = 256;
+
+    /** Pool of strings. */
+    private static final InternPool<String> STRINGS = new InternPool<>(8192);
+
+    /** Pool of QNames, which are only equivalent if their prefixes are also equal. */
+    private static final InternPool<QName> QNAMES = new InternPool<QName>(2048) {
+        /** {@inheritDoc} */
+        protected boolean isEquivalent(final QName pooled, final QName value) {
+            return pooled.equals(value) && pooled.getPrefix().equals(value.getPrefix());
+        }
+    };
+
+    /** Pool of namespaces. */
+    private static final InternPool<Namespace> NAMESPACES = new InternPool<>(512);
+
+    /** Constructor. */
+    private InternSupport() {
+    }
+
+    /**
+     * Get the shared instance of a string, if it is short enough to be shared.
+     * 
+     * @param value the string
+     * 
+     * @return the shared instance, or the given string
+     */
+    @Nullable public static String intern(@Nullable final String value) {
+        if (value == null || value.length() > MAX_STRING_LENGTH) {
+            return value;
+        }
+        return STRINGS.intern(value);
+    }
+
+    /**
+     * Get the shared instance of a QName with the same namespace, local name and prefix.
+     * 
+     * @param name the QName
+     * 
+     * @return the shared instance, or the given QName
+     */
+    @Nullable public static QName intern(@Nullable final QName name) {
+        return QNAMES.intern(name);
+    }
+
+    /**
+     * Get the shared instance of a namespace.
+     * 
+     * <p>Only instances of {@link Namespace} itself are shared, since subclasses may carry additional state.</p>
+     * 
+     * @param namespace the namespace
+     * 
+     * @return the shared instance, or the given namespace
+     */
+    @Nullable public static Namespace intern(@Nullable final Namespace namespace) {
+        if (namespace == null || namespace.getClass() != Namespace.class) {
+            return namespace;
+        }
+        return NAMESPACES.intern(namespace);
+    }
+
+    /**
+     * Construct a QName as {@link QNameSupport#constructQName(String, String, String)} does, and get its shared
+     * instance.
+     * 
+     * @param namespaceURI the namespace URI
+     * @param localName the local name
+     * @param prefix the prefix
+     * 
+     * @return the shared QName
+     */
+    @Nonnull public static QName constructQName(@Nullable final String namespaceURI, @Nonnull final String localName,
+            @Nullable final String prefix) {
+        return QNAMES.intern(QNameSupport.constructQName(namespaceURI, localName, prefix));
+    }
+
+}
@@ -27,6 +27,8 @@ import javax.annotation.Nullable;
 import net.shibboleth.utilities.java.support.collection.LazyList;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 
+import org.opensaml.core.xml.AbstractXMLObject;
+import org.opensaml.core.xml.FreezableXMLObject;
 import org.opensaml.core.xml.XMLObject;
 
 import com.google.common.base.Predicates;
@@ -85,6 +87,7 @@ public class XMLObjectChildrenList<ElementType extends XMLObject> extends Abstra
 
     /** {@inheritDoc} */
     public int size() {
+        checkDeferredChildren();
         return elements.size();
     }
 
@@ -96,11 +99,13 @@ public class XMLObjectChildrenList<ElementType extends XMLObject> extends Abstra
      * @return true iff the element is in this list
      */
     public boolean contains(@Nonnull final ElementType element) {
+        checkDeferredChildren();
         return elements.contains(element);
     }
 
     /** {@inheritDoc} */
     @Nonnull public ElementType get(int index) {
+        checkDeferredChildren();
         return elements.get(index);
     }
 
@@ -117,6 +122,8 @@ public class XMLObjectChildrenList<ElementType extends XMLObject> extends Abstra
      * @return the replaced XMLObject
      */
     @Nullable public ElementType set(int index, @Nullable final ElementType element) {
+        checkDeferredChildren();
+        checkNotFrozen();
         if (element == null) {
             return null;
         }
@@ -149,6 +156,8 @@ public class XMLObjectChildrenList<ElementType extends XMLObject> extends Abstra
      * @param element element to be stored at the given index
      */
     public void add(int index, @Nullable final ElementType element) {
+        checkDeferredChildren();
+        checkNotFrozen();
         if (element == null || elements.contains(element)) {
             return;
         }
@@ -162,6 +171,8 @@ public class XMLObjectChildrenList<ElementType extends XMLObject> extends Abstra
 
     /** {@inheritDoc} */
     @Nonnull public ElementType remove(int index) {
+        checkDeferredChildren();
+        checkNotFrozen();
         ElementType element = elements.remove(index);
 
         if (element != null) {
@@ -182,6 +193,8 @@ public class XMLObjectChildrenList<ElementType extends XMLObject> extends Abstra
      * @return true iff the element was in the list and removed
      */
     public boolean remove(@Nullable final ElementType element) {
+        checkDeferredChildren();
+        checkNotFrozen();
 
         boolean elementRemoved = elements.remove(element);
         if (elementRemoved) {
@@ -195,6 +208,37 @@ public class XMLObjectChildrenList<ElementType extends XMLObject> extends Abstra
         return elementRemoved;
     }
 
+    /**
+     * Unmarshalls the children of the parent given at list construction if their unmarshalling has been deferred, so
+     * that this list holds them before it is accessed.
+     */
+    protected void checkDeferredChildren() {
+        if (parent instanceof AbstractXMLObject) {
+            ((AbstractXMLObject) parent).unmarshallDeferredChildren();
+        }
+    }
+
+    /**
+     * Check that this list may be modified, as the parent given at list construction has not been frozen.
+     * 
+     * @throws UnsupportedOperationException if the parent has been frozen
+     */
+    protected void checkNotFrozen() {
+        if (isFrozen()) {
+            throw new UnsupportedOperationException("Children of " + parent.getElementQName()
+                    + " are frozen and cannot be modified");
+        }
+    }
+
+    /**
+     * Get whether the parent given at list construction has been frozen, so that this list cannot be modified.
+     * 
+     * @return true if the parent has been frozen
+     */
+    protected boolean isFrozen() {
+        return parent instanceof FreezableXMLObject && ((FreezableXMLObject) parent).isFrozen();
+    }
+
     /**
      * Assigned the parent, given at list construction, to the given element if the element does not have a parent or
      * its parent matches the one given at list construction time.
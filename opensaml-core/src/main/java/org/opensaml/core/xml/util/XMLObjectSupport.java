@@ -17,9 +17,12 @@
 
 package org.opensaml.core.xml.util;
 
+import java.io.BufferedWriter;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Objects;
@@ -27,6 +30,10 @@ import java.util.Objects;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 import net.shibboleth.utilities.java.support.primitive.StringSupport;
 import net.shibboleth.utilities.java.support.xml.AttributeSupport;
@@ -44,6 +51,8 @@ import org.opensaml.core.xml.config.XMLObjectProviderRegistry;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
 import org.opensaml.core.xml.io.Marshaller;
 import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.StreamingMarshallingContext;
+import org.opensaml.core.xml.io.StreamingUnmarshallingContext;
 import org.opensaml.core.xml.io.Unmarshaller;
 import org.opensaml.core.xml.io.UnmarshallingException;
 import org.slf4j.Logger;
@@ -57,6 +66,12 @@ import org.w3c.dom.Element;
  * A helper class for working with XMLObjects.
  */
 public final class XMLObjectSupport {
+
+    /**
+     * Factory for the StAX readers used by {@link #streamUnmarshallFromInputStream(InputStream)}, which neither
+     * processes DTDs nor resolves external entities.
+     */
+    private static final XMLInputFactory INPUT_FACTORY = newInputFactory();
     
     /** Constructor. */
     private XMLObjectSupport() { }
@@ -145,7 +160,38 @@ public final class XMLObjectSupport {
         
         return (T) unmarshaller.unmarshall(clonedElement);
     }
-    
+
+    /**
+     * Copy an XMLObject without building a DOM of the whole tree.
+     *
+     * <p>The original object is streamed into an in-memory buffer of StAX events, from which a new XMLObject tree is
+     * streamed back out, so no serialized form of the object is ever built. The streaming marshallers and
+     * unmarshallers still create a short-lived scratch element for each object, holding only its name and
+     * attributes, against which the DOM-based marshalling and unmarshalling hooks are run. The cached DOM of the
+     * original object, or of any of its descendants, is copied as is. Unlike {@link #cloneXMLObject(XMLObject)}, the
+     * copy does not cache a DOM, except for content with an ID attribute which carries an XML signature.</p>
+     *
+     * @param originalXMLObject the object to be copied
+     * @return a copy of the original object
+     *
+     * @throws MarshallingException if original object can not be marshalled
+     * @throws UnmarshallingException if copied object tree can not be unmarshalled
+     *
+     * @param <T> the type of object being copied
+     */
+    @Nullable public static <T extends XMLObject> T copyXMLObject(@Nullable final T originalXMLObject)
+            throws MarshallingException, UnmarshallingException {
+
+        if (originalXMLObject == null) {
+            return null;
+        }
+
+        final XMLStreamEventBuffer buffer = new XMLStreamEventBuffer();
+        streamMarshall(originalXMLObject, buffer.getWriter());
+
+        return (T) streamUnmarshall(buffer.getReader());
+    }
+
     /**
      * Unmarshall a Document from an InputSteam.
      * 
@@ -223,6 +269,46 @@ public final class XMLObjectSupport {
         return message;
     }
 
+    /**
+     * Unmarshall the element a StAX reader is positioned on, or its document element if it is positioned at the start
+     * of a document, without parsing it into a DOM first.
+     * 
+     * <p>Content with an ID attribute which turns out to carry an XML signature has its DOM cached, just as if it had
+     * been parsed, so that the signature can be verified. No other content caches a DOM.</p>
+     * 
+     * @param reader the reader to unmarshall from, left positioned on the end tag of the element
+     * @return the unmarshalled XMLObject
+     * @throws UnmarshallingException if there is a problem reading or unmarshalling the element
+     */
+    @Nonnull public static XMLObject streamUnmarshall(@Nonnull final XMLStreamReader reader)
+            throws UnmarshallingException {
+        return new StreamingUnmarshallingContext(reader).unmarshall();
+    }
+
+    /**
+     * Unmarshall a Document from an InputStream without parsing it into a DOM first. Documents containing a document
+     * type declaration are rejected.
+     * 
+     * @param inputStream the InputStream to unmarshall, which is not closed
+     * @return the unmarshalled XMLObject
+     * @throws UnmarshallingException if there is a problem reading or unmarshalling the input data
+     * 
+     * @see #streamUnmarshall(XMLStreamReader)
+     */
+    @Nonnull public static XMLObject streamUnmarshallFromInputStream(@Nonnull final InputStream inputStream)
+            throws UnmarshallingException {
+        try {
+            final XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(inputStream);
+            try {
+                return streamUnmarshall(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (final XMLStreamException e) {
+            throw new UnmarshallingException("Unable to read XMLObject from InputStream", e);
+        }
+    }
+
     /**
      * Marshall an XMLObject.  If the XMLObject already has a cached DOM via {@link XMLObject#getDOM()},
      * that Element will be returned.  Otherwise the object will be fully marshalled and that Element returned.
@@ -271,6 +357,54 @@ public final class XMLObjectSupport {
         SerializeSupport.writeNode(element, outputStream);
     }
     
+    /**
+     * Marshall an XMLObject directly to a StAX writer, without building a DOM for the object or caching one on it.
+     * 
+     * <p>The cached DOM of the object, or of any of its descendants, is written out as is, so this may be used on
+     * signed objects as long as they were signed before being passed in.</p>
+     * 
+     * <p>Whether tab, newline and carriage return characters in attribute values survive being parsed again depends
+     * on the writer supplied: most StAX writers output them literally, where they are subject to attribute value
+     * normalization. {@link #streamMarshallToOutputStream(XMLObject, OutputStream)} writes them as character
+     * references.</p>
+     * 
+     * @param xmlObject the XMLObject to marshall
+     * @param writer the writer to which to marshall
+     * @throws MarshallingException if there is a problem marshalling the object
+     */
+    public static void streamMarshall(@Nonnull final XMLObject xmlObject, @Nonnull final XMLStreamWriter writer)
+            throws MarshallingException {
+        try {
+            new StreamingMarshallingContext(writer).marshall(xmlObject);
+        } catch (final XMLStreamException e) {
+            throw new MarshallingException("Unable to write XMLObject to XMLStreamWriter", e);
+        }
+    }
+
+    /**
+     * Marshall an XMLObject directly to an OutputStream as a UTF-8 encoded document, without building a DOM for the
+     * object or caching one on it.
+     * 
+     * @param xmlObject the XMLObject to marshall
+     * @param outputStream the OutputStream to which to marshall, which is not closed
+     * @throws MarshallingException if there is a problem marshalling the object
+     * 
+     * @see #streamMarshall(XMLObject, XMLStreamWriter)
+     */
+    public static void streamMarshallToOutputStream(@Nonnull final XMLObject xmlObject,
+            @Nonnull final OutputStream outputStream) throws MarshallingException {
+        try {
+            final XMLStreamWriter writer = new XMLStreamSerializer(
+                    new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8)));
+            writer.writeStartDocument("UTF-8", "1.0");
+            new StreamingMarshallingContext(writer).marshall(xmlObject);
+            writer.writeEndDocument();
+            writer.close();
+        } catch (final XMLStreamException e) {
+            throw new MarshallingException("Unable to write XMLObject to OutputStream", e);
+        }
+    }
+    
     /**
      * Get the namespace URI bound to the specified prefix within the scope of the specified
      * XMLObject.
@@ -390,9 +524,9 @@ public final class XMLObjectSupport {
      * @param attribute the target DOM Attr
      */
     public static void unmarshallToAttributeMap(AttributeMap attributeMap, Attr attribute) {
-        QName attribQName = QNameSupport.constructQName(attribute.getNamespaceURI(), attribute.getLocalName(), attribute
-                .getPrefix());
-        attributeMap.put(attribQName, attribute.getValue());
+        QName attribQName = InternSupport.constructQName(attribute.getNamespaceURI(), attribute.getLocalName(),
+                attribute.getPrefix());
+        attributeMap.put(attribQName, InternSupport.intern(attribute.getValue()));
         if (attribute.isId() || XMLObjectProviderRegistrySupport.isIDAttribute(attribQName)) {
             attributeMap.registerID(attribQName);
         }
@@ -486,4 +620,17 @@ public final class XMLObjectSupport {
         }
         return registry;
     }
+
+    /**
+     * Create the StAX input factory used to unmarshall from streams.
+     * 
+     * @return a namespace-aware factory which neither processes DTDs nor resolves external entities
+     */
+    @Nonnull private static XMLInputFactory newInputFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,1046 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * An in-memory buffer of StAX events, filled through an {@link XMLStreamWriter} and replayed through any number of
+ * {@link XMLStreamReader}s.
+ * 
+ * <p>This allows the output of a streaming marshaller to be fed to a streaming unmarshaller without serializing it to
+ * characters and parsing it again. Only the events needed to represent an element are supported: elements, namespace
+ * declarations, attributes, character content, comments and processing instructions. Character and predefined entity
+ * references are buffered as the characters they stand for; document type declarations and other entity references
+ * are rejected.</p>
+ * 
+ * <p>The writer is not thread-safe. Once writing is complete, the buffer may be read by several readers at once.</p>
+ */
+public class XMLStreamEventBuffer {
+
+    /** Event marking the end of an element. */
+    @Nonnull private static final Event END_ELEMENT = new Event(XMLStreamConstants.END_ELEMENT);
+
+    /** The buffered events, in document order. */
+    @Nonnull private final List<Event> events;
+
+    /** Constructor. */
+    public XMLStreamEventBuffer() {
+        events = new ArrayList<>();
+    }
+
+    /**
+     * Get a writer which appends events to this buffer.
+     * 
+     * @return the writer
+     */
+    @Nonnull public XMLStreamWriter getWriter() {
+        return new BufferWriter();
+    }
+
+    /**
+     * Get a reader positioned at the start of the document formed by the events in this buffer.
+     * 
+     * @return the reader
+     */
+    @Nonnull public XMLStreamReader getReader() {
+        return new BufferReader();
+    }
+
+    /**
+     * Namespace bindings in scope for a stack of open elements.
+     */
+    static class Bindings implements NamespaceContext {
+
+        /** Bound prefixes, the empty string for the default namespace, in order of binding. */
+        @Nonnull private final List<String> prefixes = new ArrayList<>();
+
+        /** Namespace URIs bound to the corresponding entries of {@link #prefixes}. */
+        @Nonnull private final List<String> namespaceURIs = new ArrayList<>();
+
+        /** Index into {@link #prefixes} of the first binding of each open element. */
+        @Nonnull private final List<Integer> scopes = new ArrayList<>();
+
+        /** Open a new scope. */
+        void push() {
+            scopes.add(prefixes.size());
+        }
+
+        /** Close the innermost scope, discarding its bindings. */
+        void pop() {
+            final int start = scopes.remove(scopes.size() - 1);
+            prefixes.subList(start, prefixes.size()).clear();
+            namespaceURIs.subList(start, namespaceURIs.size()).clear();
+        }
+
+        /**
+         * Bind a prefix in the innermost scope.
+         * 
+         * @param prefix the prefix, or the empty string for the default namespace
+         * @param namespaceURI the namespace URI, or the empty string to undeclare the default namespace
+         */
+        void bind(@Nonnull final String prefix, @Nonnull final String namespaceURI) {
+            prefixes.add(prefix);
+            namespaceURIs.add(namespaceURI);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        @Nullable public String getNamespaceURI(@Nullable final String prefix) {
+            final String key = prefix != null ? prefix : XMLConstants.DEFAULT_NS_PREFIX;
+            if (XMLConstants.XML_NS_PREFIX.equals(key)) {
+                return XMLConstants.XML_NS_URI;
+            } else if (XMLConstants.XMLNS_ATTRIBUTE.equals(key)) {
+                return XMLConstants.XMLNS_ATTRIBUTE_NS_URI;
+            }
+            for (int i = prefixes.size() - 1; i >= 0; i--) {
+                if (prefixes.get(i).equals(key)) {
+                    final String namespaceURI = namespaceURIs.get(i);
+                    return namespaceURI.isEmpty() ? null : namespaceURI;
+                }
+            }
+            return null;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        @Nullable public String getPrefix(@Nullable final String namespaceURI) {
+            final Iterator<String> prefixIterator = getPrefixes(namespaceURI);
+            return prefixIterator.hasNext() ? prefixIterator.next() : null;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        @Nonnull public Iterator<String> getPrefixes(@Nullable final String namespaceURI) {
+            if (XMLConstants.XML_NS_URI.equals(namespaceURI)) {
+                return Collections.singletonList(XMLConstants.XML_NS_PREFIX).iterator();
+            } else if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(namespaceURI)) {
+                return Collections.singletonList(XMLConstants.XMLNS_ATTRIBUTE).iterator();
+            }
+            final List<String> bound = new ArrayList<>();
+            for (int i = prefixes.size() - 1; i >= 0; i--) {
+                final String prefix = prefixes.get(i);
+                if (namespaceURIs.get(i).equals(namespaceURI) && !bound.contains(prefix)
+                        && namespaceURI.equals(getNamespaceURI(prefix))) {
+                    bound.add(prefix);
+                }
+            }
+            return bound.iterator();
+        }
+    }
+
+    /**
+     * A buffered event.
+     */
+    private static class Event {
+
+        /** The event type, one of the {@link XMLStreamConstants}. */
+        private final int type;
+
+        /**
+         * Constructor.
+         * 
+         * @param eventType the event type
+         */
+        Event(final int eventType) {
+            type = eventType;
+        }
+    }
+
+    /**
+     * The start tag of an element.
+     */
+    private static class StartTag extends Event {
+
+        /** Element prefix, or the empty string. */
+        @Nonnull private final String prefix;
+
+        /** Element namespace URI, or the empty string. */
+        @Nonnull private final String namespaceURI;
+
+        /** Element local name. */
+        @Nonnull private final String localName;
+
+        /** Prefix, the empty string for the default namespace, and namespace URI of each namespace declaration. */
+        @Nonnull private final List<String> namespaces = new ArrayList<>(2);
+
+        /** Prefix, namespace URI, local name and value of each attribute; empty strings stand for absent values. */
+        @Nonnull private final List<String> attributes = new ArrayList<>(4);
+
+        /**
+         * Constructor.
+         * 
+         * @param elementPrefix element prefix
+         * @param elementNamespace element namespace URI
+         * @param elementName element local name
+         */
+        StartTag(@Nullable final String elementPrefix, @Nullable final String elementNamespace,
+                @Nonnull final String elementName) {
+            super(XMLStreamConstants.START_ELEMENT);
+            prefix = normalize(elementPrefix);
+            namespaceURI = normalize(elementNamespace);
+            localName = elementName;
+        }
+    }
+
+    /**
+     * Character content, a comment, or a processing instruction.
+     */
+    private static class Content extends Event {
+
+        /** The characters, comment text, or processing instruction data. */
+        @Nonnull private final String text;
+
+        /** The processing instruction target, or null. */
+        @Nullable private final String target;
+
+        /**
+         * Constructor.
+         * 
+         * @param eventType the event type
+         * @param eventTarget the processing instruction target, or null
+         * @param eventText the characters, comment text, or processing instruction data
+         */
+        Content(final int eventType, @Nullable final String eventTarget, @Nullable final String eventText) {
+            super(eventType);
+            target = eventTarget;
+            text = normalize(eventText);
+        }
+    }
+
+    /**
+     * Normalize an optional string to the empty string.
+     * 
+     * @param value the value
+     * 
+     * @return the value, or the empty string if it was null
+     */
+    @Nonnull private static String normalize(@Nullable final String value) {
+        return value != null ? value : "";
+    }
+
+    /**
+     * Writer appending to the buffer.
+     */
+    private class BufferWriter implements XMLStreamWriter {
+
+        /** Namespace bindings of the open elements. */
+        @Nonnull private final Bindings bindings = new Bindings();
+
+        /** The start tags of the open elements, innermost last. */
+        @Nonnull private final List<StartTag> open = new ArrayList<>();
+
+        /** The last start tag written, while attributes may still be added to it. */
+        @Nullable private StartTag current;
+
+        /** Whether the last start tag written was for an empty element. */
+        private boolean empty;
+
+        /** Character content written but not yet appended to the buffer. */
+        @Nonnull private final StringBuilder characters = new StringBuilder();
+
+        /** {@inheritDoc} */
+        @Override
+        public void writeStartElement(final String localName) throws XMLStreamException {
+            writeStartElement(XMLConstants.DEFAULT_NS_PREFIX, localName, XMLConstants.NULL_NS_URI);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void writeStartElement(final String namespaceURI, final String localName) throws XMLStreamException {
+            writeStartElement(getBoundPrefix(namespaceURI), localName, namespaceURI);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void writeStartElement(final String prefix, final String localName, final String namespaceURI)
+                throws XMLStreamException {
+            closeStartTag();
+            flushCharacters();
+            current = new StartTag(prefix, namespaceURI, localName);
+            events.add(current);
+            open.add(current);
+            bindings.push();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void writeEmptyElement(final String namespaceURI, final String localName) throws XMLStreamException {
+            writeStartElement(namespaceURI, localName);
+            empty = true;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void writeEmptyElement(final String prefix, final String localName, final String namespaceURI)
+                throws XMLStreamException {
+            writeStartElement(prefix, localName, namespaceURI);
+            empty = true;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void writeEmptyElement(final String localName) throws XMLStreamException {
+            writeStartElement(localName);
+            empty = true;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void writeEndElement() throws XMLStreamException {
+            closeStartTag();
+            if (open.isEmpty()) {
+                throw new XMLStreamException("No element is open");
+            }
+            endElement();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void writeEndDocument() throws XMLStreamException {
+            closeStartTag();
+            while (!open.isEmpty()) {
+                endElement();
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void close() throws XMLStreamException {
+            flush();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void flush() throws XMLStreamException {
+            closeStartTag();
+            flushCharacters();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void writeAttribute(final String localName, final String value) throws XMLStreamException {
+            writeAttribute(XMLConstants.DEFAULT_NS_PREFIX, XMLConstants.NULL_NS_URI, localName, value);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void writeAttribute(final String prefix, final String namespaceURI, final String localName,
+                final String value) throws XMLStreamException {
+            if (current == null) {
+                throw new XMLStreamException("Attribute written outside of a start tag");
+            }
+            current.attributes.add(normalize(prefix));
+            current.attributes.add(normalize(namespaceURI));
+            current.attributes.add(localName);
+            current.attributes.add(normalize(value));
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void writeAttribute(final String namespaceURI, final String localName, final String value)
+                throws XMLStreamException {
+            writeAttribute(getBoundPrefix(namespaceURI), namespaceURI, localName, value);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void writeNamespace(final String prefix, final String namespaceURI) throws XMLStreamException {
+            if (prefix == null || prefix.isEmpty() || XMLConstants.XMLNS_ATTRIBUTE.equals(prefix)) {
+                writeDefaultNamespace(namespaceURI);
+                return;
+            }
+            if (current == null) {
+                throw new XMLStreamException("Namespace declaration written outside of a start tag");
+            }
+            current.namespaces.add(prefix);
+            current.namespaces.add(normalize(namespaceURI));
+            bindings.bind(prefix, normalize(namespaceURI));
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void writeDefaultNamespace(final String namespaceURI) throws XMLStreamException {
+            if (current == null) {
+                throw new XMLStreamException("Namespace declaration written outside of a start tag");
+            }
+            current.namespaces.add(XMLConstants.DEFAULT_NS_PREFIX);
+            current.namespaces.add(normalize(namespaceURI));
+            bindings.bind(XMLConstants.DEFAULT_NS_PREFIX, normalize(namespaceURI));
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void writeComment(final String data) throws XMLStreamException {
+            append(new Content(XMLStreamConstants.COMMENT, null, data));
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void writeProcessingInstruction(final String target) throws XMLStreamException {
+            writeProcessingInstruction(target, null);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void writeProcessingInstruction(final String target, final String data) throws XMLStreamException {
+            append(new Content(XMLStreamConstants.PROCESSING_INSTRUCTION, target, data));
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void writeCData(final String data) throws XMLStreamException {
+            append(new Content(XMLStreamConstants.CDATA, null, data));
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void writeDTD(final String dtd) throws XMLStreamException {
+            throw new XMLStreamException("Document type declarations are not supported");
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void writeEntityRef(final String name) throws XMLStreamException {
+            closeStartTag();
+            if (name.startsWith("#x")) {
+                characters.appendCodePoint(parseCodePoint(name.substring(2), 16));
+            } else if (name.startsWith("#")) {
+                characters.appendCodePoint(parseCodePoint(name.substring(1), 10));
+            } else if ("amp".equals(name)) {
+                characters.append('&');
+            } else if ("lt".equals(name)) {
+                characters.append('<');
+            } else if ("gt".equals(name)) {
+                characters.append('>');
+            } else if ("quot".equals(name)) {
+                characters.append('"');
+            } else if ("apos".equals(name)) {
+                characters.append('\'');
+            } else {
+                throw new XMLStreamException("Entity reference " + name + " is not supported");
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void writeStartDocument() throws XMLStreamException {
+            // Nothing to buffer.
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void writeStartDocument(final String version) throws XMLStreamException {
+            // Nothing to buffer.
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void writeStartDocument(final String encoding, final String version) throws XMLStreamException {
+            // Nothing to buffer.
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void writeCharacters(final String text) throws XMLStreamException {
+            closeStartTag();
+            characters.append(text);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void writeCharacters(final char[] text, final int start, final int len) throws XMLStreamException {
+            closeStartTag();
+            characters.append(text, start, len);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String getPrefix(final String uri) throws XMLStreamException {
+            return bindings.getPrefix(uri);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void setPrefix(final String prefix, final String uri) throws XMLStreamException {
+            bindings.bind(normalize(prefix), normalize(uri));
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void setDefaultNamespace(final String uri) throws XMLStreamException {
+            bindings.bind(XMLConstants.DEFAULT_NS_PREFIX, normalize(uri));
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void setNamespaceContext(final NamespaceContext context) throws XMLStreamException {
+            throw new XMLStreamException("Setting the NamespaceContext is not supported");
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public NamespaceContext getNamespaceContext() {
+            return bindings;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Object getProperty(final String name) {
+            throw new IllegalArgumentException("Property " + name + " is not supported");
+        }
+
+        /**
+         * Get the prefix bound to a namespace URI by an open element.
+         * 
+         * @param namespaceURI the namespace URI
+         * 
+         * @return the prefix
+         * 
+         * @throws XMLStreamException if the namespace URI is not bound
+         */
+        @Nonnull private String getBoundPrefix(@Nullable final String namespaceURI) throws XMLStreamException {
+            if (namespaceURI == null || namespaceURI.isEmpty()) {
+                return XMLConstants.DEFAULT_NS_PREFIX;
+            }
+            final String prefix = bindings.getPrefix(namespaceURI);
+            if (prefix == null) {
+                throw new XMLStreamException("Namespace " + namespaceURI + " is not bound to a prefix");
+            }
+            return prefix;
+        }
+
+        /**
+         * Append a non-element event to the buffer, after any pending character content.
+         * 
+         * @param event the event
+         */
+        private void append(@Nonnull final Event event) {
+            closeStartTag();
+            flushCharacters();
+            events.add(event);
+        }
+
+        /** Stop accepting attributes for the last start tag written, ending it if it was for an empty element. */
+        private void closeStartTag() {
+            current = null;
+            if (empty) {
+                empty = false;
+                endElement();
+            }
+        }
+
+        /** End the innermost open element. */
+        private void endElement() {
+            flushCharacters();
+            events.add(END_ELEMENT);
+            open.remove(open.size() - 1);
+            bindings.pop();
+        }
+
+        /** Append the pending character content to the buffer. */
+        private void flushCharacters() {
+            if (characters.length() > 0) {
+                events.add(new Content(XMLStreamConstants.CHARACTERS, null, characters.toString()));
+                characters.setLength(0);
+            }
+        }
+
+        /**
+         * Parse the code point of a character reference.
+         * 
+         * @param digits the digits of the reference
+         * @param radix the radix of the digits
+         * 
+         * @return the code point
+         * 
+         * @throws XMLStreamException if the digits are not a valid code point
+         */
+        private int parseCodePoint(@Nonnull final String digits, final int radix) throws XMLStreamException {
+            try {
+                final int codePoint = Integer.parseInt(digits, radix);
+                if (Character.isValidCodePoint(codePoint)) {
+                    return codePoint;
+                }
+            } catch (final NumberFormatException e) {
+                // Reported below.
+            }
+            throw new XMLStreamException("Invalid character reference " + digits);
+        }
+    }
+
+    /**
+     * Reader replaying the buffer.
+     */
+    private class BufferReader implements XMLStreamReader, Location {
+
+        /** Namespace bindings of the open elements. */
+        @Nonnull private final Bindings bindings = new Bindings();
+
+        /** The start tags of the open elements, innermost last. */
+        @Nonnull private final List<StartTag> open = new ArrayList<>();
+
+        /** Index of the current event in the buffer; -1 at the start of the document, the size at the end. */
+        private int index = -1;
+
+        /** The current event type. */
+        private int eventType = XMLStreamConstants.START_DOCUMENT;
+
+        /** The characters of the current event, once requested. */
+        @Nullable private char[] textCharacters;
+
+        /** {@inheritDoc} */
+        @Override
+        public Object getProperty(final String name) {
+            throw new IllegalArgumentException("Property " + name + " is not supported");
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int next() throws XMLStreamException {
+            if (eventType == XMLStreamConstants.END_DOCUMENT) {
+                throw new XMLStreamException("End of document reached");
+            } else if (eventType == XMLStreamConstants.END_ELEMENT) {
+                open.remove(open.size() - 1);
+                bindings.pop();
+            }
+
+            textCharacters = null;
+            index++;
+            if (index >= events.size()) {
+                eventType = XMLStreamConstants.END_DOCUMENT;
+                return eventType;
+            }
+
+            final Event event = events.get(index);
+            eventType = event.type;
+            if (eventType == XMLStreamConstants.START_ELEMENT) {
+                final StartTag startTag = (StartTag) event;
+                open.add(startTag);
+                bindings.push();
+                for (int i = 0; i < startTag.namespaces.size(); i += 2) {
+                    bindings.bind(startTag.namespaces.get(i), startTag.namespaces.get(i + 1));
+                }
+            }
+            return eventType;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void require(final int type, final String namespaceURI, final String localName)
+                throws XMLStreamException {
+            if (type != eventType) {
+                throw new XMLStreamException("Expected event " + type + " but was " + eventType);
+            } else if (namespaceURI != null && !namespaceURI.equals(normalize(getNamespaceURI()))) {
+                throw new XMLStreamException("Expected namespace " + namespaceURI);
+            } else if (localName != null && !localName.equals(getLocalName())) {
+                throw new XMLStreamException("Expected local name " + localName);
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String getElementText() throws XMLStreamException {
+            if (eventType != XMLStreamConstants.START_ELEMENT) {
+                throw new XMLStreamException("Not positioned on a start tag");
+            }
+            final StringBuilder text = new StringBuilder();
+            for (int event = next(); event != XMLStreamConstants.END_ELEMENT; event = next()) {
+                if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                    text.append(getText());
+                } else if (event != XMLStreamConstants.COMMENT
+                        && event != XMLStreamConstants.PROCESSING_INSTRUCTION) {
+                    throw new XMLStreamException("Element does not have text-only content");
+                }
+            }
+            return text.toString();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int nextTag() throws XMLStreamException {
+            int event = next();
+            while (event == XMLStreamConstants.COMMENT || event == XMLStreamConstants.PROCESSING_INSTRUCTION
+                    || (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA)
+                    && isWhiteSpace()) {
+                event = next();
+            }
+            if (event != XMLStreamConstants.START_ELEMENT && event != XMLStreamConstants.END_ELEMENT) {
+                throw new XMLStreamException("Expected a start or end tag");
+            }
+            return event;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean hasNext() throws XMLStreamException {
+            return eventType != XMLStreamConstants.END_DOCUMENT;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void close() throws XMLStreamException {
+            // Nothing to release.
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String getNamespaceURI(final String prefix) {
+            return bindings.getNamespaceURI(prefix);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean isStartElement() {
+            return eventType == XMLStreamConstants.START_ELEMENT;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean isEndElement() {
+            return eventType == XMLStreamConstants.END_ELEMENT;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean isCharacters() {
+            return eventType == XMLStreamConstants.CHARACTERS;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean isWhiteSpace() {
+            if (!isCharacters() && eventType != XMLStreamConstants.CDATA) {
+                return false;
+            }
+            final String text = getText();
+            for (int i = 0; i < text.length(); i++) {
+                final char c = text.charAt(i);
+                if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String getAttributeValue(final String namespaceURI, final String localName) {
+            final List<String> attributes = getStartTag().attributes;
+            for (int i = 0; i < attributes.size(); i += 4) {
+                if (attributes.get(i + 2).equals(localName)
+                        && (namespaceURI == null || attributes.get(i + 1).equals(namespaceURI))) {
+                    return attributes.get(i + 3);
+                }
+            }
+            return null;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int getAttributeCount() {
+            return getStartTag().attributes.size() / 4;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public QName getAttributeName(final int i) {
+            return new QName(getAttribute(i, 1), getAttribute(i, 2), getAttribute(i, 0));
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String getAttributeNamespace(final int i) {
+            final String namespaceURI = getAttribute(i, 1);
+            return namespaceURI.isEmpty() ? null : namespaceURI;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String getAttributeLocalName(final int i) {
+            return getAttribute(i, 2);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String getAttributePrefix(final int i) {
+            return getAttribute(i, 0);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String getAttributeType(final int i) {
+            return "CDATA";
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String getAttributeValue(final int i) {
+            return getAttribute(i, 3);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean isAttributeSpecified(final int i) {
+            return true;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int getNamespaceCount() {
+            return getTag().namespaces.size() / 2;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String getNamespacePrefix(final int i) {
+            final String prefix = getTag().namespaces.get(2 * i);
+            return prefix.isEmpty() ? null : prefix;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String getNamespaceURI(final int i) {
+            return getTag().namespaces.get(2 * i + 1);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public NamespaceContext getNamespaceContext() {
+            return bindings;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int getEventType() {
+            return eventType;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String getText() {
+            if (!hasText()) {
+                throw new IllegalStateException("Current event has no text");
+            }
+            return ((Content) events.get(index)).text;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public char[] getTextCharacters() {
+            if (textCharacters == null) {
+                textCharacters = getText().toCharArray();
+            }
+            return textCharacters;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int getTextCharacters(final int sourceStart, final char[] target, final int targetStart,
+                final int length) throws XMLStreamException {
+            final String text = getText();
+            final int count = Math.max(0, Math.min(length, text.length() - sourceStart));
+            text.getChars(sourceStart, sourceStart + count, target, targetStart);
+            return count;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int getTextStart() {
+            return 0;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int getTextLength() {
+            return getText().length();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String getEncoding() {
+            return null;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean hasText() {
+            return eventType == XMLStreamConstants.CHARACTERS || eventType == XMLStreamConstants.CDATA
+                    || eventType == XMLStreamConstants.COMMENT;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Location getLocation() {
+            return this;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public QName getName() {
+            final StartTag tag = getTag();
+            return new QName(tag.namespaceURI, tag.localName, tag.prefix);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String getLocalName() {
+            return getTag().localName;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean hasName() {
+            return eventType == XMLStreamConstants.START_ELEMENT || eventType == XMLStreamConstants.END_ELEMENT;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String getNamespaceURI() {
+            if (!hasName()) {
+                return null;
+            }
+            final String namespaceURI = getTag().namespaceURI;
+            return namespaceURI.isEmpty() ? null : namespaceURI;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String getPrefix() {
+            return hasName() ? getTag().prefix : null;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String getVersion() {
+            return null;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean isStandalone() {
+            return false;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean standaloneSet() {
+            return false;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String getCharacterEncodingScheme() {
+            return null;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String getPITarget() {
+            return eventType == XMLStreamConstants.PROCESSING_INSTRUCTION ? ((Content) events.get(index)).target
+                    : null;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String getPIData() {
+            return eventType == XMLStreamConstants.PROCESSING_INSTRUCTION ? ((Content) events.get(index)).text
+                    : null;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int getLineNumber() {
+            return -1;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int getColumnNumber() {
+            return -1;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int getCharacterOffset() {
+            return index;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String getPublicId() {
+            return null;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String getSystemId() {
+            return null;
+        }
+
+        /**
+         * Get the start tag of the element the reader is positioned on the start tag of.
+         * 
+         * @return the start tag
+         */
+        @Nonnull private StartTag getStartTag() {
+            if (eventType != XMLStreamConstants.START_ELEMENT) {
+                throw new IllegalStateException("Not positioned on a start tag");
+            }
+            return (StartTag) events.get(index);
+        }
+
+        /**
+         * Get the start tag of the element the reader is positioned on the start or end tag of.
+         * 
+         * @return the start tag
+         */
+        @Nonnull private StartTag getTag() {
+            if (!hasName()) {
+                throw new IllegalStateException("Not positioned on a start or end tag");
+            }
+            return open.get(open.size() - 1);
+        }
+
+        /**
+         * Get a field of an attribute of the current start tag.
+         * 
+         * @param i the index of the attribute
+         * @param field the field: 0 for the prefix, 1 for the namespace URI, 2 for the local name, 3 for the value
+         * 
+         * @return the field value
+         */
+        @Nonnull private String getAttribute(final int i, final int field) {
+            return getStartTag().attributes.get(4 * i + field);
+        }
+    }
+}
@@ -0,0 +1,460 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+/**
+ * A non-repairing {@link XMLStreamWriter} which serializes directly to a character stream.
+ * 
+ * <p>Unlike the writers of the common StAX implementations, this writes tab, newline and carriage return characters
+ * in attribute values as character references, as DOM serialization does, so that they survive attribute value
+ * normalization when the output is parsed again.</p>
+ */
+final class XMLStreamSerializer implements XMLStreamWriter {
+
+    /** The character stream written to. */
+    @Nonnull private final Writer out;
+
+    /** Namespace bindings of the open elements. */
+    @Nonnull private final XMLStreamEventBuffer.Bindings bindings = new XMLStreamEventBuffer.Bindings();
+
+    /** Qualified names of the open elements, innermost last. */
+    @Nonnull private final List<String> open = new ArrayList<>();
+
+    /** Whether the last start tag written is still open for attributes. */
+    private boolean startTagOpen;
+
+    /** Whether the last start tag written was for an empty element. */
+    private boolean empty;
+
+    /**
+     * Constructor.
+     * 
+     * @param writer the character stream to write to, which is flushed but not closed by {@link #close()}
+     */
+    XMLStreamSerializer(@Nonnull final Writer writer) {
+        out = Constraint.isNotNull(writer, "Writer cannot be null");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeStartElement(final String localName) throws XMLStreamException {
+        writeStartElement(XMLConstants.DEFAULT_NS_PREFIX, localName, XMLConstants.NULL_NS_URI);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeStartElement(final String namespaceURI, final String localName) throws XMLStreamException {
+        writeStartElement(getBoundPrefix(namespaceURI), localName, namespaceURI);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeStartElement(final String prefix, final String localName, final String namespaceURI)
+            throws XMLStreamException {
+        closeStartTag();
+        final String qualifiedName = qualify(prefix, localName);
+        write('<');
+        write(qualifiedName);
+        open.add(qualifiedName);
+        bindings.push();
+        startTagOpen = true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeEmptyElement(final String namespaceURI, final String localName) throws XMLStreamException {
+        writeStartElement(namespaceURI, localName);
+        empty = true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeEmptyElement(final String prefix, final String localName, final String namespaceURI)
+            throws XMLStreamException {
+        writeStartElement(prefix, localName, namespaceURI);
+        empty = true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeEmptyElement(final String localName) throws XMLStreamException {
+        writeStartElement(localName);
+        empty = true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeEndElement() throws XMLStreamException {
+        closeStartTag();
+        if (open.isEmpty()) {
+            throw new XMLStreamException("No element is open");
+        }
+        endElement();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeEndDocument() throws XMLStreamException {
+        closeStartTag();
+        while (!open.isEmpty()) {
+            endElement();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() throws XMLStreamException {
+        flush();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void flush() throws XMLStreamException {
+        try {
+            out.flush();
+        } catch (final IOException e) {
+            throw new XMLStreamException(e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeAttribute(final String localName, final String value) throws XMLStreamException {
+        writeAttribute(XMLConstants.DEFAULT_NS_PREFIX, XMLConstants.NULL_NS_URI, localName, value);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeAttribute(final String prefix, final String namespaceURI, final String localName,
+            final String value) throws XMLStreamException {
+        if (!startTagOpen) {
+            throw new XMLStreamException("Attribute written outside of a start tag");
+        }
+        write(' ');
+        write(qualify(prefix, localName));
+        write("=\"");
+        writeEscaped(value != null ? value : "", true);
+        write('"');
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeAttribute(final String namespaceURI, final String localName, final String value)
+            throws XMLStreamException {
+        writeAttribute(getBoundPrefix(namespaceURI), namespaceURI, localName, value);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeNamespace(final String prefix, final String namespaceURI) throws XMLStreamException {
+        if (prefix == null || prefix.isEmpty() || XMLConstants.XMLNS_ATTRIBUTE.equals(prefix)) {
+            writeDefaultNamespace(namespaceURI);
+            return;
+        }
+        final String uri = namespaceURI != null ? namespaceURI : XMLConstants.NULL_NS_URI;
+        writeAttribute(XMLConstants.XMLNS_ATTRIBUTE, XMLConstants.XMLNS_ATTRIBUTE_NS_URI, prefix, uri);
+        bindings.bind(prefix, uri);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeDefaultNamespace(final String namespaceURI) throws XMLStreamException {
+        final String uri = namespaceURI != null ? namespaceURI : XMLConstants.NULL_NS_URI;
+        writeAttribute(XMLConstants.XMLNS_ATTRIBUTE, uri);
+        bindings.bind(XMLConstants.DEFAULT_NS_PREFIX, uri);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeComment(final String data) throws XMLStreamException {
+        closeStartTag();
+        write("<!--");
+        write(data != null ? data : "");
+        write("-->");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeProcessingInstruction(final String target) throws XMLStreamException {
+        writeProcessingInstruction(target, null);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeProcessingInstruction(final String target, final String data) throws XMLStreamException {
+        closeStartTag();
+        write("<?");
+        write(target);
+        if (data != null && !data.isEmpty()) {
+            write(' ');
+            write(data);
+        }
+        write("?>");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeCData(final String data) throws XMLStreamException {
+        closeStartTag();
+        write("<![CDATA[");
+        write(data != null ? data : "");
+        write("]]>");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeDTD(final String dtd) throws XMLStreamException {
+        throw new XMLStreamException("Document type declarations are not supported");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeEntityRef(final String name) throws XMLStreamException {
+        closeStartTag();
+        write('&');
+        write(name);
+        write(';');
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeStartDocument() throws XMLStreamException {
+        writeStartDocument("1.0");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeStartDocument(final String version) throws XMLStreamException {
+        write("<?xml version=\"");
+        write(version);
+        write("\"?>");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeStartDocument(final String encoding, final String version) throws XMLStreamException {
+        write("<?xml version=\"");
+        write(version);
+        write("\" encoding=\"");
+        write(encoding);
+        write("\"?>");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeCharacters(final String text) throws XMLStreamException {
+        closeStartTag();
+        writeEscaped(text, false);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeCharacters(final char[] text, final int start, final int len) throws XMLStreamException {
+        writeCharacters(new String(text, start, len));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getPrefix(final String uri) throws XMLStreamException {
+        return bindings.getPrefix(uri);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setPrefix(final String prefix, final String uri) throws XMLStreamException {
+        bindings.bind(prefix != null ? prefix : XMLConstants.DEFAULT_NS_PREFIX,
+                uri != null ? uri : XMLConstants.NULL_NS_URI);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setDefaultNamespace(final String uri) throws XMLStreamException {
+        bindings.bind(XMLConstants.DEFAULT_NS_PREFIX, uri != null ? uri : XMLConstants.NULL_NS_URI);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setNamespaceContext(final NamespaceContext context) throws XMLStreamException {
+        throw new XMLStreamException("Setting the NamespaceContext is not supported");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public NamespaceContext getNamespaceContext() {
+        return bindings;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Object getProperty(final String name) {
+        throw new IllegalArgumentException("Property " + name + " is not supported");
+    }
+
+    /**
+     * Get the prefix bound to a namespace URI by an open element.
+     * 
+     * @param namespaceURI the namespace URI
+     * 
+     * @return the prefix
+     * 
+     * @throws XMLStreamException if the namespace URI is not bound
+     */
+    @Nonnull private String getBoundPrefix(@Nullable final String namespaceURI) throws XMLStreamException {
+        if (namespaceURI == null || namespaceURI.isEmpty()) {
+            return XMLConstants.DEFAULT_NS_PREFIX;
+        }
+        final String prefix = bindings.getPrefix(namespaceURI);
+        if (prefix == null) {
+            throw new XMLStreamException("Namespace " + namespaceURI + " is not bound to a prefix");
+        }
+        return prefix;
+    }
+
+    /**
+     * Build a qualified name.
+     * 
+     * @param prefix the prefix, which may be null or empty
+     * @param localName the local name
+     * 
+     * @return the qualified name
+     */
+    @Nonnull private String qualify(@Nullable final String prefix, @Nonnull final String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ':' + localName;
+    }
+
+    /**
+     * End the last start tag written, if it is still open, closing it as well if it was for an empty element.
+     * 
+     * @throws XMLStreamException if the start tag can not be written
+     */
+    private void closeStartTag() throws XMLStreamException {
+        if (startTagOpen) {
+            startTagOpen = false;
+            if (empty) {
+                empty = false;
+                write("/>");
+                open.remove(open.size() - 1);
+                bindings.pop();
+            } else {
+                write('>');
+            }
+        }
+    }
+
+    /**
+     * Write the end tag of the innermost open element.
+     * 
+     * @throws XMLStreamException if the end tag can not be written
+     */
+    private void endElement() throws XMLStreamException {
+        write("</");
+        write(open.remove(open.size() - 1));
+        write('>');
+        bindings.pop();
+    }
+
+    /**
+     * Write character data, escaping the characters which may not appear literally.
+     * 
+     * @param text the character data
+     * @param attribute whether the data is an attribute value
+     * 
+     * @throws XMLStreamException if the data can not be written
+     */
+    private void writeEscaped(@Nonnull final String text, final boolean attribute) throws XMLStreamException {
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            final String reference;
+            switch (text.charAt(i)) {
+                case '&':
+                    reference = "&amp;";
+                    break;
+                case '<':
+                    reference = "&lt;";
+                    break;
+                case '>':
+                    reference = attribute ? null : "&gt;";
+                    break;
+                case '"':
+                    reference = attribute ? "&quot;" : null;
+                    break;
+                case '\t':
+                    reference = attribute ? "&#9;" : null;
+                    break;
+                case '\n':
+                    reference = attribute ? "&#10;" : null;
+                    break;
+                case '\r':
+                    reference = "&#13;";
+                    break;
+                default:
+                    reference = null;
+            }
+            if (reference != null) {
+                write(text.substring(start, i));
+                write(reference);
+                start = i + 1;
+            }
+        }
+        write(text.substring(start));
+    }
+
+    /**
+     * Write a string to the character stream.
+     * 
+     * @param text the string
+     * 
+     * @throws XMLStreamException if the string can not be written
+     */
+    private void write(@Nonnull final String text) throws XMLStreamException {
+        try {
+            out.write(text);
+        } catch (final IOException e) {
+            throw new XMLStreamException(e);
+        }
+    }
+
+    /**
+     * Write a character to the character stream.
+     * 
+     * @param c the character
+     * 
+     * @throws XMLStreamException if the character can not be written
+     */
+    private void write(final char c) throws XMLStreamException {
+        try {
+            out.write(c);
+        } catch (final IOException e) {
+            throw new XMLStreamException(e);
+        }
+    }
+}
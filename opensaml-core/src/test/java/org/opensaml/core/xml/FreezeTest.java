@@ -0,0 +1,112 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml;
+
+import javax.xml.namespace.QName;
+
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.Unmarshaller;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.mock.SimpleXMLObject;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Unit test for {@link AbstractXMLObject#freeze()}.
+ */
+public class FreezeTest extends XMLObjectBaseTestCase {
+
+    /**
+     * Tests that freezing an unmarshalled object makes its subtree read-only.
+     * 
+     * @throws XMLParserException
+     * @throws UnmarshallingException
+     * @throws MarshallingException
+     */
+    @Test
+    public void testFreeze() throws XMLParserException, UnmarshallingException, MarshallingException {
+        String documentLocation = "/data/org/opensaml/core/xml/SimpleXMLObjectWithChildren.xml";
+        Document document = parserPool.parse(FreezeTest.class.getResourceAsStream(documentLocation));
+
+        XMLObjectProviderRegistrySupport.registerDeferredElement(SimpleXMLObject.ELEMENT_NAME);
+        SimpleXMLObject sxObject;
+        try {
+            Unmarshaller unmarshaller = unmarshallerFactory.getUnmarshaller(document.getDocumentElement());
+            sxObject = (SimpleXMLObject) unmarshaller.unmarshall(document.getDocumentElement());
+        } finally {
+            XMLObjectProviderRegistrySupport.deregisterDeferredElement(SimpleXMLObject.ELEMENT_NAME);
+        }
+
+        sxObject.freeze();
+
+        Assert.assertTrue(sxObject.isFrozen(), "Object was not frozen");
+        Assert.assertNull(sxObject.getDOM(), "DOM was not released");
+        Assert.assertEquals(sxObject.getSimpleXMLObjects().size(), 2,
+                "Number of children elements was not expected value");
+        SimpleXMLObject child = sxObject.getSimpleXMLObjects().get(0);
+        Assert.assertTrue(child.isFrozen(), "Child was not frozen");
+
+        try {
+            sxObject.setId("Foo");
+            Assert.fail("Frozen object was modified");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            child.setValue("Foo");
+            Assert.fail("Frozen child was modified");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            sxObject.getSimpleXMLObjects().remove(child);
+            Assert.fail("Frozen child list was modified");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            sxObject.getUnknownAttributes().put(new QName("urn:test:attr", "foo"), "bar");
+            Assert.fail("Frozen attributes were modified");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            child.detach();
+            Assert.fail("Frozen child was detached");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        Assert.assertTrue(sxObject.getUnknownXMLObjects(SimpleXMLObject.ELEMENT_NAME).isEmpty(),
+                "Unexpected unknown children");
+
+        Element element = marshallerFactory.getMarshaller(sxObject).marshall(sxObject);
+        Assert.assertEquals(element.getChildNodes().getLength(), 2, "Marshalled element had unexpected children");
+        Assert.assertNull(sxObject.getDOM(), "Frozen object cached a DOM");
+
+        SimpleXMLObject copy = XMLObjectSupport.copyXMLObject(sxObject);
+        Assert.assertFalse(copy.isFrozen(), "Copy was frozen");
+        copy.setId("Foo");
+        Assert.assertEquals(copy.getId(), "Foo");
+    }
+}
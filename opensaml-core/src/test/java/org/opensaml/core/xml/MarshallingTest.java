@@ -199,4 +199,50 @@ public class MarshallingTest extends XMLObjectBaseTestCase {
         Assert.assertFalse(document.getDocumentElement().isSameNode(element), "Document root should have been replaced");
         Assert.assertTrue(document.getDocumentElement().isSameNode(sxo.getDOM()), "Incorrect document root");
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests that re-marshalling after a change reuses the cached DOM of unchanged subtrees, and that marshalling a
+     * child on its own still releases the DOM of its ancestors.
+     * 
+     * @throws XMLParserException
+     * @throws MarshallingException
+     */
+    @Test
+    public void testRemarshallingReusesUnchangedSubtrees() throws XMLParserException, MarshallingException {
+        SimpleXMLObjectBuilder sxoBuilder = (SimpleXMLObjectBuilder) builderFactory.getBuilder(simpleXMLObjectQName);
+        SimpleXMLObject root = sxoBuilder.buildObject();
+        SimpleXMLObject changed = sxoBuilder.buildObject();
+        SimpleXMLObject unchanged = sxoBuilder.buildObject();
+        SimpleXMLObject grandchild = sxoBuilder.buildObject();
+        grandchild.setValue("Grandchild");
+        changed.getSimpleXMLObjects().add(grandchild);
+        unchanged.setValue("Unchanged");
+        root.getSimpleXMLObjects().add(changed);
+        root.getSimpleXMLObjects().add(unchanged);
+
+        Marshaller marshaller = marshallerFactory.getMarshaller(root);
+        marshaller.marshall(root);
+        Element unchangedElement = unchanged.getDOM();
+        Element grandchildElement = grandchild.getDOM();
+        Element changedElement = changed.getDOM();
+
+        for (int i = 0; i < 2; i++) {
+            changed.setValue("Changed" + i);
+            Assert.assertNull(root.getDOM(), "DOM of ancestor was not released");
+            Assert.assertSame(unchanged.getDOM(), unchangedElement, "DOM of unchanged sibling was released");
+
+            Document document = parserPool.newDocument();
+            Element rootElement = marshaller.marshall(root, document);
+            Assert.assertSame(unchanged.getDOM(), unchangedElement, "DOM of unchanged sibling was not reused");
+            Assert.assertSame(grandchild.getDOM(), grandchildElement, "DOM of unchanged descendant was not reused");
+            Assert.assertNotSame(changed.getDOM(), changedElement, "DOM of changed child was reused");
+            Assert.assertSame(unchangedElement.getOwnerDocument(), document, "Reused DOM was not adopted");
+            Assert.assertSame(unchangedElement.getParentNode(), rootElement, "Reused DOM was not appended");
+            Assert.assertSame(changed.getDOM().getParentNode(), rootElement, "Changed child was not appended");
+            changedElement = changed.getDOM();
+        }
+
+        marshallerFactory.getMarshaller(unchanged).marshall(unchanged);
+        Assert.assertNull(root.getDOM(), "DOM of ancestor was not released by marshalling a child on its own");
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import javax.xml.namespace.QName;
+
+import net.shibboleth.utilities.java.support.xml.XMLAssertTestNG;
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+
+import org.custommonkey.xmlunit.Diff;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.mock.SimpleXMLObject;
+import org.opensaml.core.xml.mock.SimpleXMLObjectBuilder;
+import org.opensaml.core.xml.schema.XSAny;
+import org.opensaml.core.xml.schema.XSString;
+import org.opensaml.core.xml.schema.impl.XSAnyBuilder;
+import org.opensaml.core.xml.schema.impl.XSStringBuilder;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Unit test for streaming marshalling.
+ */
+public class StreamingMarshallingTest extends XMLObjectBaseTestCase {
+
+    /**
+     * Tests streaming an object that has attributes.
+     * 
+     * @throws XMLParserException
+     * @throws MarshallingException
+     */
+    @Test
+    public void testStreamingWithAttributes() throws XMLParserException, MarshallingException {
+        Document expectedDocument = parseXMLDocument("/data/org/opensaml/core/xml/SimpleXMLObjectWithAttribute.xml");
+
+        SimpleXMLObject sxObject = (SimpleXMLObject) buildXMLObject(simpleXMLObjectQName);
+        sxObject.setId("Firefly");
+
+        XMLAssertTestNG.assertXMLIdentical(new Diff(expectedDocument, stream(sxObject)), true);
+        Assert.assertNull(sxObject.getDOM(), "DOM was cached after streaming");
+    }
+
+    /**
+     * Tests streaming an object that has child elements with textual content.
+     * 
+     * @throws XMLParserException
+     * @throws MarshallingException
+     */
+    @Test
+    public void testStreamingWithElementContent() throws XMLParserException, MarshallingException {
+        Document expectedDocument = parseXMLDocument("/data/org/opensaml/core/xml/SimpleXMLObjectWithContent.xml");
+
+        SimpleXMLObject sxObject = (SimpleXMLObject) buildXMLObject(simpleXMLObjectQName);
+
+        SimpleXMLObject child1 = (SimpleXMLObject) buildXMLObject(simpleXMLObjectQName);
+        child1.setValue("Content1");
+        sxObject.getSimpleXMLObjects().add(child1);
+
+        SimpleXMLObject child2 = (SimpleXMLObject) buildXMLObject(simpleXMLObjectQName);
+        child2.setValue("Content2");
+        sxObject.getSimpleXMLObjects().add(child2);
+
+        SimpleXMLObject child3 = (SimpleXMLObject) buildXMLObject(simpleXMLObjectQName);
+        sxObject.getSimpleXMLObjects().add(child3);
+
+        SimpleXMLObject grandchild1 = (SimpleXMLObject) buildXMLObject(simpleXMLObjectQName);
+        grandchild1.setValue("Content3");
+        child3.getSimpleXMLObjects().add(grandchild1);
+
+        XMLAssertTestNG.assertXMLIdentical(new Diff(expectedDocument, stream(sxObject)), true);
+        Assert.assertNull(sxObject.getDOM(), "DOM was cached after streaming");
+        Assert.assertNull(grandchild1.getDOM(), "DOM was cached after streaming");
+    }
+
+    /**
+     * Tests streaming an object whose cached DOM is part of a larger tree.
+     * 
+     * @throws MarshallingException
+     * @throws XMLParserException
+     */
+    @Test
+    public void testStreamingCachedDOMFragment() throws MarshallingException, XMLParserException {
+        SimpleXMLObjectBuilder sxoBuilder = (SimpleXMLObjectBuilder) builderFactory.getBuilder(simpleXMLObjectQName);
+        SimpleXMLObject response =
+                sxoBuilder.buildObject(SimpleXMLObject.NAMESPACE, "Response", SimpleXMLObject.NAMESPACE_PREFIX);
+        SimpleXMLObject statement =
+                sxoBuilder.buildObject(SimpleXMLObject.NAMESPACE, "Statement", SimpleXMLObject.NAMESPACE_PREFIX);
+        statement.setValue("Content\r\n");
+        response.getSimpleXMLObjects().add(statement);
+
+        XMLObjectSupport.marshall(response);
+        Element statementElement = statement.getDOM();
+        Assert.assertNotNull(statementElement);
+
+        Element streamed = stream(statement).getDocumentElement();
+        Assert.assertEquals(streamed.getNamespaceURI(), SimpleXMLObject.NAMESPACE);
+        Assert.assertEquals(streamed.getLocalName(), "Statement");
+        Assert.assertEquals(streamed.getTextContent(), "Content\r\n");
+        Assert.assertSame(statement.getDOM(), statementElement, "Cached DOM was replaced by streaming");
+        Assert.assertNotNull(response.getDOM(), "Parent DOM was released by streaming");
+    }
+
+    /**
+     * Tests that whitespace in attribute values, whether written from a cached DOM or from the object, survives
+     * attribute value normalization when the streamed output is parsed again.
+     * 
+     * @throws MarshallingException
+     * @throws XMLParserException
+     */
+    @Test
+    public void testStreamingAttributeWhitespace() throws MarshallingException, XMLParserException {
+        SimpleXMLObjectBuilder sxoBuilder = (SimpleXMLObjectBuilder) builderFactory.getBuilder(simpleXMLObjectQName);
+        SimpleXMLObject cached = sxoBuilder.buildObject();
+        cached.setId("a\tb\nc\rd");
+        XMLObjectSupport.marshall(cached);
+        Assert.assertNotNull(cached.getDOM());
+
+        Element streamed = stream(cached).getDocumentElement();
+        Assert.assertEquals(streamed.getAttributeNS(null, SimpleXMLObject.ID_ATTRIB_NAME), "a\tb\nc\rd");
+
+        XSAnyBuilder anyBuilder = (XSAnyBuilder) builderFactory.getBuilder(XSAny.TYPE_NAME);
+        XSAny any = anyBuilder.buildObject("urn:example.org:foo", "root", "foo");
+        any.getUnknownAttributes().put(new QName("plain"), " x\r\n\ty \"&<> ");
+
+        streamed = stream(any).getDocumentElement();
+        Assert.assertEquals(streamed.getAttributeNS(null, "plain"), " x\r\n\ty \"&<> ");
+    }
+
+    /**
+     * Tests streaming the schema types with native streaming support.
+     * 
+     * @throws MarshallingException
+     * @throws XMLParserException
+     * @throws UnmarshallingException
+     */
+    @Test
+    public void testStreamingSchemaTypes() throws MarshallingException, XMLParserException, UnmarshallingException {
+        XSAnyBuilder anyBuilder = (XSAnyBuilder) builderFactory.getBuilder(XSAny.TYPE_NAME);
+        XSAny any = anyBuilder.buildObject("urn:example.org:foo", "root", "foo");
+        any.getUnknownAttributes().put(new QName("urn:example.org:bar", "attr", "bar"), "attrValue");
+        any.getUnknownAttributes().put(new QName("plain"), "plainValue");
+
+        XSStringBuilder stringBuilder = (XSStringBuilder) builderFactory.getBuilder(XSString.TYPE_NAME);
+        XSString string = stringBuilder.buildObject(new QName("urn:example.org:baz", "value", "baz"),
+                XSString.TYPE_NAME);
+        string.setValue("a < b & c");
+        any.getUnknownXMLObjects().add(string);
+
+        Document document = stream(any);
+        XSAny result = (XSAny) unmarshallerFactory.getUnmarshaller(
+                XMLObjectProviderRegistrySupport.getDefaultProviderQName()).unmarshall(document.getDocumentElement());
+
+        Assert.assertEquals(result.getElementQName(), any.getElementQName());
+        Assert.assertEquals(result.getUnknownAttributes().get(new QName("urn:example.org:bar", "attr")),
+                "attrValue");
+        Assert.assertEquals(result.getUnknownAttributes().get(new QName("plain")), "plainValue");
+        Assert.assertEquals(result.getUnknownXMLObjects().size(), 1);
+        XSString resultString = (XSString) result.getUnknownXMLObjects().get(0);
+        Assert.assertEquals(resultString.getElementQName(), string.getElementQName());
+        Assert.assertEquals(resultString.getSchemaType(), XSString.TYPE_NAME);
+        Assert.assertEquals(resultString.getValue(), "a < b & c");
+    }
+
+    /**
+     * Streams an XMLObject to bytes and parses the result.
+     * 
+     * @param xmlObject the object to stream
+     * 
+     * @return the parsed document
+     * 
+     * @throws MarshallingException
+     * @throws XMLParserException
+     */
+    private Document stream(XMLObject xmlObject) throws MarshallingException, XMLParserException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        XMLObjectSupport.streamMarshallToOutputStream(xmlObject, output);
+        return parserPool.parse(new ByteArrayInputStream(output.toByteArray()));
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.mock.SimpleXMLObject;
+import org.opensaml.core.xml.schema.XSAny;
+import org.opensaml.core.xml.schema.XSString;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Unit test for streaming unmarshalling.
+ */
+public class StreamingUnmarshallingTest extends XMLObjectBaseTestCase {
+
+    /**
+     * Tests that streaming unknown content yields the same objects as unmarshalling it from a DOM.
+     * 
+     * @throws XMLParserException
+     * @throws UnmarshallingException
+     * @throws MarshallingException
+     * @throws IOException
+     */
+    @Test
+    public void testStreamingUnknownContent() throws XMLParserException, UnmarshallingException,
+            MarshallingException, IOException {
+        String documentLocation = "/data/org/opensaml/core/xml/UnknownContent.xml";
+        Document document = parseXMLDocument(documentLocation);
+        XMLObject domObject = unmarshallerFactory.getUnmarshaller(
+                XMLObjectProviderRegistrySupport.getDefaultProviderQName()).unmarshall(document.getDocumentElement());
+        domObject.releaseDOM();
+        domObject.releaseChildrenDOM(true);
+        Element expected = marshallerFactory.getMarshaller(domObject).marshall(domObject, parserPool.newDocument());
+
+        XMLObject streamed;
+        try (InputStream input = StreamingUnmarshallingTest.class.getResourceAsStream(documentLocation)) {
+            streamed = XMLObjectSupport.streamUnmarshallFromInputStream(input);
+        }
+
+        Assert.assertTrue(streamed instanceof XSAny);
+        Assert.assertNull(streamed.getDOM(), "DOM was cached after streaming");
+        Assert.assertNull(streamed.getOrderedChildren().get(0).getDOM(), "DOM was cached after streaming");
+        assertXMLEquals(expected.getOwnerDocument(), streamed);
+    }
+
+    /**
+     * Tests that the DOM of content with an ID attribute is cached only if the content is signed.
+     * 
+     * @throws UnmarshallingException
+     */
+    @Test
+    public void testStreamingRetainsSignedContent() throws UnmarshallingException {
+        SimpleXMLObject root = (SimpleXMLObject) stream("<test:SimpleElement xmlns:test=\"" + SimpleXMLObject.NAMESPACE
+                + "\"><test:SimpleElement Id=\"signed\"><test:SimpleElement>Content1</test:SimpleElement>"
+                + "<ds:Signature xmlns:ds=\"http://www.w3.org/2000/09/xmldsig#\"><ds:SignedInfo/></ds:Signature>"
+                + "</test:SimpleElement><test:SimpleElement Id=\"unsigned\"><test:SimpleElement>Content2"
+                + "</test:SimpleElement></test:SimpleElement></test:SimpleElement>");
+
+        Assert.assertNull(root.getDOM());
+        Assert.assertEquals(root.getSimpleXMLObjects().size(), 2);
+
+        SimpleXMLObject signed = root.getSimpleXMLObjects().get(0);
+        Assert.assertEquals(signed.getId(), "signed");
+        Element signedElement = signed.getDOM();
+        Assert.assertNotNull(signedElement, "DOM of signed content was not cached");
+        Assert.assertSame(signedElement.getOwnerDocument().getElementById("signed"), signedElement);
+        Assert.assertEquals(signedElement.lookupNamespaceURI("test"), SimpleXMLObject.NAMESPACE);
+        SimpleXMLObject content = signed.getSimpleXMLObjects().get(0);
+        Assert.assertEquals(content.getValue(), "Content1");
+        Assert.assertSame(content.getDOM().getParentNode(), signedElement);
+        Assert.assertEquals(signed.getUnknownXMLObjects().size(), 1);
+        Assert.assertSame(signed.getUnknownXMLObjects().get(0).getDOM().getParentNode(), signedElement);
+
+        SimpleXMLObject unsigned = root.getSimpleXMLObjects().get(1);
+        Assert.assertEquals(unsigned.getId(), "unsigned");
+        Assert.assertNull(unsigned.getDOM(), "DOM of unsigned content was cached");
+        Assert.assertEquals(unsigned.getSimpleXMLObjects().get(0).getValue(), "Content2");
+        Assert.assertNull(unsigned.getSimpleXMLObjects().get(0).getDOM(), "DOM of unsigned content was cached");
+    }
+
+    /**
+     * Tests streaming an element whose schema type is declared with a prefix bound on an ancestor.
+     * 
+     * @throws UnmarshallingException
+     */
+    @Test
+    public void testStreamingSchemaType() throws UnmarshallingException {
+        XSAny root = (XSAny) stream("<foo:root xmlns:foo=\"urn:example.org:foo\" "
+                + "xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" "
+                + "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">"
+                + "<foo:value xsi:type=\"xs:string\">a &lt; b &amp; <![CDATA[c]]></foo:value></foo:root>");
+
+        Assert.assertEquals(root.getUnknownXMLObjects().size(), 1);
+        XSString value = (XSString) root.getUnknownXMLObjects().get(0);
+        Assert.assertEquals(value.getSchemaType(), XSString.TYPE_NAME);
+        Assert.assertEquals(value.getValue(), "a < b & c");
+        Assert.assertNull(value.getDOM(), "DOM was cached after streaming");
+    }
+
+    /**
+     * Tests that streaming mixed content yields the same text content as unmarshalling it from a DOM, with the runs
+     * of text on either side of a child element not joined.
+     * 
+     * @throws XMLParserException
+     * @throws UnmarshallingException
+     */
+    @Test
+    public void testStreamingMixedContent() throws XMLParserException, UnmarshallingException {
+        String xml = "<foo:root xmlns:foo=\"urn:example.org:foo\">before<foo:child>inner</foo:child>after"
+                + "<foo:child>second</foo:child> </foo:root>";
+        Document document = parserPool.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+        XSAny domObject = (XSAny) unmarshallerFactory.getUnmarshaller(
+                XMLObjectProviderRegistrySupport.getDefaultProviderQName()).unmarshall(document.getDocumentElement());
+
+        XSAny streamed = (XSAny) stream(xml);
+
+        Assert.assertEquals(domObject.getTextContent(), "after");
+        Assert.assertEquals(streamed.getTextContent(), domObject.getTextContent());
+        Assert.assertEquals(streamed.getUnknownXMLObjects().size(), 2);
+        Assert.assertEquals(((XSAny) streamed.getUnknownXMLObjects().get(0)).getTextContent(), "inner");
+        Assert.assertEquals(((XSAny) streamed.getUnknownXMLObjects().get(1)).getTextContent(), "second");
+    }
+
+    /**
+     * Tests that documents with a document type declaration are rejected.
+     * 
+     * @throws UnmarshallingException
+     */
+    @Test(expectedExceptions = UnmarshallingException.class)
+    public void testStreamingRejectsDoctype() throws UnmarshallingException {
+        stream("<!DOCTYPE root [<!ENTITY e \"entity\">]><root>&e;</root>");
+    }
+
+    /**
+     * Streams an XMLObject from the given XML.
+     * 
+     * @param xml the XML to unmarshall
+     * 
+     * @return the unmarshalled object
+     * 
+     * @throws UnmarshallingException
+     */
+    private XMLObject stream(String xml) throws UnmarshallingException {
+        return XMLObjectSupport.streamUnmarshallFromInputStream(
+                new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+}
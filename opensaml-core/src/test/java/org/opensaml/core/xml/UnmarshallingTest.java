@@ -23,6 +23,7 @@ import java.util.List;
 
 import net.shibboleth.utilities.java.support.xml.XMLParserException;
 
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
 import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.core.xml.io.Unmarshaller;
 import org.opensaml.core.xml.io.UnmarshallingException;
@@ -113,4 +114,99 @@ public class UnmarshallingTest extends XMLObjectBaseTestCase {
         
         Assert.assertEquals(sxObject.getSimpleXMLObjects().size(), 2, "Number of children elements was not expected value");
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests that the child elements of a deferred element are unmarshalled on first access, keeping the cached DOM.
+     * 
+     * @throws XMLParserException
+     * @throws UnmarshallingException
+     */
+    @Test
+    public void testDeferredChildElements() throws XMLParserException, UnmarshallingException {
+        String documentLocation = "/data/org/opensaml/core/xml/SimpleXMLObjectWithChildren.xml";
+        Document document = parserPool.parse(UnmarshallingTest.class.getResourceAsStream(documentLocation));
+
+        XMLObjectProviderRegistrySupport.registerDeferredElement(SimpleXMLObject.ELEMENT_NAME);
+        SimpleXMLObject sxObject;
+        try {
+            Unmarshaller unmarshaller = unmarshallerFactory.getUnmarshaller(document.getDocumentElement());
+            sxObject = (SimpleXMLObject) unmarshaller.unmarshall(document.getDocumentElement());
+        } finally {
+            XMLObjectProviderRegistrySupport.deregisterDeferredElement(SimpleXMLObject.ELEMENT_NAME);
+        }
+
+        Assert.assertTrue(sxObject.hasDeferredChildren(), "Child elements were not deferred");
+        Assert.assertTrue(sxObject.getDOM() == document.getDocumentElement(), "DOM was not cached after unmarshalling");
+
+        Assert.assertEquals(sxObject.getSimpleXMLObjects().size(), 2,
+                "Number of children elements was not expected value");
+        Assert.assertFalse(sxObject.hasDeferredChildren(), "Child elements were not unmarshalled on access");
+        Assert.assertTrue(sxObject.getDOM() == document.getDocumentElement(),
+                "DOM was released by unmarshalling the deferred children");
+
+        SimpleXMLObject child = sxObject.getSimpleXMLObjects().get(0);
+        Assert.assertTrue(child.getParent() == sxObject, "Child was not parented");
+        Assert.assertTrue(child.getDOM() == document.getDocumentElement().getFirstChild(),
+                "Child DOM was not cached after unmarshalling");
+    }
+
+    /**
+     * Tests that the child elements of a deferred element are unmarshalled before its DOM is released.
+     * 
+     * @throws XMLParserException
+     * @throws UnmarshallingException
+     */
+    @Test
+    public void testDeferredChildElementsReleaseDOM() throws XMLParserException, UnmarshallingException {
+        String documentLocation = "/data/org/opensaml/core/xml/SimpleXMLObjectWithChildren.xml";
+        Document document = parserPool.parse(UnmarshallingTest.class.getResourceAsStream(documentLocation));
+
+        XMLObjectProviderRegistrySupport.registerDeferredElement(SimpleXMLObject.ELEMENT_NAME);
+        SimpleXMLObject sxObject;
+        try {
+            Unmarshaller unmarshaller = unmarshallerFactory.getUnmarshaller(document.getDocumentElement());
+            sxObject = (SimpleXMLObject) unmarshaller.unmarshall(document.getDocumentElement());
+        } finally {
+            XMLObjectProviderRegistrySupport.deregisterDeferredElement(SimpleXMLObject.ELEMENT_NAME);
+        }
+
+        sxObject.releaseDOM();
+
+        Assert.assertNull(sxObject.getDOM(), "DOM was not released");
+        Assert.assertFalse(sxObject.hasDeferredChildren(), "Child elements were not unmarshalled on release");
+        Assert.assertEquals(sxObject.getSimpleXMLObjects().size(), 2,
+                "Number of children elements was not expected value");
+    }
+
+    /**
+     * Tests that IDs within deferred child elements are resolved, unmarshalling the children as required.
+     * 
+     * @throws XMLParserException
+     * @throws UnmarshallingException
+     */
+    @Test
+    public void testDeferredChildElementsResolveID() throws XMLParserException, UnmarshallingException {
+        String documentLocation = "/data/org/opensaml/core/xml/IDAttributeWithChildrenList.xml";
+        Document document = parserPool.parse(UnmarshallingTest.class.getResourceAsStream(documentLocation));
+
+        XMLObjectProviderRegistrySupport.registerDeferredElement(SimpleXMLObject.ELEMENT_NAME);
+        SimpleXMLObject sxObject;
+        try {
+            Unmarshaller unmarshaller = unmarshallerFactory.getUnmarshaller(document.getDocumentElement());
+            sxObject = (SimpleXMLObject) unmarshaller.unmarshall(document.getDocumentElement());
+        } finally {
+            XMLObjectProviderRegistrySupport.deregisterDeferredElement(SimpleXMLObject.ELEMENT_NAME);
+        }
+
+        Assert.assertTrue(sxObject.hasDeferredChildren(), "Child elements were not deferred");
+
+        XMLObject referent = sxObject.resolveIDFromRoot("IDLevel4A");
+        Assert.assertNotNull(referent, "ID within deferred children was not resolved");
+        Assert.assertEquals(((SimpleXMLObject) referent).getId(), "IDLevel4A");
+        Assert.assertFalse(sxObject.hasDeferredChildren(), "Child elements were not unmarshalled on lookup");
+
+        Assert.assertTrue(sxObject.resolveID("IDLevel3C") == sxObject.getSimpleXMLObjects().get(0)
+                .getSimpleXMLObjects().get(3), "ID did not resolve to the expected object");
+        Assert.assertNull(sxObject.resolveID("NoSuchID"), "Unknown ID was resolved");
+    }
+}
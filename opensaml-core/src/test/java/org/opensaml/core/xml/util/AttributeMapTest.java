@@ -85,6 +85,30 @@ public class AttributeMapTest extends XMLObjectBaseTestCase {
         Assert.assertEquals(attributeMap.size(), 0, "Wrong map size");
     }
     
+    @Test
+    public void testInsertionOrder() {
+        QName attrName1 = new QName(ns1, "Attr1", ns1Prefix);
+        QName attrName2 = new QName(ns2, "Attr2", ns2Prefix);
+        QName attrName3 = new QName(ns3, "Attr3", ns3Prefix);
+        QName attrName4 = new QName("Attr4");
+        
+        attributeMap.put(attrName3, "foo");
+        attributeMap.put(attrName1, "bar");
+        attributeMap.put(attrName4, "baz");
+        attributeMap.put(attrName2, "qux");
+        attributeMap.put(attrName1, "bar2");
+        Assert.assertEquals(attributeMap.keySet().toArray(),
+                new QName[] {attrName3, attrName1, attrName4, attrName2});
+        Assert.assertEquals(attributeMap.get(attrName1), "bar2");
+        
+        Assert.assertEquals(attributeMap.remove(attrName1), "bar2");
+        Assert.assertNull(attributeMap.remove(attrName1));
+        Assert.assertEquals(attributeMap.keySet().toArray(), new QName[] {attrName3, attrName4, attrName2});
+        Assert.assertEquals(attributeMap.values().toArray(), new String[] {"foo", "baz", "qux"});
+        Assert.assertFalse(owner.getNamespaceManager().getNamespaces().contains(new Namespace(ns1, ns1Prefix)));
+        Assert.assertTrue(owner.getNamespaceManager().getNamespaces().contains(new Namespace(ns2, ns2Prefix)));
+    }
+    
     @Test
     public void testAttributeMapQualifiedAttributes() {
         QName attrName1 = new QName(ns1, "Attr1", ns1Prefix);
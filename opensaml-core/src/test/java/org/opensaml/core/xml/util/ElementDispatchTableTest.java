@@ -0,0 +1,122 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.util;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.core.xml.XMLObjectBuilder;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.config.XMLObjectProviderSnapshot;
+import org.opensaml.core.xml.io.Unmarshaller;
+import org.opensaml.core.xml.mock.SimpleXMLObject;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.w3c.dom.Element;
+
+/**
+ * Tests for {@link ElementDispatchTable}.
+ */
+public class ElementDispatchTableTest extends XMLObjectBaseTestCase {
+
+    /** Tests lookups by element name and by schema type. */
+    @Test
+    public void testLookup() throws XMLParserException {
+        Map<QName, String> values = new HashMap<>();
+        values.put(new QName("urn:test:ns1", "Element"), "element");
+        values.put(new QName("urn:test:ns2", "Type", "t"), "type");
+        values.put(new QName("Unqualified"), "unqualified");
+        ElementDispatchTable<String> table = new ElementDispatchTable<>(values);
+
+        Assert.assertEquals(table.get("urn:test:ns1", "Element"), "element");
+        Assert.assertEquals(table.get(new QName("urn:test:ns2", "Type")), "type");
+        Assert.assertEquals(table.get(null, "Unqualified"), "unqualified");
+        Assert.assertEquals(table.get("", "Unqualified"), "unqualified");
+        Assert.assertNull(table.get("urn:test:ns2", "Element"));
+        Assert.assertNull(table.get((QName) null));
+        Assert.assertNull(table.get((Element) null));
+
+        Element root = parse("<e:Element xmlns:e='urn:test:ns1' xmlns:x='urn:test:ns2'"
+                + " xmlns:xsi='http://www.w3.org/2001/XMLSchema-instance'>"
+                + "<e:Element xsi:type=' x:Type '/><e:Element xsi:type='x:Unknown'/>"
+                + "<Unqualified xsi:type='Unknown'/><e:Other/></e:Element>");
+        Element typed = (Element) root.getFirstChild();
+        Element unknownType = (Element) typed.getNextSibling();
+        Element unqualified = (Element) unknownType.getNextSibling();
+        Element other = (Element) unqualified.getNextSibling();
+
+        Assert.assertEquals(table.get(root), "element");
+        Assert.assertNull(table.getBySchemaType(root));
+        Assert.assertEquals(table.get(typed), "type");
+        Assert.assertEquals(table.getByElementName(typed), "element");
+        Assert.assertEquals(table.get(unknownType), "element");
+        Assert.assertEquals(table.get(unqualified), "unqualified");
+        Assert.assertNull(table.get(other));
+    }
+
+    /** Tests that the factory tables and registry snapshots follow registrations. */
+    @Test
+    public void testSnapshot() throws XMLParserException {
+        QName name = new QName("urn:test:dispatch", "Element");
+        Element element = parse("<d:Element xmlns:d='urn:test:dispatch'/>");
+
+        XMLObjectProviderSnapshot before = XMLObjectProviderRegistrySupport.getSnapshot();
+        Assert.assertNull(before.getUnmarshaller(element, false));
+        Assert.assertNotNull(before.getUnmarshaller(element, true));
+
+        XMLObjectBuilder<?> builder = builderFactory.getBuilder(SimpleXMLObject.ELEMENT_NAME);
+        Unmarshaller unmarshaller = unmarshallerFactory.getUnmarshaller(SimpleXMLObject.ELEMENT_NAME);
+        XMLObjectProviderRegistrySupport.registerObjectProvider(name, builder,
+                marshallerFactory.getMarshaller(SimpleXMLObject.ELEMENT_NAME), unmarshaller);
+        try {
+            XMLObjectProviderSnapshot after = XMLObjectProviderRegistrySupport.getSnapshot();
+            Assert.assertSame(after.getBuilder(element, false), builder);
+            Assert.assertSame(after.getUnmarshaller(element, false), unmarshaller);
+            Assert.assertSame(unmarshallerFactory.getUnmarshaller(element), unmarshaller);
+            Assert.assertSame(after.getMarshaller(builder.buildObject(name.getNamespaceURI(), name.getLocalPart(),
+                    "d"), false), marshallerFactory.getMarshaller(SimpleXMLObject.ELEMENT_NAME));
+            Assert.assertNull(before.getUnmarshaller(element, false));
+        } finally {
+            XMLObjectProviderRegistrySupport.deregisterObjectProvider(name);
+        }
+
+        Assert.assertNull(unmarshallerFactory.getUnmarshaller(element));
+        Assert.assertSame(XMLObjectProviderRegistrySupport.getSnapshot().getUnmarshaller(element, true),
+                unmarshallerFactory.getUnmarshaller(XMLObjectProviderRegistrySupport.getDefaultProviderQName()));
+    }
+
+    /**
+     * Parse a document from a string.
+     * 
+     * @param xml the document
+     * 
+     * @return the document element
+     * 
+     * @throws XMLParserException if the document cannot be parsed
+     */
+    private Element parse(String xml) throws XMLParserException {
+        return parserPool.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))).getDocumentElement();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.util;
+
+import javax.xml.namespace.QName;
+
+import org.opensaml.core.xml.Namespace;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for {@link InternSupport} and {@link InternPool}.
+ */
+public class InternSupportTest {
+
+    /** Tests that equal strings are shared, and long strings are not. */
+    @Test
+    public void testStrings() {
+        String binding = new String("urn:oasis:names:tc:SAML:2.0:bindings:HTTP-POST");
+        String interned = InternSupport.intern(binding);
+        Assert.assertSame(InternSupport.intern(new String(binding)), interned);
+        Assert.assertNull(InternSupport.intern((String) null));
+
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() <= InternSupport.MAX_STRING_LENGTH) {
+            builder.append("MIIC");
+        }
+        String longValue = builder.toString();
+        Assert.assertSame(InternSupport.intern(longValue), longValue);
+        Assert.assertNotSame(InternSupport.intern(new String(longValue)), longValue);
+    }
+
+    /** Tests that QNames are only shared if their prefixes are equal. */
+    @Test
+    public void testQNames() {
+        QName name = InternSupport.constructQName("urn:test:ns", "Element", "test");
+        Assert.assertSame(InternSupport.intern(new QName("urn:test:ns", "Element", "test")), name);
+
+        QName otherPrefix = InternSupport.intern(new QName("urn:test:ns", "Element", "other"));
+        Assert.assertEquals(otherPrefix.getPrefix(), "other");
+        QName noPrefix = InternSupport.constructQName("urn:test:ns", "Element", null);
+        Assert.assertEquals(noPrefix.getPrefix(), "");
+    }
+
+    /** Tests that namespaces are shared, but not subclasses of namespace. */
+    @Test
+    public void testNamespaces() {
+        Namespace namespace = InternSupport.intern(new Namespace("urn:test:ns", "test"));
+        Assert.assertSame(InternSupport.intern(new Namespace("urn:test:ns", "test")), namespace);
+
+        Namespace subclass = new Namespace("urn:test:ns", "test") { };
+        Assert.assertSame(InternSupport.intern(subclass), subclass);
+    }
+
+    /** Tests that a pool holds no more than its capacity, replacing colliding instances. */
+    @Test
+    public void testPoolCollision() {
+        InternPool<Integer> pool = new InternPool<>(4);
+        Integer first = new Integer(1000);
+        Integer colliding = new Integer(1004);
+        Assert.assertSame(pool.intern(first), first);
+        Assert.assertSame(pool.intern(new Integer(1000)), first);
+        Assert.assertSame(pool.intern(colliding), colliding);
+        Integer replacement = new Integer(1000);
+        Assert.assertSame(pool.intern(replacement), replacement);
+    }
+
+}
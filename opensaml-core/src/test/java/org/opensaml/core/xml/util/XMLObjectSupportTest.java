@@ -19,8 +19,12 @@ package org.opensaml.core.xml.util;
 
 import javax.xml.namespace.QName;
 
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+
 import org.testng.annotations.Test;
 import org.testng.Assert;
+import org.opensaml.core.xml.AbstractXMLObjectBuilder;
+import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.XMLObjectBaseTestCase;
 import org.opensaml.core.xml.XMLRuntimeException;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
@@ -29,7 +33,13 @@ import org.opensaml.core.xml.io.UnmarshallingException;
 import org.opensaml.core.xml.mock.SimpleXMLObject;
 import org.opensaml.core.xml.mock.SimpleXMLObjectBuilder;
 import org.opensaml.core.xml.schema.XSString;
+import org.opensaml.core.xml.schema.impl.XSStringImpl;
+import org.opensaml.core.xml.schema.impl.XSStringMarshaller;
+import org.opensaml.core.xml.schema.impl.XSStringUnmarshaller;
+import org.w3c.dom.Attr;
 import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 
 /**
  * Tests of XMLObjectHelper utility methods.
@@ -111,7 +121,94 @@ public class XMLObjectSupportTest extends XMLObjectBaseTestCase {
         Assert.assertTrue(clonedParentObj.getDOM().getOwnerDocument().getDocumentElement().isSameNode(clonedParentObj.getDOM()), 
                 "Cloned object was not the new Document root");
     }
-    
+
+    /** Tests copying an XMLObject. */
+    @Test
+    public void testXMLObjectCopy() {
+        SimpleXMLObjectBuilder sxoBuilder = (SimpleXMLObjectBuilder) XMLObjectProviderRegistrySupport.getBuilderFactory()
+            .getBuilder(SimpleXMLObject.ELEMENT_NAME);
+
+        SimpleXMLObject origChildObj = sxoBuilder.buildObject();
+        origChildObj.setValue("Foo&Bar\r\nBaz");
+
+        SimpleXMLObject origParentObj = sxoBuilder.buildObject();
+        origParentObj.setId("Parent");
+        origParentObj.getUnknownAttributes().put(new QName("urn:example:attr", "foo", "ex"), "bar");
+        origParentObj.getSimpleXMLObjects().add(origChildObj);
+
+        SimpleXMLObject copiedParentObj = null;
+        try {
+            copiedParentObj = XMLObjectSupport.copyXMLObject(origParentObj);
+        } catch (MarshallingException e) {
+            Assert.fail("Object copying failed on marshalling: " + e.getMessage());
+        } catch (UnmarshallingException e) {
+            Assert.fail("Object copying failed on unmarshalling: " + e.getMessage());
+        }
+
+        Assert.assertFalse(origParentObj == copiedParentObj, "Parent XMLObjects were the same reference");
+        Assert.assertNull(origParentObj.getDOM(), "Original object was marshalled");
+        Assert.assertNull(copiedParentObj.getDOM(), "Copied object cached a DOM");
+        Assert.assertEquals(copiedParentObj.getId(), "Parent", "ID attribute was not copied");
+        Assert.assertEquals(copiedParentObj.getUnknownAttributes().get(new QName("urn:example:attr", "foo")), "bar",
+                "Unknown attribute was not copied");
+
+        Assert.assertFalse(copiedParentObj.getSimpleXMLObjects().isEmpty(), "Copied parent had no children");
+        SimpleXMLObject copiedChildObj = (SimpleXMLObject) copiedParentObj.getSimpleXMLObjects().get(0);
+
+        Assert.assertFalse(origChildObj == copiedChildObj, "Child XMLObjects were the same reference");
+        Assert.assertTrue(copiedChildObj.getParent() == copiedParentObj, "Child was not parented by the copy");
+        Assert.assertEquals(copiedChildObj.getValue(), "Foo&Bar\r\nBaz",
+                "Text content of child was not the expected value");
+    }
+
+    /**
+     * Tests that copying an unmarshalled XMLObject yields the same content as the original.
+     *
+     * @throws XMLParserException
+     * @throws MarshallingException
+     * @throws UnmarshallingException
+     */
+    @Test
+    public void testXMLObjectCopyUnknownContent() throws XMLParserException, MarshallingException,
+            UnmarshallingException {
+        Document document = parseXMLDocument("/data/org/opensaml/core/xml/UnknownContent.xml");
+        XMLObject original = unmarshallerFactory.getUnmarshaller(document.getDocumentElement())
+                .unmarshall(document.getDocumentElement());
+
+        XMLObject copy = XMLObjectSupport.copyXMLObject(original);
+
+        Assert.assertFalse(original == copy, "XMLObjects were the same reference");
+        Assert.assertNull(copy.getDOM(), "Copied object cached a DOM");
+        Assert.assertTrue(original.getDOM() == document.getDocumentElement(), "Original DOM was replaced");
+        assertXMLEquals(document, copy);
+    }
+
+    /**
+     * Tests that copying an XMLObject keeps the attributes added by a subclass of {@link XSStringMarshaller}.
+     *
+     * @throws MarshallingException
+     * @throws UnmarshallingException
+     */
+    @Test
+    public void testXMLObjectCopySubclassAttributes() throws MarshallingException, UnmarshallingException {
+        QName name = new QName("urn:test:copy", "Labelled", "c");
+        XMLObjectProviderRegistrySupport.registerObjectProvider(name, new LabelledStringBuilder(),
+                new LabelledStringMarshaller(), new LabelledStringUnmarshaller());
+        try {
+            LabelledString original = (LabelledString) XMLObjectSupport.buildXMLObject(name);
+            original.setValue("FooBarBaz");
+            original.setLabel("label");
+
+            LabelledString copy = XMLObjectSupport.copyXMLObject(original);
+
+            Assert.assertFalse(original == copy, "XMLObjects were the same reference");
+            Assert.assertEquals(copy.getLabel(), "label", "Attribute added by the marshaller was not copied");
+            Assert.assertEquals(copy.getValue(), "FooBarBaz", "Text content was not the expected value");
+        } finally {
+            XMLObjectProviderRegistrySupport.deregisterObjectProvider(name);
+        }
+    }
+
     @Test
     public void testBuildXMLObject() {
         try {
@@ -141,4 +238,62 @@ public class XMLObjectSupportTest extends XMLObjectBaseTestCase {
         }
     }
 
+    /** String type carrying an attribute which only its own marshaller knows about. */
+    private static class LabelledString extends XSStringImpl {
+
+        /** The label attribute. */
+        private String label;
+
+        /**
+         * Constructor.
+         *
+         * @param namespaceURI the namespace the element is in
+         * @param elementLocalName the local name of the XML element this Object represents
+         * @param namespacePrefix the prefix for the given namespace
+         */
+        protected LabelledString(String namespaceURI, String elementLocalName, String namespacePrefix) {
+            super(namespaceURI, elementLocalName, namespacePrefix);
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public void setLabel(String newLabel) {
+            label = prepareForAssignment(label, newLabel);
+        }
+    }
+
+    /** Builder of {@link LabelledString}. */
+    private static class LabelledStringBuilder extends AbstractXMLObjectBuilder<LabelledString> {
+
+        /** {@inheritDoc} */
+        public LabelledString buildObject(String namespaceURI, String localName, String namespacePrefix) {
+            return new LabelledString(namespaceURI, localName, namespacePrefix);
+        }
+    }
+
+    /** Marshaller of {@link LabelledString}, adding the label through the DOM hook. */
+    private static class LabelledStringMarshaller extends XSStringMarshaller {
+
+        /** {@inheritDoc} */
+        protected void marshallAttributes(XMLObject xmlObject, Element domElement) throws MarshallingException {
+            LabelledString labelled = (LabelledString) xmlObject;
+            if (labelled.getLabel() != null) {
+                domElement.setAttributeNS(null, "label", labelled.getLabel());
+            }
+        }
+    }
+
+    /** Unmarshaller of {@link LabelledString}. */
+    private static class LabelledStringUnmarshaller extends XSStringUnmarshaller {
+
+        /** {@inheritDoc} */
+        protected void processAttribute(XMLObject xmlObject, Attr attribute) throws UnmarshallingException {
+            if ("label".equals(attribute.getLocalName()) && attribute.getNamespaceURI() == null) {
+                ((LabelledString) xmlObject).setLabel(attribute.getValue());
+            }
+        }
+    }
+
 }
\ No newline at end of file
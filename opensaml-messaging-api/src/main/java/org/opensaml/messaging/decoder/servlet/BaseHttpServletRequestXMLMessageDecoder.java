@@ -22,6 +22,7 @@ import java.io.InputStream;
 import javax.annotation.Nonnull;
 
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 import net.shibboleth.utilities.java.support.xml.ParserPool;
 import net.shibboleth.utilities.java.support.xml.SerializeSupport;
@@ -54,6 +55,9 @@ public abstract class BaseHttpServletRequestXMLMessageDecoder<MessageType extend
     /** Parser pool used to deserialize the message. */
     private ParserPool parserPool;
 
+    /** Whether to unmarshall messages directly from the request without parsing them into a DOM. */
+    private boolean streamingUnmarshalling;
+
     /** Constructor. */
     public BaseHttpServletRequestXMLMessageDecoder() {
         parserPool = XMLObjectProviderRegistrySupport.getParserPool();
@@ -89,6 +93,30 @@ public abstract class BaseHttpServletRequestXMLMessageDecoder<MessageType extend
         parserPool = pool;
     }
     
+    /**
+     * Get whether to unmarshall messages directly from the request without parsing them into a DOM.
+     * 
+     * @return whether to use streaming unmarshalling
+     */
+    public boolean isStreamingUnmarshalling() {
+        return streamingUnmarshalling;
+    }
+
+    /**
+     * Set whether to unmarshall messages directly from the request without parsing them into a DOM.
+     * 
+     * <p>The parser pool is then not used to parse messages. Only content with an ID attribute which carries an XML
+     * signature has its DOM cached, so that the signature can be verified; signatures over content without one
+     * cannot be verified. Defaults to false.</p>
+     * 
+     * @param flag whether to use streaming unmarshalling
+     */
+    public void setStreamingUnmarshalling(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        streamingUnmarshalling = flag;
+    }
+    
     /** {@inheritDoc} */
     protected void doDestroy() {
         parserPool = null;
@@ -145,6 +173,9 @@ public abstract class BaseHttpServletRequestXMLMessageDecoder<MessageType extend
      */
     protected XMLObject unmarshallMessage(InputStream messageStream) throws MessageDecodingException {
         try {
+            if (streamingUnmarshalling) {
+                return XMLObjectSupport.streamUnmarshallFromInputStream(messageStream);
+            }
             XMLObject message = XMLObjectSupport.unmarshallFromInputStream(getParserPool(), messageStream);
             return message;
         } catch (XMLParserException e) {
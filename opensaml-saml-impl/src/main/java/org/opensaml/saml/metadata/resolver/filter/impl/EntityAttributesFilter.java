@@ -139,7 +139,7 @@ public class EntityAttributesFilter implements MetadataFilter {
                     try {
                         log.info("Adding EntityAttribute ({}) to EntityDescriptor ({})", attribute.getName(),
                                 descriptor.getEntityID());
-                        entityAttributes.getAttributes().add(XMLObjectSupport.cloneXMLObject(attribute));
+                        entityAttributes.getAttributes().add(XMLObjectSupport.copyXMLObject(attribute));
                     } catch (final MarshallingException | UnmarshallingException e) {
                         log.error("Error cloning Attribute", e);
                     }
@@ -39,13 +39,12 @@ import com.google.common.base.Strings;
 public class AssertionUnmarshaller extends AbstractSAMLObjectUnmarshaller {
 
     /** {@inheritDoc} */
-    public XMLObject unmarshall(Element domElement) throws UnmarshallingException {
-        // After regular unmarshalling, check the minor version and set ID-ness if not SAML 1.0
-        Assertion assertion = (Assertion) super.unmarshall(domElement);
+    protected void declareIDAttributes(XMLObject samlObject, Element domElement) {
+        // Once the attributes are unmarshalled, check the minor version and set ID-ness if not SAML 1.0
+        Assertion assertion = (Assertion) samlObject;
         if (assertion.getMinorVersion() != 0 && !Strings.isNullOrEmpty(assertion.getID())) {
             domElement.setIdAttributeNS(null, Assertion.ID_ATTRIB_NAME, true);
         }
-        return assertion;
     }
 
     /** {@inheritDoc} */
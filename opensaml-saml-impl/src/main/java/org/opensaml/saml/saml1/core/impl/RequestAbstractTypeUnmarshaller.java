@@ -46,13 +46,12 @@ public abstract class RequestAbstractTypeUnmarshaller extends AbstractSAMLObject
     private final Logger log = LoggerFactory.getLogger(RequestAbstractType.class);
 
     /** {@inheritDoc} */
-    public XMLObject unmarshall(Element domElement) throws UnmarshallingException {
-        // After regular unmarshalling, check the minor version and set ID-ness if not SAML 1.0
-        RequestAbstractType request = (RequestAbstractType) super.unmarshall(domElement);
+    protected void declareIDAttributes(XMLObject samlObject, Element domElement) {
+        // Once the attributes are unmarshalled, check the minor version and set ID-ness if not SAML 1.0
+        RequestAbstractType request = (RequestAbstractType) samlObject;
         if (request.getVersion() != SAMLVersion.VERSION_10 && !Strings.isNullOrEmpty(request.getID())) {
             domElement.setIdAttributeNS(null, RequestAbstractType.ID_ATTRIB_NAME, true);
         }
-        return request;
     }
 
     /** {@inheritDoc} */
@@ -46,13 +46,12 @@ public abstract class ResponseAbstractTypeUnmarshaller extends AbstractSAMLObjec
     private final Logger log = LoggerFactory.getLogger(ResponseUnmarshaller.class);
 
     /** {@inheritDoc} */
-    public XMLObject unmarshall(Element domElement) throws UnmarshallingException {
-        // After regular unmarshalling, check the minor version and set ID-ness if not SAML 1.0
-        ResponseAbstractType response = (ResponseAbstractType) super.unmarshall(domElement);
+    protected void declareIDAttributes(XMLObject samlObject, Element domElement) {
+        // Once the attributes are unmarshalled, check the minor version and set ID-ness if not SAML 1.0
+        ResponseAbstractType response = (ResponseAbstractType) samlObject;
         if (response.getVersion() != SAMLVersion.VERSION_10 && !Strings.isNullOrEmpty(response.getID())) {
             domElement.setIdAttributeNS(null, ResponseAbstractType.ID_ATTRIB_NAME, true);
         }
-        return response;
     }
 
     /** {@inheritDoc} */
@@ -75,6 +75,7 @@ public class AttributeConsumingServiceImpl extends AbstractSAMLObject implements
 
     /** {@inheritDoc} */
     public void setIndex(int theIndex) {
+        checkNotFrozen();
         if (this.index != theIndex) {
             releaseThisandParentDOM();
             this.index = theIndex;
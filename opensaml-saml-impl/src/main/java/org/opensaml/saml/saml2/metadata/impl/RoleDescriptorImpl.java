@@ -148,6 +148,7 @@ public abstract class RoleDescriptorImpl extends AbstractSignableSAMLObject impl
     /** {@inheritDoc} */
     @Override
     public void addSupportedProtocol(final String protocol) {
+        checkNotFrozen();
         final String trimmed = StringSupport.trimOrNull(protocol);
         if (trimmed != null && !supportedProtocols.contains(trimmed)) {
             releaseThisandParentDOM();
@@ -158,6 +159,7 @@ public abstract class RoleDescriptorImpl extends AbstractSignableSAMLObject impl
     /** {@inheritDoc} */
     @Override
     public void removeSupportedProtocol(final String protocol) {
+        checkNotFrozen();
         final String trimmed = StringSupport.trimOrNull(protocol);
         if (trimmed != null && supportedProtocols.contains(trimmed)) {
             releaseThisandParentDOM();
@@ -176,7 +178,11 @@ public abstract class RoleDescriptorImpl extends AbstractSignableSAMLObject impl
     /** {@inheritDoc} */
     @Override
     public void removeAllSupportedProtocols() {
-        supportedProtocols.clear();
+        checkNotFrozen();
+        if (!supportedProtocols.isEmpty()) {
+            releaseThisandParentDOM();
+            supportedProtocols.clear();
+        }
     }
 
     /** {@inheritDoc} */
@@ -17,11 +17,20 @@
 
 package org.opensaml.saml.saml2.ecp.impl;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+
 import org.testng.annotations.Test;
 import org.testng.annotations.BeforeMethod;
 import org.testng.Assert;
 import org.opensaml.core.xml.XMLObjectProviderBaseTestCase;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.XMLObjectSupport;
 import org.opensaml.saml.saml2.ecp.RelayState;
+import org.w3c.dom.Document;
 
 /**
  * Test case for creating, marshalling, and unmarshalling {@link RelayState}.
@@ -71,4 +80,34 @@ public class RelayStateTest extends XMLObjectProviderBaseTestCase {
         assertXMLEquals(expectedDOM, relayState);
     }
 
+    /**
+     * Tests that the SOAP attributes added by the marshaller survive streaming marshalling.
+     * 
+     * @throws MarshallingException
+     * @throws XMLParserException
+     * @throws UnmarshallingException
+     */
+    @Test
+    public void testStreamingMarshall() throws MarshallingException, XMLParserException, UnmarshallingException {
+        RelayState relayState = (RelayState) buildXMLObject(RelayState.DEFAULT_ELEMENT_NAME);
+        
+        relayState.setSOAP11Actor(expectedSOAP11Actor);
+        relayState.setSOAP11MustUnderstand(expectedSOAP11MustUnderstand);
+        relayState.setValue(expectedContent);
+        
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        XMLObjectSupport.streamMarshallToOutputStream(relayState, output);
+        Document document = parserPool.parse(new ByteArrayInputStream(output.toByteArray()));
+        Assert.assertTrue(document.getDocumentElement().hasAttributeNS(
+                RelayState.SOAP11_MUST_UNDERSTAND_ATTR_NAME.getNamespaceURI(),
+                RelayState.SOAP11_MUST_UNDERSTAND_ATTR_NAME.getLocalPart()), "SOAP mustUnderstand was not streamed");
+        
+        RelayState streamed = (RelayState) unmarshallerFactory.getUnmarshaller(document.getDocumentElement())
+                .unmarshall(document.getDocumentElement());
+        Assert.assertEquals(streamed.isSOAP11MustUnderstand(), expectedSOAP11MustUnderstand,
+                "SOAP mustUnderstand had unexpected value");
+        Assert.assertEquals(streamed.getSOAP11Actor(), expectedSOAP11Actor, "SOAP actor had unexpected value");
+        Assert.assertEquals(streamed.getValue(), expectedContent, "Element content had unexpected value");
+    }
+
 }
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.saml2.metadata;
+
+import org.joda.time.DateTime;
+import org.opensaml.core.xml.FreezableXMLObject;
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.saml.common.xml.SAMLConstants;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.w3c.dom.Element;
+
+/**
+ * Tests that the typed mutators of frozen metadata objects cannot modify them.
+ */
+public class MetadataFreezeTest extends XMLObjectBaseTestCase {
+
+    /** Location of the entity descriptor to freeze. */
+    private static final String ENTITY_DESCRIPTOR_FILE =
+            "/data/org/opensaml/saml/saml2/metadata/entitydescriptor-metadata.xml";
+
+    /**
+     * Tests that the mutators of a frozen, unmarshalled entity descriptor and its roles throw.
+     * 
+     * @throws MarshallingException
+     */
+    @Test
+    public void testFrozenEntityDescriptor() throws MarshallingException {
+        final EntityDescriptor entity = unmarshallElement(ENTITY_DESCRIPTOR_FILE);
+        Assert.assertNotNull(entity);
+        Assert.assertTrue(entity instanceof FreezableXMLObject, "Entity cannot be frozen");
+        ((FreezableXMLObject) entity).freeze();
+
+        Assert.assertTrue(((FreezableXMLObject) entity).isFrozen(), "Entity was not frozen");
+        final IDPSSODescriptor idp = entity.getIDPSSODescriptor(SAMLConstants.SAML11P_NS);
+        Assert.assertNotNull(idp);
+        Assert.assertTrue(((FreezableXMLObject) idp).isFrozen(), "Role was not frozen");
+
+        try {
+            entity.setEntityID("urn:example.org:other");
+            Assert.fail("Frozen entityID was modified");
+        } catch (final UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            entity.setValidUntil(new DateTime());
+            Assert.fail("Frozen validUntil was modified");
+        } catch (final UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            entity.getRoleDescriptors().add(
+                    (RoleDescriptor) buildXMLObject(SPSSODescriptor.DEFAULT_ELEMENT_NAME));
+            Assert.fail("Frozen role descriptors were modified");
+        } catch (final UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            idp.addSupportedProtocol(SAMLConstants.SAML20P_NS);
+            Assert.fail("Frozen supported protocols were added to");
+        } catch (final UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            idp.removeSupportedProtocol(SAMLConstants.SAML11P_NS);
+            Assert.fail("Frozen supported protocol was removed");
+        } catch (final UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            idp.removeAllSupportedProtocols();
+            Assert.fail("Frozen supported protocols were cleared");
+        } catch (final UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            idp.setWantAuthnRequestsSigned(Boolean.TRUE);
+            Assert.fail("Frozen WantAuthnRequestsSigned was modified");
+        } catch (final UnsupportedOperationException e) {
+            // expected
+        }
+
+        Assert.assertEquals(entity.getEntityID(), "urn:mace:incommon:osu.edu");
+        Assert.assertTrue(idp.isSupportedProtocol(SAMLConstants.SAML11P_NS));
+        Assert.assertEquals(idp.getSupportedProtocols().size(), 2);
+
+        final Element element = marshallerFactory.getMarshaller(entity).marshall(entity);
+        Assert.assertEquals(element.getAttributeNS(null, EntityDescriptor.ENTITY_ID_ATTRIB_NAME),
+                "urn:mace:incommon:osu.edu");
+        Assert.assertNull(entity.getDOM(), "Frozen entity cached a DOM");
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.security.x509;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonNegative;
+import net.shibboleth.utilities.java.support.codec.Base64Support;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+/**
+ * A global, bounded cache of decoded X.509 certificates and of data derived from them.
+ * 
+ * <p>Certificates carried in XML are decoded from the same base64 text over and over, e.g. on every signed message
+ * from a given peer. {@link #decodeCertificate(String)} returns the certificate previously decoded from identical
+ * text, so the same immutable {@link X509Certificate} instance is shared by all such decodings. The subject key
+ * identifier, digests, base64 encoding, subject common names and subject alternative names of a certificate so
+ * returned are computed once and held alongside it. For any other certificate instance, such as one presented by a
+ * TLS client, derived data is computed on each call, so that transient certificates do not displace cached ones.</p>
+ * 
+ * <p>The cache holds at most {@link #getMaximumSize()} certificates; it is emptied when full and repopulated by
+ * subsequent use. A maximum size of 0 disables caching.</p>
+ */
+public final class X509CertificateCache {
+
+    /** Default maximum number of cached certificates. */
+    public static final int DEFAULT_MAXIMUM_SIZE = 1000;
+
+    /** Maximum number of cached certificates, or 0 to disable caching. */
+    private static volatile int maximumSize = DEFAULT_MAXIMUM_SIZE;
+
+    /** Cached certificates, by their base64 encoded form. */
+    @Nonnull private static final ConcurrentMap<String, X509Certificate> CERTIFICATES = new ConcurrentHashMap<>();
+
+    /** Data derived from the certificates in {@link #CERTIFICATES}, by certificate instance. */
+    @Nonnull private static final ConcurrentMap<CertificateKey, DerivedData> DERIVED_DATA = new ConcurrentHashMap<>();
+
+    /** Constructor. */
+    private X509CertificateCache() {
+
+    }
+
+    /**
+     * Get the maximum number of cached certificates.
+     * 
+     * @return maximum number of cached certificates, or 0 if caching is disabled
+     */
+    @NonNegative public static int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Set the maximum number of cached certificates. Defaults to {@link #DEFAULT_MAXIMUM_SIZE}.
+     * 
+     * @param size maximum number of cached certificates, or 0 to disable caching
+     */
+    public static void setMaximumSize(@NonNegative final int size) {
+        maximumSize = (int) Constraint.isGreaterThanOrEqual(0, size, "Maximum size must be non-negative");
+        clear();
+    }
+
+    /** Discard all cached certificates and derived data. */
+    public static void clear() {
+        CERTIFICATES.clear();
+        DERIVED_DATA.clear();
+    }
+
+    /**
+     * Decode a single Java certificate from base64 encoded form without PEM headers and footers, or return the
+     * certificate previously decoded from the same text.
+     * 
+     * @param base64Cert base64-encoded certificate
+     * @return a native Java X509 certificate
+     * @throws CertificateException thrown if there is an error constructing certificate
+     * 
+     * @see X509Support#decodeCertificate(String)
+     */
+    @Nullable public static X509Certificate decodeCertificate(@Nonnull final String base64Cert)
+            throws CertificateException {
+        if (maximumSize == 0) {
+            return X509Support.decodeCertificate(base64Cert);
+        }
+
+        final X509Certificate cached = CERTIFICATES.get(base64Cert);
+        if (cached != null) {
+            return cached;
+        }
+
+        final X509Certificate cert = X509Support.decodeCertificate(base64Cert);
+        if (cert != null) {
+            ensureCapacity();
+            final X509Certificate existing = CERTIFICATES.putIfAbsent(base64Cert, cert);
+            if (existing != null) {
+                return existing;
+            }
+            DERIVED_DATA.put(new CertificateKey(cert), new DerivedData());
+        }
+        return cert;
+    }
+
+    /**
+     * Get the plain (non-DER encoded) value of the Subject Key Identifier extension of an X.509 certificate, if
+     * present.
+     * 
+     * @param certificate an X.509 certificate possibly containing a subject key identifier
+     * @return the plain (non-DER encoded) value of the Subject Key Identifier extension, or null if the certificate
+     *         does not contain the extension
+     * 
+     * @see X509Support#getSubjectKeyIdentifier(X509Certificate)
+     */
+    @Nullable public static byte[] getSubjectKeyIdentifier(@Nonnull final X509Certificate certificate) {
+        final DerivedData data = getDerivedData(certificate);
+        if (data == null) {
+            return X509Support.getSubjectKeyIdentifier(certificate);
+        }
+
+        if (!data.skiComputed) {
+            data.ski = X509Support.getSubjectKeyIdentifier(certificate);
+            data.skiComputed = true;
+        }
+        return data.ski != null ? data.ski.clone() : null;
+    }
+
+    /**
+     * Get the digest of an X.509 certificate.
+     * 
+     * @param certificate an X.509 certificate
+     * @param jcaAlgorithm JCA algorithm identifier
+     * @return the raw digest of the certificate
+     * @throws NoSuchAlgorithmException if the algorithm is unsupported
+     * @throws CertificateEncodingException if the certificate cannot be encoded
+     * 
+     * @see X509Support#getX509Digest(X509Certificate, String)
+     */
+    @Nonnull public static byte[] getX509Digest(@Nonnull final X509Certificate certificate,
+            @Nonnull final String jcaAlgorithm) throws NoSuchAlgorithmException, CertificateEncodingException {
+        final DerivedData data = getDerivedData(certificate);
+        if (data == null) {
+            return MessageDigest.getInstance(jcaAlgorithm).digest(certificate.getEncoded());
+        }
+
+        byte[] digest = data.digests.get(jcaAlgorithm);
+        if (digest == null) {
+            digest = MessageDigest.getInstance(jcaAlgorithm).digest(certificate.getEncoded());
+            data.digests.put(jcaAlgorithm, digest);
+        }
+        return digest.clone();
+    }
+
+    /**
+     * Get the chunked base64 encoding of an X.509 certificate.
+     * 
+     * @param certificate an X.509 certificate
+     * @return the base64 encoded certificate
+     * @throws CertificateEncodingException if the certificate cannot be encoded
+     */
+    @Nonnull public static String getBase64Encoding(@Nonnull final X509Certificate certificate)
+            throws CertificateEncodingException {
+        final DerivedData data = getDerivedData(certificate);
+        if (data == null) {
+            return Base64Support.encode(certificate.getEncoded(), Base64Support.CHUNKED);
+        }
+
+        if (data.base64Encoding == null) {
+            data.base64Encoding = Base64Support.encode(certificate.getEncoded(), Base64Support.CHUNKED);
+        }
+        return data.base64Encoding;
+    }
+
+    /**
+     * Get the common names of the subject DN of an X.509 certificate, most specific first.
+     * 
+     * @param certificate an X.509 certificate
+     * @return the unmodifiable list of common names
+     * 
+     * @see X509Support#getCommonNames(javax.security.auth.x500.X500Principal)
+     */
+    @Nonnull public static List<String> getCommonNames(@Nonnull final X509Certificate certificate) {
+        final DerivedData data = getDerivedData(certificate);
+        List<String> commonNames = data != null ? data.commonNames : null;
+        if (commonNames == null) {
+            commonNames = Collections.unmodifiableList(X509Support.getCommonNames(
+                    certificate.getSubjectX500Principal()));
+            if (data != null) {
+                data.commonNames = commonNames;
+            }
+        }
+        return commonNames;
+    }
+
+    /**
+     * Get the subject alternative names of the given types in an X.509 certificate.
+     * 
+     * <p>Any DER-encoded values in the returned list are shared and must not be modified.</p>
+     * 
+     * @param certificate an X.509 certificate
+     * @param nameTypes the name types
+     * @return the unmodifiable list of alternative names, or null if no name types are given
+     * 
+     * @see X509Support#getAltNames(X509Certificate, Integer[])
+     */
+    @Nullable public static List<?> getAltNames(@Nonnull final X509Certificate certificate,
+            @Nullable final Integer[] nameTypes) {
+        if (nameTypes == null || nameTypes.length == 0) {
+            return null;
+        }
+
+        final DerivedData data = getDerivedData(certificate);
+        if (data == null) {
+            return Collections.unmodifiableList(X509Support.getAltNames(certificate, nameTypes));
+        }
+
+        final List<Integer> key = Arrays.asList(nameTypes.clone());
+        List<?> altNames = data.altNames.get(key);
+        if (altNames == null) {
+            altNames = Collections.unmodifiableList(X509Support.getAltNames(certificate, nameTypes));
+            data.altNames.put(key, altNames);
+        }
+        return altNames;
+    }
+
+    /**
+     * Get the derived data of a certificate instance returned by {@link #decodeCertificate(String)}.
+     * 
+     * @param certificate the certificate
+     * @return the derived data, or null if the certificate is not cached
+     */
+    @Nullable private static DerivedData getDerivedData(@Nonnull final X509Certificate certificate) {
+        if (maximumSize == 0) {
+            return null;
+        }
+
+        return DERIVED_DATA.get(new CertificateKey(Constraint.isNotNull(certificate, "Certificate cannot be null")));
+    }
+
+    /** Make room for a new certificate, along with its derived data. */
+    private static void ensureCapacity() {
+        if (CERTIFICATES.size() >= maximumSize) {
+            // Crude but cheap bound; entries are repopulated by subsequent use
+            clear();
+        }
+    }
+
+    /** A key comparing certificates by identity, so that derived data is never shared between instances. */
+    private static final class CertificateKey {
+
+        /** The certificate. */
+        @Nonnull private final X509Certificate certificate;
+
+        /**
+         * Constructor.
+         * 
+         * @param cert the certificate
+         */
+        CertificateKey(@Nonnull final X509Certificate cert) {
+            certificate = cert;
+        }
+
+        /** {@inheritDoc} */
+        public int hashCode() {
+            return System.identityHashCode(certificate);
+        }
+
+        /** {@inheritDoc} */
+        public boolean equals(final Object obj) {
+            return obj instanceof CertificateKey && ((CertificateKey) obj).certificate == certificate;
+        }
+    }
+
+    /** Data derived from a certificate. Racing threads may compute the same value, which is harmless. */
+    private static final class DerivedData {
+
+        /** Whether the subject key identifier has been computed. */
+        private volatile boolean skiComputed;
+
+        /** The subject key identifier, if any. */
+        @Nullable private volatile byte[] ski;
+
+        /** Digests of the certificate, by JCA algorithm. */
+        @Nonnull private final ConcurrentMap<String, byte[]> digests = new ConcurrentHashMap<>();
+
+        /** The chunked base64 encoding of the certificate. */
+        @Nullable private volatile String base64Encoding;
+
+        /** The common names of the subject DN. */
+        @Nullable private volatile List<String> commonNames;
+
+        /** Subject alternative names, by the list of name types requested. */
+        @Nonnull private final ConcurrentMap<List<Integer>, List<?>> altNames = new ConcurrentHashMap<>();
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.security.x509;
+
+import java.io.InputStream;
+import java.security.cert.X509Certificate;
+import java.util.List;
+
+import net.shibboleth.utilities.java.support.codec.Base64Support;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the {@link X509CertificateCache}.
+ */
+public class X509CertificateCacheTest {
+
+    /** A DER encoded cert. */
+    private String certDER = "/data/certificate.der";
+
+    private String base64Cert;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        try (InputStream certInS = X509CertificateCacheTest.class.getResourceAsStream(certDER)) {
+            byte[] certBytes = new byte[certInS.available()];
+            certInS.read(certBytes);
+            base64Cert = Base64Support.encode(certBytes, Base64Support.UNCHUNKED);
+        }
+        X509CertificateCache.clear();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        X509CertificateCache.setMaximumSize(X509CertificateCache.DEFAULT_MAXIMUM_SIZE);
+    }
+
+    @Test
+    public void testDecodeCertificate() throws Exception {
+        X509Certificate cert = X509CertificateCache.decodeCertificate(base64Cert);
+        Assert.assertNotNull(cert);
+        Assert.assertSame(X509CertificateCache.decodeCertificate(base64Cert), cert);
+        Assert.assertEquals(cert, X509Support.decodeCertificate(base64Cert));
+
+        X509CertificateCache.clear();
+        Assert.assertNotSame(X509CertificateCache.decodeCertificate(base64Cert), cert);
+    }
+
+    @Test
+    public void testDerivedData() throws Exception {
+        X509Certificate cert = X509CertificateCache.decodeCertificate(base64Cert);
+
+        byte[] ski = X509CertificateCache.getSubjectKeyIdentifier(cert);
+        Assert.assertEquals(ski, X509Support.getSubjectKeyIdentifier(cert));
+        if (ski != null && ski.length > 0) {
+            ski[0]++;
+            Assert.assertEquals(X509CertificateCache.getSubjectKeyIdentifier(cert),
+                    X509Support.getSubjectKeyIdentifier(cert), "Cached SKI was modified through returned array");
+        }
+
+        byte[] digest = X509CertificateCache.getX509Digest(cert, "SHA-256");
+        Assert.assertEquals(digest, X509Support.getX509Digest(cert, "SHA-256"));
+        digest[0]++;
+        Assert.assertEquals(X509CertificateCache.getX509Digest(cert, "SHA-256"),
+                X509Support.getX509Digest(cert, "SHA-256"), "Cached digest was modified through returned array");
+        Assert.assertEquals(X509CertificateCache.getX509Digest(cert, "SHA-1"),
+                X509Support.getX509Digest(cert, "SHA-1"));
+
+        Assert.assertEquals(X509CertificateCache.getBase64Encoding(cert),
+                Base64Support.encode(cert.getEncoded(), Base64Support.CHUNKED));
+    }
+
+    @Test
+    public void testNames() throws Exception {
+        X509Certificate cert = X509CertificateCache.decodeCertificate(base64Cert);
+        Integer[] nameTypes = new Integer[] {X509Support.DNS_ALT_NAME, X509Support.URI_ALT_NAME};
+
+        List<String> commonNames = X509CertificateCache.getCommonNames(cert);
+        Assert.assertEquals(commonNames, X509Support.getCommonNames(cert.getSubjectX500Principal()));
+        Assert.assertSame(X509CertificateCache.getCommonNames(cert), commonNames);
+
+        List<?> altNames = X509CertificateCache.getAltNames(cert, nameTypes);
+        Assert.assertEquals(altNames, X509Support.getAltNames(cert, nameTypes));
+        Assert.assertSame(X509CertificateCache.getAltNames(cert, nameTypes.clone()), altNames);
+        Assert.assertNull(X509CertificateCache.getAltNames(cert, new Integer[0]));
+    }
+
+    @Test
+    public void testUncachedInstance() throws Exception {
+        X509Certificate cert = X509Support.decodeCertificate(base64Cert);
+
+        Assert.assertEquals(X509CertificateCache.getX509Digest(cert, "SHA-256"),
+                X509Support.getX509Digest(cert, "SHA-256"));
+        Assert.assertEquals(X509CertificateCache.getCommonNames(cert),
+                X509Support.getCommonNames(cert.getSubjectX500Principal()));
+        Assert.assertNotSame(X509CertificateCache.getCommonNames(cert), X509CertificateCache.getCommonNames(cert),
+                "Derived data was retained for a certificate not returned by the cache");
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        X509CertificateCache.setMaximumSize(0);
+
+        X509Certificate cert = X509CertificateCache.decodeCertificate(base64Cert);
+        Assert.assertNotSame(X509CertificateCache.decodeCertificate(base64Cert), cert);
+        Assert.assertEquals(X509CertificateCache.getX509Digest(cert, "SHA-256"),
+                X509Support.getX509Digest(cert, "SHA-256"));
+    }
+
+    @Test
+    public void testBounded() throws Exception {
+        X509CertificateCache.setMaximumSize(1);
+
+        X509Certificate cert = X509CertificateCache.decodeCertificate(base64Cert);
+        String chunked = Base64Support.encode(cert.getEncoded(), Base64Support.CHUNKED);
+        Assert.assertNotEquals(chunked, base64Cert);
+
+        X509Certificate other = X509CertificateCache.decodeCertificate(chunked);
+        Assert.assertNotSame(other, cert);
+        Assert.assertSame(X509CertificateCache.decodeCertificate(chunked), other);
+        Assert.assertNotSame(X509CertificateCache.decodeCertificate(base64Cert), cert);
+    }
+
+}
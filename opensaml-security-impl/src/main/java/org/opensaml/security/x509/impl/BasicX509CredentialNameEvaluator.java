@@ -36,6 +36,7 @@ import net.shibboleth.utilities.java.support.logic.Constraint;
 import org.opensaml.security.SecurityException;
 import org.opensaml.security.x509.InternalX500DNHandler;
 import org.opensaml.security.x509.X500DNHandler;
+import org.opensaml.security.x509.X509CertificateCache;
 import org.opensaml.security.x509.X509Credential;
 import org.opensaml.security.x509.X509Support;
 import org.slf4j.Logger;
@@ -314,8 +315,7 @@ public class BasicX509CredentialNameEvaluator implements X509CredentialNameEvalu
             @Nonnull final Set<String> trustedNames) {
         
         log.debug("Processing subject DN common name");
-        X500Principal subjectPrincipal = certificate.getSubjectX500Principal();
-        List<String> commonNames = X509Support.getCommonNames(subjectPrincipal);
+        List<String> commonNames = X509CertificateCache.getCommonNames(certificate);
         if (commonNames == null || commonNames.isEmpty()) {
             return false;
         }
@@ -385,7 +385,7 @@ public class BasicX509CredentialNameEvaluator implements X509CredentialNameEvalu
         log.debug("Processing subject alt names");
         Integer[] nameTypes = new Integer[getSubjectAltNameTypes().size()];
         getSubjectAltNameTypes().toArray(nameTypes);
-        List altNames = X509Support.getAltNames(certificate, nameTypes);
+        List altNames = X509CertificateCache.getAltNames(certificate, nameTypes);
 
         if (altNames != null) {
             log.debug("Extracted subject alt names from certificate: {}", altNames);
@@ -32,15 +32,21 @@ import java.security.cert.X509CRL;
 import java.security.cert.X509CertSelector;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import net.shibboleth.utilities.java.support.annotation.constraint.NonNegative;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 
 import org.opensaml.security.SecurityException;
@@ -49,6 +55,7 @@ import org.opensaml.security.x509.PKIXTrustEvaluator;
 import org.opensaml.security.x509.PKIXValidationInformation;
 import org.opensaml.security.x509.PKIXValidationOptions;
 import org.opensaml.security.x509.X500DNHandler;
+import org.opensaml.security.x509.X509CertificateCache;
 import org.opensaml.security.x509.X509Credential;
 import org.opensaml.security.x509.X509Support;
 import org.slf4j.Logger;
@@ -56,9 +63,24 @@ import org.slf4j.LoggerFactory;
 
 /**
  * An implementation of {@link PKIXTrustEvaluator} that is based on the Java CertPath API.
+ * 
+ * <p>Successful validations may be cached with {@link #setValidationCacheTTL(long)}, so that repeated evaluations of
+ * the same end-entity certificate against the same {@link PKIXValidationInformation} skip path building. A cached
+ * validation is used only while the validation information still holds equal trust anchors and CRLs, in the same
+ * order, and the validation options are unchanged, even if either was modified in place. It is never used beyond the
+ * expiry of any certificate in the validated path or the next update of any CRL it was checked against.
+ * Credentials carrying CRLs of their own are not cached when
+ * {@link PKIXValidationOptions#isProcessCredentialCRLs()} is enabled.</p>
+ * 
+ * <p>When given {@link PrecompiledPKIXValidationInformation}, the trust anchors, the emptiness of its CRLs and
+ * whether it has any CRLs at all are taken from the precompiled information rather than derived on each evaluation,
+ * unless a subclass overrides the method that would otherwise derive them.</p>
  */
 public class CertPathPKIXTrustEvaluator implements PKIXTrustEvaluator {
 
+    /** JCA algorithm of the end-entity certificate digest keying cached validations. */
+    private static final String CACHE_DIGEST_ALGORITHM = "SHA-256";
+
     /** Class logger. */
     private final Logger log = LoggerFactory.getLogger(CertPathPKIXTrustEvaluator.class);
     
@@ -71,6 +93,26 @@ public class CertPathPKIXTrustEvaluator implements PKIXTrustEvaluator {
     /** Options influencing processing behavior. */
     private PKIXValidationOptions options;
 
+    /** Lifetime in milliseconds of cached successful validations, or 0 to disable caching. */
+    private long validationCacheTTL;
+
+    /** Maximum number of cached successful validations. */
+    private int validationCacheSize = 1000;
+
+    /** Cached successful validations. */
+    @Nonnull private final ConcurrentMap<ValidationCacheKey, CachedValidation> validationCache =
+            new ConcurrentHashMap<>();
+
+    /** Whether trust anchors are built by this class, so that precompiled ones may be used instead. */
+    private final boolean defaultTrustAnchors = !isOverridden("buildTrustAnchor", X509Certificate.class);
+
+    /** Whether CRLs are filtered by this class, so that precomputed emptiness may be used. */
+    private final boolean defaultCRLFiltering =
+            !isOverridden("addCRLsToStoreMaterial", List.class, Collection.class, Date.class);
+
+    /** Whether the presence of CRLs is determined by this class, so that precomputed presence may be used. */
+    private final boolean defaultCRLDetection = !isOverridden("storeContainsCRLs", CertStore.class);
+
     /** Constructor. */
     public CertPathPKIXTrustEvaluator() {
         options = new PKIXValidationOptions();
@@ -99,6 +141,52 @@ public class CertPathPKIXTrustEvaluator implements PKIXTrustEvaluator {
      */
     public void setPKIXValidationOptions(@Nonnull final PKIXValidationOptions newOptions) {
         options = Constraint.isNotNull(newOptions, "PKIXValidationOptions cannot be null");
+        validationCache.clear();
+    }
+
+    /**
+     * Get the lifetime of cached successful validations.
+     * 
+     * @return lifetime in milliseconds, or 0 if caching is disabled
+     */
+    @NonNegative public long getValidationCacheTTL() {
+        return validationCacheTTL;
+    }
+
+    /**
+     * Set the lifetime of cached successful validations. Caching is disabled by default.
+     * 
+     * @param ttl lifetime in milliseconds, or 0 to disable caching
+     */
+    public void setValidationCacheTTL(@NonNegative final long ttl) {
+        validationCacheTTL = Constraint.isGreaterThanOrEqual(0, ttl, "Validation cache TTL must be non-negative");
+        validationCache.clear();
+    }
+
+    /**
+     * Get the maximum number of cached successful validations.
+     * 
+     * @return maximum number of cached validations
+     */
+    @Positive public int getValidationCacheSize() {
+        return validationCacheSize;
+    }
+
+    /**
+     * Set the maximum number of cached successful validations. Defaults to 1000.
+     * 
+     * @param size maximum number of cached validations
+     */
+    public void setValidationCacheSize(@Positive final int size) {
+        validationCacheSize = (int) Constraint.isGreaterThan(0, size, "Validation cache size must be positive");
+        validationCache.clear();
+    }
+
+    /**
+     * Discard all cached successful validations, e.g. to release the validation information they refer to.
+     */
+    public void clearValidationCache() {
+        validationCache.clear();
     }
 
     /**
@@ -132,6 +220,21 @@ public class CertPathPKIXTrustEvaluator implements PKIXTrustEvaluator {
                     X509Support.getIdentifiersToken(untrustedCredential, getX500DNHandler()));
         }        
         
+        final ValidationCacheKey cacheKey = getValidationCacheKey(validationInfo, untrustedCredential);
+        if (cacheKey != null) {
+            final CachedValidation cached = validationCache.get(cacheKey);
+            if (cached != null) {
+                if (cached.isValidFor(validationInfo, options, System.currentTimeMillis())) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("PKIX validation succeeded from cache for untrusted credential: {}",
+                                X509Support.getIdentifiersToken(untrustedCredential, getX500DNHandler()));
+                    }
+                    return true;
+                }
+                validationCache.remove(cacheKey, cached);
+            }
+        }
+
         try {
             PKIXBuilderParameters params = getPKIXBuilderParameters(validationInfo, untrustedCredential);
 
@@ -143,7 +246,10 @@ public class CertPathPKIXTrustEvaluator implements PKIXTrustEvaluator {
                 logCertPathDebug(buildResult, untrustedCredential.getEntityCertificate());
                 log.debug("PKIX validation succeeded for untrusted credential: {}",
                         X509Support.getIdentifiersToken(untrustedCredential, getX500DNHandler()));
-            }            
+            }
+            if (cacheKey != null) {
+                cacheValidation(cacheKey, validationInfo, buildResult, params.isRevocationEnabled());
+            }
             return true;
 
         } catch (CertPathBuilderException e) {
@@ -162,6 +268,79 @@ public class CertPathPKIXTrustEvaluator implements PKIXTrustEvaluator {
         }
     }
 
+    /**
+     * Get the key under which a successful validation of the given credential is cached.
+     * 
+     * @param validationInfo PKIX validation information
+     * @param untrustedCredential credential to be validated
+     * 
+     * @return the cache key, or null if the validation is not to be cached
+     * 
+     * @throws SecurityException thrown if the entity certificate cannot be digested
+     */
+    @Nullable private ValidationCacheKey getValidationCacheKey(@Nonnull final PKIXValidationInformation validationInfo,
+            @Nonnull final X509Credential untrustedCredential) throws SecurityException {
+        if (validationCacheTTL == 0) {
+            return null;
+        }
+        final Collection<X509CRL> credentialCRLs = untrustedCredential.getCRLs();
+        if (credentialCRLs != null && !credentialCRLs.isEmpty() && options.isProcessCredentialCRLs()) {
+            log.trace("Untrusted credential carries CRLs, validation will not be cached");
+            return null;
+        }
+        try {
+            return new ValidationCacheKey(validationInfo, X509CertificateCache.getX509Digest(
+                    untrustedCredential.getEntityCertificate(), CACHE_DIGEST_ALGORITHM));
+        } catch (final GeneralSecurityException e) {
+            log.error("Unable to digest entity certificate for validation cache", e);
+            throw new SecurityException("Unable to digest entity certificate for validation cache", e);
+        }
+    }
+
+    /**
+     * Cache a successful validation until the earliest of the cache lifetime, the expiry of any certificate in the
+     * validated path, and the next update of any CRL it may have been checked against.
+     * 
+     * @param cacheKey the key to cache the validation under
+     * @param validationInfo PKIX validation information
+     * @param buildResult the result of building the validated path
+     * @param revocationEnabled whether the path was checked against the CRLs
+     */
+    private void cacheValidation(@Nonnull final ValidationCacheKey cacheKey,
+            @Nonnull final PKIXValidationInformation validationInfo,
+            @Nonnull final PKIXCertPathBuilderResult buildResult, final boolean revocationEnabled) {
+        final long now = System.currentTimeMillis();
+        long expiration = now + validationCacheTTL;
+
+        for (final Certificate cert : buildResult.getCertPath().getCertificates()) {
+            if (cert instanceof X509Certificate) {
+                expiration = Math.min(expiration, ((X509Certificate) cert).getNotAfter().getTime());
+            }
+        }
+        final X509Certificate anchorCert = buildResult.getTrustAnchor().getTrustedCert();
+        if (anchorCert != null) {
+            expiration = Math.min(expiration, anchorCert.getNotAfter().getTime());
+        }
+        final Collection<X509CRL> crls = validationInfo.getCRLs();
+        if (revocationEnabled && crls != null) {
+            for (final X509CRL crl : crls) {
+                if (crl.getNextUpdate() != null) {
+                    expiration = Math.min(expiration, crl.getNextUpdate().getTime());
+                }
+            }
+        }
+
+        if (expiration <= now) {
+            log.trace("Validated path expires immediately, validation will not be cached");
+            return;
+        }
+        if (validationCache.size() >= validationCacheSize) {
+            // Crude but cheap bound; entries are repopulated by the next validation of each credential
+            validationCache.clear();
+        }
+        validationCache.put(cacheKey, new CachedValidation(validationInfo, options, expiration));
+    }
+
     /**
      * Creates the set of PKIX builder parameters to use when building the cert path builder.
      * 
@@ -211,7 +390,7 @@ public class CertPathPKIXTrustEvaluator implements PKIXTrustEvaluator {
             log.trace("PKIXBuilderParameters#setRevocationEnabled is being forced to: {}", forcedRevocation);
             params.setRevocationEnabled(forcedRevocation);
         } else {
-            if (storeContainsCRLs(certStore)) {
+            if (containsCRLs(validationInfo, untrustedCredential, certStore)) {
                 log.trace("At least one CRL was present in cert store, enabling revocation checking");
                 params.setRevocationEnabled(true);
             } else {
@@ -234,6 +413,27 @@ public class CertPathPKIXTrustEvaluator implements PKIXTrustEvaluator {
         return params;
     }
 
+    /**
+     * Determine whether there are any CRLs in the {@link CertStore} that is to be used, without examining the store
+     * if precompiled validation information shows that it can contain none.
+     * 
+     * @param validationInfo PKIX validation information
+     * @param untrustedCredential credential to be validated
+     * @param certStore the cert store that will be used for validation
+     * @return true iff the store contains at least 1 CRL instance
+     */
+    private boolean containsCRLs(@Nonnull final PKIXValidationInformation validationInfo,
+            @Nonnull final X509Credential untrustedCredential, @Nonnull final CertStore certStore) {
+        if (defaultCRLDetection && validationInfo instanceof PrecompiledPKIXValidationInformation
+                && !((PrecompiledPKIXValidationInformation) validationInfo).hasCRLs()) {
+            final Collection<X509CRL> credentialCRLs = untrustedCredential.getCRLs();
+            if (credentialCRLs == null || credentialCRLs.isEmpty() || !options.isProcessCredentialCRLs()) {
+                return false;
+            }
+        }
+        return storeContainsCRLs(certStore);
+    }
+
     /**
      * Determine whether there are any CRL's in the {@link CertStore} that is to be used.
      * 
@@ -278,6 +478,11 @@ public class CertPathPKIXTrustEvaluator implements PKIXTrustEvaluator {
      * @return trust anchors to use during validation
      */
     @Nullable protected Set<TrustAnchor> getTrustAnchors(@Nonnull final PKIXValidationInformation validationInfo) {
+        if (defaultTrustAnchors && validationInfo instanceof PrecompiledPKIXValidationInformation) {
+            log.trace("Using precompiled trust anchors for PKIX validation");
+            return ((PrecompiledPKIXValidationInformation) validationInfo).getTrustAnchors();
+        }
+
         Collection<X509Certificate> validationCertificates = validationInfo.getCertificates();
         if (validationCertificates == null || validationCertificates.isEmpty()) {
             return null;
@@ -343,7 +548,12 @@ public class CertPathPKIXTrustEvaluator implements PKIXTrustEvaluator {
         Collection<X509CRL> crls = validationInfo.getCRLs();
         if (crls != null && !crls.isEmpty()) {
             log.trace("Processing CRLs from PKIX info set");
-            addCRLsToStoreMaterial(storeMaterial, crls, now);
+            if (defaultCRLFiltering && validationInfo instanceof PrecompiledPKIXValidationInformation) {
+                addCRLsToStoreMaterial(storeMaterial, crls,
+                        ((PrecompiledPKIXValidationInformation) validationInfo).getEmptyCRLs(), now);
+            } else {
+                addCRLsToStoreMaterial(storeMaterial, crls, now);
+            }
         }        
         
         crls = untrustedCredential.getCRLs();
@@ -366,9 +576,25 @@ public class CertPathPKIXTrustEvaluator implements PKIXTrustEvaluator {
      */
     protected void addCRLsToStoreMaterial(@Nonnull final List<Object> storeMaterial,
             @Nonnull final Collection<X509CRL> crls, @Nonnull final Date now) {
+        addCRLsToStoreMaterial(storeMaterial, crls, null, now);
+    }
+
+    /**
+     * Add CRLs from the specified collection to the list of certs and CRLs being collected
+     * for the CertStore.
+     * 
+     * @param storeMaterial list of certs and CRLs to be updated.
+     * @param crls collection of CRLs to be processed
+     * @param emptyCRLs the CRLs known to be empty, or null to examine each CRL
+     * @param now current date/time
+     */
+    private void addCRLsToStoreMaterial(@Nonnull final List<Object> storeMaterial,
+            @Nonnull final Collection<X509CRL> crls, @Nullable final Set<X509CRL> emptyCRLs,
+            @Nonnull final Date now) {
         
         for (X509CRL crl : crls) {
-            boolean isEmpty = crl.getRevokedCertificates() == null || crl.getRevokedCertificates().isEmpty();
+            boolean isEmpty = emptyCRLs != null ? emptyCRLs.contains(crl)
+                    : crl.getRevokedCertificates() == null || crl.getRevokedCertificates().isEmpty();
             boolean isExpired = crl.getNextUpdate().before(now);
             if (!isEmpty || options.isProcessEmptyCRLs()) {
                 if (!isExpired || options.isProcessExpiredCRLs()) {
@@ -426,4 +652,235 @@ public class CertPathPKIXTrustEvaluator implements PKIXTrustEvaluator {
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * Get whether a subclass overrides a method of this class.
+     * 
+     * @param name name of the method
+     * @param parameterTypes parameter types of the method
+     * 
+     * @return true iff a class between this instance's class and this class declares the method
+     */
+    private boolean isOverridden(@Nonnull final String name, @Nonnull final Class<?>... parameterTypes) {
+        for (Class<?> clazz = getClass(); clazz != CertPathPKIXTrustEvaluator.class; clazz = clazz.getSuperclass()) {
+            try {
+                clazz.getDeclaredMethod(name, parameterTypes);
+                return true;
+            } catch (final NoSuchMethodException e) {
+                // Not declared at this level
+            }
+        }
+        return false;
+    }
+
+    /** Key of a cached validation: the validation information and a digest of the end-entity certificate. */
+    private static final class ValidationCacheKey {
+
+        /** Validation information, compared by identity. */
+        @Nonnull private final PKIXValidationInformation validationInfo;
+
+        /** Digest of the end-entity certificate. */
+        @Nonnull private final byte[] certificateDigest;
+
+        /** Precomputed hash code. */
+        private final int hashCode;
+
+        /**
+         * Constructor.
+         * 
+         * @param info validation information
+         * @param digest digest of the end-entity certificate
+         */
+        ValidationCacheKey(@Nonnull final PKIXValidationInformation info, @Nonnull final byte[] digest) {
+            validationInfo = info;
+            certificateDigest = digest;
+            hashCode = 31 * System.identityHashCode(info) + Arrays.hashCode(digest);
+        }
+
+        /** {@inheritDoc} */
+        public int hashCode() {
+            return hashCode;
+        }
+
+        /** {@inheritDoc} */
+        public boolean equals(final Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof ValidationCacheKey)) {
+                return false;
+            }
+            final ValidationCacheKey other = (ValidationCacheKey) obj;
+            return validationInfo == other.validationInfo
+                    && Arrays.equals(certificateDigest, other.certificateDigest);
+        }
+    }
+
+    /**
+     * A cached successful validation, with the state of the validation information and options it was made against.
+     */
+    private static final class CachedValidation {
+
+        /** Trust anchors of the validation information, in iteration order, or null. */
+        @Nullable private final Object[] anchors;
+
+        /** CRLs of the validation information, in iteration order, or null. */
+        @Nullable private final Object[] crls;
+
+        /** Verification depth of the validation information. */
+        @Nullable private final Integer verificationDepth;
+
+        /** State of the validation options. */
+        @Nonnull private final OptionsState optionsState;
+
+        /** Time in milliseconds at which the entry expires. */
+        private final long expiration;
+
+        /**
+         * Constructor.
+         * 
+         * @param info validation information the validation was made against
+         * @param options validation options the validation was made with
+         * @param exp expiration time in milliseconds
+         */
+        CachedValidation(@Nonnull final PKIXValidationInformation info, @Nonnull final PKIXValidationOptions options,
+                final long exp) {
+            final Collection<X509Certificate> infoAnchors = info.getCertificates();
+            anchors = infoAnchors != null ? infoAnchors.toArray() : null;
+            final Collection<X509CRL> infoCRLs = info.getCRLs();
+            crls = infoCRLs != null ? infoCRLs.toArray() : null;
+            verificationDepth = info.getVerificationDepth();
+            optionsState = new OptionsState(options);
+            expiration = exp;
+        }
+
+        /**
+         * Get whether the cached validation still holds for the given validation information and options.
+         * 
+         * <p>Trust anchors and CRLs are compared with {@link Object#equals(Object)}, that is by encoding, which is
+         * cheap for the unchanged instances of the usual case.</p>
+         * 
+         * @param info validation information
+         * @param options validation options
+         * @param now current time in milliseconds
+         * 
+         * @return true iff the entry has not expired and the trust anchors, CRLs and options are unchanged
+         */
+        boolean isValidFor(@Nonnull final PKIXValidationInformation info, @Nonnull final PKIXValidationOptions options,
+                final long now) {
+            return now < expiration && Objects.equals(info.getVerificationDepth(), verificationDepth)
+                    && optionsState.matches(options) && sameContents(info.getCertificates(), anchors)
+                    && sameContents(info.getCRLs(), crls);
+        }
+
+        /**
+         * Get whether a collection holds elements equal to those of a snapshot, in the same order.
+         * 
+         * @param current the collection, or null
+         * @param snapshot the snapshot, or null
+         * 
+         * @return true iff both are null, or the collection has the same elements in the same order
+         */
+        private static boolean sameContents(@Nullable final Collection<?> current, @Nullable final Object[] snapshot) {
+            if (current == null || snapshot == null) {
+                return current == null && snapshot == null;
+            } else if (current.size() != snapshot.length) {
+                return false;
+            }
+            int i = 0;
+            for (final Object element : current) {
+                if (i >= snapshot.length || !Objects.equals(element, snapshot[i++])) {
+                    return false;
+                }
+            }
+            return i == snapshot.length;
+        }
+    }
+
+    /** The settings of {@link PKIXValidationOptions} which affect the outcome of a validation. */
+    private static final class OptionsState {
+
+        /** Whether empty CRLs are processed. */
+        private final boolean processEmptyCRLs;
+
+        /** Whether expired CRLs are processed. */
+        private final boolean processExpiredCRLs;
+
+        /** Whether CRLs carried by the credential are processed. */
+        private final boolean processCredentialCRLs;
+
+        /** Default verification depth. */
+        @Nullable private final Integer defaultVerificationDepth;
+
+        /** Whether the options are {@link CertPathPKIXValidationOptions}. */
+        private final boolean certPathOptions;
+
+        /** Whether the revocation checking setting is forced. */
+        private final boolean forceRevocationEnabled;
+
+        /** The forced revocation checking setting. */
+        private final boolean revocationEnabled;
+
+        /** Whether policy mapping is inhibited. */
+        private final boolean policyMappingInhibited;
+
+        /** Whether the any-policy OID is inhibited. */
+        private final boolean anyPolicyInhibited;
+
+        /** Copy of the initial policies, or null. */
+        @Nullable private final Set<String> initialPolicies;
+
+        /**
+         * Constructor.
+         * 
+         * @param options the options to capture the state of
+         */
+        OptionsState(@Nonnull final PKIXValidationOptions options) {
+            processEmptyCRLs = options.isProcessEmptyCRLs();
+            processExpiredCRLs = options.isProcessExpiredCRLs();
+            processCredentialCRLs = options.isProcessCredentialCRLs();
+            defaultVerificationDepth = options.getDefaultVerificationDepth();
+            certPathOptions = options instanceof CertPathPKIXValidationOptions;
+            if (certPathOptions) {
+                final CertPathPKIXValidationOptions certPath = (CertPathPKIXValidationOptions) options;
+                forceRevocationEnabled = certPath.isForceRevocationEnabled();
+                revocationEnabled = certPath.isRevocationEnabled();
+                policyMappingInhibited = certPath.isPolicyMappingInhibited();
+                anyPolicyInhibited = certPath.isAnyPolicyInhibited();
+                initialPolicies = certPath.getInitialPolicies() != null
+                        ? new HashSet<>(certPath.getInitialPolicies()) : null;
+            } else {
+                forceRevocationEnabled = false;
+                revocationEnabled = false;
+                policyMappingInhibited = false;
+                anyPolicyInhibited = false;
+                initialPolicies = null;
+            }
+        }
+
+        /**
+         * Get whether the given options are in the captured state.
+         * 
+         * @param options the options
+         * 
+         * @return true iff the settings affecting validation are unchanged
+         */
+        boolean matches(@Nonnull final PKIXValidationOptions options) {
+            if (options.isProcessEmptyCRLs() != processEmptyCRLs
+                    || options.isProcessExpiredCRLs() != processExpiredCRLs
+                    || options.isProcessCredentialCRLs() != processCredentialCRLs
+                    || !Objects.equals(options.getDefaultVerificationDepth(), defaultVerificationDepth)
+                    || (options instanceof CertPathPKIXValidationOptions) != certPathOptions) {
+                return false;
+            } else if (!certPathOptions) {
+                return true;
+            }
+            final CertPathPKIXValidationOptions certPath = (CertPathPKIXValidationOptions) options;
+            return certPath.isForceRevocationEnabled() == forceRevocationEnabled
+                    && certPath.isRevocationEnabled() == revocationEnabled
+                    && certPath.isPolicyMappingInhibited() == policyMappingInhibited
+                    && certPath.isAnyPolicyInhibited() == anyPolicyInhibited
+                    && Objects.equals(certPath.getInitialPolicies(), initialPolicies);
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.security.x509.impl;
+
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+import org.opensaml.security.x509.PKIXValidationInformation;
+
+/**
+ * An immutable implementation of {@link PKIXValidationInformation} which precomputes, once, the material that
+ * {@link CertPathPKIXTrustEvaluator} otherwise derives from the certificates and CRLs on every evaluation: the set
+ * of {@link TrustAnchor}s, and which CRLs are empty.
+ * 
+ * <p>The certificates and CRLs are copied on construction, so later changes to the source collections are not
+ * reflected. A new instance is expected to be built whenever the trust material changes.</p>
+ */
+public class PrecompiledPKIXValidationInformation implements PKIXValidationInformation {
+
+    /** Certs used as the trust anchors. */
+    @Nonnull private final List<X509Certificate> certificates;
+
+    /** CRLs used during validation. */
+    @Nonnull private final List<X509CRL> crls;
+
+    /** Max verification depth during PKIX validation. */
+    @Nullable private final Integer verificationDepth;
+
+    /** Trust anchors built from the certificates. */
+    @Nonnull private final Set<TrustAnchor> trustAnchors;
+
+    /** The CRLs which contain no revoked certificates. */
+    @Nonnull private final Set<X509CRL> emptyCRLs;
+
+    /**
+     * Constructor.
+     * 
+     * @param info PKIX validation information to precompile
+     */
+    public PrecompiledPKIXValidationInformation(@Nonnull final PKIXValidationInformation info) {
+        this(Constraint.isNotNull(info, "PKIXValidationInformation cannot be null").getCertificates(),
+                info.getCRLs(), info.getVerificationDepth());
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param anchors certs used as trust anchors during validation
+     * @param crlList CRLs used during validation
+     * @param depth max verification path depth
+     */
+    public PrecompiledPKIXValidationInformation(@Nullable final Collection<X509Certificate> anchors,
+            @Nullable final Collection<X509CRL> crlList, @Nullable final Integer depth) {
+        verificationDepth = depth;
+
+        if (anchors != null && !anchors.isEmpty()) {
+            certificates = Collections.unmodifiableList(new ArrayList<>(anchors));
+            final Set<TrustAnchor> anchorSet = new LinkedHashSet<>(certificates.size());
+            for (final X509Certificate cert : certificates) {
+                anchorSet.add(new TrustAnchor(cert, null));
+            }
+            trustAnchors = Collections.unmodifiableSet(anchorSet);
+        } else {
+            certificates = Collections.emptyList();
+            trustAnchors = Collections.emptySet();
+        }
+
+        if (crlList != null && !crlList.isEmpty()) {
+            crls = Collections.unmodifiableList(new ArrayList<>(crlList));
+            final Set<X509CRL> empty = Collections.newSetFromMap(new IdentityHashMap<X509CRL, Boolean>());
+            for (final X509CRL crl : crls) {
+                if (crl.getRevokedCertificates() == null || crl.getRevokedCertificates().isEmpty()) {
+                    empty.add(crl);
+                }
+            }
+            emptyCRLs = Collections.unmodifiableSet(empty);
+        } else {
+            crls = Collections.emptyList();
+            emptyCRLs = Collections.emptySet();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public Collection<X509CRL> getCRLs() {
+        return crls;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public Collection<X509Certificate> getCertificates() {
+        return certificates;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nullable public Integer getVerificationDepth() {
+        return verificationDepth;
+    }
+
+    /**
+     * Get the trust anchors built from the certificates, each without name constraints.
+     * 
+     * @return the trust anchors
+     */
+    @Nonnull public Set<TrustAnchor> getTrustAnchors() {
+        return trustAnchors;
+    }
+
+    /**
+     * Get the CRLs which contain no revoked certificates.
+     * 
+     * <p>The set compares CRLs by identity, and so only answers for the instances returned by {@link #getCRLs()}.</p>
+     * 
+     * @return the empty CRLs
+     */
+    @Nonnull public Set<X509CRL> getEmptyCRLs() {
+        return emptyCRLs;
+    }
+
+    /**
+     * Get whether there are any CRLs.
+     * 
+     * @return true iff at least one CRL is present
+     */
+    public boolean hasCRLs() {
+        return !crls.isEmpty();
+    }
+
+}
@@ -39,6 +39,10 @@ import com.google.common.collect.ImmutableSet;
 /**
  * An implementation of {@link PKIXValidationInformationResolver} which always returns a static, fixed set of
  * information.
+ * 
+ * <p>The information is precompiled on construction into {@link PrecompiledPKIXValidationInformation}, so that
+ * evaluations against it reuse the same trust anchors. Changes made afterwards to the supplied information are
+ * therefore not reflected.</p>
  */
 public class StaticPKIXValidationInformationResolver implements PKIXValidationInformationResolver {
 
@@ -75,7 +79,14 @@ public class StaticPKIXValidationInformationResolver implements PKIXValidationIn
     public StaticPKIXValidationInformationResolver(@Nullable final List<PKIXValidationInformation> info,
             @Nullable final Set<String> names, boolean supportDynamicNames) {
         if (info != null) {
-            pkixInfo = new ArrayList<>(info);
+            pkixInfo = new ArrayList<>(info.size());
+            for (final PKIXValidationInformation entry : info) {
+                if (entry instanceof PrecompiledPKIXValidationInformation) {
+                    pkixInfo.add(entry);
+                } else {
+                    pkixInfo.add(new PrecompiledPKIXValidationInformation(entry));
+                }
+            }
         } else {
             pkixInfo = Collections.EMPTY_LIST;
         }
@@ -21,6 +21,8 @@ import org.testng.annotations.Test;
 import org.testng.annotations.BeforeMethod;
 import org.testng.Assert;
 import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.cert.PKIXBuilderParameters;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.Collection;
@@ -372,6 +374,125 @@ public class CertPathPKIXTrustEvaluatorTest extends XMLObjectBaseTestCase {
         testValidateFailure("Intermediate CA with policy mapping, but mapping is inhibited", info, cred, opts);
     }    
     
+    @Test
+    public void testPrecompiled() {
+        cred = getCredential("foo-1A1-good.crt");
+        info = new PrecompiledPKIXValidationInformation(getPKIXInfoSet(
+                getCertificates("root1-ca.crt", "inter1A-ca.crt", "inter1A1-ca.crt"),
+                EMPTY_CRLS,
+                MAX_DEPTH ));
+        Assert.assertEquals(((PrecompiledPKIXValidationInformation) info).getTrustAnchors().size(), 3);
+        testValidateSuccess("Valid path was specified, precompiled", info, cred);
+
+        cred = getCredential("foo-1A1-revoked.crt");
+        ((BasicX509Credential)cred).setCRLs(getCRLS("inter1A1-v2.crl"));
+        testValidateFailure("Specified certificate was revoked, CRL from credential with precompiled info", info, cred);
+
+        cred = getCredential("foo-1A1-revoked.crt");
+        info = new PrecompiledPKIXValidationInformation(
+                getCertificates("root1-ca.crt", "inter1A-ca.crt", "inter1A1-ca.crt"),
+                getCRLS("inter1A1-v1.crl"),
+                MAX_DEPTH );
+        Assert.assertTrue(((PrecompiledPKIXValidationInformation) info).getEmptyCRLs().isEmpty());
+        testValidateFailure("Specified certificate was revoked, precompiled V1 CRL was processed", info, cred);
+
+        cred = getCredential("foo-1A1-good.crt");
+        info = new PrecompiledPKIXValidationInformation(
+                getCertificates("inter1A1-ca.crt"),
+                getCRLS("inter1A1-v1-empty.crl"),
+                MAX_DEPTH );
+        Assert.assertEquals(((PrecompiledPKIXValidationInformation) info).getEmptyCRLs().size(), 1);
+        testValidateSuccess("Certificate was valid, precompiled empty V1 CRL was processed", info, cred);
+
+        info = new PrecompiledPKIXValidationInformation(EMPTY_ANCHORS, EMPTY_CRLS, MAX_DEPTH);
+        testValidateProcessingError("No trust anchors specified, precompiled", info, cred);
+    }
+
+    @Test
+    public void testValidationCache() throws SecurityException {
+        final int[] builds = new int[1];
+        CertPathPKIXTrustEvaluator evaluator = new CertPathPKIXTrustEvaluator() {
+            protected PKIXBuilderParameters getPKIXBuilderParameters(PKIXValidationInformation validationInfo,
+                    X509Credential untrustedCredential) throws GeneralSecurityException {
+                builds[0]++;
+                return super.getPKIXBuilderParameters(validationInfo, untrustedCredential);
+            }
+        };
+        Collection<X509Certificate> anchors = getCertificates("root1-ca.crt", "inter1A-ca.crt", "inter1A1-ca.crt");
+        info = getPKIXInfoSet(anchors, EMPTY_CRLS, MAX_DEPTH);
+
+        Assert.assertTrue(evaluator.validate(info, getCredential("foo-1A1-good.crt")));
+        Assert.assertTrue(evaluator.validate(info, getCredential("foo-1A1-good.crt")));
+        Assert.assertEquals(builds[0], 2, "Validation was cached while caching was disabled");
+
+        evaluator.setValidationCacheTTL(60000);
+        Assert.assertTrue(evaluator.validate(info, getCredential("foo-1A1-good.crt")));
+        Assert.assertTrue(evaluator.validate(info, getCredential("foo-1A1-good.crt")));
+        Assert.assertEquals(builds[0], 3, "Validation was not cached");
+
+        Assert.assertTrue(evaluator.validate(getPKIXInfoSet(anchors, EMPTY_CRLS, MAX_DEPTH),
+                getCredential("foo-1A1-good.crt")));
+        Assert.assertEquals(builds[0], 4, "Validation was cached across validation information");
+
+        anchors.remove(getCertificate("inter1A1-ca.crt"));
+        Assert.assertFalse(evaluator.validate(info, getCredential("foo-1A1-good.crt")),
+                "Cached validation was used after the trust anchors changed");
+        Assert.assertEquals(builds[0], 5);
+
+        anchors.add(getCertificate("inter1A1-ca.crt"));
+        Assert.assertTrue(evaluator.validate(info, getCredential("foo-1A1-good.crt")));
+        evaluator.clearValidationCache();
+        Assert.assertTrue(evaluator.validate(info, getCredential("foo-1A1-good.crt")));
+        Assert.assertEquals(builds[0], 7, "Validation was cached after the cache was cleared");
+    }
+
+    @Test
+    public void testValidationCacheInPlaceChanges() throws SecurityException {
+        final int[] builds = new int[1];
+        CertPathPKIXValidationOptions options = new CertPathPKIXValidationOptions();
+        CertPathPKIXTrustEvaluator evaluator = new CertPathPKIXTrustEvaluator(options) {
+            protected PKIXBuilderParameters getPKIXBuilderParameters(PKIXValidationInformation validationInfo,
+                    X509Credential untrustedCredential) throws GeneralSecurityException {
+                builds[0]++;
+                return super.getPKIXBuilderParameters(validationInfo, untrustedCredential);
+            }
+        };
+        evaluator.setValidationCacheTTL(60000);
+        Collection<X509Certificate> anchors = getCertificates("root1-ca.crt", "inter1A-ca.crt", "inter1A1-ca.crt");
+        info = getPKIXInfoSet(anchors, new HashSet<X509CRL>(), MAX_DEPTH);
+
+        Assert.assertTrue(evaluator.validate(info, getCredential("foo-1A1-good.crt")));
+        Assert.assertTrue(evaluator.validate(info, getCredential("foo-1A1-good.crt")));
+        Assert.assertEquals(builds[0], 1, "Validation was not cached");
+
+        options.setProcessEmptyCRLs(!options.isProcessEmptyCRLs());
+        Assert.assertTrue(evaluator.validate(info, getCredential("foo-1A1-good.crt")));
+        Assert.assertEquals(builds[0], 2, "Cached validation was used after the options changed");
+
+        options.setInitialPolicies(new HashSet<String>());
+        Assert.assertTrue(evaluator.validate(info, getCredential("foo-1A1-good.crt")));
+        Assert.assertEquals(builds[0], 3, "Cached validation was used after the initial policies changed");
+        options.getInitialPolicies().add("1.3.6.1.4.1.32473.2011.6.20");
+        evaluator.validate(info, getCredential("foo-1A1-good.crt"));
+        Assert.assertEquals(builds[0], 4, "Cached validation was used after the initial policies were modified");
+        options.setInitialPolicies(null);
+
+        Assert.assertTrue(evaluator.validate(info, getCredential("foo-1A1-good.crt")));
+        Assert.assertEquals(builds[0], 5);
+        anchors.remove(getCertificate("inter1A1-ca.crt"));
+        anchors.add(getCertificate("root2-ca.crt"));
+        Assert.assertFalse(evaluator.validate(info, getCredential("foo-1A1-good.crt")),
+                "Cached validation was used after a trust anchor was replaced");
+        Assert.assertEquals(builds[0], 6);
+
+        anchors.remove(getCertificate("root2-ca.crt"));
+        anchors.add(getCertificate("inter1A1-ca.crt"));
+        Assert.assertTrue(evaluator.validate(info, getCredential("foo-1A1-good.crt")));
+        info.getCRLs().add(getCRL("inter1A1-v1-empty.crl"));
+        Assert.assertTrue(evaluator.validate(info, getCredential("foo-1A1-good.crt")));
+        Assert.assertEquals(builds[0], 8, "Cached validation was used after a CRL was added");
+    }
+
     /********************
      * Helper methods.  *
      ********************/
@@ -44,6 +44,7 @@ public class StaticPKIXValidationInformationResolverTest {
         
         Assert.assertTrue(resolver.resolve(null).iterator().hasNext());
         Assert.assertTrue(resolver.resolve(new CriteriaSet()).iterator().hasNext());
+        Assert.assertTrue(resolver.resolveSingle(null) instanceof PrecompiledPKIXValidationInformation);
         
         Assert.assertTrue(resolver.supportsTrustedNameResolution());
         
@@ -23,6 +23,7 @@ import java.util.List;
 import javax.annotation.Nonnull;
 import javax.servlet.http.HttpServletResponse;
 
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 import net.shibboleth.utilities.java.support.net.HttpServletSupport;
 import net.shibboleth.utilities.java.support.xml.SerializeSupport;
@@ -30,6 +31,8 @@ import net.shibboleth.utilities.java.support.xml.SerializeSupport;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.XMLObjectBuilderFactory;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.util.XMLObjectSupport;
 import org.opensaml.messaging.context.MessageContext;
 import org.opensaml.messaging.encoder.MessageEncodingException;
 import org.opensaml.messaging.encoder.servlet.BaseHttpServletResponseXMLMessageEncoder;
@@ -62,6 +65,9 @@ public class HTTPSOAP11Encoder<MessageType extends XMLObject>
     /** SOAP Body builder. */
     private SOAPObjectBuilder<Body> bodyBuilder;
     
+    /** Whether to write the envelope directly to the response without marshalling it to a DOM. */
+    private boolean streamingMarshalling;
+    
     /** Constructor. */
     public HTTPSOAP11Encoder() {
         super();
@@ -73,6 +79,30 @@ public class HTTPSOAP11Encoder<MessageType extends XMLObject>
         Constraint.isNotNull(bodyBuilder, "Body Builder cannot be null");
     }
     
+    /**
+     * Get whether to write the envelope directly to the response without marshalling it to a DOM.
+     * 
+     * @return whether to use streaming marshalling
+     */
+    public boolean isStreamingMarshalling() {
+        return streamingMarshalling;
+    }
+
+    /**
+     * Set whether to write the envelope directly to the response without marshalling it to a DOM.
+     * 
+     * <p>Any part of the message with a cached DOM, such as a signed payload, is written out from that DOM. As the
+     * response is committed before the envelope is marshalled, a marshalling failure results in a truncated response
+     * rather than in the response being left for error handling. Defaults to false.</p>
+     * 
+     * @param flag whether to use streaming marshalling
+     */
+    public void setStreamingMarshalling(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        streamingMarshalling = flag;
+    }
+    
     /** {@inheritDoc} */
     public void prepareContext() throws MessageEncodingException {
         MessageContext<MessageType> messageContext = getMessageContext();
@@ -103,6 +133,11 @@ public class HTTPSOAP11Encoder<MessageType extends XMLObject>
     /** {@inheritDoc} */
     protected void doEncode() throws MessageEncodingException {
         Envelope envelope = getSOAPEnvelope();
+        if (streamingMarshalling) {
+            streamMessage(envelope);
+            return;
+        }
+        
         Element envelopeElem = marshallMessage(envelope);
         
         prepareHttpServletResponse();
@@ -114,6 +149,26 @@ public class HTTPSOAP11Encoder<MessageType extends XMLObject>
         }
     }
     
+    /**
+     * Write the SOAP envelope directly to the servlet response without marshalling it to a DOM.
+     * 
+     * @param envelope the SOAP envelope
+     * 
+     * @throws MessageEncodingException if the envelope cannot be marshalled or written
+     */
+    protected void streamMessage(@Nonnull final Envelope envelope) throws MessageEncodingException {
+        prepareHttpServletResponse();
+        
+        try {
+            XMLObjectSupport.streamMarshallToOutputStream(envelope, getHttpServletResponse().getOutputStream());
+        } catch (MarshallingException e) {
+            log.error("Error marshalling message", e);
+            throw new MessageEncodingException("Error marshalling message", e);
+        } catch (IOException e) {
+            throw new MessageEncodingException("Problem writing SOAP envelope to servlet output stream", e);
+        }
+    }
+    
     /**
      * Store the constructed SOAP envelope in the message context for later encoding.
      * 
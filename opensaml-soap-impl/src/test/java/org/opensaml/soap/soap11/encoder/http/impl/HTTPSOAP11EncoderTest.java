@@ -104,6 +104,51 @@ public class HTTPSOAP11EncoderTest extends XMLObjectBaseTestCase {
         XMLAssertTestNG.assertXMLIdentical(new Diff(controlEnv.getDOM().getOwnerDocument(), encodedEnv.getDOM().getOwnerDocument()), true);
     }
     
+    /**
+     * Test basic encoding of a message in an envelope, using payload-oriented messaging and streaming marshalling.
+     * 
+     * @throws ComponentInitializationException 
+     * @throws XMLParserException
+     * @throws UnmarshallingException
+     * @throws MessageEncodingException
+     * @throws UnsupportedEncodingException 
+     */
+    @Test
+    public void testStreamingEncodingAsPayload() throws ComponentInitializationException, MessageEncodingException, UnsupportedEncodingException, XMLParserException, UnmarshallingException {
+        XMLObjectBuilder<XSAny> xsAnyBuilder = getBuilder(XSAny.TYPE_NAME);
+        XSAny payload =  xsAnyBuilder.buildObject("http://example.org/soap/ns/message", "GetLastTradePriceResponse", "m");
+        
+        XSAny price =  xsAnyBuilder.buildObject("http://example.org/soap/ns/message", "Price", "m");
+        price.setTextContent("34.5");
+        
+        payload.getUnknownXMLObjects().add(price);
+        
+        MessageContext<XMLObject> messageContext = new MessageContext<>();
+        messageContext.setMessage(payload);
+        
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        
+        HTTPSOAP11Encoder<XMLObject> encoder = new HTTPSOAP11Encoder<>();
+        encoder.setMessageContext(messageContext);
+        encoder.setHttpServletResponse(response);
+        encoder.setStreamingMarshalling(true);
+        
+        encoder.initialize();
+        encoder.prepareContext();
+        encoder.encode();
+
+        Assert.assertEquals(response.getContentType(), "text/xml", "Unexpected content type");
+        Assert.assertEquals("UTF-8", response.getCharacterEncoding(), "Unexpected character encoding");
+        Assert.assertEquals(response.getStatus(), 200);
+        
+        Envelope encodedEnv = (Envelope) parseUnmarshallResourceByteArray(response.getContentAsByteArray(), false);
+        
+        String soapMessage = "/data/org/opensaml/soap/soap11/SOAPNoHeaders.xml";
+        Envelope controlEnv = (Envelope) parseUnmarshallResource(soapMessage, false);
+        
+        XMLAssertTestNG.assertXMLIdentical(new Diff(controlEnv.getDOM().getOwnerDocument(), encodedEnv.getDOM().getOwnerDocument()), true);
+    }
+    
     /**
      * Test basic encoding of a message in an envelope, using SOAP-message oriented messaging.
      * 
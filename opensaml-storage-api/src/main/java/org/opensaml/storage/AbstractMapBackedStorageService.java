@@ -93,7 +93,7 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
             log.trace("Inserted record '{}' in context '{}' with expiration '{}'",
                     new Object[] { key, context, expiration });
             
-            setDirty();
+            setDirty(context);
             return true;
             
         } finally {
@@ -176,7 +176,7 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
 
             final Map<String, MutableStorageRecord> dataMap = contextMap.get(context);
             if (dataMap != null) {    
-                setDirty();
+                setDirty(context);
                 Long now = System.currentTimeMillis();
                 for (MutableStorageRecord record : dataMap.values()) {
                     final Long exp = record.getExpiration();
@@ -199,7 +199,7 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
         
         try {
             writeLock.lock();
-            setDirty();
+            setDirty(context);
             getContextMap().remove(context);
         } finally {
             writeLock.unlock();
@@ -222,7 +222,7 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
             final Map<String, MutableStorageRecord> dataMap = contextMap.get(context);
             if (dataMap != null) {
                 if (reapWithLock(dataMap, System.currentTimeMillis())) {
-                    setDirty();
+                    setDirty(context);
                     if (dataMap.isEmpty()) {
                         contextMap.remove(context);
                     }
@@ -258,6 +258,19 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
     protected void setDirty() {
         
     }
+
+    /**
+     * A callback to indicate that data in a particular context has been modified.
+     * 
+     * <p>This method is guaranteed to be called under cover the lock returned by {{@link #getLock()}.</p>
+     * 
+     * <p>The default implementation calls {@link #setDirty()}.</p>
+     * 
+     * @param context the context that was modified
+     */
+    protected void setDirty(@Nonnull @NotEmpty final String context) {
+        setDirty();
+    }
     
     /**
      * Internal method to implement read functions.
@@ -355,7 +368,7 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
                 throw new VersionMismatchException();
             }
     
-            setDirty();
+            setDirty(context);
             
             if (value != null) {
                 record.setValue(value);
@@ -408,7 +421,7 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
             } else if (version != null && record.getVersion() != version) {
                 throw new VersionMismatchException();
             } else {
-                setDirty();
+                setDirty(context);
                 dataMap.remove(key);
                 log.trace("Deleted record '{}' in context '{}'", key, context);
                 return true;
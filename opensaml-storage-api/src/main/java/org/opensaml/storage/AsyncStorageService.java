@@ -0,0 +1,148 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.annotation.constraint.ThreadSafeAfterInit;
+import net.shibboleth.utilities.java.support.collection.Pair;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Non-blocking counterpart to the record-level operations of {@link StorageService}.
+ *
+ * <p>Each method issues the operation and returns immediately with a future that completes with the
+ * same result the corresponding {@link StorageService} method would have returned. Failures are reported
+ * by completing the future exceptionally, with the cause of the resulting
+ * {@link java.util.concurrent.ExecutionException} being the {@link java.io.IOException} or
+ * {@link VersionMismatchException} the blocking method would have thrown.</p>
+ *
+ * <p>This allows callers to overlap storage I/O with other work (e.g. signing or encryption) and to
+ * issue several independent operations concurrently.</p>
+ */
+@ThreadSafeAfterInit
+public interface AsyncStorageService {
+
+    /**
+     * Creates a new record in the store with an expiration.
+     *
+     * @param context       a storage context label
+     * @param key           a key unique to context
+     * @param value         value to store
+     * @param expiration    expiration for record, or null
+     *
+     * @return  future completing with true iff record was inserted, false iff a duplicate was found
+     */
+    @Nonnull ListenableFuture<Boolean> createAsync(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String value,
+            @Nullable @Positive final Long expiration);
+
+    /**
+     * Returns an existing record from the store, if one exists.
+     *
+     * @param context       a storage context label
+     * @param key           a key unique to context
+     *
+     * @return  future completing with the record read back, if present, or null
+     */
+    @Nonnull ListenableFuture<StorageRecord> readAsync(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key);
+
+    /**
+     * Returns an existing record from the store, along with its version.
+     *
+     * @param context       a storage context label
+     * @param key           a key unique to context
+     * @param version       only return record if newer than supplied version
+     *
+     * @return  future completing with a pair of the version of the record read back, if any, and the record itself
+     *
+     * @see StorageService#read(String, String, long)
+     */
+    @Nonnull ListenableFuture<Pair<Long, StorageRecord>> readAsync(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Positive final long version);
+
+    /**
+     * Updates an existing record in the store.
+     *
+     * @param context       a storage context label
+     * @param key           a key unique to context
+     * @param value         updated value
+     * @param expiration    expiration for record, or null
+     *
+     * @return future completing with true if the update succeeded, false if the record does not exist
+     */
+    @Nonnull ListenableFuture<Boolean> updateAsync(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String value,
+            @Nullable @Positive final Long expiration);
+
+    /**
+     * Updates an existing record in the store, if a version matches.
+     *
+     * @param version       only update if the current version matches this value
+     * @param context       a storage context label
+     * @param key           a key unique to context
+     * @param value         updated value
+     * @param expiration    expiration for record, or null
+     *
+     * @return future completing with the version of the record after update, null if no record exists
+     */
+    @Nonnull ListenableFuture<Long> updateWithVersionAsync(@Positive final long version,
+            @Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NotEmpty final String value, @Nullable @Positive final Long expiration);
+
+    /**
+     * Updates expiration of an existing record in the store.
+     *
+     * @param context       a storage context label
+     * @param key           a key unique to context
+     * @param expiration    expiration for record, or null
+     *
+     * @return future completing with true if the update succeeded, false if the record does not exist
+     */
+    @Nonnull ListenableFuture<Boolean> updateExpirationAsync(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nullable @Positive final Long expiration);
+
+    /**
+     * Deletes an existing record from the store.
+     *
+     * @param context       a storage context label
+     * @param key           a key unique to context
+     *
+     * @return future completing with true iff the record existed and was deleted
+     */
+    @Nonnull ListenableFuture<Boolean> deleteAsync(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key);
+
+    /**
+     * Deletes an existing record from the store if it currently has a specified version.
+     *
+     * @param version       record version to delete
+     * @param context       a storage context label
+     * @param key           a key unique to context
+     *
+     * @return future completing with true iff the record existed and was deleted
+     */
+    @Nonnull ListenableFuture<Boolean> deleteWithVersionAsync(@Positive final long version,
+            @Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key);
+
+}
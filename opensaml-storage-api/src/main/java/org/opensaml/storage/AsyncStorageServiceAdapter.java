@@ -0,0 +1,165 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.collection.Pair;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Adapts a blocking {@link StorageService} to the {@link AsyncStorageService} interface by running
+ * each operation on a supplied {@link ExecutorService}.
+ *
+ * <p>This is intended for back ends that have no native asynchronous API (e.g. in-memory or JDBC-based
+ * services). The executor bounds the number of concurrently outstanding operations, so it should be sized
+ * with the capacity of the underlying store in mind. The adapter does not manage the lifecycle of either the
+ * wrapped service or the executor.</p>
+ */
+public class AsyncStorageServiceAdapter implements AsyncStorageService {
+
+    /** Wrapped service. */
+    @Nonnull private final StorageService storageService;
+
+    /** Executor that runs the blocking operations. */
+    @Nonnull private final ListeningExecutorService executorService;
+
+    /**
+     * Constructor.
+     *
+     * @param service the blocking service to wrap
+     * @param executor executor to run operations on
+     */
+    public AsyncStorageServiceAdapter(@Nonnull final StorageService service, @Nonnull final ExecutorService executor) {
+        storageService = Constraint.isNotNull(service, "StorageService cannot be null");
+        executorService = MoreExecutors.listeningDecorator(
+                Constraint.isNotNull(executor, "ExecutorService cannot be null"));
+    }
+
+    /**
+     * Get the wrapped service.
+     *
+     * @return the wrapped service
+     */
+    @Nonnull public StorageService getStorageService() {
+        return storageService;
+    }
+
+    /** {@inheritDoc} */
+    @Override @Nonnull public ListenableFuture<Boolean> createAsync(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String value,
+            @Nullable @Positive final Long expiration) {
+        return executorService.submit(new Callable<Boolean>() {
+            /** {@inheritDoc} */
+            public Boolean call() throws Exception {
+                return storageService.create(context, key, value, expiration);
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override @Nonnull public ListenableFuture<StorageRecord> readAsync(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) {
+        return executorService.submit(new Callable<StorageRecord>() {
+            /** {@inheritDoc} */
+            public StorageRecord call() throws Exception {
+                return storageService.read(context, key);
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override @Nonnull public ListenableFuture<Pair<Long, StorageRecord>> readAsync(
+            @Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Positive final long version) {
+        return executorService.submit(new Callable<Pair<Long, StorageRecord>>() {
+            /** {@inheritDoc} */
+            public Pair<Long, StorageRecord> call() throws Exception {
+                return storageService.read(context, key, version);
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override @Nonnull public ListenableFuture<Boolean> updateAsync(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String value,
+            @Nullable @Positive final Long expiration) {
+        return executorService.submit(new Callable<Boolean>() {
+            /** {@inheritDoc} */
+            public Boolean call() throws Exception {
+                return storageService.update(context, key, value, expiration);
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override @Nonnull public ListenableFuture<Long> updateWithVersionAsync(@Positive final long version,
+            @Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NotEmpty final String value, @Nullable @Positive final Long expiration) {
+        return executorService.submit(new Callable<Long>() {
+            /** {@inheritDoc} */
+            public Long call() throws Exception {
+                return storageService.updateWithVersion(version, context, key, value, expiration);
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override @Nonnull public ListenableFuture<Boolean> updateExpirationAsync(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nullable @Positive final Long expiration) {
+        return executorService.submit(new Callable<Boolean>() {
+            /** {@inheritDoc} */
+            public Boolean call() throws Exception {
+                return storageService.updateExpiration(context, key, expiration);
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override @Nonnull public ListenableFuture<Boolean> deleteAsync(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) {
+        return executorService.submit(new Callable<Boolean>() {
+            /** {@inheritDoc} */
+            public Boolean call() throws Exception {
+                return storageService.delete(context, key);
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override @Nonnull public ListenableFuture<Boolean> deleteWithVersionAsync(@Positive final long version,
+            @Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key) {
+        return executorService.submit(new Callable<Boolean>() {
+            /** {@inheritDoc} */
+            public Boolean call() throws Exception {
+                return storageService.deleteWithVersion(version, context, key);
+            }
+        });
+    }
+
+}
@@ -0,0 +1,256 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nonnull;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonNegative;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+/**
+ * {@link StorageMetricsSink} that accumulates counts, payload sizes and latency histograms in memory, per
+ * context and operation.
+ * 
+ * <p>Latencies are counted in power-of-two buckets of nanoseconds, which bounds the error of a reported
+ * percentile to a factor of two while using a fixed amount of memory. Recording a measurement updates
+ * pre-allocated atomic counters and allocates only when a context is first seen. To bound memory use when
+ * contexts are derived from request data, contexts beyond a configurable number are accumulated together
+ * under {@link #OTHER_CONTEXT}.</p>
+ */
+public class HistogramStorageMetricsSink implements StorageMetricsSink {
+
+    /** Name under which contexts beyond the maximum number are accumulated. */
+    @Nonnull @NotEmpty public static final String OTHER_CONTEXT = "*other*";
+
+    /** Number of latency buckets, one for each possible bit length of a non-negative long. */
+    private static final int BUCKETS = 64;
+
+    /** Number of operations. */
+    private static final int OPERATIONS = Operation.values().length;
+
+    /** Number of outcomes. */
+    private static final int OUTCOMES = Outcome.values().length;
+
+    /** Maximum number of contexts to track individually. */
+    @Positive private final int maxContexts;
+
+    /** Metrics by context. */
+    @Nonnull private final ConcurrentMap<String, ContextMetrics> contexts;
+
+    /** Metrics for contexts beyond the maximum. */
+    @Nonnull private volatile ContextMetrics otherContext;
+
+    /** Constructor. */
+    public HistogramStorageMetricsSink() {
+        this(100);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param max maximum number of contexts to track individually
+     */
+    public HistogramStorageMetricsSink(@Positive final int max) {
+        maxContexts = (int) Constraint.isGreaterThan(0, max, "Maximum number of contexts must be greater than 0");
+        contexts = new ConcurrentHashMap<>();
+        otherContext = new ContextMetrics();
+    }
+
+    /** {@inheritDoc} */
+    @Override public void record(@Nonnull @NotEmpty final String context, @Nonnull final Operation operation,
+            @Nonnull final Outcome outcome, @NonNegative final long latency, @NonNegative final int payloadSize) {
+        final ContextMetrics metrics = getContextMetrics(context);
+        final int op = operation.ordinal();
+        metrics.counts.incrementAndGet(op * OUTCOMES + outcome.ordinal());
+        metrics.latencies.incrementAndGet(op * BUCKETS + getBucket(latency));
+        if (payloadSize > 0) {
+            metrics.payloadSizes.addAndGet(op, payloadSize);
+        }
+    }
+
+    /**
+     * Get the contexts tracked, which includes {@link #OTHER_CONTEXT} once the maximum has been reached.
+     * 
+     * @return the contexts tracked
+     */
+    @Nonnull public Set<String> getContexts() {
+        return Collections.unmodifiableSet(contexts.keySet());
+    }
+
+    /**
+     * Get the number of operations performed on a context with a given outcome.
+     * 
+     * @param context the context
+     * @param operation the operation
+     * @param outcome the outcome
+     * 
+     * @return the number of operations
+     */
+    @NonNegative public long getCount(@Nonnull @NotEmpty final String context, @Nonnull final Operation operation,
+            @Nonnull final Outcome outcome) {
+        final ContextMetrics metrics = contexts.get(context);
+        return metrics != null ? metrics.counts.get(operation.ordinal() * OUTCOMES + outcome.ordinal()) : 0;
+    }
+
+    /**
+     * Get the number of operations performed on a context, whatever the outcome.
+     * 
+     * @param context the context
+     * @param operation the operation
+     * 
+     * @return the number of operations
+     */
+    @NonNegative public long getCount(@Nonnull @NotEmpty final String context, @Nonnull final Operation operation) {
+        long count = 0;
+        for (final Outcome outcome : Outcome.values()) {
+            count += getCount(context, operation, outcome);
+        }
+        return count;
+    }
+
+    /**
+     * Get the total length of the values written or read by operations on a context.
+     * 
+     * @param context the context
+     * @param operation the operation
+     * 
+     * @return the total payload size
+     */
+    @NonNegative public long getPayloadSize(@Nonnull @NotEmpty final String context,
+            @Nonnull final Operation operation) {
+        final ContextMetrics metrics = contexts.get(context);
+        return metrics != null ? metrics.payloadSizes.get(operation.ordinal()) : 0;
+    }
+
+    /**
+     * Get the latency histogram of operations on a context.
+     * 
+     * <p>Element <i>i</i> of the result is the number of operations that took less than 2<sup><i>i</i></sup>
+     * nanoseconds and, for <i>i</i> &gt; 0, at least 2<sup><i>i</i>-1</sup>.</p>
+     * 
+     * @param context the context
+     * @param operation the operation
+     * 
+     * @return the histogram
+     */
+    @Nonnull public long[] getLatencyHistogram(@Nonnull @NotEmpty final String context,
+            @Nonnull final Operation operation) {
+        final long[] histogram = new long[BUCKETS];
+        final ContextMetrics metrics = contexts.get(context);
+        if (metrics != null) {
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram[i] = metrics.latencies.get(operation.ordinal() * BUCKETS + i);
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Get an upper bound on a percentile of the latency of operations on a context.
+     * 
+     * @param context the context
+     * @param operation the operation
+     * @param percentile the percentile, between 0 and 100
+     * 
+     * @return an upper bound in nanoseconds, at most twice the actual value, or 0 if there were no operations
+     */
+    @NonNegative public long getLatencyPercentile(@Nonnull @NotEmpty final String context,
+            @Nonnull final Operation operation, final double percentile) {
+        final long[] histogram = getLatencyHistogram(context, operation);
+        long total = 0;
+        for (final long count : histogram) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        final double threshold = total * Math.min(100, Math.max(0, percentile)) / 100;
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulative += histogram[i];
+            if (cumulative >= threshold && cumulative > 0) {
+                return i < BUCKETS - 1 ? (1L << i) - 1 : Long.MAX_VALUE;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /** Reset all metrics. */
+    public void reset() {
+        otherContext = new ContextMetrics();
+        contexts.clear();
+    }
+
+    /**
+     * Get the metrics for a context, creating them if necessary.
+     * 
+     * @param context the context
+     * 
+     * @return the metrics
+     */
+    @Nonnull private ContextMetrics getContextMetrics(@Nonnull @NotEmpty final String context) {
+        ContextMetrics metrics = contexts.get(context);
+        if (metrics == null) {
+            if (contexts.size() >= maxContexts) {
+                metrics = otherContext;
+                contexts.putIfAbsent(OTHER_CONTEXT, metrics);
+            } else {
+                metrics = new ContextMetrics();
+                final ContextMetrics existing = contexts.putIfAbsent(context, metrics);
+                if (existing != null) {
+                    metrics = existing;
+                }
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Get the histogram bucket for a latency.
+     * 
+     * @param latency latency in nanoseconds
+     * 
+     * @return the bucket
+     */
+    private static int getBucket(final long latency) {
+        return Math.min(BUCKETS - 1, BUCKETS - Long.numberOfLeadingZeros(Math.max(0, latency)));
+    }
+
+    /** Metrics for a single context. */
+    private static final class ContextMetrics {
+
+        /** Counts by operation and outcome. */
+        @Nonnull private final AtomicLongArray counts = new AtomicLongArray(OPERATIONS * OUTCOMES);
+
+        /** Latency histograms by operation. */
+        @Nonnull private final AtomicLongArray latencies = new AtomicLongArray(OPERATIONS * BUCKETS);
+
+        /** Total payload sizes by operation. */
+        @Nonnull private final AtomicLongArray payloadSizes = new AtomicLongArray(OPERATIONS);
+    }
+
+}
@@ -0,0 +1,330 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.collection.Pair;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+import org.opensaml.storage.StorageMetricsSink.Operation;
+import org.opensaml.storage.StorageMetricsSink.Outcome;
+import org.opensaml.storage.annotation.AnnotationSupport;
+
+/**
+ * Decorates a {@link StorageService} to report the context, outcome, latency and payload size of every
+ * operation to a {@link StorageMetricsSink}.
+ * 
+ * <p>The decorator itself allocates nothing, so its overhead is two calls to {@link System#nanoTime()} plus
+ * whatever the sink does. Operations on annotated objects and via a {@link StorageSerializer} are reported as
+ * the equivalent operations on strings. The decorator does not manage the lifecycle of the wrapped service.</p>
+ */
+public class InstrumentedStorageService implements StorageService {
+
+    /** Wrapped service. */
+    @Nonnull private final StorageService storageService;
+
+    /** Destination for measurements. */
+    @Nonnull private final StorageMetricsSink metricsSink;
+
+    /**
+     * Constructor.
+     *
+     * @param service the service to wrap
+     * @param sink destination for measurements
+     */
+    public InstrumentedStorageService(@Nonnull final StorageService service, @Nonnull final StorageMetricsSink sink) {
+        storageService = Constraint.isNotNull(service, "StorageService cannot be null");
+        metricsSink = Constraint.isNotNull(sink, "StorageMetricsSink cannot be null");
+    }
+
+    /**
+     * Get the wrapped service.
+     *
+     * @return the wrapped service
+     */
+    @Nonnull public StorageService getStorageService() {
+        return storageService;
+    }
+
+    /**
+     * Get the destination for measurements.
+     *
+     * @return the destination for measurements
+     */
+    @Nonnull public StorageMetricsSink getMetricsSink() {
+        return metricsSink;
+    }
+
+    /** {@inheritDoc} */
+    @Override public String getId() {
+        return storageService.getId();
+    }
+
+    /** {@inheritDoc} */
+    @Override @Nonnull public StorageCapabilities getCapabilities() {
+        return storageService.getCapabilities();
+    }
+
+    /** {@inheritDoc} */
+    @Override public boolean create(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NotEmpty final String value, @Nullable @Positive final Long expiration) throws IOException {
+        final long start = System.nanoTime();
+        Outcome outcome = Outcome.ERROR;
+        try {
+            final boolean result = storageService.create(context, key, value, expiration);
+            outcome = result ? Outcome.SUCCESS : Outcome.DUPLICATE;
+            return result;
+        } finally {
+            metricsSink.record(context, Operation.CREATE, outcome, System.nanoTime() - start, value.length());
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override public boolean create(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull final Object value, @Nonnull final StorageSerializer serializer,
+            @Nullable @Positive final Long expiration) throws IOException {
+        return create(context, key, serializer.serialize(value), expiration);
+    }
+
+    /** {@inheritDoc} */
+    @Override public boolean create(@Nonnull final Object value) throws IOException {
+        return create(AnnotationSupport.getContext(value), AnnotationSupport.getKey(value),
+                AnnotationSupport.getValue(value), AnnotationSupport.getExpiration(value));
+    }
+
+    /** {@inheritDoc} */
+    @Override @Nullable public StorageRecord read(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) throws IOException {
+        final long start = System.nanoTime();
+        Outcome outcome = Outcome.ERROR;
+        int size = 0;
+        try {
+            final StorageRecord record = storageService.read(context, key);
+            if (record != null) {
+                outcome = Outcome.SUCCESS;
+                size = record.getValue().length();
+            } else {
+                outcome = Outcome.MISS;
+            }
+            return record;
+        } finally {
+            metricsSink.record(context, Operation.READ, outcome, System.nanoTime() - start, size);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override @Nullable public Object read(@Nonnull final Object value) throws IOException {
+        final StorageRecord record = read(AnnotationSupport.getContext(value), AnnotationSupport.getKey(value));
+        if (record != null) {
+            AnnotationSupport.setValue(value, record.getValue());
+            AnnotationSupport.setExpiration(value, record.getExpiration());
+            return value;
+        }
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    @Override @Nonnull public Pair<Long, StorageRecord> read(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Positive final long version) throws IOException {
+        final long start = System.nanoTime();
+        Outcome outcome = Outcome.ERROR;
+        int size = 0;
+        try {
+            final Pair<Long, StorageRecord> result = storageService.read(context, key, version);
+            if (result.getSecond() != null) {
+                outcome = Outcome.SUCCESS;
+                size = result.getSecond().getValue().length();
+            } else {
+                outcome = result.getFirst() != null ? Outcome.UNMODIFIED : Outcome.MISS;
+            }
+            return result;
+        } finally {
+            metricsSink.record(context, Operation.READ, outcome, System.nanoTime() - start, size);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override public boolean update(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NotEmpty final String value, @Nullable @Positive final Long expiration) throws IOException {
+        final long start = System.nanoTime();
+        Outcome outcome = Outcome.ERROR;
+        try {
+            final boolean result = storageService.update(context, key, value, expiration);
+            outcome = result ? Outcome.SUCCESS : Outcome.MISS;
+            return result;
+        } finally {
+            metricsSink.record(context, Operation.UPDATE, outcome, System.nanoTime() - start, value.length());
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override @Nullable public Long updateWithVersion(@Positive final long version,
+            @Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NotEmpty final String value, @Nullable @Positive final Long expiration)
+                    throws IOException, VersionMismatchException {
+        final long start = System.nanoTime();
+        Outcome outcome = Outcome.ERROR;
+        try {
+            final Long result = storageService.updateWithVersion(version, context, key, value, expiration);
+            outcome = result != null ? Outcome.SUCCESS : Outcome.MISS;
+            return result;
+        } catch (final VersionMismatchException e) {
+            outcome = Outcome.VERSION_MISMATCH;
+            throw e;
+        } finally {
+            metricsSink.record(context, Operation.UPDATE, outcome, System.nanoTime() - start, value.length());
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override public boolean update(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull final Object value, @Nonnull final StorageSerializer serializer,
+            @Nullable @Positive final Long expiration) throws IOException {
+        return update(context, key, serializer.serialize(value), expiration);
+    }
+
+    /** {@inheritDoc} */
+    // Checkstyle: ParameterNumber OFF
+    @Override @Nullable public Long updateWithVersion(@Positive final long version,
+            @Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key, @Nonnull final Object value,
+            @Nonnull final StorageSerializer serializer, @Nullable @Positive final Long expiration) throws IOException,
+            VersionMismatchException {
+        return updateWithVersion(version, context, key, serializer.serialize(value), expiration);
+    }
+
+    // Checkstyle: ParameterNumber ON
+
+    /** {@inheritDoc} */
+    @Override public boolean update(@Nonnull final Object value) throws IOException {
+        return update(AnnotationSupport.getContext(value), AnnotationSupport.getKey(value),
+                AnnotationSupport.getValue(value), AnnotationSupport.getExpiration(value));
+    }
+
+    /** {@inheritDoc} */
+    @Override @Nullable public Long updateWithVersion(@Positive final long version, @Nonnull final Object value)
+            throws IOException, VersionMismatchException {
+        return updateWithVersion(version, AnnotationSupport.getContext(value), AnnotationSupport.getKey(value),
+                AnnotationSupport.getValue(value), AnnotationSupport.getExpiration(value));
+    }
+
+    /** {@inheritDoc} */
+    @Override public boolean updateExpiration(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nullable @Positive final Long expiration) throws IOException {
+        final long start = System.nanoTime();
+        Outcome outcome = Outcome.ERROR;
+        try {
+            final boolean result = storageService.updateExpiration(context, key, expiration);
+            outcome = result ? Outcome.SUCCESS : Outcome.MISS;
+            return result;
+        } finally {
+            metricsSink.record(context, Operation.UPDATE_EXPIRATION, outcome, System.nanoTime() - start, 0);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override public boolean updateExpiration(@Nonnull final Object value) throws IOException {
+        return updateExpiration(AnnotationSupport.getContext(value), AnnotationSupport.getKey(value),
+                AnnotationSupport.getExpiration(value));
+    }
+
+    /** {@inheritDoc} */
+    @Override public boolean delete(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key)
+            throws IOException {
+        final long start = System.nanoTime();
+        Outcome outcome = Outcome.ERROR;
+        try {
+            final boolean result = storageService.delete(context, key);
+            outcome = result ? Outcome.SUCCESS : Outcome.MISS;
+            return result;
+        } finally {
+            metricsSink.record(context, Operation.DELETE, outcome, System.nanoTime() - start, 0);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override public boolean deleteWithVersion(@Positive final long version, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) throws IOException, VersionMismatchException {
+        final long start = System.nanoTime();
+        Outcome outcome = Outcome.ERROR;
+        try {
+            final boolean result = storageService.deleteWithVersion(version, context, key);
+            outcome = result ? Outcome.SUCCESS : Outcome.MISS;
+            return result;
+        } catch (final VersionMismatchException e) {
+            outcome = Outcome.VERSION_MISMATCH;
+            throw e;
+        } finally {
+            metricsSink.record(context, Operation.DELETE, outcome, System.nanoTime() - start, 0);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override public boolean delete(@Nonnull final Object value) throws IOException {
+        return delete(AnnotationSupport.getContext(value), AnnotationSupport.getKey(value));
+    }
+
+    /** {@inheritDoc} */
+    @Override public boolean deleteWithVersion(@Positive final long version, @Nonnull final Object value)
+            throws IOException, VersionMismatchException {
+        return deleteWithVersion(version, AnnotationSupport.getContext(value), AnnotationSupport.getKey(value));
+    }
+
+    /** {@inheritDoc} */
+    @Override public void reap(@Nonnull @NotEmpty final String context) throws IOException {
+        final long start = System.nanoTime();
+        Outcome outcome = Outcome.ERROR;
+        try {
+            storageService.reap(context);
+            outcome = Outcome.SUCCESS;
+        } finally {
+            metricsSink.record(context, Operation.REAP, outcome, System.nanoTime() - start, 0);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override public void updateContextExpiration(@Nonnull @NotEmpty final String context,
+            @Nullable @Positive final Long expiration) throws IOException {
+        final long start = System.nanoTime();
+        Outcome outcome = Outcome.ERROR;
+        try {
+            storageService.updateContextExpiration(context, expiration);
+            outcome = Outcome.SUCCESS;
+        } finally {
+            metricsSink.record(context, Operation.UPDATE_CONTEXT_EXPIRATION, outcome, System.nanoTime() - start, 0);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override public void deleteContext(@Nonnull @NotEmpty final String context) throws IOException {
+        final long start = System.nanoTime();
+        Outcome outcome = Outcome.ERROR;
+        try {
+            storageService.deleteContext(context);
+            outcome = Outcome.SUCCESS;
+        } finally {
+            metricsSink.record(context, Operation.DELETE_CONTEXT, outcome, System.nanoTime() - start, 0);
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage;
+
+import javax.annotation.Nonnull;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonNegative;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+
+/**
+ * Receives a measurement of each operation performed through an {@link InstrumentedStorageService}.
+ * 
+ * <p>Implementations are called synchronously on the thread performing the operation, so must be thread-safe,
+ * must not throw, and should avoid blocking or allocating, for example by updating pre-allocated counters.
+ * Adapters to external registries such as Dropwizard Metrics or Micrometer can be supplied by deployers.</p>
+ */
+public interface StorageMetricsSink {
+
+    /** Kinds of operation. */
+    public enum Operation {
+        /** Record creation. */
+        CREATE,
+        /** Record read. */
+        READ,
+        /** Record update, with or without a version check. */
+        UPDATE,
+        /** Update of a record's expiration. */
+        UPDATE_EXPIRATION,
+        /** Record deletion, with or without a version check. */
+        DELETE,
+        /** Removal of expired records in a context. */
+        REAP,
+        /** Update of the expiration of all records in a context. */
+        UPDATE_CONTEXT_EXPIRATION,
+        /** Deletion of a context. */
+        DELETE_CONTEXT
+    }
+
+    /** Outcomes of an operation. */
+    public enum Outcome {
+        /** The operation found or affected a record, or completed if it applies to a context. */
+        SUCCESS,
+        /** No unexpired record existed. */
+        MISS,
+        /** A versioned read found the record unchanged. */
+        UNMODIFIED,
+        /** A creation found an existing record. */
+        DUPLICATE,
+        /** A versioned update or deletion found a different version. */
+        VERSION_MISMATCH,
+        /** The operation failed with an exception. */
+        ERROR
+    }
+
+    /**
+     * Record the measurement of an operation.
+     * 
+     * @param context the storage context operated on
+     * @param operation the operation
+     * @param outcome the outcome of the operation
+     * @param latency time taken by the operation, in nanoseconds
+     * @param payloadSize length of the value written or read, or 0 if none
+     */
+    void record(@Nonnull @NotEmpty final String context, @Nonnull final Operation operation,
+            @Nonnull final Outcome outcome, @NonNegative final long latency, @NonNegative final int payloadSize);
+
+}
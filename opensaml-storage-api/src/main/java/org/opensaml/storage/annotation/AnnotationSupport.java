@@ -17,11 +17,11 @@
 
 package org.opensaml.storage.annotation;
 
-import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.util.Date;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -33,11 +33,26 @@ import org.joda.time.ReadableInstant;
 
 /**
  * Support class that reads and writes fields decorated with storage annotations.
+ * 
+ * <p>The annotations and fields of each class are resolved once, into method handles that are cached with
+ * the class, so that reading and writing the fields involves no further reflection.</p>
  */
 public final class AnnotationSupport {
 
-    /** Simple cache of fields we have seen. */
-    private static final Map<String, Field> FIELD_CACHE = new ConcurrentHashMap<>();
+    /** Type of the handles used to read fields. */
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    /** Type of the handles used to write fields. */
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    /** Accessors for the annotated fields of each class. */
+    private static final ClassValue<ClassAccessors> ACCESSORS = new ClassValue<ClassAccessors>() {
+        /** {@inheritDoc} */
+        @Override
+        protected ClassAccessors computeValue(final Class<?> type) {
+            return new ClassAccessors(type);
+        }
+    };
     
     /** Private constructor of utility class. */
     private AnnotationSupport() {
@@ -57,8 +72,7 @@ public final class AnnotationSupport {
      * @throws RuntimeException if the field cannot be read on the target object
      */
     @Nonnull @NotEmpty public static String getContext(@Nonnull final Object target) {
-        final Context ctxField = getAnnotation(target, Context.class);
-        final Object value = getFieldValue(target, ctxField.value());
+        final Object value = ACCESSORS.get(target.getClass()).context.get(target);
         if (value instanceof String) {
             return (String) value;
         }
@@ -75,9 +89,7 @@ public final class AnnotationSupport {
      * @throws RuntimeException if the field cannot be set on the target object
      */
     public static void setContext(@Nonnull final Object target, @Nonnull @NotEmpty final String context) {
-        final Context ctxField = getAnnotation(target, Context.class);
-
-        setFieldValue(target, ctxField.value(), context);
+        ACCESSORS.get(target.getClass()).context.set(target, context);
     }
     
     /**
@@ -93,8 +105,7 @@ public final class AnnotationSupport {
      * @throws RuntimeException if the field cannot be read on the target object
      */
     @Nonnull @NotEmpty public static String getKey(@Nonnull final Object target) {
-        final Key keyField = getAnnotation(target, Key.class);
-        final Object value = getFieldValue(target, keyField.value());
+        final Object value = ACCESSORS.get(target.getClass()).key.get(target);
         if (value instanceof String) {
             return (String) value;
         }
@@ -111,9 +122,7 @@ public final class AnnotationSupport {
      * @throws RuntimeException if the field cannot be set on the target object
      */
     public static void setKey(@Nonnull final Object target, @Nonnull @NotEmpty final String key) {
-        final Key keyField = getAnnotation(target, Key.class);
-
-        setFieldValue(target, keyField.value(), key);
+        ACCESSORS.get(target.getClass()).key.set(target, key);
     }
 
     /**
@@ -129,8 +138,7 @@ public final class AnnotationSupport {
      * @throws RuntimeException if the field cannot be read on the target object
      */
     @Nonnull @NotEmpty public static String getValue(@Nonnull final Object target) {
-        final Value valueField = getAnnotation(target, Value.class);
-        final Object value = getFieldValue(target, valueField.value());
+        final Object value = ACCESSORS.get(target.getClass()).value.get(target);
         if (value instanceof String) {
             return (String) value;
         }
@@ -147,9 +155,7 @@ public final class AnnotationSupport {
      * @throws RuntimeException if the field cannot be set on the target object
      */
     public static void setValue(@Nonnull final Object target, @Nonnull @NotEmpty final String value) {
-        final Value valueField = getAnnotation(target, Value.class);
-        
-        setFieldValue(target, valueField.value(), value);
+        ACCESSORS.get(target.getClass()).value.set(target, value);
     }
 
     /**
@@ -172,8 +178,7 @@ public final class AnnotationSupport {
      * @throws RuntimeException if the field cannot be read on the target object or if it is an unsupported data type
      */
     @Nullable public static Long getExpiration(@Nonnull final Object target) {
-        final Expiration expField = getAnnotation(target, Expiration.class);
-        final Object value = getFieldValue(target, expField.value());
+        final Object value = ACCESSORS.get(target.getClass()).expiration.get(target);
         if (value == null) {
             return null;
         } else if (value instanceof Long) {
@@ -205,104 +210,195 @@ public final class AnnotationSupport {
      * @throws RuntimeException if the field cannot be set on the target object or if it is an unsupported data type
      */
     public static void setExpiration(@Nonnull final Object target, @Nullable final Long expiration) {
-        final Expiration expField = getAnnotation(target, Expiration.class);
+        final FieldAccessor accessor = ACCESSORS.get(target.getClass()).expiration;
         if (expiration == null) {
-            setFieldValue(target, expField.value(), null);
+            accessor.set(target, null);
+            return;
         }
         
-        final Class<?> type = getField(target, expField.value()).getType();
+        final Class<?> type = accessor.getType(target);
         if (Long.class.isAssignableFrom(type)) {
-            setFieldValue(target, expField.value(), expiration);
+            accessor.set(target, expiration);
         } else if (Date.class.isAssignableFrom(type)) {
-            setFieldValue(target, expField.value(), new Date(expiration));
+            accessor.set(target, new Date(expiration));
         } else if (ReadableInstant.class.isAssignableFrom(type)) {
-            setFieldValue(target, expField.value(), new Instant(expiration));
+            accessor.set(target, new Instant(expiration));
         } else {
             throw new RuntimeException(type + " is an unsupported data type for an expiration field.");
         }
     }
 
-    /**
-     * Returns an annotation of a specified type attached to a target object.
-     * 
-     * @param <T> type of annotation
-     * @param target target object to examine
-     * @param annotationType class type of annotation to find
-     * 
-     * @return  the annotation found on the object
-     * @throws IllegalArgumentException if the target object doesn't declare the annotation
-     */
-    @Nonnull private static <T extends Annotation> T getAnnotation(@Nonnull final Object target,
-            @Nonnull final Class<T> annotationType) {
-        final Class<?> targetClass = target.getClass();
-        final T keyField = targetClass.getAnnotation(annotationType);
-        if (keyField == null) {
-            throw new IllegalArgumentException("Key annotation not found on " + target);
+    /** Accessors for the annotated fields of a class. */
+    private static final class ClassAccessors {
+
+        /** Accessor for the field named by the {@link Context} annotation. */
+        @Nonnull private final FieldAccessor context;
+
+        /** Accessor for the field named by the {@link Key} annotation. */
+        @Nonnull private final FieldAccessor key;
+
+        /** Accessor for the field named by the {@link Value} annotation. */
+        @Nonnull private final FieldAccessor value;
+
+        /** Accessor for the field named by the {@link Expiration} annotation. */
+        @Nonnull private final FieldAccessor expiration;
+
+        /**
+         * Constructor.
+         *
+         * @param targetClass class to resolve the annotations of
+         */
+        private ClassAccessors(@Nonnull final Class<?> targetClass) {
+            final Context contextAnnotation = targetClass.getAnnotation(Context.class);
+            context = new FieldAccessor(targetClass, Context.class,
+                    contextAnnotation != null ? contextAnnotation.value() : null);
+            final Key keyAnnotation = targetClass.getAnnotation(Key.class);
+            key = new FieldAccessor(targetClass, Key.class, keyAnnotation != null ? keyAnnotation.value() : null);
+            final Value valueAnnotation = targetClass.getAnnotation(Value.class);
+            value = new FieldAccessor(targetClass, Value.class,
+                    valueAnnotation != null ? valueAnnotation.value() : null);
+            final Expiration expirationAnnotation = targetClass.getAnnotation(Expiration.class);
+            expiration = new FieldAccessor(targetClass, Expiration.class,
+                    expirationAnnotation != null ? expirationAnnotation.value() : null);
         }
-        return keyField;
     }
 
     /**
-     * Returns the value of a field from an object using reflection.
+     * Reads and writes the field named by an annotation, through method handles.
      * 
-     * @param target target object to examine
-     * @param fieldName name of the field to retrieve
-     * 
-     * @return  the value of the field
-     * @throws RuntimeException if the field cannot be read
+     * <p>Problems resolving the field are recorded rather than thrown, and reported when the field is accessed,
+     * so that a class can be used as long as the fields actually accessed are valid.</p>
      */
-    @Nullable private static Object getFieldValue(@Nonnull final Object target, @Nonnull final String fieldName) {
-        try {
-            return getField(target, fieldName).get(target);
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException("Field " + fieldName + " cannot be read on " + target);
+    private static final class FieldAccessor {
+
+        /** Type of annotation naming the field. */
+        @Nonnull private final Class<?> annotationType;
+
+        /** Name of the field, or null if the annotation is absent. */
+        @Nullable private final String fieldName;
+
+        /** Type of the field, or null if it could not be resolved. */
+        @Nullable private final Class<?> fieldType;
+
+        /** Handle that reads the field, or null if it could not be resolved. */
+        @Nullable private final MethodHandle getter;
+
+        /** Handle that writes the field, or null if it could not be resolved or is final. */
+        @Nullable private final MethodHandle setter;
+
+        /**
+         * Constructor.
+         *
+         * @param targetClass class declaring the field
+         * @param annotation type of annotation naming the field
+         * @param name name of the field, or null if the annotation is absent
+         */
+        private FieldAccessor(@Nonnull final Class<?> targetClass, @Nonnull final Class<?> annotation,
+                @Nullable final String name) {
+            annotationType = annotation;
+            fieldName = name;
+
+            Field field = null;
+            MethodHandle fieldGetter = null;
+            MethodHandle fieldSetter = null;
+            if (name != null) {
+                try {
+                    field = targetClass.getDeclaredField(name);
+                    if (!field.isAccessible()) {
+                        // Try to make it accessible
+                        field.setAccessible(true);
+                    }
+                    fieldGetter = MethodHandles.lookup().unreflectGetter(field).asType(GETTER_TYPE);
+                    fieldSetter = MethodHandles.lookup().unreflectSetter(field).asType(SETTER_TYPE);
+                } catch (final NoSuchFieldException | SecurityException e) {
+                    field = null;
+                } catch (final IllegalAccessException e) {
+                    // Leaves the field read-only, or inaccessible.
+                }
+            }
+            fieldType = field != null ? field.getType() : null;
+            getter = fieldGetter;
+            setter = fieldSetter;
         }
-    }
 
-    /**
-     * Returns the value of a field from an object using reflection.
-     * 
-     * @param target target object to update
-     * @param fieldName name of the field to set
-     * @param fieldValue value to set
-     * 
-     * @throws RuntimeException if the field cannot be set
-     */
-    private static void setFieldValue(@Nonnull final Object target, @Nonnull final String fieldName,
-            @Nullable final Object fieldValue) {
-        try {
-            getField(target, fieldName).set(target, fieldValue);
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException("Field " + fieldName + " cannot be set on " + target);
+        /**
+         * Get the type of the field.
+         * 
+         * @param target target object
+         * 
+         * @return the type of the field
+         * @throws IllegalArgumentException if the target object doesn't declare the annotation
+         * @throws RuntimeException if the field does not exist
+         */
+        @Nonnull private Class<?> getType(@Nonnull final Object target) {
+            checkField(target);
+            return fieldType;
         }
-    }
-    
-    /**
-     * Returns a {@link Field} from a target object. 
-     * 
-     * @param target target object to examine
-     * @param fieldName name of the field to retrieve
-     * 
-     * @return the specified field from the object
-     * @throws RuntimeException if the target object doesn't declare the annotation
-     */
-    @Nonnull private static Field getField(@Nonnull final Object target, @Nonnull final String fieldName) {
-        final Class<?> targetClass = target.getClass();
-        final String key = targetClass.getName() + "." + fieldName;
-        Field field = FIELD_CACHE.get(key);
-        if (field == null) {
+
+        /**
+         * Returns the value of the field.
+         * 
+         * @param target target object to examine
+         * 
+         * @return  the value of the field
+         * @throws IllegalArgumentException if the target object doesn't declare the annotation
+         * @throws RuntimeException if the field cannot be read
+         */
+        @Nullable private Object get(@Nonnull final Object target) {
+            checkField(target);
+            if (getter == null) {
+                throw new RuntimeException("Field " + fieldName + " cannot be read on " + target);
+            }
             try {
-                field = targetClass.getDeclaredField(fieldName);
-                if (!field.isAccessible()) {
-                    // Try to make it accessible
-                    field.setAccessible(true);
-                }
-                FIELD_CACHE.put(key, field);
-            } catch (NoSuchFieldException e) {
+                return (Object) getter.invokeExact(target);
+            } catch (final RuntimeException | Error e) {
+                throw e;
+            } catch (final Throwable t) {
+                throw new RuntimeException("Field " + fieldName + " cannot be read on " + target, t);
+            }
+        }
+
+        /**
+         * Sets the value of the field.
+         * 
+         * @param target target object to update
+         * @param fieldValue value to set
+         * 
+         * @throws IllegalArgumentException if the target object doesn't declare the annotation
+         * @throws RuntimeException if the field cannot be set
+         */
+        private void set(@Nonnull final Object target, @Nullable final Object fieldValue) {
+            checkField(target);
+            if (setter == null) {
+                throw new RuntimeException("Field " + fieldName + " cannot be set on " + target);
+            }
+            try {
+                setter.invokeExact(target, fieldValue);
+            } catch (final ClassCastException e) {
+                throw new IllegalArgumentException("Field " + fieldName + " cannot be set to " + fieldValue, e);
+            } catch (final RuntimeException | Error e) {
+                throw e;
+            } catch (final Throwable t) {
+                throw new RuntimeException("Field " + fieldName + " cannot be set on " + target, t);
+            }
+        }
+
+        /**
+         * Check that the annotation is present and names a field.
+         * 
+         * @param target target object
+         * 
+         * @throws IllegalArgumentException if the target object doesn't declare the annotation
+         * @throws RuntimeException if the field does not exist
+         */
+        private void checkField(@Nonnull final Object target) {
+            if (fieldName == null) {
+                throw new IllegalArgumentException(annotationType.getSimpleName() + " annotation not found on "
+                        + target);
+            } else if (fieldType == null) {
                 throw new RuntimeException("Field " + fieldName + " does not exist on " + target);
             }
         }
-        return field;
     }
 
-}
\ No newline at end of file
+}
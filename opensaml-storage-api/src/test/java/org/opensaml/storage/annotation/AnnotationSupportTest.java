@@ -0,0 +1,159 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.annotation;
+
+import java.util.Date;
+
+import org.joda.time.DateTime;
+import org.joda.time.ReadableInstant;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test of {@link AnnotationSupport}.
+ */
+public class AnnotationSupportTest {
+
+    @Test
+    public void testContextKeyValue() {
+        final LongRecord record = new LongRecord();
+        AnnotationSupport.setContext(record, "context");
+        AnnotationSupport.setKey(record, "key");
+        AnnotationSupport.setValue(record, "value");
+
+        Assert.assertEquals(record.ctx, "context");
+        Assert.assertEquals(record.id, "key");
+        Assert.assertEquals(record.data, "value");
+        Assert.assertEquals(AnnotationSupport.getContext(record), "context");
+        Assert.assertEquals(AnnotationSupport.getKey(record), "key");
+        Assert.assertEquals(AnnotationSupport.getValue(record), "value");
+    }
+
+    @Test
+    public void testNonStringKey() {
+        final NumberKeyRecord record = new NumberKeyRecord();
+        record.id = 42;
+        Assert.assertEquals(AnnotationSupport.getKey(record), "42");
+    }
+
+    @Test
+    public void testLongExpiration() {
+        final LongRecord record = new LongRecord();
+        Assert.assertNull(AnnotationSupport.getExpiration(record));
+
+        AnnotationSupport.setExpiration(record, 1000L);
+        Assert.assertEquals(record.exp, Long.valueOf(1000L));
+        Assert.assertEquals(AnnotationSupport.getExpiration(record), Long.valueOf(1000L));
+
+        AnnotationSupport.setExpiration(record, null);
+        Assert.assertNull(record.exp);
+        Assert.assertNull(AnnotationSupport.getExpiration(record));
+    }
+
+    @Test
+    public void testDateExpiration() {
+        final DateRecord record = new DateRecord();
+        AnnotationSupport.setExpiration(record, 1000L);
+        Assert.assertEquals(record.exp, new Date(1000L));
+        Assert.assertEquals(AnnotationSupport.getExpiration(record), Long.valueOf(1000L));
+
+        AnnotationSupport.setExpiration(record, null);
+        Assert.assertNull(record.exp);
+        Assert.assertNull(AnnotationSupport.getExpiration(record));
+    }
+
+    @Test
+    public void testInstantExpiration() {
+        final InstantRecord record = new InstantRecord();
+        AnnotationSupport.setExpiration(record, 1000L);
+        Assert.assertEquals(record.exp.getMillis(), 1000L);
+        Assert.assertEquals(AnnotationSupport.getExpiration(record), Long.valueOf(1000L));
+
+        record.exp = new DateTime(2000L);
+        Assert.assertEquals(AnnotationSupport.getExpiration(record), Long.valueOf(2000L));
+
+        AnnotationSupport.setExpiration(record, null);
+        Assert.assertNull(record.exp);
+        Assert.assertNull(AnnotationSupport.getExpiration(record));
+    }
+
+    @Test(expectedExceptions = RuntimeException.class)
+    public void testUnsupportedExpirationType() {
+        AnnotationSupport.setExpiration(new StringExpirationRecord(), 1000L);
+    }
+
+    @Test
+    public void testMissingAnnotation() {
+        final NumberKeyRecord record = new NumberKeyRecord();
+        try {
+            AnnotationSupport.getContext(record);
+            Assert.fail("Missing Context annotation was not reported");
+        } catch (final IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Context"), e.getMessage());
+        }
+        try {
+            AnnotationSupport.setExpiration(record, null);
+            Assert.fail("Missing Expiration annotation was not reported");
+        } catch (final IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Expiration"), e.getMessage());
+        }
+    }
+
+    @Test(expectedExceptions = RuntimeException.class)
+    public void testMissingField() {
+        AnnotationSupport.getValue(new MissingFieldRecord());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testWrongFieldType() {
+        AnnotationSupport.setKey(new NumberKeyRecord(), "key");
+    }
+
+    @Context("ctx") @Key("id") @Value("data") @Expiration("exp")
+    private static class LongRecord {
+        private String ctx;
+        private String id;
+        private String data;
+        private Long exp;
+    }
+
+    @Expiration("exp")
+    private static class DateRecord {
+        private Date exp;
+    }
+
+    @Expiration("exp")
+    private static class InstantRecord {
+        private ReadableInstant exp;
+    }
+
+    @Expiration("exp")
+    private static class StringExpirationRecord {
+        private String exp;
+    }
+
+    @Key("id")
+    private static class NumberKeyRecord {
+        private Integer id;
+    }
+
+    @Value("missing")
+    private static class MissingFieldRecord {
+        private String data;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.opensaml.storage.MutableStorageRecord;
+import org.opensaml.storage.impl.client.BinaryClientStorageCodec;
+import org.opensaml.storage.impl.client.ClientStorageCodec;
+import org.opensaml.storage.impl.client.JSONClientStorageCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the serialization performed by the client-side storage service when saving and loading its
+ * contents, for each {@link ClientStorageCodec}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClientStorageCodecBenchmark {
+
+    /** Codec to benchmark: json, binary or compressed. */
+    @Param({"json", "binary", "compressed"})
+    public String codecName;
+
+    /** Number of contexts stored. */
+    @Param({"4"})
+    public int contexts;
+
+    /** Number of records in each context. */
+    @Param({"10"})
+    public int records;
+
+    /** Codec being benchmarked. */
+    private ClientStorageCodec codec;
+
+    /** Data to encode. */
+    private Map<String, Map<String, MutableStorageRecord>> contextMap;
+
+    /** Encoded data to decode. */
+    private String encoded;
+
+    /**
+     * Create the codec and data.
+     * 
+     * @throws IOException if an error occurs
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        switch (codecName) {
+            case "json":
+                codec = new JSONClientStorageCodec();
+                break;
+
+            case "binary":
+                codec = new BinaryClientStorageCodec();
+                break;
+
+            case "compressed":
+                final BinaryClientStorageCodec compressed = new BinaryClientStorageCodec();
+                compressed.setCompress(true);
+                codec = compressed;
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unknown codec " + codecName);
+        }
+
+        final long expiration = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+        contextMap = new HashMap<>();
+        for (int i = 0; i < contexts; i++) {
+            final Map<String, MutableStorageRecord> context = new HashMap<>();
+            for (int j = 0; j < records; j++) {
+                context.put("key" + j, new MutableStorageRecord("urn:example:value:" + i + ":" + j, expiration));
+            }
+            contextMap.put("context" + i, context);
+        }
+        encoded = encode();
+    }
+
+    /**
+     * Encode all contexts.
+     * 
+     * @return the encoded data
+     * @throws IOException if an error occurs
+     */
+    @Benchmark
+    public String encode() throws IOException {
+        final long now = System.currentTimeMillis();
+        final List<byte[]> parts = new ArrayList<>(contextMap.size());
+        for (final Map.Entry<String, Map<String, MutableStorageRecord>> entry : contextMap.entrySet()) {
+            parts.add(codec.encodeContext(entry.getKey(), entry.getValue(), now));
+        }
+        return codec.combine(parts);
+    }
+
+    /**
+     * Decode all contexts.
+     * 
+     * @return the decoded contexts
+     * @throws IOException if an error occurs
+     */
+    @Benchmark
+    public Map<String, Map<String, MutableStorageRecord>> decode() throws IOException {
+        final Map<String, Map<String, MutableStorageRecord>> decoded = new HashMap<>();
+        codec.decode(encoded, decoded);
+        return decoded;
+    }
+
+}
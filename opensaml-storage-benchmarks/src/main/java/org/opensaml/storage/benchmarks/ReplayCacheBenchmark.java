@@ -0,0 +1,197 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opensaml.storage.ReplayCache;
+import org.opensaml.storage.StorageService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of {@link ReplayCache#check(String, String, long)} throughput under contention.
+ * 
+ * <p>Each benchmark is declared at 1, 4, 16 and 64 threads so that the scaling of the cache can be read from a
+ * single run. Checks of fresh values, as for messages seen for the first time, create a record, while checks
+ * of a value already seen read one.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplayCacheBenchmark {
+
+    /** Context of the checks. */
+    private static final String CONTEXT = "replay";
+
+    /** Value checked repeatedly by the replay benchmarks. */
+    private static final String REPLAYED = "_replayed";
+
+    /** Storage implementation backing the cache. */
+    @Param({StorageServiceFactory.MEMORY, StorageServiceFactory.MAPPED_FILE})
+    public String implementation;
+
+    /** Service backing the cache. */
+    private StorageService storageService;
+
+    /** Cache being benchmarked. */
+    private ReplayCache replayCache;
+
+    /** Counter used to generate fresh values. */
+    private final AtomicLong counter = new AtomicLong();
+
+    /** Expiration of checked values. */
+    private long expiration;
+
+    /**
+     * Create the cache.
+     * 
+     * @throws Exception if an error occurs
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        storageService = StorageServiceFactory.create(implementation, 1000);
+        replayCache = new ReplayCache();
+        replayCache.setId("benchmark");
+        replayCache.setStorage(storageService);
+        replayCache.initialize();
+        expiration = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(5);
+        replayCache.check(CONTEXT, REPLAYED, expiration);
+    }
+
+    /** Destroy the cache and service. */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        replayCache.destroy();
+        StorageServiceFactory.destroy(storageService);
+    }
+
+    /**
+     * Check a fresh value.
+     * 
+     * @return the result of the check
+     */
+    @Benchmark
+    @Threads(1)
+    public boolean fresh1() {
+        return checkFresh();
+    }
+
+    /**
+     * Check a fresh value.
+     * 
+     * @return the result of the check
+     */
+    @Benchmark
+    @Threads(4)
+    public boolean fresh4() {
+        return checkFresh();
+    }
+
+    /**
+     * Check a fresh value.
+     * 
+     * @return the result of the check
+     */
+    @Benchmark
+    @Threads(16)
+    public boolean fresh16() {
+        return checkFresh();
+    }
+
+    /**
+     * Check a fresh value.
+     * 
+     * @return the result of the check
+     */
+    @Benchmark
+    @Threads(64)
+    public boolean fresh64() {
+        return checkFresh();
+    }
+
+    /**
+     * Check a replayed value.
+     * 
+     * @return the result of the check
+     */
+    @Benchmark
+    @Threads(1)
+    public boolean replayed1() {
+        return replayCache.check(CONTEXT, REPLAYED, expiration);
+    }
+
+    /**
+     * Check a replayed value.
+     * 
+     * @return the result of the check
+     */
+    @Benchmark
+    @Threads(4)
+    public boolean replayed4() {
+        return replayCache.check(CONTEXT, REPLAYED, expiration);
+    }
+
+    /**
+     * Check a replayed value.
+     * 
+     * @return the result of the check
+     */
+    @Benchmark
+    @Threads(16)
+    public boolean replayed16() {
+        return replayCache.check(CONTEXT, REPLAYED, expiration);
+    }
+
+    /**
+     * Check a replayed value.
+     * 
+     * @return the result of the check
+     */
+    @Benchmark
+    @Threads(64)
+    public boolean replayed64() {
+        return replayCache.check(CONTEXT, REPLAYED, expiration);
+    }
+
+    /**
+     * Check a value not seen before.
+     * 
+     * @return the result of the check
+     */
+    private boolean checkFresh() {
+        return replayCache.check(CONTEXT, "_" + counter.incrementAndGet(), expiration);
+    }
+
+}
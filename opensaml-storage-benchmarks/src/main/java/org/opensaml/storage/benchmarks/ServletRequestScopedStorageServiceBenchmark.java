@@ -0,0 +1,204 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
+
+import net.shibboleth.utilities.java.support.net.CookieManager;
+import net.shibboleth.utilities.java.support.net.HttpServletRequestResponseContext;
+import net.shibboleth.utilities.java.support.net.ThreadLocalHttpServletRequestProxy;
+import net.shibboleth.utilities.java.support.net.ThreadLocalHttpServletResponseProxy;
+import net.shibboleth.utilities.java.support.resource.TestResourceConverter;
+import net.shibboleth.utilities.java.support.security.BasicKeystoreKeyStrategy;
+import net.shibboleth.utilities.java.support.security.DataSealer;
+
+import org.opensaml.storage.impl.ServletRequestScopedStorageService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Benchmarks of {@link ServletRequestScopedStorageService} across a complete request, in which the stored data is
+ * unsealed from a cookie, read and updated, and sealed into a new cookie.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServletRequestScopedStorageServiceBenchmark {
+
+    /** Name of the cookie holding the data. */
+    private static final String COOKIE_NAME = "benchmark";
+
+    /** Context of the stored records. */
+    private static final String CONTEXT = "benchmark";
+
+    /** Number of records stored. */
+    @Param({"10"})
+    public int records;
+
+    /** Service being benchmarked. */
+    private ServletRequestScopedStorageService storageService;
+
+    /**
+     * Create the service.
+     * 
+     * @throws Exception if an error occurs
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        final BasicKeystoreKeyStrategy strategy = new BasicKeystoreKeyStrategy();
+        strategy.setKeyAlias("secret");
+        strategy.setKeyPassword("kpassword");
+        strategy.setKeystorePassword("password");
+        strategy.setKeystoreResource(TestResourceConverter.of(
+                new ClassPathResource("/org/opensaml/storage/benchmarks/SealerKeyStore.jks")));
+        strategy.setKeyVersionResource(TestResourceConverter.of(
+                new ClassPathResource("/org/opensaml/storage/benchmarks/SealerKeyStore.kver")));
+        strategy.initialize();
+
+        final DataSealer sealer = new DataSealer();
+        sealer.setKeyStrategy(strategy);
+        sealer.initialize();
+
+        final CookieManager cookieManager = new CookieManager();
+        cookieManager.setHttpServletRequest(new ThreadLocalHttpServletRequestProxy());
+        cookieManager.setHttpServletResponse(new ThreadLocalHttpServletResponseProxy());
+        cookieManager.initialize();
+
+        storageService = new ServletRequestScopedStorageService();
+        storageService.setId("benchmark");
+        storageService.setCleanupInterval(0);
+        storageService.setDataSealer(sealer);
+        storageService.setCookieManager(cookieManager);
+        storageService.setCookieName(COOKIE_NAME);
+        storageService.setHttpServletRequest(new ThreadLocalHttpServletRequestProxy());
+        storageService.setHttpServletResponse(new ThreadLocalHttpServletResponseProxy());
+        storageService.initialize();
+    }
+
+    /** Destroy the service. */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        storageService.destroy();
+    }
+
+    /**
+     * Process a request that reads and updates a record.
+     * 
+     * @param thread per-thread state
+     * 
+     * @return the cookie set by the request
+     * @throws Exception if an error occurs
+     */
+    @Benchmark
+    public Cookie request(final ThreadState thread) throws Exception {
+        return thread.process(new FilterChain() {
+            public void doFilter(final ServletRequest request, final ServletResponse response) throws IOException {
+                final String key = Integer.toString(thread.counter++ % records);
+                storageService.read(CONTEXT, key);
+                storageService.update(CONTEXT, key, "updated" + thread.counter, null);
+            }
+        }, storageService);
+    }
+
+    /** State private to each benchmark thread. */
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        /** Counter used to choose records. */
+        private int counter;
+
+        /** Cookie returned by the previous request. */
+        private Cookie cookie;
+
+        /**
+         * Populate the thread's storage.
+         * 
+         * @param benchmark the benchmark state
+         * 
+         * @throws Exception if an error occurs
+         */
+        @Setup(Level.Trial)
+        public void setUp(final ServletRequestScopedStorageServiceBenchmark benchmark) throws Exception {
+            final ServletRequestScopedStorageService storageService = benchmark.storageService;
+            final int records = benchmark.records;
+            process(new FilterChain() {
+                public void doFilter(final ServletRequest request, final ServletResponse response)
+                        throws IOException {
+                    for (int i = 0; i < records; i++) {
+                        storageService.create(CONTEXT, Integer.toString(i), "value" + i, null);
+                    }
+                }
+            }, storageService);
+        }
+
+        /**
+         * Process a request carrying the current cookie through the service's filter.
+         * 
+         * @param chain the chain to run within the filter
+         * @param storageService the service
+         * 
+         * @return the new cookie
+         * @throws IOException if an error occurs
+         * @throws ServletException if an error occurs
+         */
+        private Cookie process(final FilterChain chain, final ServletRequestScopedStorageService storageService)
+                throws IOException, ServletException {
+            final MockHttpServletRequest request = new MockHttpServletRequest();
+            if (cookie != null) {
+                request.setCookies(cookie);
+            }
+            final MockHttpServletResponse response = new MockHttpServletResponse();
+            HttpServletRequestResponseContext.loadCurrent(request, response);
+            try {
+                storageService.doFilter(request, response, chain);
+            } finally {
+                HttpServletRequestResponseContext.clearCurrent();
+            }
+            final Cookie newCookie = response.getCookie(COOKIE_NAME);
+            if (newCookie != null) {
+                cookie = newCookie;
+            }
+            return cookie;
+        }
+    }
+
+}
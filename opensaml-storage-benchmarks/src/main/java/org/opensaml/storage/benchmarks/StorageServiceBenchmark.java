@@ -0,0 +1,254 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.benchmarks;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.StorageService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of create, read, update and delete mixes against {@link StorageService} implementations.
+ * 
+ * <p>A fixed set of records is populated before each trial. The read-heavy and write-heavy mixes operate on
+ * random records from that set, so contend with each other when run with several threads, while the
+ * create/delete and expiry-heavy workloads use keys private to each thread. The expiry-heavy workload writes
+ * records that expire almost immediately, so reads mostly find expired records and the cleanup task, which
+ * runs frequently, always has work to do.</p>
+ * 
+ * <p>The benchmarks run with a single thread, and again with 4, 16 and 64 threads through the nested subclasses,
+ * as the replay cache benchmarks do.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+public class StorageServiceBenchmark {
+
+    /** Context populated before each trial. */
+    private static final String CONTEXT = "benchmark";
+
+    /** Number of records populated before each trial. */
+    private static final int RECORDS = 10000;
+
+    /** Lifetime of records written by the expiry-heavy workload, in milliseconds. */
+    private static final long SHORT_LIFETIME = 5;
+
+    /** Storage implementation to benchmark. */
+    @Param({StorageServiceFactory.MEMORY, StorageServiceFactory.MAPPED_FILE, StorageServiceFactory.JPA,
+            StorageServiceFactory.MEMCACHED})
+    public String implementation;
+
+    /** Length of the values written. */
+    @Param({"64"})
+    public int valueLength;
+
+    /** Service being benchmarked. */
+    private StorageService storageService;
+
+    /** Pre-generated keys of the populated records. */
+    private String[] keys;
+
+    /** Value written. */
+    private String value;
+
+    /**
+     * Create the service and populate it.
+     * 
+     * @throws Exception if an error occurs
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        storageService = StorageServiceFactory.create(implementation, 100);
+
+        final StringBuilder builder = new StringBuilder(valueLength);
+        for (int i = 0; i < valueLength; i++) {
+            builder.append((char) ('a' + i % 26));
+        }
+        value = builder.toString();
+
+        keys = new String[RECORDS];
+        final long expiration = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+        for (int i = 0; i < RECORDS; i++) {
+            keys[i] = "key" + i;
+            storageService.create(CONTEXT, keys[i], value, expiration);
+        }
+    }
+
+    /** Destroy the service. */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        StorageServiceFactory.destroy(storageService);
+    }
+
+    /**
+     * Read a random record.
+     * 
+     * @param thread per-thread state
+     * 
+     * @return the record read
+     * @throws IOException if an error occurs
+     */
+    @Benchmark
+    public StorageRecord read(final ThreadState thread) throws IOException {
+        return storageService.read(CONTEXT, keys[thread.random.nextInt(RECORDS)]);
+    }
+
+    /**
+     * Read a random record, or update one in one case out of ten.
+     * 
+     * @param thread per-thread state
+     * 
+     * @return the result of the operation
+     * @throws IOException if an error occurs
+     */
+    @Benchmark
+    public Object readHeavy(final ThreadState thread) throws IOException {
+        final String key = keys[thread.random.nextInt(RECORDS)];
+        if (thread.random.nextInt(10) == 0) {
+            return storageService.update(CONTEXT, key, value, null);
+        }
+        return storageService.read(CONTEXT, key);
+    }
+
+    /**
+     * Update a random record, or read one in one case out of ten.
+     * 
+     * @param thread per-thread state
+     * 
+     * @return the result of the operation
+     * @throws IOException if an error occurs
+     */
+    @Benchmark
+    public Object writeHeavy(final ThreadState thread) throws IOException {
+        final String key = keys[thread.random.nextInt(RECORDS)];
+        if (thread.random.nextInt(10) == 0) {
+            return storageService.read(CONTEXT, key);
+        }
+        return storageService.update(CONTEXT, key, value, null);
+    }
+
+    /**
+     * Create a record, read it back and delete it.
+     * 
+     * @param thread per-thread state
+     * 
+     * @return whether the record was deleted
+     * @throws IOException if an error occurs
+     */
+    @Benchmark
+    public boolean createReadDelete(final ThreadState thread) throws IOException {
+        final String key = thread.nextKey();
+        storageService.create(thread.context, key, value, null);
+        storageService.read(thread.context, key);
+        return storageService.delete(thread.context, key);
+    }
+
+    /**
+     * Create a short-lived record and read an earlier one, which has usually expired.
+     * 
+     * @param thread per-thread state
+     * 
+     * @return the record read, usually null
+     * @throws IOException if an error occurs
+     */
+    @Benchmark
+    public StorageRecord expiryHeavy(final ThreadState thread) throws IOException {
+        final String key = thread.nextKey();
+        storageService.create(thread.context, key, value, System.currentTimeMillis() + SHORT_LIFETIME);
+        return storageService.read(thread.context, thread.previousKey(100));
+    }
+
+    /** The benchmarks, run with 4 threads. */
+    @Threads(4)
+    public static class Threads4 extends StorageServiceBenchmark {
+
+    }
+
+    /** The benchmarks, run with 16 threads. */
+    @Threads(16)
+    public static class Threads16 extends StorageServiceBenchmark {
+
+    }
+
+    /** The benchmarks, run with 64 threads. */
+    @Threads(64)
+    public static class Threads64 extends StorageServiceBenchmark {
+
+    }
+
+    /** State private to each benchmark thread. */
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        /** Source of record choices. */
+        private final Random random = new Random();
+
+        /** Context private to the thread. */
+        private String context;
+
+        /** Counter used to generate keys. */
+        private long counter;
+
+        /** Choose the thread's context. */
+        @Setup(Level.Trial)
+        public void setUp() {
+            context = "thread" + Thread.currentThread().getId() + "-" + System.nanoTime();
+        }
+
+        /**
+         * Generate a new key.
+         * 
+         * @return the key
+         */
+        private String nextKey() {
+            return Long.toString(++counter);
+        }
+
+        /**
+         * Get a previously generated key.
+         * 
+         * @param distance how many keys ago the key was generated
+         * 
+         * @return the key
+         */
+        private String previousKey(final int distance) {
+            return Long.toString(Math.max(1, counter - distance));
+        }
+    }
+
+}
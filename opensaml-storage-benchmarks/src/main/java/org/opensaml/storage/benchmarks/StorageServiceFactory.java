@@ -0,0 +1,254 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.persistence.EntityManagerFactory;
+
+import net.shibboleth.utilities.java.support.component.AbstractIdentifiableInitializableComponent;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.component.DestructableComponent;
+import net.shibboleth.utilities.java.support.component.InitializableComponent;
+import net.spy.memcached.BinaryConnectionFactory;
+import net.spy.memcached.MemcachedClient;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.opensaml.storage.StorageService;
+import org.opensaml.storage.impl.JPAStorageService;
+import org.opensaml.storage.impl.MappedFileStorageService;
+import org.opensaml.storage.impl.MemoryStorageService;
+import org.opensaml.storage.impl.memcached.MemcachedStorageService;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.Database;
+import org.springframework.orm.jpa.vendor.HibernateJpaDialect;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+import com.thimbleware.jmemcached.CacheImpl;
+import com.thimbleware.jmemcached.Key;
+import com.thimbleware.jmemcached.LocalCacheElement;
+import com.thimbleware.jmemcached.MemCacheDaemon;
+import com.thimbleware.jmemcached.storage.CacheStorage;
+import com.thimbleware.jmemcached.storage.hash.ConcurrentLinkedHashMap;
+
+/**
+ * Creates the storage services to benchmark, by name.
+ * 
+ * <p>The memcached implementation connects to the server given by the <code>memcached.server</code> system
+ * property, as <code>host:port</code>. If none is given, an in-process jmemcached server is started for each service
+ * and stopped when the service is destroyed. Results against the in-process server measure the client and the
+ * storage service rather than a production memcached deployment.</p>
+ */
+public final class StorageServiceFactory {
+
+    /** Name of the {@link MemoryStorageService} implementation. */
+    @Nonnull public static final String MEMORY = "memory";
+
+    /** Name of the {@link MappedFileStorageService} implementation. */
+    @Nonnull public static final String MAPPED_FILE = "mappedfile";
+
+    /** Name of the {@link JPAStorageService} implementation, backed by an embedded database. */
+    @Nonnull public static final String JPA = "jpa";
+
+    /** Name of the {@link MemcachedStorageService} implementation. */
+    @Nonnull public static final String MEMCACHED = "memcached";
+
+    /** Name of the system property giving the memcached server to use. */
+    @Nonnull public static final String MEMCACHED_SERVER_PROPERTY = "memcached.server";
+
+    /** Maximum number of items held by an in-process memcached server. */
+    private static final int MEMCACHED_MAX_ITEMS = 1000000;
+
+    /** Maximum number of bytes held by an in-process memcached server. */
+    private static final long MEMCACHED_MAX_BYTES = 256L * 1024 * 1024;
+
+    /** Clients of the memcached services created, to be shut down along with them. */
+    @Nonnull private static final ConcurrentMap<StorageService, MemcachedClient> MEMCACHED_CLIENTS =
+            new ConcurrentHashMap<>();
+
+    /** In-process memcached servers, by the service using them. */
+    @Nonnull private static final ConcurrentMap<StorageService, MemCacheDaemon<LocalCacheElement>> MEMCACHED_SERVERS =
+            new ConcurrentHashMap<>();
+
+    /** Constructor. */
+    private StorageServiceFactory() {
+
+    }
+
+    /**
+     * Create and initialize a storage service.
+     * 
+     * @param implementation name of the implementation
+     * @param cleanupInterval cleanup interval, for implementations that support it
+     * 
+     * @return the initialized service
+     * @throws Exception if the service cannot be created
+     */
+    @Nonnull public static StorageService create(@Nonnull final String implementation, final long cleanupInterval)
+            throws Exception {
+        final StorageService service;
+        switch (implementation) {
+            case MEMORY:
+                final MemoryStorageService memory = new MemoryStorageService();
+                memory.setCleanupInterval(cleanupInterval);
+                service = memory;
+                break;
+
+            case MAPPED_FILE:
+                final File file = File.createTempFile("storage-benchmark", ".dat");
+                file.deleteOnExit();
+                final MappedFileStorageService mapped = new MappedFileStorageService();
+                mapped.setFile(file);
+                mapped.setCleanupInterval(cleanupInterval);
+                service = mapped;
+                break;
+
+            case JPA:
+                final JPAStorageService jpa = new JPAStorageService(createEntityManagerFactory());
+                jpa.setCleanupInterval(cleanupInterval);
+                service = jpa;
+                break;
+
+            case MEMCACHED:
+                final String server = System.getProperty(MEMCACHED_SERVER_PROPERTY);
+                final MemCacheDaemon<LocalCacheElement> daemon;
+                final InetSocketAddress address;
+                if (server != null) {
+                    final String[] hostAndPort = server.split(":");
+                    address = new InetSocketAddress(hostAndPort[0], Integer.parseInt(hostAndPort[1]));
+                    daemon = null;
+                } else {
+                    address = new InetSocketAddress("localhost", findFreePort());
+                    daemon = startMemcachedServer(address);
+                }
+                final MemcachedClient client =
+                        new MemcachedClient(new BinaryConnectionFactory(), Collections.singletonList(address));
+                service = new MemcachedStorageService(client, 5);
+                MEMCACHED_CLIENTS.put(service, client);
+                if (daemon != null) {
+                    MEMCACHED_SERVERS.put(service, daemon);
+                }
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unknown storage implementation " + implementation);
+        }
+
+        if (service instanceof AbstractIdentifiableInitializableComponent) {
+            ((AbstractIdentifiableInitializableComponent) service).setId(implementation);
+        }
+        if (service instanceof InitializableComponent) {
+            ((InitializableComponent) service).initialize();
+        }
+        return service;
+    }
+
+    /**
+     * Destroy a storage service, if it supports it.
+     * 
+     * @param service the service to destroy
+     */
+    public static void destroy(@Nullable final StorageService service) {
+        if (service instanceof DestructableComponent) {
+            ((DestructableComponent) service).destroy();
+        }
+        if (service != null) {
+            final MemcachedClient client = MEMCACHED_CLIENTS.remove(service);
+            if (client != null) {
+                client.shutdown();
+            }
+            final MemCacheDaemon<LocalCacheElement> daemon = MEMCACHED_SERVERS.remove(service);
+            if (daemon != null) {
+                daemon.stop();
+            }
+        }
+    }
+
+    /**
+     * Start an in-process memcached server speaking the binary protocol.
+     * 
+     * @param address address to listen on
+     * 
+     * @return the running server
+     */
+    @Nonnull private static MemCacheDaemon<LocalCacheElement> startMemcachedServer(
+            @Nonnull final InetSocketAddress address) {
+        final CacheStorage<Key, LocalCacheElement> storage = ConcurrentLinkedHashMap.create(
+                ConcurrentLinkedHashMap.EvictionPolicy.FIFO, MEMCACHED_MAX_ITEMS, MEMCACHED_MAX_BYTES);
+        final MemCacheDaemon<LocalCacheElement> daemon = new MemCacheDaemon<>();
+        daemon.setCache(new CacheImpl(storage));
+        daemon.setBinary(true);
+        daemon.setAddr(address);
+        daemon.setVerbose(false);
+        daemon.start();
+        return daemon;
+    }
+
+    /**
+     * Find a local port which is not in use.
+     * 
+     * @return the port
+     * @throws IOException if no port can be found
+     */
+    private static int findFreePort() throws IOException {
+        try (final ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Create an entity manager factory for an in-memory HSQLDB database.
+     * 
+     * @return the entity manager factory
+     * @throws ComponentInitializationException if the factory cannot be created
+     */
+    @Nonnull private static EntityManagerFactory createEntityManagerFactory()
+            throws ComponentInitializationException {
+        final BasicDataSource dataSource = new BasicDataSource();
+        dataSource.setDriverClassName("org.hsqldb.jdbcDriver");
+        dataSource.setUrl("jdbc:hsqldb:mem:StorageServiceBenchmark");
+        dataSource.setUsername("SA");
+        dataSource.setPassword("");
+
+        final HibernateJpaVendorAdapter adapter = new HibernateJpaVendorAdapter();
+        adapter.setDatabase(Database.HSQL);
+        adapter.setGenerateDdl(true);
+
+        final LocalContainerEntityManagerFactoryBean factoryBean = new LocalContainerEntityManagerFactoryBean();
+        factoryBean.setPersistenceUnitName("benchmarks");
+        factoryBean.setPackagesToScan("org.opensaml.storage.impl");
+        factoryBean.setDataSource(dataSource);
+        factoryBean.setJpaVendorAdapter(adapter);
+        factoryBean.setJpaDialect(new HibernateJpaDialect());
+        try {
+            factoryBean.afterPropertiesSet();
+        } catch (final RuntimeException e) {
+            throw new ComponentInitializationException(e);
+        }
+        return factoryBean.getObject();
+    }
+
+}
@@ -0,0 +1,27 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * JMH benchmarks of storage services and the replay cache.
+ * 
+ * <p>Build with <code>mvn -Pbenchmarks package</code> from opensaml-parent and run with
+ * <code>java -jar target/benchmarks.jar</code>, passing the usual JMH options, e.g.
+ * <code>-p implementation=memory,jpa</code> to select storage implementations. Benchmarks run with several thread
+ * counts; <code>-t</code> overrides them all. The memcached implementation uses an in-process jmemcached server
+ * unless the <code>memcached.server</code> system property gives the <code>host:port</code> of a real one.</p>
+ */
+package org.opensaml.storage.benchmarks;
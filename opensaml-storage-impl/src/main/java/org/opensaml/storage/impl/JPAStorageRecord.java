@@ -26,6 +26,7 @@ import javax.persistence.Embeddable;
 import javax.persistence.Entity;
 import javax.persistence.Id;
 import javax.persistence.IdClass;
+import javax.persistence.Index;
 import javax.persistence.Lob;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
@@ -37,9 +38,12 @@ import org.opensaml.storage.MutableStorageRecord;
 
 /**
  * Implementation of {@link MutableStorageRecord} annotated for JPA.
+ * 
+ * <p>The index on the expiration column allows expired records to be located without scanning the table, which
+ * the cleanup task relies on. Deployers managing the schema themselves should create an equivalent index.</p>
  */
 @Entity
-@Table(name = "StorageRecords")
+@Table(name = "StorageRecords", indexes = {@Index(name = "StorageRecords_expires_idx", columnList = "expires")})
 @NamedQueries({
     @NamedQuery(name = "JPAStorageRecord.findAll",
             query = "SELECT r FROM JPAStorageRecord r"),
@@ -55,7 +59,28 @@ import org.opensaml.storage.MutableStorageRecord;
     @NamedQuery(name = "JPAStorageRecord.deleteByContextAndExpiration",
             query = "DELETE FROM JPAStorageRecord r WHERE r.context = :context AND r.expiration <= :exp"),
     @NamedQuery(name = "JPAStorageRecord.deleteByExpiration",
-            query = "DELETE FROM JPAStorageRecord r WHERE r.expiration <= :exp")})
+            query = "DELETE FROM JPAStorageRecord r WHERE r.expiration <= :exp"),
+    @NamedQuery(name = "JPAStorageRecord.findExpiredKeys",
+            query = "SELECT r.context, r.key FROM JPAStorageRecord r WHERE r.expiration <= :exp"),
+    @NamedQuery(name = "JPAStorageRecord.deleteExpiredByKeys",
+            query = "DELETE FROM JPAStorageRecord r WHERE r.context = :context AND r.key IN :keys "
+                    + "AND r.expiration <= :exp"),
+    @NamedQuery(name = "JPAStorageRecord.updateValueByVersion",
+            query = "UPDATE JPAStorageRecord r SET r.value = :value, r.expiration = :exp, r.version = r.version + 1 "
+                    + "WHERE r.context = :context AND r.key = :key AND r.version = :version "
+                    + "AND (r.expiration IS NULL OR r.expiration > :now)"),
+    @NamedQuery(name = "JPAStorageRecord.updateExpirationByVersion",
+            query = "UPDATE JPAStorageRecord r SET r.expiration = :exp "
+                    + "WHERE r.context = :context AND r.key = :key AND r.version = :version "
+                    + "AND (r.expiration IS NULL OR r.expiration > :now)"),
+    @NamedQuery(name = "JPAStorageRecord.replaceExpired",
+            query = "UPDATE JPAStorageRecord r SET r.value = :value, r.expiration = :exp, r.version = 1 "
+                    + "WHERE r.context = :context AND r.key = :key AND r.expiration <= :now"),
+    @NamedQuery(name = "JPAStorageRecord.deleteByKey",
+            query = "DELETE FROM JPAStorageRecord r WHERE r.context = :context AND r.key = :key"),
+    @NamedQuery(name = "JPAStorageRecord.deleteByKeyAndVersion",
+            query = "DELETE FROM JPAStorageRecord r WHERE r.context = :context AND r.key = :key "
+                    + "AND r.version = :version")})
 @IdClass(JPAStorageRecord.RecordId.class)
 public class JPAStorageRecord extends MutableStorageRecord {
 
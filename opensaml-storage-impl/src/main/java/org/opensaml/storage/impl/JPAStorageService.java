@@ -18,11 +18,16 @@
 package org.opensaml.storage.impl;
 
 import java.io.IOException;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimerTask;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -31,9 +36,11 @@ import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityTransaction;
 import javax.persistence.LockModeType;
+import javax.persistence.PersistenceException;
 import javax.persistence.Query;
 import javax.persistence.RollbackException;
 
+import net.shibboleth.utilities.java.support.annotation.Duration;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonNegative;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
@@ -43,17 +50,50 @@ import net.shibboleth.utilities.java.support.component.ComponentSupport;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 
 import org.opensaml.storage.AbstractStorageService;
+import org.opensaml.storage.AsyncStorageService;
+import org.opensaml.storage.AsyncStorageServiceAdapter;
 import org.opensaml.storage.StorageRecord;
 import org.opensaml.storage.VersionMismatchException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ListenableFuture;
+
 /**
  * Implementation of {@link org.opensaml.storage.StorageService} that uses JPA to persist to a database.
+ * 
+ * <p>The {@link AsyncStorageService} operations are run on a dedicated executor so that callers are not blocked
+ * by database I/O. JDBC offers no non-blocking API, so the size of that executor bounds the number of concurrent
+ * asynchronous operations and should not exceed the size of the connection pool.</p>
+ * 
+ * <p>By default, records are locked pessimistically for the duration of each operation. Setting
+ * {@link #setOptimisticConcurrency(boolean)} instead relies on the version column: reads take no locks,
+ * and every change is a single conditional statement that only succeeds if the record still has the version
+ * that was read. In that mode {@link #getTransactionRetry()} bounds the number of attempts made when such a
+ * condition fails because of a concurrent change.</p>
+ * 
+ * <p>The background cleanup task removes expired records in batches of at most {@link #getCleanupBatchSize()}
+ * records, each in its own short transaction, optionally pausing between batches. This keeps locks held by
+ * the cleanup brief regardless of how many records have expired. It relies on an index on the expiration
+ * column.</p>
  */
-public class JPAStorageService extends AbstractStorageService {
+public class JPAStorageService extends AbstractStorageService implements AsyncStorageService {
+
+    /** SQLSTATE of a unique constraint violation, used by the standard, PostgreSQL, HSQLDB, H2, Derby and DB2. */
+    @Nonnull @NotEmpty private static final String UNIQUE_VIOLATION_STATE = "23505";
+
+    /** SQLSTATE of a generic integrity constraint violation. */
+    @Nonnull @NotEmpty private static final String INTEGRITY_VIOLATION_STATE = "23000";
+
+    /**
+     * Vendor error codes which identify a duplicate key when reported with {@link #INTEGRITY_VIOLATION_STATE}:
+     * Oracle ORA-00001, MySQL/MariaDB 1062 and 1586, SQL Server 2601 and 2627.
+     */
+    @Nonnull @NonnullElements private static final Set<Integer> DUPLICATE_KEY_ERROR_CODES =
+            ImmutableSet.of(1, 1062, 1586, 2601, 2627);
 
-    /** Class logger. */
+    /** Class logger.
     @Nonnull private final Logger log = LoggerFactory.getLogger(JPAStorageService.class);
 
     /** Entity manager factory. */
@@ -62,6 +102,36 @@ public class JPAStorageService extends AbstractStorageService {
     /** Number of times to retry a transaction if it rolls back. Default value is {@value} . */
     @NonNegative private int transactionRetry = 3;
 
+    /** Whether to use the version column for optimistic concurrency instead of row locks. */
+    private boolean optimisticConcurrency;
+
+    /** Maximum number of expired records deleted per cleanup transaction. Default value is {@value} . */
+    @Positive private int cleanupBatchSize = 100;
+
+    /** Pause in milliseconds between cleanup batches. */
+    @Duration @NonNegative private long cleanupBatchPause;
+
+    /** Number of expired records deleted by the cleanup task since initialization. */
+    @Nonnull private final AtomicLong cleanupDeletedCount = new AtomicLong();
+
+    /** Number of cleanup batches run since initialization. */
+    @Nonnull private final AtomicLong cleanupBatchCount = new AtomicLong();
+
+    /** Duration in milliseconds of the most recent cleanup run. */
+    @Nonnull private final AtomicLong lastCleanupDuration = new AtomicLong();
+
+    /** Number of threads in the internal executor for asynchronous operations. Default value is {@value} . */
+    @Positive private int asyncPoolSize = 10;
+
+    /** Executor for asynchronous operations supplied by the deployer. */
+    @Nullable private ExecutorService asyncExecutor;
+
+    /** Executor for asynchronous operations created and owned by this service. */
+    @Nullable private ExecutorService internalAsyncExecutor;
+
+    /** Runs asynchronous operations against this service. */
+    @Nullable private AsyncStorageService asyncAdapter;
+
     /**
      * Creates a new JPA storage service.
      * 
@@ -96,8 +166,144 @@ public class JPAStorageService extends AbstractStorageService {
                         "Transaction retry must be greater than or equal to zero");
     }
 
+    /**
+     * Returns whether optimistic concurrency is used instead of pessimistic row locks.
+     * 
+     * @return whether optimistic concurrency is used
+     */
+    public boolean isOptimisticConcurrency() {
+        return optimisticConcurrency;
+    }
+
+    /**
+     * Sets whether to use optimistic concurrency, based on the version column, instead of pessimistic row locks.
+     * 
+     * @param flag flag to set
+     */
+    public void setOptimisticConcurrency(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        optimisticConcurrency = flag;
+    }
+
+    /**
+     * Returns the maximum number of expired records deleted per cleanup transaction.
+     * 
+     * @return cleanup batch size
+     */
+    @Positive public int getCleanupBatchSize() {
+        return cleanupBatchSize;
+    }
+
+    /**
+     * Sets the maximum number of expired records deleted per cleanup transaction.
+     * 
+     * @param size cleanup batch size
+     */
+    public void setCleanupBatchSize(@Positive final int size) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        cleanupBatchSize = (int) Constraint.isGreaterThan(0, size, "Cleanup batch size must be greater than zero");
+    }
+
+    /**
+     * Returns the pause in milliseconds between cleanup batches.
+     * 
+     * @return pause between cleanup batches
+     */
+    @NonNegative public long getCleanupBatchPause() {
+        return cleanupBatchPause;
+    }
+
+    /**
+     * Sets the pause in milliseconds between cleanup batches, to limit the load placed on the database.
+     * 
+     * @param pause pause between cleanup batches
+     */
+    public void setCleanupBatchPause(@Duration @NonNegative final long pause) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        cleanupBatchPause = Constraint.isGreaterThanOrEqual(0, pause,
+                "Cleanup batch pause must be greater than or equal to zero");
+    }
+
+    /**
+     * Returns the number of expired records deleted by the cleanup task since initialization.
+     * 
+     * @return number of records deleted
+     */
+    @NonNegative public long getCleanupDeletedCount() {
+        return cleanupDeletedCount.get();
+    }
+
+    /**
+     * Returns the number of cleanup batches run since initialization.
+     * 
+     * @return number of batches
+     */
+    @NonNegative public long getCleanupBatchCount() {
+        return cleanupBatchCount.get();
+    }
+
+    /**
+     * Returns the duration in milliseconds of the most recent cleanup run.
+     * 
+     * @return duration of the last cleanup
+     */
+    @NonNegative public long getLastCleanupDuration() {
+        return lastCleanupDuration.get();
+    }
+
+    /**
+     * Sets the number of threads in the internal executor used for asynchronous operations.
+     * 
+     * <p>Ignored if an executor is supplied with {@link #setAsyncExecutor(ExecutorService)}.</p>
+     * 
+     * @param size number of threads
+     */
+    public void setAsyncPoolSize(@Positive final int size) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        asyncPoolSize = (int) Constraint.isGreaterThan(0, size, "Async pool size must be greater than zero");
+    }
+
+    /**
+     * Sets the executor used for asynchronous operations.
+     * 
+     * <p>If not set, a fixed-size internal executor is created on first use and shut down when this service is
+     * destroyed. A supplied executor is not shut down by this service.</p>
+     * 
+     * @param executor executor for asynchronous operations
+     */
+    public void setAsyncExecutor(@Nullable final ExecutorService executor) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        asyncExecutor = executor;
+    }
+
+    /**
+     * Returns the adapter that runs asynchronous operations, creating it on first use.
+     * 
+     * @return asynchronous view of this service
+     */
+    @Nonnull protected synchronized AsyncStorageService getAsyncStorageService() {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        if (asyncAdapter == null) {
+            ExecutorService executor = asyncExecutor;
+            if (executor == null) {
+                internalAsyncExecutor = Executors.newFixedThreadPool(asyncPoolSize);
+                executor = internalAsyncExecutor;
+            }
+            asyncAdapter = new AsyncStorageServiceAdapter(this, executor);
+        }
+        return asyncAdapter;
+    }
+
     /** {@inheritDoc} */
     @Override protected void doDestroy() {
+        synchronized (this) {
+            if (internalAsyncExecutor != null) {
+                internalAsyncExecutor.shutdown();
+                internalAsyncExecutor = null;
+            }
+            asyncAdapter = null;
+        }
         if (entityManagerFactory.isOpen()) {
             entityManagerFactory.close();
         }
@@ -109,6 +315,9 @@ public class JPAStorageService extends AbstractStorageService {
     /** {@inheritDoc} */
     @Override public boolean create(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
             @Nonnull @NotEmpty final String value, @Nullable @Positive final Long expiration) throws IOException {
+        if (optimisticConcurrency) {
+            return createOptimistic(context, key, value, expiration);
+        }
         EntityManager manager = null;
         try {
             int retry = -1;
@@ -205,7 +414,7 @@ public class JPAStorageService extends AbstractStorageService {
         try {
             manager = entityManagerFactory.createEntityManager();
             return executeNamedQuery(manager, "JPAStorageRecord.findAll", null, StorageRecord.class,
-                    LockModeType.PESSIMISTIC_READ);
+                    optimisticConcurrency ? LockModeType.NONE : LockModeType.PESSIMISTIC_READ);
         } finally {
             if (manager != null && manager.isOpen()) {
                 try {
@@ -233,7 +442,7 @@ public class JPAStorageService extends AbstractStorageService {
             final Map<String, Object> params = new HashMap<>();
             params.put("context", context);
             return executeNamedQuery(manager, "JPAStorageRecord.findByContext", params, StorageRecord.class,
-                    LockModeType.PESSIMISTIC_READ);
+                    optimisticConcurrency ? LockModeType.NONE : LockModeType.PESSIMISTIC_READ);
         } finally {
             if (manager != null && manager.isOpen()) {
                 try {
@@ -299,11 +508,15 @@ public class JPAStorageService extends AbstractStorageService {
         EntityTransaction transaction = null;
         try {
             manager = entityManagerFactory.createEntityManager();
-            transaction = manager.getTransaction();
-            transaction.begin();
-            final JPAStorageRecord entity =
-                    manager.find(JPAStorageRecord.class, new JPAStorageRecord.RecordId(context, key),
-                            LockModeType.PESSIMISTIC_READ);
+            final JPAStorageRecord entity;
+            if (optimisticConcurrency) {
+                entity = manager.find(JPAStorageRecord.class, new JPAStorageRecord.RecordId(context, key));
+            } else {
+                transaction = manager.getTransaction();
+                transaction.begin();
+                entity = manager.find(JPAStorageRecord.class, new JPAStorageRecord.RecordId(context, key),
+                        LockModeType.PESSIMISTIC_READ);
+            }
             if (entity == null) {
                 log.debug("Read failed, key '{}' not found in context '{}'", key, context);
                 return new Pair<>();
@@ -395,6 +608,9 @@ public class JPAStorageService extends AbstractStorageService {
     @Nullable protected Long updateImpl(@Nullable final Long version, @Nonnull @NotEmpty final String context,
             @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String value,
             @Nullable @Positive final Long expiration) throws IOException, VersionMismatchException {
+        if (optimisticConcurrency) {
+            return updateOptimistic(version, context, key, value, expiration);
+        }
         EntityManager manager = null;
         try {
             int retry = -1;
@@ -474,6 +690,290 @@ public class JPAStorageService extends AbstractStorageService {
     // Checkstyle: CyclomaticComplexity ON
     // Checkstyle: MethodLength ON
 
+    // Checkstyle: CyclomaticComplexity OFF
+    /**
+     * Creates a record without locking.
+     * 
+     * <p>The record is inserted directly. If the insert fails because a record with the same key exists, that
+     * record is replaced only if it has expired, using a single conditional update.</p>
+     * 
+     * @param context a storage context label
+     * @param key a key unique to context
+     * @param value value to store
+     * @param expiration expiration for record, or null
+     * 
+     * @return true iff record was inserted, false iff a duplicate was found
+     * @throws IOException if errors occur in the insertion process
+     */
+    protected boolean createOptimistic(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NotEmpty final String value, @Nullable @Positive final Long expiration) throws IOException {
+        int retry = -1;
+        do {
+            EntityManager manager = null;
+            EntityTransaction transaction = null;
+            try {
+                manager = entityManagerFactory.createEntityManager();
+                transaction = manager.getTransaction();
+                transaction.begin();
+                final JPAStorageRecord entity = new JPAStorageRecord();
+                entity.setContext(context);
+                entity.setKey(key);
+                entity.setValue(value);
+                entity.setExpiration(expiration);
+                manager.persist(entity);
+                manager.flush();
+                transaction.commit();
+                log.debug("Create record '{}' in context '{}' with expiration '{}'", key, context, expiration);
+                return true;
+            } catch (final PersistenceException e) {
+                if (!isDuplicateKey(e)) {
+                    log.error("Error creating record '{}' in context '{}' with expiration '{}'", key, context,
+                            expiration, e);
+                    throw new IOException(e);
+                }
+            } finally {
+                rollbackAndClose(manager, transaction);
+            }
+
+            // A record exists, take it over if it has expired.
+            final Map<String, Object> params = new HashMap<>();
+            params.put("context", context);
+            params.put("key", key);
+            params.put("value", value);
+            params.put("exp", expiration);
+            params.put("now", System.currentTimeMillis());
+            if (executeUpdate("JPAStorageRecord.replaceExpired", params) > 0) {
+                log.debug("Create record '{}' in context '{}' with expiration '{}' replacing expired record", key,
+                        context, expiration);
+                return true;
+            } else if (findUnlocked(context, key) != null) {
+                log.debug("Duplicate record '{}' in context '{}'", key, context);
+                return false;
+            }
+
+            // The record was removed after the insert failed, try again.
+            retry++;
+            log.debug("Conflict creating record '{}' in context '{}', retry {}", key, context, retry);
+        } while (retry < transactionRetry);
+        throw new IOException("Unable to create record '" + key + "' in context '" + context
+                + "' due to concurrent modification");
+    }
+
+    /**
+     * Updates a record without locking.
+     * 
+     * <p>The current version is read and the record is then updated with a single statement that only succeeds
+     * if the version is unchanged. If it has changed, and the caller did not supply a version, the process is
+     * repeated up to {@link #getTransactionRetry()} times.</p>
+     * 
+     * @param version to check
+     * @param context to search for
+     * @param key to search for
+     * @param value to update, or null to update only the expiration
+     * @param expiration to update
+     * 
+     * @return the version of the record after the update, or null if the record cannot be found or is expired
+     * @throws IOException if errors occur in the update process
+     * @throws VersionMismatchException if the record found contains a version that does not match the parameter
+     */
+    @Nullable protected Long updateOptimistic(@Nullable final Long version, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nullable final String value,
+            @Nullable @Positive final Long expiration) throws IOException, VersionMismatchException {
+        int retry = -1;
+        do {
+            final JPAStorageRecord entity = findUnlocked(context, key);
+            if (entity == null) {
+                log.debug("Update failed, key '{}' not found in context '{}'", key, context);
+                return null;
+            }
+            final Long exp = entity.getExpiration();
+            if (exp != null && System.currentTimeMillis() >= exp) {
+                log.debug("Update failed, key '{}' expired in context '{}'", key, context);
+                return null;
+            }
+            if (version != null && entity.getVersion() != version) {
+                // Caller is out of sync.
+                throw new VersionMismatchException();
+            }
+
+            final Map<String, Object> params = new HashMap<>();
+            params.put("context", context);
+            params.put("key", key);
+            params.put("version", entity.getVersion());
+            params.put("exp", expiration);
+            params.put("now", System.currentTimeMillis());
+            final int count;
+            if (value != null) {
+                params.put("value", value);
+                count = executeUpdate("JPAStorageRecord.updateValueByVersion", params);
+            } else {
+                count = executeUpdate("JPAStorageRecord.updateExpirationByVersion", params);
+            }
+            if (count > 0) {
+                log.debug("Update record '{}' in context '{}' with expiration '{}'", key, context, expiration);
+                return value != null ? entity.getVersion() + 1 : entity.getVersion();
+            }
+
+            if (version != null) {
+                // The record changed after it was read, so it is gone, expired, or the caller is out of sync.
+                final JPAStorageRecord current = findUnlocked(context, key);
+                final Long currentExp = current != null ? current.getExpiration() : null;
+                if (current == null || currentExp != null && System.currentTimeMillis() >= currentExp) {
+                    log.debug("Update failed, key '{}' not found or expired in context '{}'", key, context);
+                    return null;
+                }
+                throw new VersionMismatchException();
+            }
+
+            // The record changed after it was read, try again.
+            retry++;
+            log.debug("Conflict updating record '{}' in context '{}', retry {}", key, context, retry);
+        } while (retry < transactionRetry);
+        throw new IOException("Unable to update record '" + key + "' in context '" + context
+                + "' due to concurrent modification");
+    }
+
+    // Checkstyle: CyclomaticComplexity ON
+
+    /**
+     * Deletes a record without locking, using a single statement.
+     * 
+     * @param version to check
+     * @param context to search for
+     * @param key to search for
+     * 
+     * @return whether the record was deleted
+     * @throws IOException if errors occur in the delete process
+     * @throws VersionMismatchException if the record found contains a version that does not match the parameter
+     */
+    protected boolean deleteOptimistic(@Nullable @Positive final Long version, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) throws IOException, VersionMismatchException {
+        final Map<String, Object> params = new HashMap<>();
+        params.put("context", context);
+        params.put("key", key);
+        if (version == null) {
+            if (executeUpdate("JPAStorageRecord.deleteByKey", params) > 0) {
+                log.debug("Deleted record '{}' in context '{}'", key, context);
+                return true;
+            }
+        } else {
+            params.put("version", version);
+            if (executeUpdate("JPAStorageRecord.deleteByKeyAndVersion", params) > 0) {
+                log.debug("Deleted record '{}' in context '{}'", key, context);
+                return true;
+            } else if (findUnlocked(context, key) != null) {
+                throw new VersionMismatchException();
+            }
+        }
+        log.debug("Deleting record '{}' in context '{}'....key not found", key, context);
+        return false;
+    }
+
+    /**
+     * Reads a record without locking or a transaction.
+     * 
+     * @param context to search for
+     * @param key to search for
+     * 
+     * @return the record, or null
+     * @throws IOException if errors occur in the read process
+     */
+    @Nullable private JPAStorageRecord findUnlocked(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) throws IOException {
+        EntityManager manager = null;
+        try {
+            manager = entityManagerFactory.createEntityManager();
+            return manager.find(JPAStorageRecord.class, new JPAStorageRecord.RecordId(context, key));
+        } catch (final PersistenceException e) {
+            log.error("Error reading record '{}' in context '{}'", key, context, e);
+            throw new IOException(e);
+        } finally {
+            rollbackAndClose(manager, null);
+        }
+    }
+
+    /**
+     * Executes the supplied named update or delete query in its own transaction.
+     * 
+     * @param query to execute
+     * @param params parameters for the query
+     * 
+     * @return number of records affected
+     * @throws IOException if an error occurs executing the query
+     */
+    private int executeUpdate(@Nonnull @NotEmpty final String query, @Nonnull final Map<String, Object> params)
+            throws IOException {
+        EntityManager manager = null;
+        EntityTransaction transaction = null;
+        try {
+            manager = entityManagerFactory.createEntityManager();
+            transaction = manager.getTransaction();
+            transaction.begin();
+            final Query queryResults = manager.createNamedQuery(query);
+            for (final Map.Entry<String, Object> entry : params.entrySet()) {
+                queryResults.setParameter(entry.getKey(), entry.getValue());
+            }
+            final int count = queryResults.executeUpdate();
+            transaction.commit();
+            return count;
+        } catch (final PersistenceException e) {
+            log.error("Error executing named query '{}'", query, e);
+            throw new IOException(e);
+        } finally {
+            rollbackAndClose(manager, transaction);
+        }
+    }
+
+    /**
+     * Rolls back a transaction that is still active and closes the entity manager.
+     * 
+     * @param manager entity manager to close, or null
+     * @param transaction transaction to roll back, or null
+     */
+    private void rollbackAndClose(@Nullable final EntityManager manager,
+            @Nullable final EntityTransaction transaction) {
+        if (transaction != null && transaction.isActive()) {
+            try {
+                transaction.rollback();
+            } catch (Exception e) {
+                log.error("Error rolling back transaction", e);
+            }
+        }
+        if (manager != null && manager.isOpen()) {
+            try {
+                manager.close();
+            } catch (Exception e) {
+                log.error("Error closing entity manager", e);
+            }
+        }
+    }
+
+    /**
+     * Returns whether an exception was caused by a duplicate primary key.
+     * 
+     * @param e exception to examine
+     * 
+     * @return whether the exception indicates a duplicate key
+     */
+    static boolean isDuplicateKey(@Nonnull final Throwable e) {
+        Throwable cause = e;
+        while (cause != null) {
+            if (cause instanceof EntityExistsException) {
+                return true;
+            } else if (cause instanceof SQLException) {
+                // Other integrity constraint violations, such as NOT NULL or check failures, are real errors.
+                final SQLException sqlException = (SQLException) cause;
+                final String state = sqlException.getSQLState();
+                if (UNIQUE_VIOLATION_STATE.equals(state) || (INTEGRITY_VIOLATION_STATE.equals(state)
+                        && DUPLICATE_KEY_ERROR_CODES.contains(sqlException.getErrorCode()))) {
+                    return true;
+                }
+            }
+            cause = cause.getCause();
+        }
+        return false;
+    }
+
     /** {@inheritDoc} */
     @Override public boolean deleteWithVersion(@Positive final long version, @Nonnull @NotEmpty final String context,
             @Nonnull @NotEmpty final String key) throws IOException, VersionMismatchException {
@@ -504,6 +1004,9 @@ public class JPAStorageService extends AbstractStorageService {
      */
     protected boolean deleteImpl(@Nullable @Positive final Long version, @Nonnull @NotEmpty final String context,
             @Nonnull @NotEmpty final String key) throws IOException, VersionMismatchException {
+        if (optimisticConcurrency) {
+            return deleteOptimistic(version, context, key);
+        }
         EntityManager manager = null;
         try {
             int retry = -1;
@@ -711,68 +1214,124 @@ public class JPAStorageService extends AbstractStorageService {
 
     // Checkstyle: CyclomaticComplexity ON
 
-    // Checkstyle: CyclomaticComplexity OFF
     /**
-     * Deletes every record with an expiration before the supplied expiration.
+     * Deletes every record with an expiration before the supplied expiration. This is the operation run by the
+     * cleanup task, and deletes in batches using {@link #deleteExpiredInBatches(Long)}.
      * 
      * @param expiration of records to delete
      * 
      * @throws IOException if errors occur in the cleanup process
      */
     protected void deleteImpl(@Nonnull final Long expiration) throws IOException {
-        EntityManager manager = null;
-        try {
-            int retry = -1;
-            RollbackException lastThrown = null;
-            do {
-                EntityTransaction transaction = null;
-                try {
-                    manager = entityManagerFactory.createEntityManager();
-                    transaction = manager.getTransaction();
-                    transaction.begin();
-                    // cannot set lock mode on a non-select query
-                    final Query queryResults = manager.createNamedQuery("JPAStorageRecord.deleteByExpiration");
-                    queryResults.setParameter("exp", expiration);
-                    final int count = queryResults.executeUpdate();
-                    transaction.commit();
-                    log.debug("Deleted {} record(s) with expiration '{}'", count, expiration);
-                    return;
-                } catch (final RollbackException e) {
-                    lastThrown = e;
-                    retry++;
-                } catch (final Exception e) {
-                    log.error("Error deleting with expiration '{}'", expiration, e);
-                    if (transaction != null && transaction.isActive()) {
-                        try {
-                            transaction.rollback();
-                        } catch (Exception ex) {
-                            log.error("Error rolling back transaction", e);
-                        }
-                    }
-                    throw new IOException(e);
-                } finally {
-                    if (transaction != null && transaction.isActive() && !transaction.getRollbackOnly()) {
-                        try {
-                            transaction.commit();
-                        } catch (Exception e) {
-                            log.error("Error committing transaction", e);
-                        }
-                    }
-                }
-            } while (retry < transactionRetry);
-            throw lastThrown;
-        } finally {
-            if (manager != null && manager.isOpen()) {
+        deleteExpiredInBatches(expiration);
+    }
+
+    /**
+     * Deletes every record with an expiration before the supplied expiration, in batches of at most
+     * {@link #getCleanupBatchSize()} records.
+     * 
+     * @param expiration of records to delete
+     * 
+     * @return number of records deleted
+     * @throws IOException if errors occur in the cleanup process
+     */
+    protected long deleteExpiredInBatches(@Nonnull final Long expiration) throws IOException {
+        long total = 0;
+        while (true) {
+            final List<Object[]> keys = findExpiredKeys(expiration);
+            if (keys.isEmpty()) {
+                break;
+            }
+            final int count = deleteExpiredKeys(keys, expiration);
+            cleanupBatchCount.incrementAndGet();
+            cleanupDeletedCount.addAndGet(count);
+            total += count;
+            log.trace("Deleted {} of {} expired record(s) in batch", count, keys.size());
+            if (keys.size() < cleanupBatchSize || count == 0) {
+                break;
+            }
+            if (cleanupBatchPause > 0) {
                 try {
-                    manager.close();
-                } catch (Exception e) {
-                    log.error("Error closing entity manager", e);
+                    Thread.sleep(cleanupBatchPause);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
                 }
             }
         }
+        return total;
     }
 
-    // Checkstyle: CyclomaticComplexity ON
+    /**
+     * Returns the context and key of up to {@link #getCleanupBatchSize()} records with an expiration before the
+     * supplied expiration. No locks are taken.
+     * 
+     * @param expiration of records to find
+     * 
+     * @return context and key pairs
+     * @throws IOException if errors occur reading the records
+     */
+    @Nonnull private List<Object[]> findExpiredKeys(@Nonnull final Long expiration) throws IOException {
+        EntityManager manager = null;
+        try {
+            manager = entityManagerFactory.createEntityManager();
+            final List<Object[]> results = manager.createNamedQuery("JPAStorageRecord.findExpiredKeys", Object[].class)
+                    .setParameter("exp", expiration)
+                    .setMaxResults(cleanupBatchSize)
+                    .getResultList();
+            return results;
+        } catch (final PersistenceException e) {
+            log.error("Error finding records with expiration '{}'", expiration, e);
+            throw new IOException(e);
+        } finally {
+            rollbackAndClose(manager, null);
+        }
+    }
+
+    /**
+     * Deletes the supplied records in a single transaction, provided they are still expired.
+     * 
+     * @param keys context and key pairs to delete
+     * @param expiration of records to delete
+     * 
+     * @return number of records deleted
+     * @throws IOException if errors occur in the delete process
+     */
+    private int deleteExpiredKeys(@Nonnull @NonnullElements final List<Object[]> keys,
+            @Nonnull final Long expiration) throws IOException {
+        final Map<String, List<String>> keysByContext = new HashMap<>();
+        for (final Object[] row : keys) {
+            List<String> contextKeys = keysByContext.get(row[0]);
+            if (contextKeys == null) {
+                contextKeys = new ArrayList<>();
+                keysByContext.put((String) row[0], contextKeys);
+            }
+            contextKeys.add((String) row[1]);
+        }
+
+        EntityManager manager = null;
+        EntityTransaction transaction = null;
+        try {
+            manager = entityManagerFactory.createEntityManager();
+            transaction = manager.getTransaction();
+            transaction.begin();
+            int count = 0;
+            for (final Map.Entry<String, List<String>> entry : keysByContext.entrySet()) {
+                count += manager.createNamedQuery("JPAStorageRecord.deleteExpiredByKeys")
+                        .setParameter("context", entry.getKey())
+                        .setParameter("keys", entry.getValue())
+                        .setParameter("exp", expiration)
+                        .executeUpdate();
+            }
+            transaction.commit();
+            return count;
+        } catch (final PersistenceException e) {
+            log.error("Error deleting records with expiration '{}'", expiration, e);
+            throw new IOException(e);
+        } finally {
+            rollbackAndClose(manager, transaction);
+        }
+    }
 
     // Checkstyle: CyclomaticComplexity OFF
     /**
@@ -828,6 +1387,58 @@ public class JPAStorageService extends AbstractStorageService {
 
     // Checkstyle: CyclomaticComplexity ON
 
+    /** {@inheritDoc} */
+    @Override @Nonnull public ListenableFuture<Boolean> createAsync(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String value,
+            @Nullable @Positive final Long expiration) {
+        return getAsyncStorageService().createAsync(context, key, value, expiration);
+    }
+
+    /** {@inheritDoc} */
+    @Override @Nonnull public ListenableFuture<StorageRecord> readAsync(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) {
+        return getAsyncStorageService().readAsync(context, key);
+    }
+
+    /** {@inheritDoc} */
+    @Override @Nonnull public ListenableFuture<Pair<Long, StorageRecord>> readAsync(
+            @Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Positive final long version) {
+        return getAsyncStorageService().readAsync(context, key, version);
+    }
+
+    /** {@inheritDoc} */
+    @Override @Nonnull public ListenableFuture<Boolean> updateAsync(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String value,
+            @Nullable @Positive final Long expiration) {
+        return getAsyncStorageService().updateAsync(context, key, value, expiration);
+    }
+
+    /** {@inheritDoc} */
+    @Override @Nonnull public ListenableFuture<Long> updateWithVersionAsync(@Positive final long version,
+            @Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NotEmpty final String value, @Nullable @Positive final Long expiration) {
+        return getAsyncStorageService().updateWithVersionAsync(version, context, key, value, expiration);
+    }
+
+    /** {@inheritDoc} */
+    @Override @Nonnull public ListenableFuture<Boolean> updateExpirationAsync(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nullable @Positive final Long expiration) {
+        return getAsyncStorageService().updateExpirationAsync(context, key, expiration);
+    }
+
+    /** {@inheritDoc} */
+    @Override @Nonnull public ListenableFuture<Boolean> deleteAsync(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) {
+        return getAsyncStorageService().deleteAsync(context, key);
+    }
+
+    /** {@inheritDoc} */
+    @Override @Nonnull public ListenableFuture<Boolean> deleteWithVersionAsync(@Positive final long version,
+            @Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key) {
+        return getAsyncStorageService().deleteWithVersionAsync(version, context, key);
+    }
+
     /** {@inheritDoc} */
     @Override @Nullable protected TimerTask getCleanupTask() {
         return new TimerTask() {
@@ -837,11 +1448,15 @@ public class JPAStorageService extends AbstractStorageService {
                 final Long now = System.currentTimeMillis();
                 log.debug("Running cleanup task at {}", now);
                 try {
+                    final long deleted = cleanupDeletedCount.get();
                     deleteImpl(now);
+                    final long count = cleanupDeletedCount.get() - deleted;
+                    lastCleanupDuration.set(System.currentTimeMillis() - now);
+                    log.debug("Finished cleanup task for {}, deleted {} record(s) in {}ms", now, count,
+                            lastCleanupDuration.get());
                 } catch (final IOException e) {
                     log.error("Error running cleanup task for {}", now, e);
                 }
-                log.debug("Finished cleanup task for {}", now);
             }
         };
     }
@@ -0,0 +1,1245 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimerTask;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.collection.Pair;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+import org.opensaml.storage.AbstractStorageService;
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.VersionMismatchException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of {@link org.opensaml.storage.StorageService} that persists data in a memory-mapped,
+ * log-structured file, for use by single-node deployments that need data to survive a restart.
+ * 
+ * <p>Each change is appended to the file as a checksummed entry, and the records themselves remain in the
+ * mapped file rather than on the heap. The only heap structure is a compact open-addressing index from a
+ * 64-bit hash of each context and key to the offset of its current entry, rebuilt by replaying the file on
+ * startup. Replay stops at the first incomplete or corrupt entry, so a crash loses at most the entries that
+ * were being written, and writes are made durable individually if {@link #setSyncWrites(boolean)} is set.</p>
+ * 
+ * <p>Superseded, deleted and expired entries are reclaimed by compaction, which copies live entries into a
+ * new file and atomically replaces the original. Compaction happens when the file would otherwise have to
+ * grow, or from the cleanup task, once the proportion of reclaimable space reaches a threshold.</p>
+ * 
+ * <p>Operations on entire contexts scan the whole index, so are proportional to the total number of records.
+ * The file must not be shared between services or processes.</p>
+ */
+public class MappedFileStorageService extends AbstractStorageService {
+
+    /** Value identifying the file format. */
+    private static final int MAGIC = 0x4f534d46;
+
+    /** Version of the file format. */
+    private static final int FORMAT_VERSION = 1;
+
+    /** Size of the file header. */
+    private static final int HEADER_SIZE = 16;
+
+    /** Offset of entry length, which is written last to commit the entry. */
+    private static final int LENGTH_OFFSET = 0;
+
+    /** Offset of checksum over the remainder of the entry. */
+    private static final int CRC_OFFSET = 4;
+
+    /** Offset of entry type. */
+    private static final int TYPE_OFFSET = 8;
+
+    /** Offset of record version. */
+    private static final int VERSION_OFFSET = 9;
+
+    /** Offset of record expiration. */
+    private static final int EXPIRATION_OFFSET = 17;
+
+    /** Offset of context length. */
+    private static final int CONTEXT_LENGTH_OFFSET = 25;
+
+    /** Offset of key length. */
+    private static final int KEY_LENGTH_OFFSET = 29;
+
+    /** Offset of value length. */
+    private static final int VALUE_LENGTH_OFFSET = 33;
+
+    /** Size of the fixed part of an entry, after which the context, key and value follow. */
+    private static final int ENTRY_HEADER_SIZE = 37;
+
+    /** Entry type recording the current state of a record. */
+    private static final byte TYPE_PUT = 1;
+
+    /** Entry type recording deletion of a record. */
+    private static final byte TYPE_DELETE = 2;
+
+    /** Entry type recording deletion of a context. */
+    private static final byte TYPE_DELETE_CONTEXT = 3;
+
+    /** Index offset denoting an empty slot. */
+    private static final int EMPTY = 0;
+
+    /** Index offset denoting a slot whose entry has been removed. */
+    private static final int TOMBSTONE = -1;
+
+    /** Initial number of index slots. */
+    private static final int INITIAL_INDEX_CAPACITY = 1024;
+
+    /** Empty byte array. */
+    private static final byte[] NO_BYTES = new byte[0];
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(MappedFileStorageService.class);
+
+    /** File in which to store data. */
+    @NonnullAfterInit private File file;
+
+    /** Initial size of the file. */
+    @Positive private long initialFileSize;
+
+    /** Maximum size of the file. */
+    @Positive private long maxFileSize;
+
+    /** Whether to force each write to disk. */
+    private boolean syncWrites;
+
+    /** Proportion of reclaimable space at which to compact the file. */
+    private float compactionThreshold;
+
+    /** Lock guarding the file and index. */
+    @NonnullAfterInit private ReadWriteLock lock;
+
+    /** Open file. */
+    @Nullable private RandomAccessFile randomAccessFile;
+
+    /** Channel of the open file. */
+    @Nullable private FileChannel channel;
+
+    /** Mapping of the open file. */
+    @Nullable private MappedByteBuffer buffer;
+
+    /** Size of the mapping. */
+    private int capacity;
+
+    /** Offset at which the next entry is written. */
+    private int tail;
+
+    /** Bytes occupied by entries that compaction would discard. */
+    private long deadBytes;
+
+    /** Hashes of the indexed records. */
+    @Nonnull private long[] indexHashes;
+
+    /** Offsets of the current entries of the indexed records. */
+    @Nonnull private int[] indexOffsets;
+
+    /** Number of indexed records. */
+    private int indexSize;
+
+    /** Number of index slots in use, including those removed. */
+    private int indexUsed;
+
+    /** Checksum calculator, used under the write lock. */
+    @Nonnull private final CRC32 crc;
+
+    /** Buffer in which entries are assembled, used under the write lock. */
+    @Nonnull private byte[] scratch;
+
+    /** Constructor. */
+    public MappedFileStorageService() {
+        initialFileSize = 16 * 1024 * 1024;
+        maxFileSize = Integer.MAX_VALUE;
+        compactionThreshold = 0.5f;
+        indexHashes = new long[0];
+        indexOffsets = new int[0];
+        crc = new CRC32();
+        scratch = new byte[1024];
+    }
+
+    /**
+     * Set the file in which to store data.
+     * 
+     * @param storageFile file in which to store data
+     */
+    public void setFile(@Nonnull final File storageFile) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        file = Constraint.isNotNull(storageFile, "File cannot be null");
+    }
+
+    /**
+     * Set the initial size of the file, which is doubled as necessary up to the maximum size.
+     * 
+     * <p>Defaults to 16MB.</p>
+     * 
+     * @param size initial size in bytes
+     */
+    public void setInitialFileSize(@Positive final long size) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        initialFileSize = Constraint.isGreaterThan(HEADER_SIZE, size, "Initial file size is too small");
+    }
+
+    /**
+     * Set the maximum size of the file, beyond which writes fail.
+     * 
+     * <p>Defaults to, and cannot exceed, 2GB.</p>
+     * 
+     * @param size maximum size in bytes
+     */
+    public void setMaxFileSize(@Positive final long size) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        maxFileSize = Constraint.isGreaterThan(HEADER_SIZE, size, "Maximum file size is too small");
+        if (maxFileSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Maximum file size is too large");
+        }
+    }
+
+    /**
+     * Set whether to force each write to disk before returning.
+     * 
+     * <p>Without this, data written before a process crash survives, but data written shortly before an
+     * operating system crash or power loss may not. Defaults to false.</p>
+     * 
+     * @param flag flag to set
+     */
+    public void setSyncWrites(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        syncWrites = flag;
+    }
+
+    /**
+     * Set the proportion of the file occupied by reclaimable entries at which to compact it.
+     * 
+     * <p>Defaults to 0.5.</p>
+     * 
+     * @param threshold proportion between 0 and 1
+     */
+    public void setCompactionThreshold(final float threshold) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        if (threshold <= 0 || threshold > 1) {
+            throw new IllegalArgumentException("Compaction threshold must be greater than 0 and at most 1");
+        }
+        compactionThreshold = threshold;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        if (file == null) {
+            throw new ComponentInitializationException("File cannot be null");
+        } else if (initialFileSize > maxFileSize) {
+            throw new ComponentInitializationException("Initial file size cannot exceed maximum file size");
+        }
+
+        lock = new ReentrantReadWriteLock(true);
+        try {
+            open();
+        } catch (final IOException e) {
+            close();
+            throw new ComponentInitializationException("Unable to open storage file " + file, e);
+        }
+
+        super.doInitialize();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doDestroy() {
+        super.doDestroy();
+
+        if (lock == null) {
+            // Never initialized, so there is nothing to flush or close.
+            return;
+        }
+
+        final Lock writeLock = lock.writeLock();
+        try {
+            writeLock.lock();
+            if (buffer != null) {
+                buffer.force();
+            }
+            close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nullable protected TimerTask getCleanupTask() {
+        return new TimerTask() {
+
+            /** {@inheritDoc} */
+            @Override
+            public void run() {
+                log.debug("Running cleanup task");
+
+                final long now = System.currentTimeMillis();
+                final Lock writeLock = lock.writeLock();
+                int purged = 0;
+
+                try {
+                    writeLock.lock();
+                    if (buffer == null) {
+                        return;
+                    }
+
+                    for (int slot = 0; slot < indexOffsets.length; slot++) {
+                        if (indexOffsets[slot] > 0 && isExpired(indexOffsets[slot], now)) {
+                            removeSlot(slot);
+                            purged++;
+                        }
+                    }
+
+                    if (isCompactionDue()) {
+                        compact();
+                    }
+                } catch (final IOException e) {
+                    log.error("Error compacting storage file {}", file, e);
+                } finally {
+                    writeLock.unlock();
+                }
+
+                log.debug("Purged {} expired record(s) from storage", purged);
+            }
+        };
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean create(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NotEmpty final String value, @Nullable final Long expiration) throws IOException {
+        final byte[] contextBytes = context.getBytes(StandardCharsets.UTF_8);
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        final long hash = hash(contextBytes, keyBytes);
+
+        final Lock writeLock = lock.writeLock();
+        try {
+            writeLock.lock();
+
+            final int slot = findSlot(hash, contextBytes, keyBytes);
+            if (slot >= 0 && !isExpired(indexOffsets[slot], System.currentTimeMillis())) {
+                return false;
+            }
+
+            final int offset = append(TYPE_PUT, 1, expiration != null ? expiration : 0, contextBytes, keyBytes,
+                    valueBytes);
+            indexPut(hash, contextBytes, keyBytes, offset);
+            log.trace("Inserted record '{}' in context '{}' with expiration '{}'",
+                    new Object[] { key, context, expiration });
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nullable public StorageRecord read(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) throws IOException {
+        return readImpl(context, key, null).getSecond();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public Pair<Long, StorageRecord> read(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, final long version) throws IOException {
+        return readImpl(context, key, version);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean update(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NotEmpty final String value, @Nullable final Long expiration) throws IOException {
+        try {
+            return updateImpl(null, context, key, value, expiration) != null;
+        } catch (final VersionMismatchException e) {
+            throw new IOException("Unexpected exception thrown by update.", e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nullable public Long updateWithVersion(final long version, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String value,
+            @Nullable final Long expiration) throws IOException, VersionMismatchException {
+        return updateImpl(version, context, key, value, expiration);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean updateExpiration(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nullable final Long expiration) throws IOException {
+        try {
+            return updateImpl(null, context, key, null, expiration) != null;
+        } catch (final VersionMismatchException e) {
+            throw new IOException("Unexpected exception thrown by update.", e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean deleteWithVersion(final long version, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) throws IOException, VersionMismatchException {
+        return deleteImpl(version, context, key);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean delete(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key)
+            throws IOException {
+        try {
+            return deleteImpl(null, context, key);
+        } catch (final VersionMismatchException e) {
+            throw new IOException("Unexpected exception thrown by delete.", e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void updateContextExpiration(@Nonnull @NotEmpty final String context, @Nullable final Long expiration)
+            throws IOException {
+        final byte[] contextBytes = context.getBytes(StandardCharsets.UTF_8);
+
+        final Lock writeLock = lock.writeLock();
+        try {
+            writeLock.lock();
+
+            // Appending may compact the file and rebuild the index, so collect the keys first.
+            final long now = System.currentTimeMillis();
+            final List<byte[]> keys = new ArrayList<>();
+            for (final int offset : indexOffsets) {
+                if (offset > 0 && contextMatches(offset, contextBytes) && !isExpired(offset, now)) {
+                    keys.add(getBytes(offset + ENTRY_HEADER_SIZE + contextBytes.length,
+                            buffer.getInt(offset + KEY_LENGTH_OFFSET)));
+                }
+            }
+
+            for (final byte[] keyBytes : keys) {
+                final long hash = hash(contextBytes, keyBytes);
+                final int offset = indexOffsets[findSlot(hash, contextBytes, keyBytes)];
+                final int newOffset = append(TYPE_PUT, buffer.getLong(offset + VERSION_OFFSET),
+                        expiration != null ? expiration : 0, contextBytes, keyBytes, getValueBytes(offset));
+                indexPut(hash, contextBytes, keyBytes, newOffset);
+            }
+            log.debug("Updated expiration of valid records in context '{}' to '{}'", context, expiration);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void deleteContext(@Nonnull @NotEmpty final String context) throws IOException {
+        final byte[] contextBytes = context.getBytes(StandardCharsets.UTF_8);
+
+        final Lock writeLock = lock.writeLock();
+        try {
+            writeLock.lock();
+
+            final int offset = append(TYPE_DELETE_CONTEXT, 0, 0, contextBytes, NO_BYTES, NO_BYTES);
+            deadBytes += buffer.getInt(offset + LENGTH_OFFSET);
+            removeContext(contextBytes);
+        } finally {
+            writeLock.unlock();
+        }
+
+        log.debug("Deleted context '{}'", context);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void reap(@Nonnull @NotEmpty final String context) throws IOException {
+        final byte[] contextBytes = context.getBytes(StandardCharsets.UTF_8);
+
+        final Lock writeLock = lock.writeLock();
+        try {
+            writeLock.lock();
+
+            // Expired entries stay expired when replayed, so there is nothing to record.
+            final long now = System.currentTimeMillis();
+            for (int slot = 0; slot < indexOffsets.length; slot++) {
+                final int offset = indexOffsets[slot];
+                if (offset > 0 && contextMatches(offset, contextBytes) && isExpired(offset, now)) {
+                    removeSlot(slot);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Internal method to implement read functions.
+     *
+     * @param context       a storage context label
+     * @param key           a key unique to context
+     * @param version       only return record if newer than optionally supplied version
+     * 
+     * @return  a pair consisting of the version of the record read back, if any, and the record itself
+     * @throws IOException  if errors occur in the read process 
+     */
+    @Nonnull protected Pair<Long, StorageRecord> readImpl(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nullable final Long version) throws IOException {
+        final byte[] contextBytes = context.getBytes(StandardCharsets.UTF_8);
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final long hash = hash(contextBytes, keyBytes);
+
+        final Lock readLock = lock.readLock();
+        try {
+            readLock.lock();
+
+            final int slot = findSlot(hash, contextBytes, keyBytes);
+            if (slot < 0) {
+                log.debug("Read failed, key '{}' not found in context '{}'", key, context);
+                return new Pair<>();
+            }
+
+            final int offset = indexOffsets[slot];
+            if (isExpired(offset, System.currentTimeMillis())) {
+                log.debug("Read failed, key '{}' expired in context '{}'", key, context);
+                return new Pair<>();
+            }
+
+            final long currentVersion = buffer.getLong(offset + VERSION_OFFSET);
+            if (version != null && currentVersion == version) {
+                // Nothing's changed, so just echo back the version.
+                return new Pair<>(version, null);
+            }
+
+            final long expiration = buffer.getLong(offset + EXPIRATION_OFFSET);
+            final StorageRecord record = new MappedStorageRecord(
+                    new String(getValueBytes(offset), StandardCharsets.UTF_8),
+                    expiration != 0 ? expiration : null, currentVersion);
+            return new Pair<>(currentVersion, record);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Internal method to implement update functions.
+     * 
+     * @param version       only update if the current version matches this value
+     * @param context       a storage context label
+     * @param key           a key unique to context
+     * @param value         updated value, or null to update only the expiration
+     * @param expiration    expiration for record. or null
+     * 
+     * @return the version of the record after update, null if no record exists
+     * @throws IOException  if errors occur in the update process
+     * @throws VersionMismatchException if the record has already been updated to a newer version
+     */
+    @Nullable protected Long updateImpl(@Nullable final Long version, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nullable final String value, @Nullable final Long expiration)
+                    throws IOException, VersionMismatchException {
+        final byte[] contextBytes = context.getBytes(StandardCharsets.UTF_8);
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final long hash = hash(contextBytes, keyBytes);
+
+        final Lock writeLock = lock.writeLock();
+        try {
+            writeLock.lock();
+
+            final int slot = findSlot(hash, contextBytes, keyBytes);
+            if (slot < 0) {
+                log.debug("Update failed, key '{}' not found in context '{}'", key, context);
+                return null;
+            }
+
+            final int offset = indexOffsets[slot];
+            if (isExpired(offset, System.currentTimeMillis())) {
+                log.debug("Update failed, key '{}' expired in context '{}'", key, context);
+                return null;
+            }
+
+            final long currentVersion = buffer.getLong(offset + VERSION_OFFSET);
+            if (version != null && version != currentVersion) {
+                // Caller is out of sync.
+                throw new VersionMismatchException();
+            }
+
+            final long newVersion = value != null ? currentVersion + 1 : currentVersion;
+            final byte[] valueBytes = value != null ? value.getBytes(StandardCharsets.UTF_8) : getValueBytes(offset);
+            final int newOffset = append(TYPE_PUT, newVersion, expiration != null ? expiration : 0, contextBytes,
+                    keyBytes, valueBytes);
+            indexPut(hash, contextBytes, keyBytes, newOffset);
+
+            log.trace("Updated record '{}' in context '{}' with expiration '{}'",
+                    new Object[] { key, context, expiration });
+            return newVersion;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Internal method to implement delete functions.
+     * 
+     * @param version       only update if the current version matches this value
+     * @param context       a storage context label
+     * @param key           a key unique to context
+     * 
+     * @return true iff the record existed and was deleted
+     * @throws IOException  if errors occur in the update process
+     * @throws VersionMismatchException if the record has already been updated to a newer version
+     */
+    protected boolean deleteImpl(@Nullable @Positive final Long version, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) throws IOException, VersionMismatchException {
+        final byte[] contextBytes = context.getBytes(StandardCharsets.UTF_8);
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final long hash = hash(contextBytes, keyBytes);
+
+        final Lock writeLock = lock.writeLock();
+        try {
+            writeLock.lock();
+
+            final int slot = findSlot(hash, contextBytes, keyBytes);
+            if (slot < 0) {
+                log.debug("Deleting record '{}' in context '{}'....key not found", key, context);
+                return false;
+            }
+
+            final long currentVersion = buffer.getLong(indexOffsets[slot] + VERSION_OFFSET);
+            if (version != null && currentVersion != version) {
+                throw new VersionMismatchException();
+            }
+
+            final int offset = append(TYPE_DELETE, currentVersion, 0, contextBytes, keyBytes, NO_BYTES);
+            deadBytes += buffer.getInt(offset + LENGTH_OFFSET);
+            // Appending may have compacted the file, so look the record up again.
+            removeSlot(findSlot(hash, contextBytes, keyBytes));
+            log.trace("Deleted record '{}' in context '{}'", key, context);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Open and map the file, and rebuild the index from its contents.
+     * 
+     * @throws IOException if the file cannot be opened or is not in the expected format
+     */
+    private void open() throws IOException {
+        final File compactionFile = getCompactionFile();
+        if (compactionFile.exists()) {
+            log.warn("Removing incomplete compaction file {}", compactionFile);
+            Files.delete(compactionFile.toPath());
+        }
+
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+        final long length = channel.size();
+        if (length > maxFileSize) {
+            throw new IOException("Storage file is larger than the maximum file size");
+        }
+
+        capacity = (int) Math.max(initialFileSize, length);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        if (buffer.getInt(0) == 0) {
+            writeHeader(buffer);
+        } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Storage file is not in a supported format");
+        }
+
+        recover();
+    }
+
+    /** Close the file. */
+    private void close() {
+        buffer = null;
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+            if (randomAccessFile != null) {
+                randomAccessFile.close();
+            }
+        } catch (final IOException e) {
+            log.error("Error closing storage file {}", file, e);
+        } finally {
+            channel = null;
+            randomAccessFile = null;
+        }
+    }
+
+    /**
+     * Rebuild the index by replaying the entries in the file.
+     * 
+     * <p>Replay stops at the first entry that is incomplete or fails its checksum, and everything from
+     * there onwards is cleared so that it cannot be mistaken for valid entries later.</p>
+     * 
+     * @throws IOException if an error occurs
+     */
+    private void recover() throws IOException {
+        indexHashes = new long[INITIAL_INDEX_CAPACITY];
+        indexOffsets = new int[INITIAL_INDEX_CAPACITY];
+        indexSize = 0;
+        indexUsed = 0;
+        deadBytes = 0;
+
+        int offset = HEADER_SIZE;
+        int entries = 0;
+        boolean clean = true;
+        while (offset <= capacity - ENTRY_HEADER_SIZE) {
+            final int length = buffer.getInt(offset + LENGTH_OFFSET);
+            if (length == 0) {
+                break;
+            } else if (length < ENTRY_HEADER_SIZE || length > capacity - offset || !isChecksumValid(offset, length)) {
+                clean = false;
+                break;
+            }
+            replay(offset);
+            offset += length;
+            entries++;
+        }
+        tail = offset;
+
+        if (!clean) {
+            log.warn("Storage file {} contains an incomplete or corrupt entry at offset {}, discarding it", file,
+                    offset);
+            for (int i = offset; i < capacity; i++) {
+                buffer.put(i, (byte) 0);
+            }
+            buffer.force();
+        }
+
+        log.info("Recovered {} record(s) from {} entries in storage file {}", indexSize, entries, file);
+    }
+
+    /**
+     * Apply an entry to the index during recovery.
+     * 
+     * @param offset offset of the entry
+     */
+    private void replay(final int offset) {
+        final int length = buffer.getInt(offset + LENGTH_OFFSET);
+        final byte[] contextBytes = getBytes(offset + ENTRY_HEADER_SIZE, buffer.getInt(offset + CONTEXT_LENGTH_OFFSET));
+        final byte[] keyBytes = getBytes(offset + ENTRY_HEADER_SIZE + contextBytes.length,
+                buffer.getInt(offset + KEY_LENGTH_OFFSET));
+
+        switch (buffer.get(offset + TYPE_OFFSET)) {
+            case TYPE_PUT:
+                indexPut(hash(contextBytes, keyBytes), contextBytes, keyBytes, offset);
+                break;
+
+            case TYPE_DELETE:
+                deadBytes += length;
+                final int slot = findSlot(hash(contextBytes, keyBytes), contextBytes, keyBytes);
+                if (slot >= 0) {
+                    removeSlot(slot);
+                }
+                break;
+
+            case TYPE_DELETE_CONTEXT:
+                deadBytes += length;
+                removeContext(contextBytes);
+                break;
+
+            default:
+                log.warn("Ignoring entry of unknown type at offset {}", offset);
+                deadBytes += length;
+        }
+    }
+
+    /**
+     * Append an entry to the file.
+     * 
+     * <p>The entry length is written last, so an entry that is not completely written is never replayed.</p>
+     * 
+     * @param type entry type
+     * @param version record version
+     * @param expiration record expiration, or 0 for none
+     * @param contextBytes encoded context
+     * @param keyBytes encoded key
+     * @param valueBytes encoded value
+     * 
+     * @return offset of the entry
+     * @throws IOException if the file is full
+     */
+    private int append(final byte type, final long version, final long expiration,
+            @Nonnull final byte[] contextBytes, @Nonnull final byte[] keyBytes, @Nonnull final byte[] valueBytes)
+                    throws IOException {
+        final long size = (long) ENTRY_HEADER_SIZE + contextBytes.length + keyBytes.length + valueBytes.length;
+        if (size > maxFileSize - HEADER_SIZE) {
+            throw new IOException("Record is too large for storage file");
+        }
+        final int length = (int) size;
+        ensureCapacity(length);
+
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        final ByteBuffer entry = ByteBuffer.wrap(scratch);
+        entry.putInt(0).putInt(0).put(type).putLong(version).putLong(expiration)
+            .putInt(contextBytes.length).putInt(keyBytes.length).putInt(valueBytes.length)
+            .put(contextBytes).put(keyBytes).put(valueBytes);
+        crc.reset();
+        crc.update(scratch, TYPE_OFFSET, length - TYPE_OFFSET);
+        entry.putInt(CRC_OFFSET, (int) crc.getValue());
+
+        final ByteBuffer target = buffer.duplicate();
+        target.position(tail + CRC_OFFSET);
+        target.put(scratch, CRC_OFFSET, length - CRC_OFFSET);
+        buffer.putInt(tail + LENGTH_OFFSET, length);
+        if (syncWrites) {
+            buffer.force();
+        }
+
+        final int offset = tail;
+        tail += length;
+        return offset;
+    }
+
+    /**
+     * Ensure there is room to append an entry, by compacting or growing the file.
+     * 
+     * @param length length of the entry
+     * 
+     * @throws IOException if the file cannot be made large enough
+     */
+    private void ensureCapacity(final int length) throws IOException {
+        if (length <= capacity - tail) {
+            return;
+        }
+
+        if (isCompactionDue()) {
+            compact();
+            if (length <= capacity - tail) {
+                return;
+            }
+        }
+
+        final long needed = (long) tail + length;
+        long newCapacity = capacity;
+        while (newCapacity < needed) {
+            newCapacity *= 2;
+        }
+        newCapacity = Math.min(newCapacity, maxFileSize);
+        if (newCapacity < needed) {
+            if (deadBytes > 0) {
+                compact();
+                if (length <= capacity - tail) {
+                    return;
+                }
+            }
+            throw new IOException("Storage file is full");
+        }
+
+        log.debug("Growing storage file {} to {} bytes", file, newCapacity);
+        buffer.force();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, newCapacity);
+        capacity = (int) newCapacity;
+    }
+
+    /**
+     * Check whether enough of the file is reclaimable to justify compaction.
+     * 
+     * @return true iff the file should be compacted
+     */
+    private boolean isCompactionDue() {
+        return deadBytes > 0 && deadBytes >= (tail - HEADER_SIZE) * (double) compactionThreshold;
+    }
+
+    /**
+     * Copy the live entries into a new file, replace the current file with it, and rebuild the index.
+     * 
+     * <p>The current file is untouched until the new one atomically replaces it, so a crash part way through
+     * leaves the current file intact.</p>
+     * 
+     * @throws IOException if an error occurs
+     */
+    private void compact() throws IOException {
+        final long start = System.currentTimeMillis();
+        final File compactionFile = getCompactionFile();
+        final long live = tail - HEADER_SIZE - deadBytes;
+        final int newCapacity = (int) Math.min(maxFileSize, Math.max(initialFileSize, (HEADER_SIZE + live) * 2));
+
+        final RandomAccessFile newFile = new RandomAccessFile(compactionFile, "rw");
+        try {
+            newFile.setLength(0);
+            final FileChannel newChannel = newFile.getChannel();
+            final MappedByteBuffer newBuffer = newChannel.map(FileChannel.MapMode.READ_WRITE, 0, newCapacity);
+            writeHeader(newBuffer);
+
+            final long[] newHashes = new long[indexOffsets.length];
+            final int[] newOffsets = new int[indexOffsets.length];
+            final long now = System.currentTimeMillis();
+            int newTail = HEADER_SIZE;
+            int newSize = 0;
+            for (int slot = 0; slot < indexOffsets.length; slot++) {
+                final int offset = indexOffsets[slot];
+                if (offset <= 0 || isExpired(offset, now)) {
+                    continue;
+                }
+                final int length = buffer.getInt(offset + LENGTH_OFFSET);
+                if (length > newCapacity - newTail) {
+                    throw new IOException("Live records do not fit in compacted storage file");
+                }
+                final ByteBuffer source = buffer.duplicate();
+                source.position(offset);
+                source.limit(offset + length);
+                final ByteBuffer target = newBuffer.duplicate();
+                target.position(newTail);
+                target.put(source);
+                insertSlot(newHashes, newOffsets, indexHashes[slot], newTail);
+                newTail += length;
+                newSize++;
+            }
+            newBuffer.force();
+
+            Files.move(compactionFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+
+            close();
+            randomAccessFile = newFile;
+            channel = newChannel;
+            buffer = newBuffer;
+            capacity = newCapacity;
+            tail = newTail;
+            deadBytes = 0;
+            indexHashes = newHashes;
+            indexOffsets = newOffsets;
+            indexSize = newSize;
+            indexUsed = newSize;
+        } catch (final IOException e) {
+            newFile.close();
+            Files.deleteIfExists(compactionFile.toPath());
+            throw e;
+        }
+
+        log.debug("Compacted storage file {} to {} bytes holding {} record(s) in {}ms", file, tail, indexSize,
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Get the temporary file used during compaction.
+     * 
+     * @return the compaction file
+     */
+    @Nonnull private File getCompactionFile() {
+        return new File(file.getPath() + ".compact");
+    }
+
+    /**
+     * Write the file header.
+     * 
+     * @param target mapping of the file
+     */
+    private void writeHeader(@Nonnull final MappedByteBuffer target) {
+        target.putInt(0, MAGIC);
+        target.putInt(4, FORMAT_VERSION);
+        target.putLong(8, 0);
+        target.force();
+    }
+
+    /**
+     * Check an entry's checksum.
+     * 
+     * @param offset offset of the entry
+     * @param length length of the entry
+     * 
+     * @return true iff the checksum matches
+     */
+    private boolean isChecksumValid(final int offset, final int length) {
+        if (scratch.length < length) {
+            scratch = new byte[length];
+        }
+        final ByteBuffer source = buffer.duplicate();
+        source.position(offset);
+        source.get(scratch, 0, length);
+        crc.reset();
+        crc.update(scratch, TYPE_OFFSET, length - TYPE_OFFSET);
+        return (int) crc.getValue() == buffer.getInt(offset + CRC_OFFSET);
+    }
+
+    /**
+     * Check whether an entry has expired.
+     * 
+     * @param offset offset of the entry
+     * @param now the current time
+     * 
+     * @return true iff the entry has expired
+     */
+    private boolean isExpired(final int offset, final long now) {
+        final long expiration = buffer.getLong(offset + EXPIRATION_OFFSET);
+        return expiration != 0 && expiration <= now;
+    }
+
+    /**
+     * Read bytes from the file.
+     * 
+     * @param offset offset to read from
+     * @param length number of bytes to read
+     * 
+     * @return the bytes
+     */
+    @Nonnull private byte[] getBytes(final int offset, final int length) {
+        final byte[] bytes = new byte[length];
+        final ByteBuffer source = buffer.duplicate();
+        source.position(offset);
+        source.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Read the value of an entry.
+     * 
+     * @param offset offset of the entry
+     * 
+     * @return the encoded value
+     */
+    @Nonnull private byte[] getValueBytes(final int offset) {
+        return getBytes(offset + ENTRY_HEADER_SIZE + buffer.getInt(offset + CONTEXT_LENGTH_OFFSET)
+                + buffer.getInt(offset + KEY_LENGTH_OFFSET), buffer.getInt(offset + VALUE_LENGTH_OFFSET));
+    }
+
+    /**
+     * Check whether an entry belongs to a context.
+     * 
+     * @param offset offset of the entry
+     * @param contextBytes encoded context
+     * 
+     * @return true iff the entry belongs to the context
+     */
+    private boolean contextMatches(final int offset, @Nonnull final byte[] contextBytes) {
+        return buffer.getInt(offset + CONTEXT_LENGTH_OFFSET) == contextBytes.length
+                && bytesMatch(offset + ENTRY_HEADER_SIZE, contextBytes);
+    }
+
+    /**
+     * Check whether an entry is for a context and key.
+     * 
+     * @param offset offset of the entry
+     * @param contextBytes encoded context
+     * @param keyBytes encoded key
+     * 
+     * @return true iff the entry is for the context and key
+     */
+    private boolean matches(final int offset, @Nonnull final byte[] contextBytes, @Nonnull final byte[] keyBytes) {
+        return buffer.getInt(offset + KEY_LENGTH_OFFSET) == keyBytes.length
+                && contextMatches(offset, contextBytes)
+                && bytesMatch(offset + ENTRY_HEADER_SIZE + contextBytes.length, keyBytes);
+    }
+
+    /**
+     * Compare bytes in the file with an array.
+     * 
+     * @param offset offset to compare from
+     * @param bytes bytes to compare
+     * 
+     * @return true iff the bytes are equal
+     */
+    private boolean bytesMatch(final int offset, @Nonnull final byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (buffer.get(offset + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the index slot holding a record.
+     * 
+     * @param hash hash of the context and key
+     * @param contextBytes encoded context
+     * @param keyBytes encoded key
+     * 
+     * @return the slot, or -1 if the record is not indexed
+     */
+    private int findSlot(final long hash, @Nonnull final byte[] contextBytes, @Nonnull final byte[] keyBytes) {
+        final int mask = indexOffsets.length - 1;
+        int slot = spread(hash) & mask;
+        while (true) {
+            final int offset = indexOffsets[slot];
+            if (offset == EMPTY) {
+                return -1;
+            } else if (offset > 0 && indexHashes[slot] == hash && matches(offset, contextBytes, keyBytes)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Index the current entry of a record, replacing any existing entry.
+     * 
+     * @param hash hash of the context and key
+     * @param contextBytes encoded context
+     * @param keyBytes encoded key
+     * @param offset offset of the entry
+     */
+    private void indexPut(final long hash, @Nonnull final byte[] contextBytes, @Nonnull final byte[] keyBytes,
+            final int offset) {
+        final int slot = findSlot(hash, contextBytes, keyBytes);
+        if (slot >= 0) {
+            deadBytes += buffer.getInt(indexOffsets[slot] + LENGTH_OFFSET);
+            indexOffsets[slot] = offset;
+            return;
+        }
+
+        if ((indexUsed + 1) * 2 > indexOffsets.length) {
+            int newCapacity = indexOffsets.length;
+            while ((indexSize + 1) * 2 > newCapacity / 2) {
+                newCapacity *= 2;
+            }
+            final long[] newHashes = new long[newCapacity];
+            final int[] newOffsets = new int[newCapacity];
+            for (int i = 0; i < indexOffsets.length; i++) {
+                if (indexOffsets[i] > 0) {
+                    insertSlot(newHashes, newOffsets, indexHashes[i], indexOffsets[i]);
+                }
+            }
+            indexHashes = newHashes;
+            indexOffsets = newOffsets;
+            indexUsed = indexSize;
+        }
+
+        if (insertSlot(indexHashes, indexOffsets, hash, offset)) {
+            indexUsed++;
+        }
+        indexSize++;
+    }
+
+    /**
+     * Insert an entry into an index known not to contain it.
+     * 
+     * @param hashes index hashes
+     * @param offsets index offsets
+     * @param hash hash of the context and key
+     * @param offset offset of the entry
+     * 
+     * @return true iff a previously empty slot was used
+     */
+    private static boolean insertSlot(@Nonnull final long[] hashes, @Nonnull final int[] offsets, final long hash,
+            final int offset) {
+        final int mask = offsets.length - 1;
+        int slot = spread(hash) & mask;
+        while (offsets[slot] > 0) {
+            slot = (slot + 1) & mask;
+        }
+        final boolean empty = offsets[slot] == EMPTY;
+        hashes[slot] = hash;
+        offsets[slot] = offset;
+        return empty;
+    }
+
+    /**
+     * Remove a record from the index.
+     * 
+     * @param slot the slot holding the record
+     */
+    private void removeSlot(final int slot) {
+        deadBytes += buffer.getInt(indexOffsets[slot] + LENGTH_OFFSET);
+        indexOffsets[slot] = TOMBSTONE;
+        indexSize--;
+    }
+
+    /**
+     * Remove all the records in a context from the index.
+     * 
+     * @param contextBytes encoded context
+     */
+    private void removeContext(@Nonnull final byte[] contextBytes) {
+        for (int slot = 0; slot < indexOffsets.length; slot++) {
+            if (indexOffsets[slot] > 0 && contextMatches(indexOffsets[slot], contextBytes)) {
+                removeSlot(slot);
+            }
+        }
+    }
+
+    /**
+     * Compute the 64-bit FNV-1a hash of a context and key.
+     * 
+     * @param contextBytes encoded context
+     * @param keyBytes encoded key
+     * 
+     * @return the hash
+     */
+    private static long hash(@Nonnull final byte[] contextBytes, @Nonnull final byte[] keyBytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (final byte b : contextBytes) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        // 0xff never occurs in UTF-8, so separates the context from the key unambiguously.
+        hash = (hash ^ 0xff) * 0x100000001b3L;
+        for (final byte b : keyBytes) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Fold a hash into an index position.
+     * 
+     * @param hash the hash
+     * 
+     * @return the folded hash
+     */
+    private static int spread(final long hash) {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /** Record read from the file. */
+    private static final class MappedStorageRecord extends StorageRecord {
+
+        /**
+         * Constructor.
+         *
+         * @param val value
+         * @param exp expiration, or null
+         * @param ver version
+         */
+        private MappedStorageRecord(@Nonnull final String val, @Nullable final Long exp, final long ver) {
+            super(val, exp);
+            setVersion(ver);
+        }
+    }
+
+}
@@ -0,0 +1,796 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.Duration;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonNegative;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
+
+import org.opensaml.storage.MutableStorageRecord;
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.StorageService;
+import org.opensaml.storage.VersionMismatchException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of {@link MemoryStorageService} that additionally copies data to a durable {@link StorageService},
+ * for contexts that need to survive a restart but are written far more often than they are read back.
+ * 
+ * <p>All operations are served from memory. Each change is queued, and a background thread applies queued changes
+ * to the durable service in batches. Changes to the same record are coalesced while queued, since applying a
+ * change copies whatever the record's state in memory is at the time, so a record that is written repeatedly is
+ * written to the durable service at most once per batch. Contexts configured as write-through are instead copied
+ * before the operation returns.</p>
+ * 
+ * <p>The queue is bounded: once it is full, writers wait for it to drain, and fail if it does not do so in time.
+ * Changes that cannot be applied are retried until the service is destroyed, at which point the queue is drained
+ * as far as possible.</p>
+ * 
+ * <p>On startup, the memory tier is populated with the unexpired records of the durable service if that is a
+ * {@link JPAStorageService}, the only implementation able to enumerate its records. Record versions are
+ * maintained independently by the two tiers, so versions may change across a restart.</p>
+ */
+public class WriteBehindStorageService extends MemoryStorageService {
+
+    /** Number of monitors over which the application of changes is serialized. */
+    private static final int APPLY_LOCK_STRIPES = 64;
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(WriteBehindStorageService.class);
+
+    /** Durable service. */
+    @NonnullAfterInit private StorageService durableStorage;
+
+    /** Contexts copied to the durable service before operations return. */
+    @Nonnull @NonnullElements private Set<String> writeThroughContexts;
+
+    /** Number of queued changes beyond which writers wait. */
+    @Positive private int maxQueueSize;
+
+    /** Maximum number of changes applied in one batch. */
+    @Positive private int batchSize;
+
+    /** Maximum time between batches, and the delay before retrying after a failure. */
+    @Duration @Positive private long flushInterval;
+
+    /** Maximum time writers wait for the queue to drain. */
+    @Duration @NonNegative private long queueTimeout;
+
+    /** Whether to populate the memory tier from the durable service on startup. */
+    private boolean rehydrate;
+
+    /** Queued changes, in the order they are to be applied. */
+    @Nonnull private final LinkedHashMap<String, PendingChange> queue;
+
+    /** Guards the queue. */
+    @Nonnull private final ReentrantLock queueLock;
+
+    /** Signalled when changes are queued, or on shutdown. */
+    @Nonnull private final Condition notEmpty;
+
+    /** Signalled when changes are removed from the queue or applied. */
+    @Nonnull private final Condition drained;
+
+    /** Number of changes taken from the queue but not yet applied. */
+    private int inFlight;
+
+    /** Sequence number distinguishing context-wide changes, which are never coalesced. */
+    private long sequence;
+
+    /** Thread applying changes to the durable service. */
+    @Nullable private Thread flushThread;
+
+    /** Whether the service is running. */
+    private volatile boolean running;
+
+    /** Monitors serializing the application of changes to the same context, selected by context hash. */
+    @Nonnull private final Object[] applyLocks;
+
+    /** Constructor. */
+    public WriteBehindStorageService() {
+        writeThroughContexts = Collections.emptySet();
+        maxQueueSize = 10000;
+        batchSize = 100;
+        flushInterval = 1000;
+        queueTimeout = 5000;
+        rehydrate = true;
+        queue = new LinkedHashMap<>();
+        queueLock = new ReentrantLock();
+        notEmpty = queueLock.newCondition();
+        drained = queueLock.newCondition();
+        applyLocks = new Object[APPLY_LOCK_STRIPES];
+        for (int i = 0; i < applyLocks.length; i++) {
+            applyLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * Get the durable service.
+     * 
+     * @return the durable service
+     */
+    @NonnullAfterInit public StorageService getDurableStorage() {
+        return durableStorage;
+    }
+
+    /**
+     * Set the durable service, whose lifecycle is not managed by this service.
+     * 
+     * @param storage the durable service
+     */
+    public void setDurableStorage(@Nonnull final StorageService storage) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        durableStorage = Constraint.isNotNull(storage, "Durable StorageService cannot be null");
+    }
+
+    /**
+     * Set the contexts whose changes are copied to the durable service before operations return.
+     * 
+     * @param contexts write-through contexts
+     */
+    public void setWriteThroughContexts(@Nullable @NonnullElements final Collection<String> contexts) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        if (contexts != null) {
+            writeThroughContexts = new HashSet<>(StringSupport.normalizeStringCollection(contexts));
+        } else {
+            writeThroughContexts = Collections.emptySet();
+        }
+    }
+
+    /**
+     * Set the number of queued changes beyond which writers wait.
+     * 
+     * <p>Defaults to 10000.</p>
+     * 
+     * @param size maximum queue size
+     */
+    public void setMaxQueueSize(@Positive final int size) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        maxQueueSize = (int) Constraint.isGreaterThan(0, size, "Maximum queue size must be greater than 0");
+    }
+
+    /**
+     * Set the maximum number of changes applied in one batch.
+     * 
+     * <p>Defaults to 100.</p>
+     * 
+     * @param size batch size
+     */
+    public void setBatchSize(@Positive final int size) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        batchSize = (int) Constraint.isGreaterThan(0, size, "Batch size must be greater than 0");
+    }
+
+    /**
+     * Set the maximum time between batches, which is also the delay before retrying after a failure.
+     * 
+     * <p>Defaults to 1 second.</p>
+     * 
+     * @param interval flush interval in milliseconds
+     */
+    public void setFlushInterval(@Duration @Positive final long interval) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        flushInterval = Constraint.isGreaterThan(0, interval, "Flush interval must be greater than 0");
+    }
+
+    /**
+     * Set the maximum time writers wait for a full queue to drain before failing.
+     * 
+     * <p>Defaults to 5 seconds.</p>
+     * 
+     * @param timeout queue timeout in milliseconds
+     */
+    public void setQueueTimeout(@Duration @NonNegative final long timeout) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        queueTimeout = Constraint.isGreaterThanOrEqual(0, timeout, "Queue timeout must be greater than or equal to 0");
+    }
+
+    /**
+     * Set whether to populate the memory tier from the durable service on startup.
+     * 
+     * <p>Defaults to true.</p>
+     * 
+     * @param flag flag to set
+     */
+    public void setRehydrate(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        rehydrate = flag;
+    }
+
+    /**
+     * Get the number of queued changes.
+     * 
+     * @return the number of queued changes
+     */
+    @NonNegative public int getQueueSize() {
+        queueLock.lock();
+        try {
+            return queue.size() + inFlight;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Wait for all queued changes to be applied to the durable service.
+     * 
+     * @param timeout maximum time to wait in milliseconds
+     * 
+     * @return true iff all changes were applied in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean flush(@Duration @NonNegative final long timeout) throws InterruptedException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+        queueLock.lock();
+        try {
+            notEmpty.signalAll();
+            while (!queue.isEmpty() || inFlight > 0) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = drained.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+
+        if (durableStorage == null) {
+            throw new ComponentInitializationException("Durable StorageService cannot be null");
+        } else if (durableStorage == this) {
+            throw new ComponentInitializationException("Durable StorageService cannot be this service");
+        }
+
+        if (rehydrate) {
+            rehydrate();
+        }
+
+        running = true;
+        flushThread = new Thread(new Runnable() {
+            /** {@inheritDoc} */
+            public void run() {
+                flushLoop();
+            }
+        }, "WriteBehindStorageService-" + getId());
+        flushThread.setDaemon(true);
+        flushThread.start();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doDestroy() {
+        running = false;
+        if (flushThread != null) {
+            queueLock.lock();
+            try {
+                notEmpty.signalAll();
+            } finally {
+                queueLock.unlock();
+            }
+            try {
+                flushThread.join();
+            } catch (final InterruptedException e) {
+                log.warn("Interrupted while waiting for queued changes to be written to durable storage");
+                Thread.currentThread().interrupt();
+            }
+            flushThread = null;
+        }
+
+        super.doDestroy();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean create(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NotEmpty final String value, @Nullable final Long expiration) throws IOException {
+        awaitCapacity();
+        final boolean result = super.create(context, key, value, expiration);
+        if (result) {
+            recordChange(PendingChange.forRecord(context, key));
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean update(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NotEmpty final String value, @Nullable final Long expiration) throws IOException {
+        awaitCapacity();
+        final boolean result = super.update(context, key, value, expiration);
+        if (result) {
+            recordChange(PendingChange.forRecord(context, key));
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nullable public Long updateWithVersion(final long version, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String value,
+            @Nullable final Long expiration) throws IOException, VersionMismatchException {
+        awaitCapacity();
+        final Long result = super.updateWithVersion(version, context, key, value, expiration);
+        if (result != null) {
+            recordChange(PendingChange.forRecord(context, key));
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean updateExpiration(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nullable final Long expiration) throws IOException {
+        awaitCapacity();
+        final boolean result = super.updateExpiration(context, key, expiration);
+        if (result) {
+            recordChange(PendingChange.forRecord(context, key));
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean deleteWithVersion(final long version, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) throws IOException, VersionMismatchException {
+        awaitCapacity();
+        final boolean result = super.deleteWithVersion(version, context, key);
+        if (result) {
+            recordChange(PendingChange.forRecord(context, key));
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean delete(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key)
+            throws IOException {
+        awaitCapacity();
+        final boolean result = super.delete(context, key);
+        if (result) {
+            recordChange(PendingChange.forRecord(context, key));
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void updateContextExpiration(@Nonnull @NotEmpty final String context, @Nullable final Long expiration)
+            throws IOException {
+        awaitCapacity();
+        super.updateContextExpiration(context, expiration);
+        recordChange(PendingChange.forContextExpiration(context, expiration));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void deleteContext(@Nonnull @NotEmpty final String context) throws IOException {
+        awaitCapacity();
+        super.deleteContext(context);
+        recordChange(PendingChange.forContextDeletion(context));
+    }
+
+    /**
+     * Populate the memory tier with the unexpired records of the durable service, if it can enumerate them.
+     * 
+     * @throws ComponentInitializationException if the records cannot be read
+     */
+    private void rehydrate() throws ComponentInitializationException {
+        if (!(durableStorage instanceof JPAStorageService)) {
+            log.info("Durable StorageService cannot enumerate its records, memory tier will not be rehydrated");
+            return;
+        }
+
+        final List<StorageRecord> records;
+        try {
+            records = ((JPAStorageService) durableStorage).readAll();
+        } catch (final IOException e) {
+            throw new ComponentInitializationException("Unable to read records from durable storage", e);
+        }
+
+        final long now = System.currentTimeMillis();
+        final Map<String, Map<String, MutableStorageRecord>> contextMap = getContextMap();
+        int loaded = 0;
+        // The cleanup task may already have been scheduled by the superclass.
+        final Lock writeLock = getLock().writeLock();
+        writeLock.lock();
+        try {
+            for (final StorageRecord record : records) {
+                if (record.getExpiration() != null && record.getExpiration() <= now) {
+                    continue;
+                }
+                final JPAStorageRecord jpaRecord = (JPAStorageRecord) record;
+                Map<String, MutableStorageRecord> dataMap = contextMap.get(jpaRecord.getContext());
+                if (dataMap == null) {
+                    dataMap = new HashMap<>();
+                    contextMap.put(jpaRecord.getContext(), dataMap);
+                }
+                final MutableStorageRecord copy = new MutableStorageRecord(record.getValue(), record.getExpiration());
+                copy.setVersion(record.getVersion());
+                dataMap.put(jpaRecord.getKey(), copy);
+                loaded++;
+            }
+            log.info("Rehydrated {} record(s) in {} context(s) from durable storage", loaded, contextMap.size());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Wait until the queue has room for a change.
+     * 
+     * @throws IOException if the queue does not drain within the queue timeout, or the wait is interrupted
+     */
+    private void awaitCapacity() throws IOException {
+        queueLock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(queueTimeout);
+            while (queue.size() >= maxQueueSize) {
+                if (remaining <= 0) {
+                    throw new IOException("Timed out waiting for write-behind queue to drain");
+                }
+                remaining = drained.awaitNanos(remaining);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for write-behind queue to drain", e);
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Apply a change to the durable service now if its context is write-through, or queue it.
+     * 
+     * @param change the change
+     * 
+     * @throws IOException if a write-through change cannot be applied
+     */
+    private void recordChange(@Nonnull final PendingChange change) throws IOException {
+        if (writeThroughContexts.contains(change.context)) {
+            if (change.key != null) {
+                // Applying copies the record's current state, which supersedes any queued change to it.
+                dequeue(change.getRecordId());
+            }
+            try {
+                apply(change);
+                return;
+            } catch (final IOException e) {
+                // Queue the change to be retried, so the tiers converge, but still report the failure.
+                enqueue(change);
+                throw e;
+            }
+        }
+        enqueue(change);
+    }
+
+    /**
+     * Queue a change, replacing any queued change to the same record.
+     * 
+     * @param change the change
+     */
+    private void enqueue(@Nonnull final PendingChange change) {
+        queueLock.lock();
+        try {
+            final String id = change.key != null ? change.getRecordId() : Long.toString(++sequence);
+            // Re-inserting moves the change behind any context-wide changes queued in the meantime.
+            queue.remove(id);
+            queue.put(id, change);
+            notEmpty.signal();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Remove any queued change to a record.
+     * 
+     * @param id identifier of the record
+     */
+    private void dequeue(@Nonnull final String id) {
+        queueLock.lock();
+        try {
+            if (queue.remove(id) != null) {
+                drained.signalAll();
+            }
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /** Apply queued changes to the durable service until the service is destroyed and the queue is empty. */
+    private void flushLoop() {
+        while (true) {
+            final List<PendingChange> batch = takeBatch();
+            if (batch == null) {
+                return;
+            }
+
+            int applied = 0;
+            try {
+                for (final PendingChange change : batch) {
+                    apply(change);
+                    applied++;
+                }
+            } catch (final IOException e) {
+                final List<PendingChange> failed = batch.subList(applied, batch.size());
+                if (running) {
+                    log.warn("Error writing to durable storage, will retry {} change(s)", failed.size(), e);
+                    requeue(failed);
+                    pause();
+                } else {
+                    log.error("Error writing to durable storage during shutdown, {} change(s) lost",
+                            failed.size() + getQueueSize() - batch.size(), e);
+                    discardAll();
+                    return;
+                }
+            } catch (final RuntimeException e) {
+                log.error("Unexpected error writing to durable storage, {} change(s) lost",
+                        batch.size() - applied, e);
+            } finally {
+                queueLock.lock();
+                try {
+                    inFlight = 0;
+                    drained.signalAll();
+                } finally {
+                    queueLock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Take the next batch of changes from the queue, waiting for changes to be queued.
+     * 
+     * @return the batch, or null if the service has been destroyed and the queue is empty
+     */
+    @Nullable private List<PendingChange> takeBatch() {
+        queueLock.lock();
+        try {
+            while (queue.isEmpty()) {
+                if (!running) {
+                    return null;
+                }
+                try {
+                    notEmpty.await(flushInterval, TimeUnit.MILLISECONDS);
+                } catch (final InterruptedException e) {
+                    log.debug("Write-behind thread interrupted");
+                }
+            }
+
+            final List<PendingChange> batch = new ArrayList<>(Math.min(batchSize, queue.size()));
+            final Iterator<PendingChange> changes = queue.values().iterator();
+            while (changes.hasNext() && batch.size() < batchSize) {
+                batch.add(changes.next());
+                changes.remove();
+            }
+            inFlight = batch.size();
+            drained.signalAll();
+            return batch;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Return failed changes to the front of the queue, unless superseded by a change queued in the meantime.
+     * 
+     * @param failed the failed changes
+     */
+    private void requeue(@Nonnull @NonnullElements final List<PendingChange> failed) {
+        queueLock.lock();
+        try {
+            final LinkedHashMap<String, PendingChange> previous = new LinkedHashMap<>(queue);
+            queue.clear();
+            for (final PendingChange change : failed) {
+                final String id = change.key != null ? change.getRecordId() : Long.toString(++sequence);
+                if (!previous.containsKey(id)) {
+                    queue.put(id, change);
+                }
+            }
+            queue.putAll(previous);
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /** Discard all queued changes. */
+    private void discardAll() {
+        queueLock.lock();
+        try {
+            queue.clear();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /** Wait before retrying, unless the service is destroyed in the meantime. */
+    private void pause() {
+        queueLock.lock();
+        try {
+            if (running) {
+                notEmpty.await(flushInterval, TimeUnit.MILLISECONDS);
+            }
+        } catch (final InterruptedException e) {
+            log.debug("Write-behind thread interrupted");
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Apply a change to the durable service.
+     * 
+     * <p>Changes to the same context are applied one at a time, so that a write-through change made on a caller's
+     * thread cannot be overwritten by the background thread applying an earlier copy of the same record.</p>
+     * 
+     * @param change the change
+     * 
+     * @throws IOException if an error occurs
+     */
+    private void apply(@Nonnull final PendingChange change) throws IOException {
+        synchronized (applyLocks[(change.context.hashCode() & Integer.MAX_VALUE) % applyLocks.length]) {
+            applyNow(change);
+        }
+    }
+
+    /**
+     * Apply a change to the durable service, with the monitor for its context held.
+     * 
+     * @param change the change
+     * 
+     * @throws IOException if an error occurs
+     */
+    private void applyNow(@Nonnull final PendingChange change) throws IOException {
+        if (change.key == null) {
+            if (change.deleteContext) {
+                durableStorage.deleteContext(change.context);
+            } else {
+                durableStorage.updateContextExpiration(change.context, change.expiration);
+            }
+            return;
+        }
+
+        // Copy the current state of the record, which reflects any changes made since this one was queued.
+        final StorageRecord record = read(change.context, change.key);
+        if (record == null) {
+            durableStorage.delete(change.context, change.key);
+        } else if (!durableStorage.update(change.context, change.key, record.getValue(), record.getExpiration())
+                && !durableStorage.create(change.context, change.key, record.getValue(), record.getExpiration())
+                && !durableStorage.update(change.context, change.key, record.getValue(), record.getExpiration())) {
+            log.warn("Unable to write record '{}' in context '{}' to durable storage", change.key, change.context);
+        }
+    }
+
+    /** A queued change. */
+    private static final class PendingChange {
+
+        /** Context changed. */
+        @Nonnull private final String context;
+
+        /** Key of the record changed, or null for a context-wide change. */
+        @Nullable private final String key;
+
+        /** Whether a context-wide change deletes the context, rather than updating its expiration. */
+        private final boolean deleteContext;
+
+        /** Expiration set by a context-wide change. */
+        @Nullable private final Long expiration;
+
+        /**
+         * Constructor.
+         *
+         * @param ctx context changed
+         * @param k key of the record changed, or null
+         * @param delete whether a context-wide change deletes the context
+         * @param exp expiration set by a context-wide change
+         */
+        private PendingChange(@Nonnull final String ctx, @Nullable final String k, final boolean delete,
+                @Nullable final Long exp) {
+            context = ctx;
+            key = k;
+            deleteContext = delete;
+            expiration = exp;
+        }
+
+        /**
+         * Create a change to a record.
+         * 
+         * @param context context of the record
+         * @param key key of the record
+         * 
+         * @return the change
+         */
+        @Nonnull private static PendingChange forRecord(@Nonnull final String context, @Nonnull final String key) {
+            return new PendingChange(context, key, false, null);
+        }
+
+        /**
+         * Create a change to the expiration of a context.
+         * 
+         * @param context the context
+         * @param expiration the new expiration
+         * 
+         * @return the change
+         */
+        @Nonnull private static PendingChange forContextExpiration(@Nonnull final String context,
+                @Nullable final Long expiration) {
+            return new PendingChange(context, null, false, expiration);
+        }
+
+        /**
+         * Create a deletion of a context.
+         * 
+         * @param context the context
+         * 
+         * @return the change
+         */
+        @Nonnull private static PendingChange forContextDeletion(@Nonnull final String context) {
+            return new PendingChange(context, null, true, null);
+        }
+
+        /**
+         * Get an identifier of the record changed, for coalescing changes.
+         * 
+         * @return the identifier
+         */
+        @Nonnull private String getRecordId() {
+            return context.length() + ":" + context + key;
+        }
+    }
+
+}
@@ -0,0 +1,269 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.annotation.Nonnull;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.Live;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.codec.Base64Support;
+
+import org.opensaml.storage.MutableStorageRecord;
+
+/**
+ * {@link ClientStorageCodec} that uses a compact binary format, optionally compressed with deflate,
+ * and base64-encoded.
+ * 
+ * <p>The format is a header byte carrying the format version and a compression flag, followed by the
+ * contexts. Each context is its name, a record count, and for each record its key, value and expiration.
+ * Strings are length-prefixed UTF-8 and all integers are variable-length, with an expiration of zero
+ * denoting a record that does not expire.</p>
+ * 
+ * <p>For compatibility when switching from the original format, data in the format produced by
+ * {@link JSONClientStorageCodec} is also accepted when decoding.</p>
+ */
+public class BinaryClientStorageCodec implements ClientStorageCodec {
+
+    /** Format version. */
+    private static final int VERSION = 1;
+
+    /** Header flag indicating compressed data. */
+    private static final int FLAG_DEFLATED = 0x80;
+
+    /** Codec used to read data in the original format. */
+    @Nonnull private final JSONClientStorageCodec jsonCodec;
+
+    /** Whether to compress the data. */
+    private boolean compress;
+
+    /** Constructor. */
+    public BinaryClientStorageCodec() {
+        jsonCodec = new JSONClientStorageCodec();
+    }
+
+    /**
+     * Get whether to compress the data with deflate.
+     * 
+     * @return whether to compress the data
+     */
+    public boolean isCompress() {
+        return compress;
+    }
+
+    /**
+     * Set whether to compress the data with deflate.
+     * 
+     * <p>Compression is most effective when a context holds many records with similar values.</p>
+     * 
+     * @param flag flag to set
+     */
+    public void setCompress(final boolean flag) {
+        compress = flag;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public byte[] encodeContext(@Nonnull @NotEmpty final String context,
+            @Nonnull @NonnullElements final Map<String, MutableStorageRecord> records, final long now)
+                    throws IOException {
+        int count = 0;
+        for (final MutableStorageRecord record : records.values()) {
+            final Long exp = record.getExpiration();
+            if (exp == null || exp > now) {
+                count++;
+            }
+        }
+
+        final ByteArrayOutputStream sink = new ByteArrayOutputStream(64);
+        writeString(sink, context);
+        writeVarLong(sink, count);
+        for (final Map.Entry<String,MutableStorageRecord> entry : records.entrySet()) {
+            final MutableStorageRecord record = entry.getValue();
+            final Long exp = record.getExpiration();
+            if (exp == null || exp > now) {
+                writeString(sink, entry.getKey());
+                writeString(sink, record.getValue());
+                writeVarLong(sink, exp != null ? exp : 0);
+            }
+        }
+        return sink.toByteArray();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull @NotEmpty public String combine(@Nonnull @NonnullElements final List<byte[]> contexts)
+            throws IOException {
+        final ByteArrayOutputStream sink = new ByteArrayOutputStream(128);
+        sink.write(compress ? VERSION | FLAG_DEFLATED : VERSION);
+        final OutputStream body = compress ? new DeflaterOutputStream(sink) : sink;
+        for (final byte[] context : contexts) {
+            body.write(context);
+        }
+        body.close();
+        return Base64Support.encode(sink.toByteArray(), Base64Support.UNCHUNKED);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void decode(@Nonnull @NotEmpty final String data,
+            @Nonnull @NonnullElements @Live final Map<String, Map<String, MutableStorageRecord>> contextMap)
+                    throws IOException {
+        if (data.charAt(0) == '{') {
+            jsonCodec.decode(data, contextMap);
+            return;
+        }
+
+        final byte[] bytes;
+        try {
+            bytes = Base64Support.decode(data);
+        } catch (final RuntimeException e) {
+            throw new IOException("Data is not base64-encoded", e);
+        }
+        if (bytes == null || bytes.length == 0) {
+            throw new IOException("Data is empty");
+        }
+        
+        final int header = bytes[0] & 0xff;
+        if ((header & ~FLAG_DEFLATED) != VERSION) {
+            throw new IOException("Unsupported data format version " + (header & ~FLAG_DEFLATED));
+        }
+        
+        InputStream source = new ByteArrayInputStream(bytes, 1, bytes.length - 1);
+        if ((header & FLAG_DEFLATED) != 0) {
+            source = new InflaterInputStream(source);
+        }
+        
+        try {
+            int b;
+            while ((b = source.read()) != -1) {
+                final String context = readString(source, b);
+                Map<String,MutableStorageRecord> dataMap = contextMap.get(context);
+                if (dataMap == null) {
+                    dataMap = new HashMap<>();
+                    contextMap.put(context, dataMap);
+                }
+                
+                final long count = readVarLong(source, source.read());
+                for (long i = 0; i < count; i++) {
+                    final String key = readString(source, source.read());
+                    final String value = readString(source, source.read());
+                    final long exp = readVarLong(source, source.read());
+                    dataMap.put(key, new MutableStorageRecord(value, exp != 0 ? exp : null));
+                }
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    /**
+     * Write a length-prefixed UTF-8 string.
+     * 
+     * @param sink stream to write to
+     * @param value string to write
+     */
+    private void writeString(@Nonnull final ByteArrayOutputStream sink, @Nonnull final String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(sink, bytes.length);
+        sink.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Write a non-negative integer using seven bits per byte, least significant group first.
+     * 
+     * @param sink stream to write to
+     * @param value value to write
+     */
+    private void writeVarLong(@Nonnull final ByteArrayOutputStream sink, final long value) {
+        long remaining = value;
+        while ((remaining & ~0x7fL) != 0) {
+            sink.write((int) (remaining & 0x7f) | 0x80);
+            remaining >>>= 7;
+        }
+        sink.write((int) remaining);
+    }
+
+    /**
+     * Read a length-prefixed UTF-8 string.
+     * 
+     * @param source stream to read from
+     * @param first first byte of the length, already read
+     * 
+     * @return the string
+     * @throws IOException if the data is truncated or invalid
+     */
+    @Nonnull private String readString(@Nonnull final InputStream source, final int first) throws IOException {
+        final long length = readVarLong(source, first);
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Invalid string length");
+        }
+        final byte[] bytes = new byte[(int) length];
+        int offset = 0;
+        while (offset < bytes.length) {
+            final int read = source.read(bytes, offset, bytes.length - offset);
+            if (read == -1) {
+                throw new EOFException("Data is truncated");
+            }
+            offset += read;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read a non-negative integer written by {@link #writeVarLong(ByteArrayOutputStream, long)}.
+     * 
+     * @param source stream to read from
+     * @param first first byte of the value, already read
+     * 
+     * @return the value
+     * @throws IOException if the data is truncated or invalid
+     */
+    private long readVarLong(@Nonnull final InputStream source, final int first) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b = first;
+        while (true) {
+            if (b == -1) {
+                throw new EOFException("Data is truncated");
+            } else if (shift > 56) {
+                throw new IOException("Invalid integer encoding");
+            }
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+            b = source.read();
+        }
+    }
+
+}
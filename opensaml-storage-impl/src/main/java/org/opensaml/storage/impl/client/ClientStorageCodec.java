@@ -0,0 +1,77 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl.client;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.Live;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+
+import org.opensaml.storage.MutableStorageRecord;
+
+/**
+ * Converts the records held by a {@link ClientStorageService} to and from the string that is sealed
+ * and stored on the client.
+ * 
+ * <p>Encoding is done one context at a time so that the encoded form of contexts that have not changed
+ * can be reused. The per-context encodings are then combined into the final string.</p>
+ */
+public interface ClientStorageCodec {
+
+    /**
+     * Encode the unexpired records of a single context.
+     * 
+     * @param context the context name
+     * @param records the records in the context
+     * @param now the current time, used to skip expired records
+     * 
+     * @return the encoded context
+     * @throws IOException if an error occurs
+     */
+    @Nonnull byte[] encodeContext(@Nonnull @NotEmpty final String context,
+            @Nonnull @NonnullElements final Map<String, MutableStorageRecord> records, final long now)
+                    throws IOException;
+
+    /**
+     * Combine encoded contexts, produced by {@link #encodeContext(String, Map, long)}, into the string to seal.
+     * 
+     * @param contexts the encoded contexts
+     * 
+     * @return the combined data
+     * @throws IOException if an error occurs
+     */
+    @Nonnull @NotEmpty String combine(@Nonnull @NonnullElements final List<byte[]> contexts) throws IOException;
+
+    /**
+     * Decode previously combined data, adding the records found to a map of contexts.
+     * 
+     * @param data the data to decode
+     * @param contextMap the map of contexts to populate
+     * 
+     * @throws IOException if the data cannot be decoded
+     */
+    void decode(@Nonnull @NotEmpty final String data,
+            @Nonnull @NonnullElements @Live final Map<String, Map<String, MutableStorageRecord>> contextMap)
+                    throws IOException;
+
+}
@@ -18,11 +18,15 @@
 package org.opensaml.storage.impl.client;
 
 import java.io.IOException;
-import java.io.StringReader;
-import java.io.StringWriter;
 import java.security.KeyException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimerTask;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -30,13 +34,6 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import javax.json.Json;
-import javax.json.JsonException;
-import javax.json.JsonObject;
-import javax.json.JsonReader;
-import javax.json.JsonStructure;
-import javax.json.JsonValue;
-import javax.json.stream.JsonGenerator;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -48,8 +45,11 @@ import javax.servlet.http.HttpSession;
 
 import net.shibboleth.utilities.java.support.annotation.constraint.Live;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonNegative;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.collection.Pair;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
 import net.shibboleth.utilities.java.support.logic.Constraint;
@@ -65,13 +65,16 @@ import org.opensaml.storage.MutableStorageRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.ForwardingMap;
+
 /**
  * Implementation of {@link StorageService} that stores data in-memory in a shared session attribute.
  * 
  * <p>The data for this service is managed in a {@link ClientStorageServiceStore} object, which must
  * be created by some operation within the container for this implementation to function. Actual
  * load/store of the data to/from that object is driven via companion classes. The serialization
- * of data via JSON is inside the storage object class, but the encryption/decryption is here.</p>
+ * of data is delegated by the storage object class to a {@link ClientStorageCodec}, but the
+ * encryption/decryption is here.</p>
  */
 public class ClientStorageService extends AbstractMapBackedStorageService implements Filter {
 
@@ -95,6 +98,9 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
     /** Default label for storage tracking. */
     @Nonnull @NotEmpty private static final String DEFAULT_STORAGE_NAME = "shib_idp_client_ss";
     
+    /** Separator between the storage name and chunk index in the storage key of a chunk. */
+    private static final char CHUNK_SEPARATOR = '_';
+    
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(ClientStorageService.class);
 
@@ -115,10 +121,18 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
 
     /** KeyStrategy enabling us to detect whether data has been sealed with an older key. */
     @Nullable private DataSealerKeyStrategy keyStrategy;
+    
+    /** Serializes the data. */
+    @Nonnull private ClientStorageCodec codec;
+    
+    /** Number of chunks to divide cookie-based data into. */
+    @Positive private int chunkCount;
 
     /** Constructor. */
     public ClientStorageService() {
         storageName = DEFAULT_STORAGE_NAME;
+        codec = new JSONClientStorageCodec();
+        chunkCount = 1;
         capabilityMap = new HashMap<>(2);
         capabilityMap.put(ClientStorageSource.COOKIE, 4096);
         capabilityMap.put(ClientStorageSource.HTML_LOCAL_STORAGE, 1024 * 1024);
@@ -222,6 +236,65 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
         
         keyStrategy = strategy;
     }
+    
+    /**
+     * Get the {@link ClientStorageCodec} used to serialize the data.
+     * 
+     * @return the codec in use
+     */
+    @Nonnull public ClientStorageCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Set the {@link ClientStorageCodec} used to serialize the data.
+     * 
+     * <p>Defaults to {@link JSONClientStorageCodec}. The {@link BinaryClientStorageCodec} produces
+     * smaller data and can read data stored in the default format.</p>
+     * 
+     * @param clientStorageCodec the codec to use
+     */
+    public void setCodec(@Nonnull final ClientStorageCodec clientStorageCodec) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        codec = Constraint.isNotNull(clientStorageCodec, "ClientStorageCodec cannot be null");
+    }
+    
+    /**
+     * Get the number of chunks to divide cookie-based data into.
+     * 
+     * @return number of chunks
+     */
+    @Positive public int getChunkCount() {
+        return chunkCount;
+    }
+    
+    /**
+     * Set the number of chunks to divide cookie-based data into.
+     * 
+     * <p>Defaults to 1, storing all data in a single cookie named for the storage name. With more than one
+     * chunk, each context is assigned to a chunk by hashing its name, and each chunk is sealed separately
+     * and stored in its own cookie. A chunk is only decrypted when a context it contains is accessed, and
+     * only modified chunks are written back.</p>
+     * 
+     * <p>Data in local storage is unaffected by this setting.</p>
+     * 
+     * @param count number of chunks
+     */
+    public void setChunkCount(@Positive final int count) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        chunkCount = (int) Constraint.isGreaterThan(0, count, "Chunk count must be greater than 0");
+    }
+    
+    /**
+     * Get whether cookie-based data is divided into chunks.
+     * 
+     * @return true iff cookie-based data is divided into chunks
+     */
+    public boolean isChunked() {
+        return chunkCount > 1;
+    }
 
     /** {@inheritDoc} */
     @Override
@@ -313,7 +386,18 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
         
         final Object store = session.getAttribute(STORAGE_ATTRIBUTE + '.' + storageName);
         if (store != null && store instanceof ClientStorageServiceStore) {
-            ((ClientStorageServiceStore) store).setDirty(true);
+            ((ClientStorageServiceStore) store).invalidate();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void setDirty(@Nonnull @NotEmpty final String context) {
+        final HttpSession session = Constraint.isNotNull(httpServletRequest.getSession(), "HttpSession cannot be null");
+        
+        final Object store = session.getAttribute(STORAGE_ATTRIBUTE + '.' + storageName);
+        if (store != null && store instanceof ClientStorageServiceStore) {
+            ((ClientStorageServiceStore) store).setDirty(context);
         }
     }
     
@@ -378,32 +462,14 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
         
         if (raw != null) {
             log.trace("{} Loading storage state into session", getLogPrefix());
-            try {
-                final StringBuffer keyAliasUsed = new StringBuffer();
-                final String decrypted = dataSealer.unwrap(raw, keyAliasUsed);
-                
-                log.trace("{} Data after decryption: {}", getLogPrefix(), decrypted);
-                
-                storageObject = new ClientStorageServiceStore(decrypted, source);
-                
-                if (keyStrategy != null) {
-                    try {
-                        if (!keyStrategy.getDefaultKey().getFirst().equals(keyAliasUsed.toString())) {
-                            storageObject.setDirty(true);
-                        }
-                    } catch (final KeyException e) {
-                        log.error("{} Exception while accessing default key during stale key detection",
-                                getLogPrefix(), e);
-                    }
+            final Pair<String,Boolean> unsealed = unseal(raw);
+            if (unsealed != null) {
+                storageObject = new ClientStorageServiceStore(unsealed.getFirst(), source);
+                if (unsealed.getSecond()) {
+                    storageObject.setDirty(true);
                 }
-                
                 log.debug("{} Successfully decrypted and loaded storage state from client", getLogPrefix());
-            } catch (final DataExpiredException e) {
-                log.debug("{} Secured data or key has expired", getLogPrefix());
-                storageObject = new ClientStorageServiceStore(null, source);
-                storageObject.setDirty(true);
-            } catch (final DataSealerException e) {
-                log.error("{} Exception unwrapping secured data", getLogPrefix(), e);
+            } else {
                 storageObject = new ClientStorageServiceStore(null, source);
                 storageObject.setDirty(true);
             }
@@ -415,6 +481,36 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
         // The object should be loaded, and marked "clean", or in the event of just about any failure
         // it should be empty and marked "dirty" to force an overwrite of the expired or corrupted data.
         
+        bind(storageObject);
+    }
+
+    /**
+     * Inject chunked data into the session, deferring decryption of each chunk until a context
+     * it contains is first accessed.
+     * 
+     * <p>The map is keyed by storage key, as returned by {@link #getChunkKey(int)}. Data stored under
+     * the unchunked storage name, or under chunk keys outside the configured chunk count, is decrypted
+     * immediately and redistributed into the current chunks when next saved, after which the
+     * old keys are cleared.</p>
+     * 
+     * <p>This method should <strong>not</strong> be called while holding the session lock
+     * returned by {@link #getLock()}.</p>
+     * 
+     * @param chunks encrypted chunks to load as storage contents, keyed by storage key
+     * @param source indicates source of the data for later use
+     */
+    void loadChunks(@Nonnull @NonnullElements final Map<String,String> chunks,
+            @Nonnull final ClientStorageSource source) {
+        log.trace("{} Loading {} chunk(s) of storage state into session", getLogPrefix(), chunks.size());
+        bind(new ClientStorageServiceStore(source, chunks));
+    }
+    
+    /**
+     * Bind a storage object to the session.
+     * 
+     * @param storageObject the object to bind
+     */
+    private void bind(@Nonnull final ClientStorageServiceStore storageObject) {
         final Lock lock = getLock().writeLock();
         try {
             lock.lock();
@@ -427,15 +523,67 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
         }
     }
     
+    /**
+     * Decrypt data sealed by this service.
+     * 
+     * @param raw the sealed data
+     * 
+     * @return the decrypted data, and whether it was sealed with a key other than the current default,
+     *  or null if the data could not be decrypted
+     */
+    @Nullable private Pair<String,Boolean> unseal(@Nonnull @NotEmpty final String raw) {
+        try {
+            final StringBuffer keyAliasUsed = new StringBuffer();
+            final String decrypted = dataSealer.unwrap(raw, keyAliasUsed);
+            
+            log.trace("{} Data after decryption: {}", getLogPrefix(), decrypted);
+            
+            boolean stale = false;
+            if (keyStrategy != null) {
+                try {
+                    stale = !keyStrategy.getDefaultKey().getFirst().equals(keyAliasUsed.toString());
+                } catch (final KeyException e) {
+                    log.error("{} Exception while accessing default key during stale key detection",
+                            getLogPrefix(), e);
+                }
+            }
+            
+            return new Pair<>(decrypted, stale);
+        } catch (final DataExpiredException e) {
+            log.debug("{} Secured data or key has expired", getLogPrefix());
+        } catch (final DataSealerException e) {
+            log.error("{} Exception unwrapping secured data", getLogPrefix(), e);
+        }
+        return null;
+    }
+    
     /**
      * Serialize the stored data if it's in a "modified/dirty" state.
      * 
      * <p>This method should <strong>not</strong> be called while holding the session lock
      * returned by {@link #getLock()}.</p>
      * 
+     * <p>This is only suitable when the data is not chunked, use {@link #saveOperations()} otherwise.</p>
+     * 
      * @return if dirty, the operation to perform, if not dirty, a null value  
      */
     @Nullable ClientStorageServiceOperation save() {
+        final List<ClientStorageServiceOperation> operations = saveOperations();
+        return operations.isEmpty() ? null : operations.get(0);
+    }
+    
+    /**
+     * Serialize any stored data in a "modified/dirty" state.
+     * 
+     * <p>When the data is chunked, there is an operation for each chunk that has been modified,
+     * and for each obsolete storage key to clear.</p>
+     * 
+     * <p>This method should <strong>not</strong> be called while holding the session lock
+     * returned by {@link #getLock()}.</p>
+     * 
+     * @return the operations to perform, empty if nothing is dirty
+     */
+    @Nonnull @NonnullElements List<ClientStorageServiceOperation> saveOperations() {
         
         log.trace("{} Preserving storage state from session", getLogPrefix());
         
@@ -449,19 +597,68 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
             final Object object = session.getAttribute(STORAGE_ATTRIBUTE + '.' + storageName);
             if (object == null || !(object instanceof ClientStorageServiceStore)) {
                 log.error("{} No storage object found in session", getLogPrefix());
-                return null;
+                return Collections.emptyList();
             }
 
             try {
                 return ((ClientStorageServiceStore) object).save();
             } catch (final IOException e) {
                 log.error("{} Error while serializing storage data", getLogPrefix(), e);
-                return null;
+                return Collections.emptyList();
             }
         } finally {
             lock.unlock();
         }
     }
+    
+    /**
+     * Get the storage key for a chunk.
+     * 
+     * @param chunk the chunk index
+     * 
+     * @return the storage key
+     */
+    @Nonnull @NotEmpty String getChunkKey(@NonNegative final int chunk) {
+        return storageName + CHUNK_SEPARATOR + chunk;
+    }
+    
+    /**
+     * Get the chunk index denoted by a storage key.
+     * 
+     * @param key the storage key
+     * 
+     * @return the chunk index, or -1 if the key does not denote a chunk of this service's data
+     */
+    int getChunkIndex(@Nonnull final String key) {
+        final String prefix = storageName + CHUNK_SEPARATOR;
+        if (!key.startsWith(prefix) || key.length() == prefix.length()
+                || key.length() - prefix.length() > 4) {
+            return -1;
+        }
+        int chunk = 0;
+        for (int i = prefix.length(); i < key.length(); i++) {
+            final char c = key.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            chunk = chunk * 10 + (c - '0');
+        }
+        return chunk;
+    }
+    
+    /**
+     * Get the chunk holding a context.
+     * 
+     * <p>This relies on {@link String#hashCode()}, which is specified by the language, so the
+     * assignment is stable across restarts and between nodes.</p>
+     * 
+     * @param context the context name
+     * 
+     * @return the chunk index
+     */
+    private int getChunk(@Nonnull final String context) {
+        return (context.hashCode() & Integer.MAX_VALUE) % chunkCount;
+    }
 
     /**
      * Get a prefix for log messages.
@@ -474,15 +671,36 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
     
     /**
      * Implements a session-bound backing store and locking mechanism for the {@link ClientStorageService}.
+     * 
+     * <p>When chunked, the map of contexts is a view over the decrypted data that decrypts each chunk on
+     * first access to a context within it.</p>
      */
     public class ClientStorageServiceStore {
         
         /** The underlying map of data records. */
         @Nonnull @NonnullElements private final Map<String, Map<String, MutableStorageRecord>> contextMap;
         
+        /** The map of data records to expose, a lazily-loading view of the underlying map if chunked. */
+        @Nonnull @NonnullElements private final Map<String, Map<String, MutableStorageRecord>> contextView;
+        
+        /** Encoded form of each context as of the last save. */
+        @Nonnull @NonnullElements private final Map<String, EncodedContext> encodedContexts;
+        
+        /** Contexts modified since the last save. */
+        @Nonnull @NonnullElements private final Set<String> dirtyContexts;
+        
         /** Data source. */
         @Nonnull private final ClientStorageSource source; 
         
+        /** Sealed chunks not yet loaded, indexed by chunk, or null if the data is not chunked. */
+        @Nullable private final String[] pendingChunks;
+        
+        /** Chunks modified since the last save, or null if the data is not chunked. */
+        @Nullable private final boolean[] dirtyChunks;
+        
+        /** Storage keys holding data that is obsolete and should be cleared. */
+        @Nonnull @NonnullElements private final Set<String> obsoleteKeys;
+        
         /** Dirty bit. */
         private boolean dirty;
         
@@ -497,52 +715,58 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
          */
         ClientStorageServiceStore(@Nullable @NotEmpty final String raw, @Nonnull final ClientStorageSource src) {
             contextMap = new HashMap<>();
+            contextView = contextMap;
+            encodedContexts = new HashMap<>();
+            dirtyContexts = new HashSet<>();
+            obsoleteKeys = Collections.emptySet();
             source = Constraint.isNotNull(src, "Data source cannot be null");
+            pendingChunks = null;
+            dirtyChunks = null;
             
             if (raw == null) {
                 return;
             }
             
             try {
-                final JsonReader reader = Json.createReader(new StringReader(raw));
-                final JsonStructure st = reader.read();
-                if (!(st instanceof JsonObject)) {
-                    throw new JsonException("Found invalid data structure while parsing context map");
-                }
-                final JsonObject obj = (JsonObject) st;
-                
-                for (final Map.Entry<String,JsonValue> context : obj.entrySet()) {
-                    if (context.getValue().getValueType() != JsonValue.ValueType.OBJECT) {
-                        throw new JsonException("Found invalid data structure while parsing context map");
-                    }
-                    
-                    // Create new context if necessary.
-                    Map<String,MutableStorageRecord> dataMap = contextMap.get(context);
-                    if (dataMap == null) {
-                        dataMap = new HashMap<>();
-                        contextMap.put(context.getKey(), dataMap);
-                    }
-                    
-                    final JsonObject contextRecords = (JsonObject) context.getValue();
-                    for (Map.Entry<String,JsonValue> record : contextRecords.entrySet()) {
-                    
-                        final JsonObject fields = (JsonObject) record.getValue();
-                        Long exp = null;
-                        if (fields.containsKey("x")) {
-                            exp = fields.getJsonNumber("x").longValueExact();
-                        }
-                        
-                        dataMap.put(record.getKey(), new MutableStorageRecord(fields.getString("v"), exp));
-                    }
-                }
+                codec.decode(raw, contextMap);
                 setDirty(false);
-            } catch (final NullPointerException | ClassCastException | ArithmeticException | JsonException e) {
+            } catch (final IOException e) {
                 contextMap.clear();
                 // Setting this should force corrupt data in the client to be overwritten.
                 setDirty(true);
                 log.error("{} Found invalid data structure while parsing context map", getLogPrefix(), e);
             }
         }
+        
+        /**
+         * Prepare chunked stored data for loading on demand.
+         * 
+         * @param src data source
+         * @param chunks sealed chunks, keyed by storage key
+         */
+        ClientStorageServiceStore(@Nonnull final ClientStorageSource src,
+                @Nonnull @NonnullElements final Map<String,String> chunks) {
+            contextMap = new HashMap<>();
+            contextView = new ChunkedContextMap();
+            encodedContexts = new HashMap<>();
+            dirtyContexts = new HashSet<>();
+            obsoleteKeys = new HashSet<>();
+            source = Constraint.isNotNull(src, "Data source cannot be null");
+            pendingChunks = new String[chunkCount];
+            dirtyChunks = new boolean[chunkCount];
+            
+            for (final Map.Entry<String,String> entry : chunks.entrySet()) {
+                final int chunk = getChunkIndex(entry.getKey());
+                if (chunk >= 0 && chunk < chunkCount) {
+                    pendingChunks[chunk] = entry.getValue();
+                } else {
+                    log.debug("{} Redistributing data stored under obsolete key {}", getLogPrefix(), entry.getKey());
+                    obsoleteKeys.add(entry.getKey());
+                    dirty = true;
+                    unsealInto(entry.getValue(), -1);
+                }
+            }
+        }
 
         /**
          * Get the map of contexts to manipulate during operations.
@@ -550,7 +774,7 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
          * @return map of contexts to manipulate
          */
         @Nonnull @NonnullElements @Live Map<String, Map<String, MutableStorageRecord>> getContextMap() {
-            return contextMap;
+            return contextView;
         }
         
         /**
@@ -574,84 +798,318 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
         /**
          * Set the dirty bit for the current data.
          * 
+         * <p>If chunked, setting the bit marks every chunk as modified.</p>
+         * 
          * @param flag  dirty bit to set
          */
         void setDirty(final boolean flag) {
             dirty = flag;
+            if (flag && dirtyChunks != null) {
+                loadAllChunks();
+                Arrays.fill(dirtyChunks, true);
+            }
+        }
+        
+        /**
+         * Set the dirty bit and record that a particular context has been modified.
+         * 
+         * @param context the modified context
+         */
+        void setDirty(@Nonnull @NotEmpty final String context) {
+            dirty = true;
+            dirtyContexts.add(context);
+            if (dirtyChunks != null) {
+                dirtyChunks[getChunk(context)] = true;
+            }
+        }
+        
+        /**
+         * Set the dirty bit and discard the encoded form of every context, for use when the
+         * modified context is not known.
+         */
+        void invalidate() {
+            setDirty(true);
+            encodedContexts.clear();
         }
 
-// Checkstyle: CyclomaticComplexity OFF        
         /**
-         * Serialize current state of stored data into a storage operation.
+         * Serialize current state of stored data into storage operations.
          * 
-         * @return the operation, or a null if the data has not been modified since loading or saving
+         * <p>Only contexts that have been modified, or that contain a record which has expired, since
+         * the last save are re-encoded, and if chunked, only modified chunks are saved.</p>
+         * 
+         * @return the operations, empty if the data has not been modified since loading or saving
          * 
          * @throws IOException if an error occurs
          */
-        @Nullable ClientStorageServiceOperation save() throws IOException {
+        @Nonnull @NonnullElements List<ClientStorageServiceOperation> save() throws IOException {
             
             if (!isDirty()) {
                 log.trace("{} Storage state has not been modified, save operation skipped", getLogPrefix());
-                return null;
+                return Collections.emptyList();
             }
             
-            if (contextMap.isEmpty()) {
-                log.trace("{} Data is empty", getLogPrefix());
-                return new ClientStorageServiceOperation(getId(), getStorageName(), null, source);
-            }
-
-            long exp = 0L;
             final long now = System.currentTimeMillis();
-            boolean empty = true;
-
-            try {
-                final StringWriter sink = new StringWriter(128);
-                final JsonGenerator gen = Json.createGenerator(sink);
+            encodedContexts.keySet().retainAll(contextMap.keySet());
+            
+            final List<ClientStorageServiceOperation> operations;
+            if (dirtyChunks == null) {
+                operations = Collections.singletonList(
+                        new ClientStorageServiceOperation(getId(), getStorageName(), seal(contextMap.keySet(), now),
+                                source));
+            } else {
+                operations = new ArrayList<>();
+                for (final String key : obsoleteKeys) {
+                    operations.add(new ClientStorageServiceOperation(getId(), key, null, source));
+                }
                 
-                gen.writeStartObject();
-                for (final Map.Entry<String,Map<String, MutableStorageRecord>> context : contextMap.entrySet()) {
-                    gen.writeStartObject(context.getKey());
-                    for (Map.Entry<String,MutableStorageRecord> entry : context.getValue().entrySet()) {
-                        final MutableStorageRecord record = entry.getValue();
-                        final Long recexp = record.getExpiration();
-                        if (recexp == null || recexp > now) {
-                            empty = false;
-                            gen.writeStartObject(entry.getKey())
-                                .write("v", record.getValue());
-                            if (recexp != null) {
-                                gen.write("x", record.getExpiration());
-                                exp = Math.max(exp, recexp);
+                for (int chunk = 0; chunk < dirtyChunks.length; chunk++) {
+                    if (dirtyChunks[chunk]) {
+                        // A chunk may be dirty only because contexts moved into it, so it may not be loaded.
+                        loadChunk(chunk);
+                        final Set<String> contexts = new HashSet<>();
+                        for (final String context : contextMap.keySet()) {
+                            if (getChunk(context) == chunk) {
+                                contexts.add(context);
                             }
-                            gen.writeEnd();
                         }
+                        log.trace("{} Saving modified chunk {}", getLogPrefix(), chunk);
+                        operations.add(new ClientStorageServiceOperation(getId(), getChunkKey(chunk),
+                                seal(contexts, now), source));
+                    }
+                }
+            }
+            
+            setDirty(false);
+            dirtyContexts.clear();
+            obsoleteKeys.clear();
+            if (dirtyChunks != null) {
+                Arrays.fill(dirtyChunks, false);
+            }
+            return operations;
+        }
+        
+        /**
+         * Encode and seal a set of contexts.
+         * 
+         * @param contexts the contexts to include
+         * @param now the current time
+         * 
+         * @return the sealed data, or null if there are no unexpired records to save
+         * @throws IOException if an error occurs
+         */
+        @Nullable private String seal(@Nonnull @NonnullElements final Set<String> contexts, final long now)
+                throws IOException {
+            long exp = 0L;
+            final List<byte[]> segments = new ArrayList<>(contexts.size());
+            
+            for (final String context : contexts) {
+                EncodedContext encoded = encodedContexts.get(context);
+                if (encoded == null || encoded.refresh <= now || dirtyContexts.contains(context)) {
+                    encoded = encode(context, contextMap.get(context), now);
+                    if (encoded == null) {
+                        encodedContexts.remove(context);
+                        continue;
                     }
-                    gen.writeEnd();
+                    encodedContexts.put(context, encoded);
+                } else {
+                    log.trace("{} Reusing encoded form of unmodified context {}", getLogPrefix(), context);
                 }
-                gen.writeEnd().close();
+                segments.add(encoded.data);
+                exp = Math.max(exp, encoded.expiration);
+            }
 
-                if (empty) {
-                    log.trace("{} Data is empty", getLogPrefix());
-                    return new ClientStorageServiceOperation(getId(), getStorageName(), null, source);
+            if (segments.isEmpty()) {
+                log.trace("{} Data is empty", getLogPrefix());
+                return null;
+            }
+            
+            final String raw = codec.combine(segments);
+            
+            log.trace("{} Size of data before encryption is {}", getLogPrefix(), raw.length());
+            log.trace("{} Data before encryption is {}", getLogPrefix(), raw);
+            try {
+                final String wrapped = dataSealer.wrap(raw,
+                        exp > 0 ? exp : System.currentTimeMillis() + 24 * 60 * 60 * 1000);
+                log.trace("{} Size of data after encryption is {}", getLogPrefix(), wrapped.length());
+                return wrapped;
+            } catch (final DataSealerException e) {
+                throw new IOException(e);
+            }
+        }
+        
+        /**
+         * Encode a context.
+         * 
+         * @param context the context name
+         * @param records the records in the context
+         * @param now the current time
+         * 
+         * @return the encoded context, or null if it contains no unexpired records
+         * @throws IOException if an error occurs
+         */
+        @Nullable private EncodedContext encode(@Nonnull @NotEmpty final String context,
+                @Nonnull @NonnullElements final Map<String, MutableStorageRecord> records, final long now)
+                        throws IOException {
+            boolean empty = true;
+            long expiration = 0L;
+            long refresh = Long.MAX_VALUE;
+            for (final MutableStorageRecord record : records.values()) {
+                final Long recexp = record.getExpiration();
+                if (recexp == null || recexp > now) {
+                    empty = false;
+                    if (recexp != null) {
+                        expiration = Math.max(expiration, recexp);
+                        refresh = Math.min(refresh, recexp);
+                    }
                 }
-                
-                final String raw = sink.toString();
-                
-                log.trace("{} Size of data before encryption is {}", getLogPrefix(), raw.length());
-                log.trace("{} Data before encryption is {}", getLogPrefix(), raw);
+            }
+            
+            if (empty) {
+                return null;
+            }
+            
+            return new EncodedContext(codec.encodeContext(context, records, now), expiration, refresh);
+        }
+        
+        /**
+         * Load a chunk, if it has not yet been loaded.
+         * 
+         * @param chunk the chunk to load
+         */
+        private synchronized void loadChunk(final int chunk) {
+            final String raw = pendingChunks[chunk];
+            if (raw != null) {
+                pendingChunks[chunk] = null;
+                log.trace("{} Loading chunk {} on first access", getLogPrefix(), chunk);
+                unsealInto(raw, chunk);
+            }
+        }
+        
+        /** Load every chunk not yet loaded. */
+        private synchronized void loadAllChunks() {
+            for (int chunk = 0; chunk < pendingChunks.length; chunk++) {
+                loadChunk(chunk);
+            }
+        }
+        
+        /**
+         * Decrypt and decode sealed data into the underlying map.
+         * 
+         * <p>Any failure, or use of a stale key, marks the affected chunk as modified so that it's
+         * overwritten. Contexts that don't belong in the expected chunk are marked as modified
+         * so that they're moved.</p>
+         * 
+         * @param raw the sealed data
+         * @param chunk the chunk the data was stored in, or -1 if not a current chunk
+         */
+        private void unsealInto(@Nonnull @NotEmpty final String raw, final int chunk) {
+            final Pair<String,Boolean> unsealed = unseal(raw);
+            if (unsealed != null) {
+                final Map<String, Map<String, MutableStorageRecord>> decoded = new HashMap<>();
                 try {
-                    final String wrapped = dataSealer.wrap(raw,
-                            exp > 0 ? exp : System.currentTimeMillis() + 24 * 60 * 60 * 1000);
-                    log.trace("{} Size of data after encryption is {}", getLogPrefix(), wrapped.length());
-                    setDirty(false);
-                    return new ClientStorageServiceOperation(getId(), getStorageName(), wrapped, source);
-                } catch (final DataSealerException e) {
-                    throw new IOException(e);
+                    codec.decode(unsealed.getFirst(), decoded);
+                    for (final Map.Entry<String, Map<String, MutableStorageRecord>> entry : decoded.entrySet()) {
+                        contextMap.put(entry.getKey(), entry.getValue());
+                        if (getChunk(entry.getKey()) != chunk) {
+                            setDirty(entry.getKey());
+                        }
+                    }
+                    if (!unsealed.getSecond()) {
+                        return;
+                    }
+                } catch (final IOException e) {
+                    log.error("{} Found invalid data structure while parsing context map", getLogPrefix(), e);
+                }
+            }
+            
+            if (chunk >= 0) {
+                dirty = true;
+                dirtyChunks[chunk] = true;
+            }
+        }
+        
+        /**
+         * View of the underlying context map that loads chunks as contexts are accessed.
+         * 
+         * <p>Callers holding only the read lock may load chunks concurrently, so single-context operations load
+         * and access the underlying map under the same monitor as {@link #loadChunk(int)}. Bulk operations load every
+         * chunk first, after which the underlying map is no longer modified by loading.</p>
+         */
+        private class ChunkedContextMap extends ForwardingMap<String, Map<String, MutableStorageRecord>> {
+            
+            /** {@inheritDoc} */
+            @Override
+            protected Map<String, Map<String, MutableStorageRecord>> delegate() {
+                loadAllChunks();
+                return contextMap;
+            }
+            
+            /** {@inheritDoc} */
+            @Override
+            public Map<String, MutableStorageRecord> get(final Object key) {
+                if (!(key instanceof String)) {
+                    return null;
+                }
+                synchronized (ClientStorageServiceStore.this) {
+                    loadChunk(getChunk((String) key));
+                    return contextMap.get(key);
+                }
+            }
+            
+            /** {@inheritDoc} */
+            @Override
+            public boolean containsKey(final Object key) {
+                return get(key) != null;
+            }
+            
+            /** {@inheritDoc} */
+            @Override
+            public Map<String, MutableStorageRecord> put(final String key,
+                    final Map<String, MutableStorageRecord> value) {
+                synchronized (ClientStorageServiceStore.this) {
+                    loadChunk(getChunk(key));
+                    return contextMap.put(key, value);
+                }
+            }
+            
+            /** {@inheritDoc} */
+            @Override
+            public Map<String, MutableStorageRecord> remove(final Object key) {
+                if (!(key instanceof String)) {
+                    return null;
+                }
+                synchronized (ClientStorageServiceStore.this) {
+                    loadChunk(getChunk((String) key));
+                    return contextMap.remove(key);
                 }
-            } catch (final JsonException e) {
-                throw new IOException(e);
             }
         }
     }
-// Checkstyle: CyclomaticComplexity ON
     
-}
\ No newline at end of file
+    /** Encoded form of a context, along with the information needed to decide when it must be re-encoded. */
+    private static final class EncodedContext {
+        
+        /** Encoded data. */
+        @Nonnull private final byte[] data;
+        
+        /** Latest expiration of the records encoded, or 0 if none expire. */
+        private final long expiration;
+        
+        /** Earliest expiration of the records encoded, after which the encoding is out of date. */
+        private final long refresh;
+        
+        /**
+         * Constructor.
+         *
+         * @param encoded encoded data
+         * @param exp latest record expiration
+         * @param ref earliest record expiration
+         */
+        private EncodedContext(@Nonnull final byte[] encoded, final long exp, final long ref) {
+            data = encoded;
+            expiration = exp;
+            refresh = ref;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl.client;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonStructure;
+import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.Live;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+
+import org.opensaml.storage.MutableStorageRecord;
+
+/**
+ * {@link ClientStorageCodec} that uses a JSON object keyed by context name, containing objects keyed by record key
+ * with the value in a "v" field and the expiration, if any, in an "x" field.
+ * 
+ * <p>This is the original format used by {@link ClientStorageService}.</p>
+ */
+public class JSONClientStorageCodec implements ClientStorageCodec {
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public byte[] encodeContext(@Nonnull @NotEmpty final String context,
+            @Nonnull @NonnullElements final Map<String, MutableStorageRecord> records, final long now)
+                    throws IOException {
+        try {
+            final StringWriter sink = new StringWriter(128);
+            final JsonGenerator gen = Json.createGenerator(sink);
+            
+            gen.writeStartObject();
+            gen.writeStartObject(context);
+            for (final Map.Entry<String,MutableStorageRecord> entry : records.entrySet()) {
+                final MutableStorageRecord record = entry.getValue();
+                final Long recexp = record.getExpiration();
+                if (recexp == null || recexp > now) {
+                    gen.writeStartObject(entry.getKey())
+                        .write("v", record.getValue());
+                    if (recexp != null) {
+                        gen.write("x", recexp);
+                    }
+                    gen.writeEnd();
+                }
+            }
+            gen.writeEnd();
+            gen.writeEnd().close();
+            
+            // Strip the enclosing object to leave just the context member.
+            final StringBuffer buffer = sink.getBuffer();
+            return buffer.substring(1, buffer.length() - 1).getBytes(StandardCharsets.UTF_8);
+        } catch (final JsonException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull @NotEmpty public String combine(@Nonnull @NonnullElements final List<byte[]> contexts)
+            throws IOException {
+        final StringBuilder builder = new StringBuilder(128);
+        builder.append('{');
+        for (final byte[] context : contexts) {
+            if (builder.length() > 1) {
+                builder.append(',');
+            }
+            builder.append(new String(context, StandardCharsets.UTF_8));
+        }
+        return builder.append('}').toString();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void decode(@Nonnull @NotEmpty final String data,
+            @Nonnull @NonnullElements @Live final Map<String, Map<String, MutableStorageRecord>> contextMap)
+                    throws IOException {
+        try {
+            final JsonReader reader = Json.createReader(new StringReader(data));
+            final JsonStructure st = reader.read();
+            if (!(st instanceof JsonObject)) {
+                throw new JsonException("Found invalid data structure while parsing context map");
+            }
+            final JsonObject obj = (JsonObject) st;
+            
+            for (final Map.Entry<String,JsonValue> context : obj.entrySet()) {
+                if (context.getValue().getValueType() != JsonValue.ValueType.OBJECT) {
+                    throw new JsonException("Found invalid data structure while parsing context map");
+                }
+                
+                // Create new context if necessary.
+                Map<String,MutableStorageRecord> dataMap = contextMap.get(context.getKey());
+                if (dataMap == null) {
+                    dataMap = new HashMap<>();
+                    contextMap.put(context.getKey(), dataMap);
+                }
+                
+                final JsonObject contextRecords = (JsonObject) context.getValue();
+                for (final Map.Entry<String,JsonValue> record : contextRecords.entrySet()) {
+                
+                    final JsonObject fields = (JsonObject) record.getValue();
+                    Long exp = null;
+                    if (fields.containsKey("x")) {
+                        exp = fields.getJsonNumber("x").longValueExact();
+                    }
+                    
+                    dataMap.put(record.getKey(), new MutableStorageRecord(fields.getString("v"), exp));
+                }
+            }
+        } catch (final NullPointerException | ClassCastException | ArithmeticException | JsonException e) {
+            throw new IOException(e);
+        }
+    }
+
+}
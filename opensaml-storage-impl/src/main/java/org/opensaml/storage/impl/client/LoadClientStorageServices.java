@@ -187,10 +187,16 @@ public class LoadClientStorageServices<InboundMessageType, OutboundMessageType>
     private void loadFromCookie(@Nonnull final ClientStorageService storageService,
             @Nonnull final ClientStorageSource source) {
         
+        final Cookie[] cookies = getHttpServletRequest().getCookies();
+        
+        if (source == ClientStorageSource.COOKIE && storageService.isChunked()) {
+            loadChunksFromCookies(storageService, cookies);
+            return;
+        }
+        
         Optional<Cookie> cookie = Optional.absent();
         
         // Search for our cookie.
-        final Cookie[] cookies = getHttpServletRequest().getCookies();
         if (cookies != null) {
             cookie = Iterables.tryFind(Arrays.asList(cookies), new Predicate<Cookie>() {
                 public boolean apply(@Nullable final Cookie c) {
@@ -209,6 +215,34 @@ public class LoadClientStorageServices<InboundMessageType, OutboundMessageType>
         }
     }
  
+    /**
+     * Load the specified storage service from chunks stored in separate cookies.
+     * 
+     * <p>The chunks are only decrypted as the data within them is accessed. A cookie holding unchunked data
+     * is included so that it's migrated into chunks.</p>
+     * 
+     * @param storageService service to load
+     * @param cookies cookies in the request
+     */
+    private void loadChunksFromCookies(@Nonnull final ClientStorageService storageService,
+            @Nullable final Cookie[] cookies) {
+        
+        final Map<String,String> chunks = new HashMap<>();
+        if (cookies != null) {
+            for (final Cookie c : cookies) {
+                if (c != null && c.getValue() != null && !c.getValue().isEmpty()
+                        && (c.getName().equals(storageService.getStorageName())
+                                || storageService.getChunkIndex(c.getName()) >= 0)) {
+                    chunks.put(c.getName(), URISupport.doURLDecode(c.getValue()));
+                }
+            }
+        }
+        
+        log.debug("{} Initializing StorageService '{}' from {} cookie chunk(s)", getLogPrefix(),
+                storageService.getId(), chunks.size());
+        storageService.loadChunks(chunks, ClientStorageSource.COOKIE);
+    }
+ 
     /**
      * Load the specified storage service from local storage data supplied in the POST.
      * 
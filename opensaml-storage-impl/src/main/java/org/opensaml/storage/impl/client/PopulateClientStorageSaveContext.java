@@ -105,10 +105,7 @@ public class PopulateClientStorageSaveContext<InboundMessageType, OutboundMessag
         final ClientStorageSaveContext saveCtx = new ClientStorageSaveContext();
         
         for (final ClientStorageService service : storageServices) {
-            final ClientStorageServiceOperation operation = service.save();
-            if (operation != null) {
-                saveCtx.getStorageOperations().add(operation);
-            }
+            saveCtx.getStorageOperations().addAll(service.saveOperations());
         }
         
         if (saveCtx.getStorageOperations().isEmpty()) {
@@ -45,6 +45,9 @@ import net.shibboleth.utilities.java.support.net.URISupport;
  * An action that performs any number of {@link ClientStorageOperation} instances sourced from
  * cookies by issuing the necessary Set-Cookie headers.
  * 
+ * <p>A service whose data is divided into chunks supplies an operation only for each chunk that was modified,
+ * so only those cookies are re-issued.</p>
+ * 
  * <p>The {@link ClientStorageSaveContext} is also removed.</p>
  * 
  * @event {@link EventIds#PROCEED_EVENT_ID}
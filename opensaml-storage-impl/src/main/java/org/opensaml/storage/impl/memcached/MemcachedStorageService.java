@@ -4,6 +4,7 @@
 
 package org.opensaml.storage.impl.memcached;
 
+import net.shibboleth.utilities.java.support.annotation.constraint.NonNegative;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
 import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
 import net.shibboleth.utilities.java.support.collection.Pair;
@@ -13,6 +14,7 @@ import net.shibboleth.utilities.java.support.primitive.StringSupport;
 import net.spy.memcached.CASResponse;
 import net.spy.memcached.CASValue;
 import net.spy.memcached.MemcachedClient;
+import net.spy.memcached.internal.OperationCompletionListener;
 import net.spy.memcached.internal.OperationFuture;
 import net.spy.memcached.transcoders.Transcoder;
 import org.cryptacular.util.ByteUtil;
@@ -23,11 +25,17 @@ import org.opensaml.storage.annotation.AnnotationSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -49,11 +57,13 @@ import java.util.concurrent.TimeoutException;
  * An optional context key-tracking feature is available to support {@link #updateContextExpiration(String, Long)}.
  * Key tracking is disabled by default, but can be enabled by setting the <code>enableContextKeyTracking</code>
  * parameter in the {@link #MemcachedStorageService(net.spy.memcached.MemcachedClient, int, boolean)} constructor.
- * While there is modest performance impact for create and delete operations, the feature limits the number of keys
- * per context. With the default 1M memcached slab size, in the worst case 4180 keys are permitted per context.
- * In many if not most situations the value is easily double that. The limitation can be overcome by increasing the
- * slab size, which decreases overall cache memory consumption efficiency. When key tracking is disabled, there is no
- * limit on the number of keys per context other than overall cache capacity.
+ * Tracking adds no round trips to creates, since the append to the key list is pipelined with the add, nor to
+ * deletes, which do not wait for the key to be blacklisted. Context-wide operations fetch the key lists and then
+ * issue an operation per key without waiting between them, so take a fixed number of round trips. However, the
+ * feature limits the number of keys per context. With the default 1M memcached slab size, in the worst case 4180
+ * keys are permitted per context. In many if not most situations the value is easily double that. The limitation
+ * can be overcome by increasing the slab size, which decreases overall cache memory consumption efficiency. When key
+ * tracking is disabled, there is no limit on the number of keys per context other than overall cache capacity.
  * <p>
  * <strong>Limitations and requirements</strong>
  * <ol>
@@ -64,10 +74,27 @@ import java.util.concurrent.TimeoutException;
  *     expiration values. See the <a href="https://code.google.com/p/memcached/wiki/ReleaseNotes1414">
  *     1.4.14 release notes</a> for details.</li>
  * </ol>
+ * <p>
+ * The {@link AsyncStorageService} operations are implemented natively on top of the spymemcached
+ * {@link OperationFuture} completion callbacks, so no thread blocks while an operation is outstanding. Note that
+ * the asynchronous operations are bounded by the operation timeout of the memcached client rather than by the
+ * <code>timeout</code> supplied to this class. Creating the namespace for a previously unseen context is still
+ * performed synchronously since it happens at most once per context.
+ * <p>
+ * Every operation must first resolve the namespace of its context, which costs an additional round trip. A local
+ * cache of context namespaces may be enabled with {@link #setNamespaceCacheTTL(long)} so that steady-state
+ * operations take a single round trip. Since deleting a context always allocates a new namespace when the context
+ * is next used, a cached namespace is never wrong for long: it is either current or refers to a deleted context.
+ * The cache trades strict consistency for bounded staleness: a context deleted by another node may remain visible
+ * to this node for up to the cache lifetime. Operations that miss under a cached namespace re-read the namespace and,
+ * if it has changed, are retried against the current namespace; asynchronous operations instead evict the cached
+ * namespace so the next operation re-reads it. {@link #deleteContext(String)} and
+ * {@link #updateContextExpiration(String, Long)} always bypass the cache.
  *
  * @author Marvin S. Addison
  */
-public class MemcachedStorageService extends AbstractIdentifiableInitializableComponent implements StorageService {
+public class MemcachedStorageService extends AbstractIdentifiableInitializableComponent
+        implements StorageService, AsyncStorageService {
 
     /** Key suffix for entry that contains a list of context keys. */
     protected static final String CTX_KEY_LIST_SUFFIX = ":contextKeyList";
@@ -81,6 +108,14 @@ public class MemcachedStorageService extends AbstractIdentifiableInitializableCo
     /** Maximum length in bytes of memcached keys. */
     private static final int MAX_KEY_LENGTH = 250;
 
+    /** Runs continuations of asynchronous operations on the thread that completed the preceding step. */
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(final Runnable command) {
+            command.run();
+        }
+    };
+
     /** Logger instance. */
     private final Logger logger = LoggerFactory.getLogger(MemcachedStorageService.class);
 
@@ -105,6 +140,18 @@ public class MemcachedStorageService extends AbstractIdentifiableInitializableCo
     /** Flag that controls context key tracking. */
     private boolean trackContextKeys;
 
+    /** Lifetime in milliseconds of cached context namespaces, or 0 to disable caching. */
+    @NonNegative
+    private long namespaceCacheTTL;
+
+    /** Maximum number of cached context namespaces. */
+    @Positive
+    private int namespaceCacheSize = 1000;
+
+    /** Locally cached context namespaces. */
+    @Nonnull
+    private final ConcurrentMap<String, CachedNamespace> namespaceCache = new ConcurrentHashMap<>();
+
     /**
      * Creates a new instance.
      *
@@ -162,6 +209,25 @@ public class MemcachedStorageService extends AbstractIdentifiableInitializableCo
         this.capabilities = capabilities;
     }
 
+    /**
+     * Sets the lifetime of locally cached context namespaces. Caching is disabled by default.
+     *
+     * @param ttl Lifetime in milliseconds, or 0 to disable caching.
+     */
+    public void setNamespaceCacheTTL(@NonNegative final long ttl) {
+        namespaceCacheTTL = Constraint.isGreaterThanOrEqual(0, ttl, "Namespace cache TTL must be non-negative");
+        namespaceCache.clear();
+    }
+
+    /**
+     * Sets the maximum number of locally cached context namespaces. Defaults to 1000.
+     *
+     * @param size Maximum number of cached namespaces.
+     */
+    public void setNamespaceCacheSize(@Positive final int size) {
+        namespaceCacheSize = (int) Constraint.isGreaterThan(0, size, "Namespace cache size must be positive");
+    }
+
     @Override
     public boolean create(@Nonnull @NotEmpty final String context,
                           @Nonnull @NotEmpty final String key,
@@ -177,12 +243,28 @@ public class MemcachedStorageService extends AbstractIdentifiableInitializableCo
         if (namespace == null) {
             namespace = createNamespace(context);
         }
-        final String cacheKey = memcachedKey(namespace, key);
+        String cacheKey = memcachedKey(namespace, key);
         this.logger.debug("Creating new entry at {} for context={}, key={}, exp={}", cacheKey, context, key, expiry);
-        final boolean success = handleAsyncResult(this.client.add(cacheKey, expiry, record, storageRecordTranscoder));
+        OperationFuture<Boolean> addResult = this.client.add(cacheKey, expiry, record, storageRecordTranscoder);
+        // Pipeline the key list append with the add; an entry appended for a key that turns out to exist already
+        // is redundant but harmless
+        OperationFuture<Boolean> appendResult = trackContextKeys ? appendContextKey(namespace, cacheKey) : null;
+        boolean success = handleAsyncResult(addResult);
+        if (!success && isNamespaceCacheEnabled()) {
+            // The duplicate may belong to a deleted context if the cached namespace is stale
+            final String current = currentNamespace(context);
+            if (!namespace.equals(current)) {
+                namespace = current != null ? current : createNamespace(context);
+                cacheKey = memcachedKey(namespace, key);
+                this.logger.debug("Retrying creation at {} for context={}, key={}", cacheKey, context, key);
+                addResult = this.client.add(cacheKey, expiry, record, storageRecordTranscoder);
+                appendResult = trackContextKeys ? appendContextKey(namespace, cacheKey) : null;
+                success = handleAsyncResult(addResult);
+            }
+        }
         if (success && trackContextKeys) {
             logger.debug("Tracking key {} for context {}", cacheKey, context);
-            final boolean result = updateContextKeyList(CTX_KEY_LIST_SUFFIX, namespace, cacheKey);
+            final boolean result = completeContextKeyListUpdate(appendResult, CTX_KEY_LIST_SUFFIX, namespace, cacheKey);
             if (!result) {
                 logger.debug("Failed appending {} to list of keys for context {}", cacheKey, context);
                 // Try to clean up record we just created
@@ -224,19 +306,14 @@ public class MemcachedStorageService extends AbstractIdentifiableInitializableCo
             this.logger.debug("Namespace for context {} does not exist", context);
             return null;
         }
-        final String cacheKey = memcachedKey(namespace, key);
-        this.logger.debug("Reading entry at {} for context={}, key={}", cacheKey, context, key);
-        final CASValue<MemcachedStorageRecord> record;
-        try {
-            record = handleAsyncResult(this.client.asyncGets(cacheKey, storageRecordTranscoder));
-        } catch (RuntimeException e) {
-            throw new IOException("Memcached operation failed", e);
-        }
+        StorageRecord record = readRecord(namespace, context, key);
         if (record == null) {
-            return null;
+            final String current = recoverNamespace(context, namespace);
+            if (current != null) {
+                record = readRecord(current, context, key);
+            }
         }
-        record.getValue().setVersion(record.getCas());
-        return record.getValue();
+        return record;
     }
 
     @Override
@@ -278,9 +355,18 @@ public class MemcachedStorageService extends AbstractIdentifiableInitializableCo
             this.logger.debug("Namespace for context {} does not exist", context);
             return false;
         }
-        final String cacheKey = memcachedKey(namespace, key);
+        String cacheKey = memcachedKey(namespace, key);
         this.logger.debug("Updating entry at {} for context={}, key={}, exp={}", cacheKey, context, key, expiry);
-        return handleAsyncResult(this.client.replace(cacheKey, expiry, record, storageRecordTranscoder));
+        boolean success = handleAsyncResult(this.client.replace(cacheKey, expiry, record, storageRecordTranscoder));
+        if (!success) {
+            final String current = recoverNamespace(context, namespace);
+            if (current != null) {
+                cacheKey = memcachedKey(current, key);
+                this.logger.debug("Retrying update at {} for context={}, key={}", cacheKey, context, key);
+                success = handleAsyncResult(this.client.replace(cacheKey, expiry, record, storageRecordTranscoder));
+            }
+        }
+        return success;
     }
 
     @Override
@@ -323,11 +409,21 @@ public class MemcachedStorageService extends AbstractIdentifiableInitializableCo
             this.logger.debug("Namespace for context {} does not exist", context);
             return null;
         }
-        final String cacheKey = memcachedKey(namespace, key);
+        String cacheKey = memcachedKey(namespace, key);
         this.logger.debug("Updating entry at {} for context={}, key={}, version={}, exp={}",
                 cacheKey, context, key, version, expiry);
-        final CASResponse response = handleAsyncResult(
+        CASResponse response = handleAsyncResult(
                 this.client.asyncCAS(cacheKey, version, expiry, record, storageRecordTranscoder));
+        if (CASResponse.NOT_FOUND == response) {
+            final String current = recoverNamespace(context, namespace);
+            if (current != null) {
+                cacheKey = memcachedKey(current, key);
+                this.logger.debug("Retrying update at {} for context={}, key={}, version={}",
+                        cacheKey, context, key, version);
+                response = handleAsyncResult(
+                        this.client.asyncCAS(cacheKey, version, expiry, record, storageRecordTranscoder));
+            }
+        }
         Long newVersion = null;
         if (CASResponse.OK == response) {
             final CASValue<MemcachedStorageRecord> newRecord = handleAsyncResult(
@@ -382,7 +478,11 @@ public class MemcachedStorageService extends AbstractIdentifiableInitializableCo
         }
         final String cacheKey = memcachedKey(namespace, key);
         this.logger.debug("Updating expiration for entry at {} for context={}, key={}", cacheKey, context, key);
-        return handleAsyncResult(this.client.touch(cacheKey, expiry));
+        if (!handleAsyncResult(this.client.touch(cacheKey, expiry))) {
+            final String current = recoverNamespace(context, namespace);
+            return current != null && handleAsyncResult(this.client.touch(memcachedKey(current, key), expiry));
+        }
+        return true;
     }
 
     @Override
@@ -400,20 +500,25 @@ public class MemcachedStorageService extends AbstractIdentifiableInitializableCo
 
         Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
         Constraint.isNotNull(StringSupport.trimOrNull(key), "Key cannot be null or empty");
-        final String namespace = lookupNamespace(context);
+        String namespace = lookupNamespace(context);
         if (namespace == null) {
             this.logger.debug("Namespace for context {} does not exist", context);
             return false;
         }
-        final String cacheKey = memcachedKey(namespace, key);
+        String cacheKey = memcachedKey(namespace, key);
         this.logger.debug("Deleting entry at {} for context={}, key={}", cacheKey, context, key);
-        final boolean success = handleAsyncResult(this.client.delete(cacheKey));
-        if (success && trackContextKeys) {
-            logger.debug("Blacklisting key {} for context {}", cacheKey, context);
-            if (!updateContextKeyList(CTX_KEY_BLACKLIST_SUFFIX, namespace, cacheKey)) {
-                logger.debug("Failed appending {} to list of blacklisted keys for context {}", cacheKey, context);
+        boolean success = handleAsyncResult(this.client.delete(cacheKey));
+        if (!success) {
+            final String current = recoverNamespace(context, namespace);
+            if (current != null) {
+                namespace = current;
+                cacheKey = memcachedKey(namespace, key);
+                success = handleAsyncResult(this.client.delete(cacheKey));
             }
         }
+        if (success && trackContextKeys) {
+            blacklistContextKey(context, namespace, cacheKey);
+        }
         return success;
     }
 
@@ -432,20 +537,25 @@ public class MemcachedStorageService extends AbstractIdentifiableInitializableCo
         Constraint.isGreaterThan(0, version, "Version must be positive");
         Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
         Constraint.isNotNull(StringSupport.trimOrNull(key), "Key cannot be null or empty");
-        final String namespace = lookupNamespace(context);
+        String namespace = lookupNamespace(context);
         if (namespace == null) {
             this.logger.debug("Namespace for context {} does not exist", context);
             return false;
         }
-        final String cacheKey = memcachedKey(namespace, key);
+        String cacheKey = memcachedKey(namespace, key);
         this.logger.debug("Deleting entry at {} for context={}, key={}, version={}", cacheKey, context, key, version);
-        final boolean success = handleAsyncResult(this.client.delete(cacheKey, version));
-        if (success && trackContextKeys) {
-            logger.debug("Blacklisting key {} for context {}", cacheKey, context);
-            if (!updateContextKeyList(CTX_KEY_BLACKLIST_SUFFIX, namespace, cacheKey)) {
-                logger.debug("Failed appending {} to list of blacklisted keys for context {}", cacheKey, context);
+        boolean success = handleAsyncResult(this.client.delete(cacheKey, version));
+        if (!success) {
+            final String current = recoverNamespace(context, namespace);
+            if (current != null) {
+                namespace = current;
+                cacheKey = memcachedKey(namespace, key);
+                success = handleAsyncResult(this.client.delete(cacheKey, version));
             }
         }
+        if (success && trackContextKeys) {
+            blacklistContextKey(context, namespace, cacheKey);
+        }
         return success;
     }
 
@@ -474,20 +584,23 @@ public class MemcachedStorageService extends AbstractIdentifiableInitializableCo
         }
         final int expiry = MemcachedStorageRecord.expiry(expiration);
         Constraint.isGreaterThan(-1, expiry, "Expiration must be null or positive");
-        final String namespace = lookupNamespace(context);
+        final String namespace = currentNamespace(context);
         if (namespace ==  null) {
             logger.debug("Cannot update context expiration since context namespace does not exist");
             return;
         }
-        final CASValue<String> keys = handleAsyncResult(
-                this.client.asyncGets(namespace + CTX_KEY_LIST_SUFFIX, stringTranscoder));
+        // Fetch both lists in a single round trip
+        final OperationFuture<CASValue<String>> keysResult =
+                this.client.asyncGets(namespace + CTX_KEY_LIST_SUFFIX, stringTranscoder);
+        final OperationFuture<CASValue<String>> blacklistResult =
+                this.client.asyncGets(namespace + CTX_KEY_BLACKLIST_SUFFIX, stringTranscoder);
+        final CASValue<String> keys = handleAsyncResult(keysResult);
+        final CASValue<String> blacklistKeys = handleAsyncResult(blacklistResult);
         if (keys == null) {
             logger.debug("No context keys found to update expiration");
             return;
         }
         final Set<String> keySet = new HashSet<>(Arrays.asList(keys.getValue().split(CTX_KEY_LIST_DELIMITER)));
-        final CASValue<String> blacklistKeys = handleAsyncResult(
-                this.client.asyncGets(namespace + CTX_KEY_BLACKLIST_SUFFIX, stringTranscoder));
         if (blacklistKeys != null) {
             keySet.removeAll(Arrays.asList(blacklistKeys.getValue().split(CTX_KEY_LIST_DELIMITER)));
         }
@@ -504,7 +617,7 @@ public class MemcachedStorageService extends AbstractIdentifiableInitializableCo
     @Override
     public void deleteContext(@Nonnull @NotEmpty final String context) throws IOException {
         Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
-        final String namespace = lookupNamespace(context);
+        final String namespace = currentNamespace(context);
         if (namespace == null) {
             this.logger.debug("Namespace for context {} does not exist. Context values effectively deleted.", context);
             return;
@@ -519,6 +632,250 @@ public class MemcachedStorageService extends AbstractIdentifiableInitializableCo
         }
         handleAsyncResult(ctxResult);
         handleAsyncResult(nsResult);
+        namespaceCache.remove(context);
+    }
+
+    @Override
+    @Nonnull
+    public ListenableFuture<Boolean> createAsync(@Nonnull @NotEmpty final String context,
+                                                 @Nonnull @NotEmpty final String key,
+                                                 @Nonnull @NotEmpty final String value,
+                                                 @Nullable @Positive final Long expiration) {
+        Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
+        Constraint.isNotNull(StringSupport.trimOrNull(key), "Key cannot be null or empty");
+        Constraint.isNotNull(StringSupport.trimOrNull(value), "Value cannot be null or empty");
+        final MemcachedStorageRecord record = new MemcachedStorageRecord(value, expiration);
+        final int expiry = record.getExpiry();
+        Constraint.isGreaterThan(-1, expiry, "Expiration must be null or positive");
+        final SettableFuture<Boolean> result = SettableFuture.create();
+        chain(lookupNamespaceAsync(context), result, new Continuation<String>() {
+            @Override
+            public void proceed(final String ns) throws IOException {
+                final String namespace = ns != null ? ns : createNamespace(context);
+                final String cacheKey = memcachedKey(namespace, key);
+                logger.debug("Creating new entry at {} for context={}, key={}, exp={}", cacheKey, context, key, expiry);
+                final ListenableFuture<Boolean> added =
+                        listenable(client.add(cacheKey, expiry, record, storageRecordTranscoder));
+                // Pipeline the key list append with the add, as in create()
+                final ListenableFuture<Boolean> tracked =
+                        trackContextKeys ? updateContextKeyListAsync(CTX_KEY_LIST_SUFFIX, namespace, cacheKey) : null;
+                chain(added, result, new Continuation<Boolean>() {
+                    @Override
+                    public void proceed(final Boolean success) {
+                        if (!success) {
+                            evictNamespace(context, namespace);
+                        }
+                        if (!success || tracked == null) {
+                            result.set(success);
+                            return;
+                        }
+                        logger.debug("Tracking key {} for context {}", cacheKey, context);
+                        chain(tracked, result,
+                                new Continuation<Boolean>() {
+                            @Override
+                            public void proceed(final Boolean tracked) {
+                                if (!tracked) {
+                                    logger.debug("Failed appending {} to list of keys for context {}",
+                                            cacheKey, context);
+                                    // Try to clean up record we just created
+                                    // Cache entry expiration will clean it up regardless
+                                    client.delete(cacheKey);
+                                }
+                                result.set(tracked);
+                            }
+                        });
+                    }
+                });
+            }
+        });
+        return result;
+    }
+
+    @Override
+    @Nonnull
+    public ListenableFuture<StorageRecord> readAsync(@Nonnull @NotEmpty final String context,
+                                                     @Nonnull @NotEmpty final String key) {
+        Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
+        Constraint.isNotNull(StringSupport.trimOrNull(key), "Key cannot be null or empty");
+        final SettableFuture<StorageRecord> result = SettableFuture.create();
+        chain(lookupNamespaceAsync(context), result, new Continuation<String>() {
+            @Override
+            public void proceed(final String namespace) {
+                if (namespace == null) {
+                    logger.debug("Namespace for context {} does not exist", context);
+                    result.set(null);
+                    return;
+                }
+                final String cacheKey = memcachedKey(namespace, key);
+                logger.debug("Reading entry at {} for context={}, key={}", cacheKey, context, key);
+                chain(listenable(client.asyncGets(cacheKey, storageRecordTranscoder)), result,
+                        new Continuation<CASValue<MemcachedStorageRecord>>() {
+                    @Override
+                    public void proceed(final CASValue<MemcachedStorageRecord> record) {
+                        if (record == null) {
+                            evictNamespace(context, namespace);
+                            result.set(null);
+                            return;
+                        }
+                        record.getValue().setVersion(record.getCas());
+                        result.set(record.getValue());
+                    }
+                });
+            }
+        });
+        return result;
+    }
+
+    @Override
+    @Nonnull
+    public ListenableFuture<Pair<Long, StorageRecord>> readAsync(@Nonnull @NotEmpty final String context,
+                                                                 @Nonnull @NotEmpty final String key,
+                                                                 @Positive final long version) {
+        Constraint.isGreaterThan(0, version, "Version must be positive");
+        final SettableFuture<Pair<Long, StorageRecord>> result = SettableFuture.create();
+        chain(readAsync(context, key), result, new Continuation<StorageRecord>() {
+            @Override
+            public void proceed(final StorageRecord record) {
+                if (record == null) {
+                    result.set(new Pair<Long, StorageRecord>());
+                    return;
+                }
+                final Pair<Long, StorageRecord> pair = new Pair<>(record.getVersion(), null);
+                if (version != record.getVersion()) {
+                    // Only set the record if it's not the same as the version requested
+                    pair.setSecond(record);
+                }
+                result.set(pair);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    @Nonnull
+    public ListenableFuture<Boolean> updateAsync(@Nonnull @NotEmpty final String context,
+                                                 @Nonnull @NotEmpty final String key,
+                                                 @Nonnull @NotEmpty final String value,
+                                                 @Nullable @Positive final Long expiration) {
+        Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
+        Constraint.isNotNull(StringSupport.trimOrNull(key), "Key cannot be null or empty");
+        Constraint.isNotNull(StringSupport.trimOrNull(value), "Value cannot be null or empty");
+        final MemcachedStorageRecord record = new MemcachedStorageRecord(value, expiration);
+        final int expiry = record.getExpiry();
+        Constraint.isGreaterThan(-1, expiry, "Expiration must be null or positive");
+        final SettableFuture<Boolean> result = SettableFuture.create();
+        chain(lookupNamespaceAsync(context), result, new Continuation<String>() {
+            @Override
+            public void proceed(final String namespace) {
+                if (namespace == null) {
+                    logger.debug("Namespace for context {} does not exist", context);
+                    result.set(false);
+                    return;
+                }
+                final String cacheKey = memcachedKey(namespace, key);
+                logger.debug("Updating entry at {} for context={}, key={}, exp={}", cacheKey, context, key, expiry);
+                forwardEvictingOnMiss(listenable(client.replace(cacheKey, expiry, record, storageRecordTranscoder)),
+                        result, context, namespace);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    @Nonnull
+    public ListenableFuture<Long> updateWithVersionAsync(@Positive final long version,
+                                                         @Nonnull @NotEmpty final String context,
+                                                         @Nonnull @NotEmpty final String key,
+                                                         @Nonnull @NotEmpty final String value,
+                                                         @Nullable @Positive final Long expiration) {
+        Constraint.isGreaterThan(0, version, "Version must be positive");
+        Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
+        Constraint.isNotNull(StringSupport.trimOrNull(key), "Key cannot be null or empty");
+        Constraint.isNotNull(StringSupport.trimOrNull(value), "Value cannot be null or empty");
+        final MemcachedStorageRecord record = new MemcachedStorageRecord(value, expiration);
+        final int expiry = record.getExpiry();
+        Constraint.isGreaterThan(-1, expiry, "Expiration must be null or positive");
+        final SettableFuture<Long> result = SettableFuture.create();
+        chain(lookupNamespaceAsync(context), result, new Continuation<String>() {
+            @Override
+            public void proceed(final String namespace) {
+                if (namespace == null) {
+                    logger.debug("Namespace for context {} does not exist", context);
+                    result.set(null);
+                    return;
+                }
+                final String cacheKey = memcachedKey(namespace, key);
+                logger.debug("Updating entry at {} for context={}, key={}, version={}, exp={}",
+                        cacheKey, context, key, version, expiry);
+                chain(listenable(client.asyncCAS(cacheKey, version, expiry, record, storageRecordTranscoder)),
+                        result, new Continuation<CASResponse>() {
+                    @Override
+                    public void proceed(final CASResponse response) {
+                        if (CASResponse.EXISTS == response) {
+                            result.setException(new VersionMismatchException());
+                        } else if (CASResponse.OK != response) {
+                            evictNamespace(context, namespace);
+                            result.set(null);
+                        } else {
+                            chain(listenable(client.asyncGets(cacheKey, storageRecordTranscoder)), result,
+                                    new Continuation<CASValue<MemcachedStorageRecord>>() {
+                                @Override
+                                public void proceed(final CASValue<MemcachedStorageRecord> newRecord) {
+                                    result.set(newRecord != null ? newRecord.getCas() : null);
+                                }
+                            });
+                        }
+                    }
+                });
+            }
+        });
+        return result;
+    }
+
+    @Override
+    @Nonnull
+    public ListenableFuture<Boolean> updateExpirationAsync(@Nonnull @NotEmpty final String context,
+                                                           @Nonnull @NotEmpty final String key,
+                                                           @Nullable @Positive final Long expiration) {
+        Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
+        Constraint.isNotNull(StringSupport.trimOrNull(key), "Key cannot be null or empty");
+        final int expiry = MemcachedStorageRecord.expiry(expiration);
+        Constraint.isGreaterThan(-1, expiry, "Expiration must be null or positive");
+        final SettableFuture<Boolean> result = SettableFuture.create();
+        chain(lookupNamespaceAsync(context), result, new Continuation<String>() {
+            @Override
+            public void proceed(final String namespace) {
+                if (namespace == null) {
+                    logger.debug("Namespace for context {} does not exist", context);
+                    result.set(false);
+                    return;
+                }
+                final String cacheKey = memcachedKey(namespace, key);
+                logger.debug("Updating expiration for entry at {} for context={}, key={}", cacheKey, context, key);
+                forwardEvictingOnMiss(listenable(client.touch(cacheKey, expiry)), result, context, namespace);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    @Nonnull
+    public ListenableFuture<Boolean> deleteAsync(@Nonnull @NotEmpty final String context,
+                                                 @Nonnull @NotEmpty final String key) {
+        Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
+        Constraint.isNotNull(StringSupport.trimOrNull(key), "Key cannot be null or empty");
+        return deleteAsyncImpl(null, context, key);
+    }
+
+    @Override
+    @Nonnull
+    public ListenableFuture<Boolean> deleteWithVersionAsync(@Positive final long version,
+                                                            @Nonnull @NotEmpty final String context,
+                                                            @Nonnull @NotEmpty final String key) {
+        Constraint.isGreaterThan(0, version, "Version must be positive");
+        Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
+        Constraint.isNotNull(StringSupport.trimOrNull(key), "Key cannot be null or empty");
+        return deleteAsyncImpl(version, context, key);
     }
 
     @Override
@@ -537,15 +894,90 @@ public class MemcachedStorageService extends AbstractIdentifiableInitializableCo
      * @throws java.io.IOException On memcached operation errors.
      */
     protected String lookupNamespace(final String context) throws IOException {
+        final String cached = cachedNamespace(context);
+        if (cached != null) {
+            return cached;
+        }
         try {
             final CASValue<String> result = handleAsyncResult(
                     this.client.asyncGets(memcachedKey(context), stringTranscoder));
-            return result == null ? null : result.getValue();
+            if (result == null) {
+                return null;
+            }
+            cacheNamespace(context, result.getValue());
+            return result.getValue();
         } catch (RuntimeException e) {
             throw new IOException("Memcached operation failed", e);
         }
     }
 
+    /**
+     * Asynchronously looks up the namespace for the given context name in the cache.
+     *
+     * @param context Context name.
+     *
+     * @return Future completing with the namespace for given context or null if no namespace exists for context.
+     */
+    protected ListenableFuture<String> lookupNamespaceAsync(final String context) {
+        final SettableFuture<String> result = SettableFuture.create();
+        final String cached = cachedNamespace(context);
+        if (cached != null) {
+            result.set(cached);
+            return result;
+        }
+        chain(listenable(this.client.asyncGets(memcachedKey(context), stringTranscoder)), result,
+                new Continuation<CASValue<String>>() {
+            @Override
+            public void proceed(final CASValue<String> value) {
+                if (value == null) {
+                    result.set(null);
+                    return;
+                }
+                cacheNamespace(context, value.getValue());
+                result.set(value.getValue());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Looks up the namespace for the given context name in the cache, bypassing and refreshing any locally
+     * cached namespace.
+     *
+     * @param context Context name.
+     *
+     * @return Corresponding namespace for given context or null if no namespace exists for context.
+     *
+     * @throws java.io.IOException On memcached operation errors.
+     */
+    protected String currentNamespace(final String context) throws IOException {
+        namespaceCache.remove(context);
+        return lookupNamespace(context);
+    }
+
+    /**
+     * Recovers from an operation that found no entry under a namespace which may have been stale.
+     *
+     * @param context Context name.
+     * @param namespace Namespace under which the operation found no entry.
+     *
+     * @return Current namespace for the context if it differs from the given one, otherwise null.
+     *
+     * @throws java.io.IOException On memcached operation errors.
+     */
+    @Nullable
+    protected String recoverNamespace(final String context, final String namespace) throws IOException {
+        if (!isNamespaceCacheEnabled()) {
+            return null;
+        }
+        final String current = currentNamespace(context);
+        if (current == null || current.equals(namespace)) {
+            return null;
+        }
+        logger.debug("Namespace for context {} changed from {} to {}", context, namespace, current);
+        return current;
+    }
+
     /**
      * Creates a cache-wide unique namespace for the given context name. The context-namespace mapping is stored
      * in the cache.
@@ -569,9 +1001,100 @@ public class MemcachedStorageService extends AbstractIdentifiableInitializableCo
         if (!handleAsyncResult(this.client.add(memcachedKey(context), 0, namespace, stringTranscoder))) {
             throw new IllegalStateException(context + " already exists");
         }
+        cacheNamespace(context, namespace);
         return namespace;
     }
 
+    /**
+     * Determines whether context namespaces are cached locally.
+     *
+     * @return True if namespace caching is enabled, false otherwise.
+     */
+    private boolean isNamespaceCacheEnabled() {
+        return namespaceCacheTTL > 0;
+    }
+
+    /**
+     * Gets the locally cached namespace for the given context name, if any.
+     *
+     * @param context Context name.
+     *
+     * @return Unexpired cached namespace or null.
+     */
+    @Nullable
+    private String cachedNamespace(final String context) {
+        if (!isNamespaceCacheEnabled()) {
+            return null;
+        }
+        final CachedNamespace entry = namespaceCache.get(context);
+        if (entry == null) {
+            return null;
+        } else if (entry.expiration <= System.currentTimeMillis()) {
+            namespaceCache.remove(context, entry);
+            return null;
+        }
+        return entry.namespace;
+    }
+
+    /**
+     * Caches the namespace for the given context name locally.
+     *
+     * @param context Context name.
+     * @param namespace Namespace.
+     */
+    private void cacheNamespace(final String context, final String namespace) {
+        if (!isNamespaceCacheEnabled()) {
+            return;
+        }
+        if (namespaceCache.size() >= namespaceCacheSize) {
+            // Crude but cheap bound; entries are repopulated by the next lookup of each context
+            namespaceCache.clear();
+        }
+        namespaceCache.put(context, new CachedNamespace(namespace, System.currentTimeMillis() + namespaceCacheTTL));
+    }
+
+    /**
+     * Evicts the locally cached namespace for the given context if it is the given namespace.
+     *
+     * @param context Context name.
+     * @param namespace Namespace that may be stale.
+     */
+    private void evictNamespace(final String context, final String namespace) {
+        final CachedNamespace entry = namespaceCache.get(context);
+        if (entry != null && entry.namespace.equals(namespace)) {
+            namespaceCache.remove(context, entry);
+        }
+    }
+
+    /**
+     * Reads an entry under the given namespace.
+     *
+     * @param namespace Context namespace.
+     * @param context Context name.
+     * @param key Key unique to context.
+     *
+     * @return Storage record or null if none exists.
+     *
+     * @throws java.io.IOException On memcached operation errors.
+     */
+    @Nullable
+    private StorageRecord readRecord(final String namespace, final String context, final String key)
+            throws IOException {
+        final String cacheKey = memcachedKey(namespace, key);
+        this.logger.debug("Reading entry at {} for context={}, key={}", cacheKey, context, key);
+        final CASValue<MemcachedStorageRecord> record;
+        try {
+            record = handleAsyncResult(this.client.asyncGets(cacheKey, storageRecordTranscoder));
+        } catch (RuntimeException e) {
+            throw new IOException("Memcached operation failed", e);
+        }
+        if (record == null) {
+            return null;
+        }
+        record.getValue().setVersion(record.getCas());
+        return record.getValue();
+    }
+
     /**
      * Creates a memcached key from one or more parts.
      *
@@ -612,15 +1135,264 @@ public class MemcachedStorageService extends AbstractIdentifiableInitializableCo
         }
     }
 
-    private boolean updateContextKeyList(final String suffix, final String namespace, final String key)
-            throws IOException {
+    /**
+     * Issues the append of a key to the list of keys of a context, without waiting for it to complete.
+     *
+     * @param namespace Context namespace.
+     * @param key Memcached key to append.
+     *
+     * @return Pending append operation, to complete with
+     *         {@link #completeContextKeyListUpdate(OperationFuture, String, String, String)}.
+     */
+    private OperationFuture<Boolean> appendContextKey(final String namespace, final String key) {
+        return this.client.append(namespace + CTX_KEY_LIST_SUFFIX, key + CTX_KEY_LIST_DELIMITER, stringTranscoder);
+    }
+
+    /**
+     * Waits for a pending append to a context key list, creating the list if the append failed because it
+     * does not exist.
+     *
+     * @param append Pending append operation.
+     * @param suffix Suffix of the list.
+     * @param namespace Context namespace.
+     * @param key Memcached key appended.
+     *
+     * @return True iff the key was added to the list.
+     *
+     * @throws IOException On memcached operation errors.
+     */
+    private boolean completeContextKeyListUpdate(final OperationFuture<Boolean> append, final String suffix,
+            final String namespace, final String key) throws IOException {
+        if (handleAsyncResult(append)) {
+            return true;
+        }
+        // Assume list does not exist and create it
+        return handleAsyncResult(
+                this.client.add(namespace + suffix, 0, key + CTX_KEY_LIST_DELIMITER, stringTranscoder));
+    }
+
+    /**
+     * Appends a deleted key to the blacklist of a context without waiting for the result. The blacklist only
+     * saves {@link #updateContextExpiration(String, Long)} from touching deleted keys, which would fail harmlessly,
+     * so deletions need not wait for it.
+     *
+     * @param context Context name.
+     * @param namespace Context namespace.
+     * @param key Memcached key deleted.
+     */
+    private void blacklistContextKey(final String context, final String namespace, final String key) {
+        logger.debug("Blacklisting key {} for context {}", key, context);
+        final ListenableFuture<Boolean> tracked = updateContextKeyListAsync(CTX_KEY_BLACKLIST_SUFFIX, namespace, key);
+        tracked.addListener(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (!tracked.get()) {
+                        logger.debug("Failed appending {} to list of blacklisted keys for context {}", key, context);
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    logger.debug("Failed appending {} to list of blacklisted keys for context {}", key, context, e);
+                }
+            }
+        }, DIRECT_EXECUTOR);
+    }
+
+    /**
+     * Deletes an entry asynchronously, optionally only if it has the given version.
+     *
+     * @param version Version to match or null to delete unconditionally.
+     * @param context Context name.
+     * @param key Key unique to context.
+     *
+     * @return Future completing with true iff the entry existed and was deleted.
+     */
+    private ListenableFuture<Boolean> deleteAsyncImpl(@Nullable final Long version,
+                                                      @Nonnull final String context,
+                                                      @Nonnull final String key) {
+        final SettableFuture<Boolean> result = SettableFuture.create();
+        chain(lookupNamespaceAsync(context), result, new Continuation<String>() {
+            @Override
+            public void proceed(final String namespace) {
+                if (namespace == null) {
+                    logger.debug("Namespace for context {} does not exist", context);
+                    result.set(false);
+                    return;
+                }
+                final String cacheKey = memcachedKey(namespace, key);
+                logger.debug("Deleting entry at {} for context={}, key={}, version={}",
+                        cacheKey, context, key, version);
+                final OperationFuture<Boolean> op =
+                        version == null ? client.delete(cacheKey) : client.delete(cacheKey, version);
+                chain(listenable(op), result, new Continuation<Boolean>() {
+                    @Override
+                    public void proceed(final Boolean success) {
+                        if (success && trackContextKeys) {
+                            blacklistContextKey(context, namespace, cacheKey);
+                        } else if (!success) {
+                            evictNamespace(context, namespace);
+                        }
+                        result.set(success);
+                    }
+                });
+            }
+        });
+        return result;
+    }
+
+    private ListenableFuture<Boolean> updateContextKeyListAsync(
+            final String suffix, final String namespace, final String key) {
         final String listKey = namespace + suffix;
         final String newItem = key + CTX_KEY_LIST_DELIMITER;
-        final boolean success = handleAsyncResult(this.client.append(listKey, newItem, stringTranscoder));
-        if (!success) {
-            // Assume list does not exist and create it
-            return handleAsyncResult(this.client.add(listKey, 0, newItem, stringTranscoder));
+        final SettableFuture<Boolean> result = SettableFuture.create();
+        chain(listenable(this.client.append(listKey, newItem, stringTranscoder)), result,
+                new Continuation<Boolean>() {
+            @Override
+            public void proceed(final Boolean success) {
+                if (success) {
+                    result.set(true);
+                } else {
+                    // Assume list does not exist and create it
+                    forward(listenable(client.add(listKey, 0, newItem, stringTranscoder)), result);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Exposes a memcached operation as a {@link ListenableFuture}. Failures are translated to
+     * {@link IOException} in the same way as {@link #handleAsyncResult(OperationFuture)}.
+     *
+     * @param op Memcached operation.
+     * @param <T> Operation result type.
+     *
+     * @return Future that completes when the memcached operation completes.
+     */
+    private <T> ListenableFuture<T> listenable(final OperationFuture<T> op) {
+        final SettableFuture<T> result = SettableFuture.create();
+        op.addListener(new OperationCompletionListener() {
+            @Override
+            public void onComplete(final OperationFuture<?> future) {
+                try {
+                    result.set(op.get());
+                } catch (InterruptedException e) {
+                    result.setException(new IOException("Memcached operation interrupted"));
+                } catch (ExecutionException e) {
+                    result.setException(new IOException("Memcached operation error", e.getCause()));
+                } catch (RuntimeException e) {
+                    result.setException(new IOException("Memcached operation failed", e));
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Invokes a continuation when a step of an asynchronous operation succeeds, or propagates its failure
+     * to the overall result.
+     *
+     * @param step Future representing the preceding step.
+     * @param result Overall result of the operation.
+     * @param next Continuation to invoke with the result of the step.
+     * @param <T> Step result type.
+     */
+    private static <T> void chain(
+            final ListenableFuture<T> step, final SettableFuture<?> result, final Continuation<T> next) {
+        step.addListener(new Runnable() {
+            @Override
+            public void run() {
+                final T value;
+                try {
+                    value = step.get();
+                } catch (InterruptedException e) {
+                    result.setException(new IOException("Memcached operation interrupted"));
+                    return;
+                } catch (ExecutionException e) {
+                    result.setException(e.getCause());
+                    return;
+                }
+                try {
+                    next.proceed(value);
+                } catch (Exception e) {
+                    result.setException(e);
+                }
+            }
+        }, DIRECT_EXECUTOR);
+    }
+
+    /**
+     * Completes a result with the outcome of another future, evicting the cached namespace for a context
+     * if the outcome indicates that no entry was found.
+     *
+     * @param step Future to take the outcome from.
+     * @param result Future to complete.
+     * @param context Context name.
+     * @param namespace Namespace the operation was performed under.
+     */
+    private void forwardEvictingOnMiss(final ListenableFuture<Boolean> step, final SettableFuture<Boolean> result,
+                                       final String context, final String namespace) {
+        chain(step, result, new Continuation<Boolean>() {
+            @Override
+            public void proceed(final Boolean success) {
+                if (!success) {
+                    evictNamespace(context, namespace);
+                }
+                result.set(success);
+            }
+        });
+    }
+
+    /**
+     * Completes a result with the outcome of another future.
+     *
+     * @param step Future to take the outcome from.
+     * @param result Future to complete.
+     * @param <T> Result type.
+     */
+    private static <T> void forward(final ListenableFuture<T> step, final SettableFuture<T> result) {
+        chain(step, result, new Continuation<T>() {
+            @Override
+            public void proceed(final T value) {
+                result.set(value);
+            }
+        });
+    }
+
+    /** Locally cached context namespace. */
+    private static final class CachedNamespace {
+
+        /** Namespace. */
+        private final String namespace;
+
+        /** Time in milliseconds at which the entry expires. */
+        private final long expiration;
+
+        /**
+         * Creates a new instance.
+         *
+         * @param ns Namespace.
+         * @param exp Expiration time in milliseconds.
+         */
+        CachedNamespace(final String ns, final long exp) {
+            namespace = ns;
+            expiration = exp;
         }
-        return success;
+    }
+
+    /**
+     * Continuation of an asynchronous operation.
+     *
+     * @param <T> Type of result of the preceding step.
+     */
+    private interface Continuation<T> {
+
+        /**
+         * Continues the operation with the result of the preceding step.
+         *
+         * @param value Result of the preceding step.
+         *
+         * @throws Exception On errors, which complete the operation exceptionally.
+         */
+        void proceed(T value) throws Exception;
     }
 }
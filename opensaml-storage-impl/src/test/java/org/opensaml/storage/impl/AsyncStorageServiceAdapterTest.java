@@ -0,0 +1,112 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.shibboleth.utilities.java.support.collection.Pair;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+
+import org.opensaml.storage.AsyncStorageService;
+import org.opensaml.storage.AsyncStorageServiceAdapter;
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.VersionMismatchException;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Test of {@link AsyncStorageServiceAdapter} wrapping a {@link MemoryStorageService}.
+ */
+public class AsyncStorageServiceAdapterTest {
+
+    private MemoryStorageService storageService;
+
+    private ExecutorService executor;
+
+    private AsyncStorageService asyncService;
+
+    @BeforeClass
+    public void setUp() throws ComponentInitializationException {
+        storageService = new MemoryStorageService();
+        storageService.setId("test");
+        storageService.initialize();
+        executor = Executors.newFixedThreadPool(4);
+        asyncService = new AsyncStorageServiceAdapter(storageService, executor);
+    }
+
+    @AfterClass
+    public void tearDown() {
+        executor.shutdown();
+        storageService.destroy();
+    }
+
+    @Test
+    public void operations() throws InterruptedException, ExecutionException {
+        Assert.assertTrue(asyncService.createAsync("context", "key", "foo", null).get());
+        Assert.assertFalse(asyncService.createAsync("context", "key", "bar", null).get());
+
+        final StorageRecord rec = asyncService.readAsync("context", "key").get();
+        Assert.assertNotNull(rec);
+        Assert.assertEquals(rec.getValue(), "foo");
+
+        final Pair<Long, StorageRecord> unchanged = asyncService.readAsync("context", "key", rec.getVersion()).get();
+        Assert.assertEquals(unchanged.getFirst(), Long.valueOf(rec.getVersion()));
+        Assert.assertNull(unchanged.getSecond());
+
+        Assert.assertTrue(asyncService.updateAsync("context", "key", "bar", null).get());
+        Assert.assertEquals(asyncService.readAsync("context", "key").get().getValue(), "bar");
+        Assert.assertFalse(asyncService.updateAsync("context", "missing", "bar", null).get());
+
+        final long expiration = System.currentTimeMillis() + 60000;
+        Assert.assertTrue(asyncService.updateExpirationAsync("context", "key", expiration).get());
+        Assert.assertEquals(asyncService.readAsync("context", "key").get().getExpiration(), Long.valueOf(expiration));
+
+        Assert.assertTrue(asyncService.deleteAsync("context", "key").get());
+        Assert.assertFalse(asyncService.deleteAsync("context", "key").get());
+        Assert.assertNull(asyncService.readAsync("context", "key").get());
+    }
+
+    @Test
+    public void versionMismatch() throws InterruptedException, ExecutionException {
+        Assert.assertTrue(asyncService.createAsync("context", "versioned", "foo", null).get());
+        final long version = asyncService.readAsync("context", "versioned").get().getVersion();
+        final Long newVersion = asyncService.updateWithVersionAsync(version, "context", "versioned", "bar", null).get();
+        Assert.assertNotNull(newVersion);
+
+        try {
+            asyncService.updateWithVersionAsync(version, "context", "versioned", "baz", null).get();
+            Assert.fail("Stale update should have failed");
+        } catch (final ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof VersionMismatchException);
+        }
+
+        try {
+            asyncService.deleteWithVersionAsync(version, "context", "versioned").get();
+            Assert.fail("Stale delete should have failed");
+        } catch (final ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof VersionMismatchException);
+        }
+
+        Assert.assertTrue(asyncService.deleteWithVersionAsync(newVersion, "context", "versioned").get());
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+
+import org.opensaml.storage.HistogramStorageMetricsSink;
+import org.opensaml.storage.InstrumentedStorageService;
+import org.opensaml.storage.StorageMetricsSink.Operation;
+import org.opensaml.storage.StorageMetricsSink.Outcome;
+import org.opensaml.storage.StorageService;
+import org.opensaml.storage.StorageServiceTest;
+import org.opensaml.storage.VersionMismatchException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test of {@link InstrumentedStorageService} wrapping a {@link MemoryStorageService}.
+ */
+public class InstrumentedStorageServiceTest extends StorageServiceTest {
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull protected StorageService getStorageService() {
+        return new InstrumentedStorageService(newMemoryStorageService(), new HistogramStorageMetricsSink());
+    }
+
+    @Test
+    public void testMetrics() throws IOException, VersionMismatchException {
+        final HistogramStorageMetricsSink sink = new HistogramStorageMetricsSink();
+        final InstrumentedStorageService ss = new InstrumentedStorageService(newMemoryStorageService(), sink);
+
+        Assert.assertTrue(ss.create("context", "key", "value", null));
+        Assert.assertFalse(ss.create("context", "key", "value", null));
+        Assert.assertNotNull(ss.read("context", "key"));
+        Assert.assertNull(ss.read("context", "missing"));
+        Assert.assertNull(ss.read("context", "key", 1).getSecond());
+        try {
+            ss.updateWithVersion(5, "context", "key", "value2", null);
+            Assert.fail("Expected version mismatch");
+        } catch (final VersionMismatchException e) {
+            // expected
+        }
+        Assert.assertTrue(ss.delete("context", "key"));
+
+        Assert.assertEquals(sink.getCount("context", Operation.CREATE, Outcome.SUCCESS), 1);
+        Assert.assertEquals(sink.getCount("context", Operation.CREATE, Outcome.DUPLICATE), 1);
+        Assert.assertEquals(sink.getCount("context", Operation.READ, Outcome.SUCCESS), 1);
+        Assert.assertEquals(sink.getCount("context", Operation.READ, Outcome.MISS), 1);
+        Assert.assertEquals(sink.getCount("context", Operation.READ, Outcome.UNMODIFIED), 1);
+        Assert.assertEquals(sink.getCount("context", Operation.UPDATE, Outcome.VERSION_MISMATCH), 1);
+        Assert.assertEquals(sink.getCount("context", Operation.DELETE), 1);
+        Assert.assertEquals(sink.getPayloadSize("context", Operation.CREATE), 10);
+        Assert.assertEquals(sink.getPayloadSize("context", Operation.READ), 5);
+        Assert.assertTrue(sink.getLatencyPercentile("context", Operation.READ, 99) > 0);
+        Assert.assertEquals(sink.getLatencyPercentile("context", Operation.REAP, 99), 0);
+    }
+
+    @Test
+    public void testMaxContexts() throws IOException {
+        final HistogramStorageMetricsSink sink = new HistogramStorageMetricsSink(2);
+        final InstrumentedStorageService ss = new InstrumentedStorageService(newMemoryStorageService(), sink);
+
+        ss.read("context1", "key");
+        ss.read("context2", "key");
+        ss.read("context3", "key");
+        ss.read("context4", "key");
+
+        Assert.assertEquals(sink.getContexts().size(), 3);
+        Assert.assertEquals(sink.getCount("context1", Operation.READ), 1);
+        Assert.assertEquals(sink.getCount("context3", Operation.READ), 0);
+        Assert.assertEquals(sink.getCount(HistogramStorageMetricsSink.OTHER_CONTEXT, Operation.READ), 2);
+    }
+
+    private MemoryStorageService newMemoryStorageService() {
+        final MemoryStorageService ss = new MemoryStorageService();
+        ss.setId("test");
+        ss.setCleanupInterval(0);
+        try {
+            ss.initialize();
+        } catch (final ComponentInitializationException e) {
+            throw new RuntimeException(e);
+        }
+        return ss;
+    }
+
+}
@@ -19,12 +19,16 @@ package org.opensaml.storage.impl;
 
 import java.io.IOException;
 import java.security.SecureRandom;
+import java.sql.SQLException;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
 
 import javax.annotation.Nonnull;
+import javax.persistence.EntityExistsException;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
 
 import net.shibboleth.ext.spring.util.SpringSupport;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
@@ -32,6 +36,7 @@ import net.shibboleth.utilities.java.support.component.ComponentInitializationEx
 import org.opensaml.storage.StorageRecord;
 import org.opensaml.storage.StorageService;
 import org.opensaml.storage.StorageServiceTest;
+import org.opensaml.storage.VersionMismatchException;
 import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
 import org.springframework.beans.factory.config.BeanPostProcessor;
@@ -72,9 +77,20 @@ public class JPAStorageServiceTest extends StorageServiceTest {
         storageService.setId("test");
         storageService.setCleanupInterval(5000);
         storageService.setTransactionRetry(2);
+        storageService.setCleanupBatchSize(10);
+        configure(storageService);
         super.setUp();
     }
 
+    /**
+     * Applies additional configuration to the service under test before it is initialized.
+     * 
+     * @param service the service to configure
+     */
+    protected void configure(@Nonnull final JPAStorageService service) {
+        
+    }
+
     /**
      * Creates an entity manager factory instance.
      */
@@ -127,6 +143,39 @@ public class JPAStorageServiceTest extends StorageServiceTest {
         Assert.assertEquals(recs.size(), 0);
     }
 
+    @Test
+    public void batchedCleanup() throws ComponentInitializationException, IOException {
+        // A separate instance without a cleanup task, so that its counters only reflect the run below, and an
+        // expiration window days ahead, so that no cleanup task and no other test touches these records.
+        final JPAStorageService service = new JPAStorageService(createEntityManagerFactory());
+        service.setId("batched");
+        service.setCleanupBatchSize(10);
+        configure(service);
+        service.initialize();
+        try {
+            final String context = Long.toString(random.nextLong());
+            final long base = System.currentTimeMillis() + 10L * 24 * 60 * 60 * 1000;
+            for (int i = 1; i <= 25; i++) {
+                service.create(context, Integer.toString(i), Integer.toString(i + 1), base + i);
+            }
+            service.create(context, "live", "live", base + 300000);
+
+            service.deleteImpl(base + 1000);
+
+            Assert.assertEquals(service.getCleanupDeletedCount(), 25);
+            Assert.assertEquals(service.getCleanupBatchCount(), 3, "Expected batches of 10, 10 and 5 records");
+            final List<StorageRecord> recs = service.readAll(context);
+            Assert.assertEquals(recs.size(), 1);
+            Assert.assertEquals(recs.get(0).getValue(), "live");
+
+            service.deleteImpl(base + 1000);
+            Assert.assertEquals(service.getCleanupBatchCount(), 3, "Batch was counted with nothing to delete");
+            service.deleteContext(context);
+        } finally {
+            service.destroy();
+        }
+    }
+
     @DataProvider(name = "contexts")
     public Object[][] contexts() throws Exception {
         return contexts;
@@ -144,6 +193,47 @@ public class JPAStorageServiceTest extends StorageServiceTest {
         Assert.assertFalse(result, "createString should have failed");
     }
 
+    @Test
+    public void async() throws InterruptedException, ExecutionException {
+        String context = Long.toString(random.nextLong());
+        Assert.assertTrue(storageService.createAsync(context, "async", "foo", null).get());
+        Assert.assertFalse(storageService.createAsync(context, "async", "foo", null).get());
+        StorageRecord rec = storageService.readAsync(context, "async").get();
+        Assert.assertNotNull(rec);
+        Assert.assertEquals(rec.getValue(), "foo");
+        final Long version = storageService.updateWithVersionAsync(rec.getVersion(), context, "async", "bar", null)
+                .get();
+        Assert.assertEquals(version, Long.valueOf(rec.getVersion() + 1));
+        try {
+            storageService.updateWithVersionAsync(rec.getVersion(), context, "async", "baz", null).get();
+            Assert.fail("updateWithVersionAsync should have failed");
+        } catch (final ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof VersionMismatchException);
+        }
+        Assert.assertTrue(storageService.deleteAsync(context, "async").get());
+        Assert.assertNull(storageService.readAsync(context, "async").get());
+    }
+
+    @Test
+    public void duplicateKeyDetection() {
+        Assert.assertTrue(JPAStorageService.isDuplicateKey(new PersistenceException(new EntityExistsException())));
+        Assert.assertTrue(JPAStorageService.isDuplicateKey(
+                new PersistenceException(new SQLException("unique", "23505"))));
+        Assert.assertTrue(JPAStorageService.isDuplicateKey(
+                new PersistenceException(new SQLException("ORA-00001", "23000", 1))));
+        Assert.assertTrue(JPAStorageService.isDuplicateKey(
+                new PersistenceException(new SQLException("Duplicate entry", "23000", 1062))));
+
+        // Other integrity constraint violations are not duplicates.
+        Assert.assertFalse(JPAStorageService.isDuplicateKey(
+                new PersistenceException(new SQLException("not null", "23502"))));
+        Assert.assertFalse(JPAStorageService.isDuplicateKey(
+                new PersistenceException(new SQLException("foreign key", "23503"))));
+        Assert.assertFalse(JPAStorageService.isDuplicateKey(
+                new PersistenceException(new SQLException("cannot be null", "23000", 1048))));
+        Assert.assertFalse(JPAStorageService.isDuplicateKey(new PersistenceException("other")));
+    }
+
     @Test(enabled = false)
     public void largeValue() throws IOException {
         // hsqldb defaults LOB length to 255 chars; disabled for now
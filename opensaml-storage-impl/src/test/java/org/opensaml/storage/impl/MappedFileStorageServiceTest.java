@@ -0,0 +1,190 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import javax.annotation.Nonnull;
+
+import net.shibboleth.utilities.java.support.collection.Pair;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.StorageService;
+import org.opensaml.storage.StorageServiceTest;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+/**
+ * Test of {@link MappedFileStorageService} implementation.
+ */
+public class MappedFileStorageServiceTest extends StorageServiceTest {
+
+    private File sharedFile;
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull protected StorageService getStorageService() {
+        try {
+            sharedFile = File.createTempFile("storage", ".dat");
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+        MappedFileStorageService ss = new MappedFileStorageService();
+        ss.setId("test");
+        ss.setCleanupInterval(1000);
+        ss.setFile(sharedFile);
+        ss.setInitialFileSize(64 * 1024);
+        return ss;
+    }
+
+    @AfterClass(dependsOnMethods = "tearDown")
+    public void deleteFile() {
+        sharedFile.delete();
+    }
+
+    @Test
+    public void validConfig() throws ComponentInitializationException, IOException {
+        final File file = File.createTempFile("storage", ".dat");
+        try {
+            MappedFileStorageService ss = newService(file);
+            ss.destroy();
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testRecovery() throws ComponentInitializationException, IOException {
+        final File file = File.createTempFile("storage", ".dat");
+        try {
+            MappedFileStorageService ss = newService(file);
+            ss.create("context1", "key1", "value1", null);
+            ss.create("context1", "key2", "value2", null);
+            ss.update("context1", "key2", "value3", null);
+            ss.create("context1", "key3", "value4", null);
+            ss.delete("context1", "key3");
+            ss.create("context2", "key1", "value5", null);
+            ss.deleteContext("context2");
+            ss.destroy();
+
+            ss = newService(file);
+            StorageRecord rec = ss.read("context1", "key1");
+            Assert.assertNotNull(rec);
+            Assert.assertEquals(rec.getValue(), "value1");
+            Assert.assertEquals(rec.getVersion(), 1);
+            rec = ss.read("context1", "key2");
+            Assert.assertNotNull(rec);
+            Assert.assertEquals(rec.getValue(), "value3");
+            Assert.assertEquals(rec.getVersion(), 2);
+            Assert.assertNull(ss.read("context1", "key3"));
+            Assert.assertNull(ss.read("context2", "key1"));
+            ss.destroy();
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testTornWrite() throws ComponentInitializationException, IOException {
+        final File file = File.createTempFile("storage", ".dat");
+        try {
+            MappedFileStorageService ss = newService(file);
+            ss.create("context", "key1", "value1", null);
+            ss.create("context", "key2", "value2", null);
+            ss.destroy();
+
+            // Simulate a partially written entry following the valid ones.
+            try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                long offset = 16;
+                raf.seek(offset);
+                int length = raf.readInt();
+                while (length != 0) {
+                    offset += length;
+                    raf.seek(offset);
+                    length = raf.readInt();
+                }
+                raf.seek(offset);
+                raf.writeInt(100);
+                raf.writeInt(12345);
+                raf.writeByte(1);
+            }
+
+            ss = newService(file);
+            Assert.assertEquals(ss.read("context", "key1").getValue(), "value1");
+            Assert.assertEquals(ss.read("context", "key2").getValue(), "value2");
+            Assert.assertTrue(ss.create("context", "key3", "value3", null));
+            ss.destroy();
+
+            ss = newService(file);
+            Assert.assertEquals(ss.read("context", "key3").getValue(), "value3");
+            ss.destroy();
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCompaction() throws ComponentInitializationException, IOException {
+        final File file = File.createTempFile("storage", ".dat");
+        try {
+            MappedFileStorageService ss = newService(file);
+            ss.create("context", "static", "value", null);
+            ss.create("context", "counter", "0", null);
+            for (int i = 1; i <= 5000; i++) {
+                Assert.assertTrue(ss.update("context", "counter", Integer.toString(i), null));
+            }
+            // Without compaction this would have exceeded the maximum size.
+            Assert.assertTrue(file.length() <= 64 * 1024);
+            Pair<Long, StorageRecord> result = ss.read("context", "counter", 1);
+            Assert.assertEquals(result.getFirst(), Long.valueOf(5001));
+            Assert.assertEquals(result.getSecond().getValue(), "5000");
+            ss.destroy();
+
+            ss = newService(file);
+            Assert.assertEquals(ss.read("context", "static").getValue(), "value");
+            Assert.assertEquals(ss.read("context", "counter").getValue(), "5000");
+            Assert.assertFalse(new File(file.getPath() + ".compact").exists());
+            ss.destroy();
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testDestroyUninitialized() {
+        final MappedFileStorageService ss = new MappedFileStorageService();
+        ss.setId("test");
+        ss.destroy();
+        Assert.assertTrue(ss.isDestroyed());
+    }
+
+    private MappedFileStorageService newService(final File file) throws ComponentInitializationException {
+        MappedFileStorageService ss = new MappedFileStorageService();
+        ss.setId("test");
+        ss.setFile(file);
+        ss.setInitialFileSize(16 * 1024);
+        ss.setMaxFileSize(64 * 1024);
+        ss.initialize();
+        return ss;
+    }
+
+}
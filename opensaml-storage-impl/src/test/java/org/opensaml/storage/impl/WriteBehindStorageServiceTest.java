@@ -0,0 +1,333 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.persistence.EntityManagerFactory;
+
+import net.shibboleth.ext.spring.util.SpringSupport;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.StorageService;
+import org.opensaml.storage.StorageServiceTest;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test of {@link WriteBehindStorageService} implementation.
+ */
+public class WriteBehindStorageServiceTest extends StorageServiceTest {
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull protected StorageService getStorageService() {
+        final WriteBehindStorageService ss = new WriteBehindStorageService();
+        ss.setId("test");
+        ss.setCleanupInterval(5000);
+        ss.setDurableStorage(newMemoryStorageService());
+        return ss;
+    }
+
+    @Test(expectedExceptions = ComponentInitializationException.class)
+    public void testNoDurableStorage() throws ComponentInitializationException {
+        final WriteBehindStorageService ss = new WriteBehindStorageService();
+        ss.setId("test");
+        ss.initialize();
+    }
+
+    @Test
+    public void testWriteBehind() throws ComponentInitializationException, IOException, InterruptedException {
+        final MemoryStorageService durable = newMemoryStorageService();
+        final WriteBehindStorageService ss = newWriteBehindStorageService(durable);
+        try {
+            ss.create("context", "key1", "value1", null);
+            ss.create("context", "key2", "value2", null);
+            ss.update("context", "key1", "value1b", null);
+            ss.delete("context", "key2");
+            ss.create("context2", "key", "value", null);
+            ss.deleteContext("context2");
+
+            Assert.assertTrue(ss.flush(5000));
+            Assert.assertEquals(ss.getQueueSize(), 0);
+            Assert.assertEquals(durable.read("context", "key1").getValue(), "value1b");
+            Assert.assertNull(durable.read("context", "key2"));
+            Assert.assertNull(durable.read("context2", "key"));
+
+            final Long expiration = System.currentTimeMillis() + 60000;
+            ss.updateContextExpiration("context", expiration);
+            Assert.assertTrue(ss.flush(5000));
+            Assert.assertEquals(durable.read("context", "key1").getExpiration(), expiration);
+        } finally {
+            ss.destroy();
+        }
+    }
+
+    @Test
+    public void testWriteThrough() throws ComponentInitializationException, IOException {
+        final MemoryStorageService durable = newMemoryStorageService();
+        final WriteBehindStorageService ss = new WriteBehindStorageService();
+        ss.setId("test");
+        ss.setCleanupInterval(0);
+        ss.setFlushInterval(60000);
+        ss.setDurableStorage(durable);
+        ss.setWriteThroughContexts(Collections.singletonList("sync"));
+        ss.initialize();
+        try {
+            ss.create("sync", "key", "value", null);
+            Assert.assertEquals(durable.read("sync", "key").getValue(), "value");
+            ss.delete("sync", "key");
+            Assert.assertNull(durable.read("sync", "key"));
+        } finally {
+            ss.destroy();
+        }
+    }
+
+    @Test
+    public void testDestroyDrainsQueue() throws ComponentInitializationException, IOException {
+        final MemoryStorageService durable = newMemoryStorageService();
+        final WriteBehindStorageService ss = newWriteBehindStorageService(durable);
+        for (int i = 0; i < 500; i++) {
+            ss.create("context", Integer.toString(i), "value", null);
+        }
+        ss.destroy();
+
+        for (int i = 0; i < 500; i++) {
+            Assert.assertNotNull(durable.read("context", Integer.toString(i)));
+        }
+    }
+
+    @Test
+    public void testQueueTimeout() throws ComponentInitializationException, IOException, InterruptedException {
+        final BlockingStorageService durable = new BlockingStorageService();
+        final WriteBehindStorageService ss = newBoundedWriteBehindStorageService(durable, 200);
+        try {
+            // The first change blocks the flush thread, the second fills the queue.
+            ss.create("context", "key1", "value", null);
+            ss.create("context", "key2", "value", null);
+            try {
+                ss.create("context", "key3", "value", null);
+                Assert.fail("Write to a full queue did not time out");
+            } catch (final IOException e) {
+                // expected
+            }
+            Assert.assertNull(ss.read("context", "key3"), "Memory tier was changed despite the timeout");
+
+            durable.release();
+            Assert.assertTrue(ss.flush(5000));
+            Assert.assertNotNull(durable.read("context", "key1"));
+            Assert.assertNotNull(durable.read("context", "key2"));
+            Assert.assertNull(durable.read("context", "key3"));
+        } finally {
+            durable.release();
+            ss.destroy();
+            durable.destroy();
+        }
+    }
+
+    @Test
+    public void testBackPressure() throws ComponentInitializationException, IOException, InterruptedException {
+        final BlockingStorageService durable = new BlockingStorageService();
+        final WriteBehindStorageService ss = newBoundedWriteBehindStorageService(durable, 5000);
+        try {
+            ss.create("context", "key1", "value", null);
+            ss.create("context", "key2", "value", null);
+
+            final IOException[] failure = new IOException[1];
+            final Thread writer = new Thread(new Runnable() {
+                /** {@inheritDoc} */
+                public void run() {
+                    try {
+                        ss.create("context", "key3", "value", null);
+                    } catch (final IOException e) {
+                        failure[0] = e;
+                    }
+                }
+            });
+            writer.start();
+            writer.join(500);
+            Assert.assertTrue(writer.isAlive(), "Writer did not wait for the queue to drain");
+            Assert.assertNull(ss.read("context", "key3"));
+
+            durable.release();
+            writer.join(5000);
+            Assert.assertFalse(writer.isAlive(), "Writer did not resume once the queue drained");
+            Assert.assertNull(failure[0]);
+            Assert.assertTrue(ss.flush(5000));
+            Assert.assertNotNull(durable.read("context", "key3"));
+        } finally {
+            durable.release();
+            ss.destroy();
+            durable.destroy();
+        }
+    }
+
+    @Test
+    public void testRehydrate() throws ComponentInitializationException, IOException {
+        final JPAStorageService durable = new JPAStorageService(createEntityManagerFactory());
+        durable.setId("test");
+        durable.setCleanupInterval(0);
+        durable.initialize();
+        final String context = UUID.randomUUID().toString();
+        try {
+            WriteBehindStorageService ss = newWriteBehindStorageService(durable);
+            ss.create(context, "key", "value", null);
+            ss.create(context, "expired", "value", System.currentTimeMillis() + 500);
+            ss.destroy();
+
+            try {
+                Thread.sleep(1000);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            ss = newWriteBehindStorageService(durable);
+            try {
+                final StorageRecord record = ss.read(context, "key");
+                Assert.assertNotNull(record);
+                Assert.assertEquals(record.getValue(), "value");
+                Assert.assertNull(ss.read(context, "expired"));
+            } finally {
+                ss.destroy();
+            }
+        } finally {
+            durable.deleteContext(context);
+            durable.destroy();
+        }
+    }
+
+    private WriteBehindStorageService newWriteBehindStorageService(@Nonnull final StorageService durable)
+            throws ComponentInitializationException {
+        final WriteBehindStorageService ss = new WriteBehindStorageService();
+        ss.setId("test");
+        ss.setCleanupInterval(0);
+        ss.setBatchSize(10);
+        ss.setFlushInterval(100);
+        ss.setDurableStorage(durable);
+        ss.initialize();
+        return ss;
+    }
+
+    private WriteBehindStorageService newBoundedWriteBehindStorageService(@Nonnull final StorageService durable,
+            final long queueTimeout) throws ComponentInitializationException {
+        final WriteBehindStorageService ss = new WriteBehindStorageService();
+        ss.setId("test");
+        ss.setCleanupInterval(0);
+        ss.setMaxQueueSize(1);
+        ss.setBatchSize(1);
+        ss.setFlushInterval(100);
+        ss.setQueueTimeout(queueTimeout);
+        ss.setDurableStorage(durable);
+        ss.initialize();
+        return ss;
+    }
+
+    private MemoryStorageService newMemoryStorageService() {
+        final MemoryStorageService ss = new MemoryStorageService();
+        ss.setId("durable");
+        ss.setCleanupInterval(0);
+        try {
+            ss.initialize();
+        } catch (final ComponentInitializationException e) {
+            throw new RuntimeException(e);
+        }
+        return ss;
+    }
+
+    private EntityManagerFactory createEntityManagerFactory() throws ComponentInitializationException {
+        final Resource resource = new ClassPathResource("/org/opensaml/storage/impl/jpa-spring-context.xml");
+        final GenericApplicationContext context = SpringSupport.newContext("WriteBehindStorageService",
+                Collections.singletonList(resource), Collections.<BeanFactoryPostProcessor>emptyList(),
+                Collections.<BeanPostProcessor>emptyList(), Collections.<ApplicationContextInitializer>emptyList(),
+                null);
+        final FactoryBean<EntityManagerFactory> factoryBean =
+                context.getBean(LocalContainerEntityManagerFactoryBean.class);
+        try {
+            return factoryBean.getObject();
+        } catch (final Exception e) {
+            throw new ComponentInitializationException(e);
+        }
+    }
+
+    /** Durable storage whose writes block until released. */
+    private static class BlockingStorageService extends MemoryStorageService {
+
+        /** Released to let writes proceed. */
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        /** Constructor. */
+        public BlockingStorageService() {
+            setId("durable");
+            setCleanupInterval(0);
+            try {
+                initialize();
+            } catch (final ComponentInitializationException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /** Let writes proceed. */
+        public void release() {
+            latch.countDown();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean create(@Nonnull final String context, @Nonnull final String key, @Nonnull final String value,
+                @Nullable final Long expiration) throws IOException {
+            await();
+            return super.create(context, key, value, expiration);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean update(@Nonnull final String context, @Nonnull final String key, @Nonnull final String value,
+                @Nullable final Long expiration) throws IOException {
+            await();
+            return super.update(context, key, value, expiration);
+        }
+
+        /**
+         * Wait to be released.
+         * 
+         * @throws IOException if interrupted
+         */
+        private void await() throws IOException {
+            try {
+                latch.await();
+            } catch (final InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+}
@@ -48,9 +48,22 @@ public class AbstractBaseClientStorageServiceTest {
     }
 
     protected ClientStorageService getStorageService() throws ComponentInitializationException {
+        return getStorageService(1);
+    }
+
+    protected ClientStorageService getStorageService(final int chunkCount) throws ComponentInitializationException {
+        return getStorageService(chunkCount, null);
+    }
+
+    protected ClientStorageService getStorageService(final int chunkCount, final ClientStorageCodec codec)
+            throws ComponentInitializationException {
         final ClientStorageService ss = new ClientStorageService();
         ss.setId("test");
         ss.setStorageName(STORAGE_NAME);
+        ss.setChunkCount(chunkCount);
+        if (codec != null) {
+            ss.setCodec(codec);
+        }
 
         final CookieManager cm = new CookieManager();
         cm.setHttpServletRequest(new ThreadLocalHttpServletRequestProxy());
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opensaml.storage.MutableStorageRecord;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/** Unit test for {@link JSONClientStorageCodec} and {@link BinaryClientStorageCodec}. */
+public class ClientStorageCodecTest {
+
+    private Map<String, Map<String, MutableStorageRecord>> contextMap;
+    
+    private long now;
+    
+    @BeforeMethod public void setUp() {
+        now = System.currentTimeMillis();
+        contextMap = new HashMap<>();
+
+        final Map<String, MutableStorageRecord> context1 = new HashMap<>();
+        context1.put("key1", new MutableStorageRecord("value1", null));
+        context1.put("key2", new MutableStorageRecord("value with \"quotes\" and \u00e9", now + 60000));
+        context1.put("expired", new MutableStorageRecord("gone", now - 1000));
+        contextMap.put("context1", context1);
+        
+        final Map<String, MutableStorageRecord> context2 = new HashMap<>();
+        context2.put("key1", new MutableStorageRecord("value2", Long.MAX_VALUE));
+        contextMap.put("context2", context2);
+    }
+
+    @Test public void testJSON() throws IOException {
+        final ClientStorageCodec codec = new JSONClientStorageCodec();
+        final String data = encode(codec);
+        Assert.assertTrue(data.startsWith("{"));
+        verify(codec, data);
+    }
+
+    @Test public void testBinary() throws IOException {
+        final ClientStorageCodec codec = new BinaryClientStorageCodec();
+        verify(codec, encode(codec));
+    }
+
+    @Test public void testCompressedBinary() throws IOException {
+        final BinaryClientStorageCodec codec = new BinaryClientStorageCodec();
+        codec.setCompress(true);
+        verify(codec, encode(codec));
+        
+        // Uncompressed data remains readable.
+        verify(codec, encode(new BinaryClientStorageCodec()));
+    }
+
+    @Test public void testMigration() throws IOException {
+        verify(new BinaryClientStorageCodec(), encode(new JSONClientStorageCodec()));
+    }
+
+    @Test(expectedExceptions = IOException.class) public void testTruncatedBinary() throws IOException {
+        final String data = encode(new BinaryClientStorageCodec());
+        new BinaryClientStorageCodec().decode(data.substring(0, data.length() - 8),
+                new HashMap<String, Map<String, MutableStorageRecord>>());
+    }
+
+    @Test(expectedExceptions = IOException.class) public void testInvalidJSON() throws IOException {
+        new JSONClientStorageCodec().decode("{\"context1\":[]}",
+                new HashMap<String, Map<String, MutableStorageRecord>>());
+    }
+
+    private String encode(final ClientStorageCodec codec) throws IOException {
+        final List<byte[]> segments = new ArrayList<>();
+        for (final Map.Entry<String, Map<String, MutableStorageRecord>> entry : contextMap.entrySet()) {
+            segments.add(codec.encodeContext(entry.getKey(), entry.getValue(), now));
+        }
+        return codec.combine(segments);
+    }
+    
+    private void verify(final ClientStorageCodec codec, final String data) throws IOException {
+        final Map<String, Map<String, MutableStorageRecord>> decoded = new HashMap<>();
+        codec.decode(data, decoded);
+        
+        Assert.assertEquals(decoded.size(), 2);
+        
+        final Map<String, MutableStorageRecord> context1 = decoded.get("context1");
+        Assert.assertEquals(context1.size(), 2);
+        Assert.assertFalse(context1.containsKey("expired"));
+        Assert.assertEquals(context1.get("key1").getValue(), "value1");
+        Assert.assertNull(context1.get("key1").getExpiration());
+        Assert.assertEquals(context1.get("key2").getValue(), "value with \"quotes\" and \u00e9");
+        Assert.assertEquals(context1.get("key2").getExpiration(), Long.valueOf(now + 60000));
+
+        final Map<String, MutableStorageRecord> context2 = decoded.get("context2");
+        Assert.assertEquals(context2.size(), 1);
+        Assert.assertEquals(context2.get("key1").getValue(), "value2");
+        Assert.assertEquals(context2.get("key1").getExpiration(), Long.valueOf(Long.MAX_VALUE));
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.opensaml.storage.MutableStorageRecord;
+import org.opensaml.storage.impl.client.ClientStorageService.ClientStorageSource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.net.HttpServletRequestResponseContext;
+
+/** Unit test for the encoding behavior of {@link ClientStorageService}. */
+public class ClientStorageServiceTest extends AbstractBaseClientStorageServiceTest {
+
+    @BeforeClass public void setUpClass() throws ComponentInitializationException {
+        init();
+    }
+
+    @Test public void testOnlyDirtyContextsReencoded() throws ComponentInitializationException, IOException {
+        final RecordingCodec codec = new RecordingCodec();
+        final ClientStorageService ss = getStorageService(1, codec);
+
+        HttpServletRequestResponseContext.loadCurrent(new MockHttpServletRequest(), new MockHttpServletResponse());
+        ss.load(null, ClientStorageSource.HTML_LOCAL_STORAGE);
+
+        ss.create("context1", "key", "value1", null);
+        ss.create("context2", "key", "value2", null);
+        ss.create("context3", "key", "value3", null);
+
+        ClientStorageServiceOperation op = ss.save();
+        Assert.assertNotNull(op);
+        Assert.assertEquals(codec.encoded.size(), 3);
+        Assert.assertTrue(codec.encoded.contains("context1"));
+        Assert.assertTrue(codec.encoded.contains("context2"));
+        Assert.assertTrue(codec.encoded.contains("context3"));
+
+        codec.encoded.clear();
+        Assert.assertTrue(ss.update("context2", "key", "changed", null));
+
+        op = ss.save();
+        Assert.assertNotNull(op);
+        Assert.assertEquals(codec.encoded.size(), 1);
+        Assert.assertEquals(codec.encoded.get(0), "context2");
+
+        // Nothing modified, so nothing to save or encode.
+        codec.encoded.clear();
+        Assert.assertNull(ss.save());
+        Assert.assertTrue(codec.encoded.isEmpty());
+
+        // The reused encodings of the other contexts must still be part of the saved data.
+        ss.load(op.getValue(), ClientStorageSource.HTML_LOCAL_STORAGE);
+        Assert.assertEquals(ss.read("context1", "key").getValue(), "value1");
+        Assert.assertEquals(ss.read("context2", "key").getValue(), "changed");
+        Assert.assertEquals(ss.read("context3", "key").getValue(), "value3");
+    }
+
+    /** Codec that records the contexts it is asked to encode. */
+    private static class RecordingCodec extends JSONClientStorageCodec {
+
+        /** Contexts encoded, in order. */
+        private final List<String> encoded = new ArrayList<>();
+
+        /** {@inheritDoc} */
+        @Override
+        public byte[] encodeContext(final String context, final Map<String, MutableStorageRecord> records,
+                final long now) throws IOException {
+            encoded.add(context);
+            return super.encodeContext(context, records, now);
+        }
+    }
+
+}
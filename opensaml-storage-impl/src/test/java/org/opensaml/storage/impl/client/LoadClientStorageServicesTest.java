@@ -19,6 +19,7 @@ package org.opensaml.storage.impl.client;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.locks.Lock;
 
 import javax.servlet.http.Cookie;
@@ -198,6 +199,79 @@ public class LoadClientStorageServicesTest extends AbstractBaseClientStorageServ
         checkStorageContent(ss);
     }
 
+    @Test public void testChunkedCookieLoad() throws ComponentInitializationException, IOException {
+        final ClientStorageService ss = getStorageService(4);
+        ss.loadChunks(Collections.<String,String>emptyMap(), ClientStorageSource.COOKIE);
+        ss.create("context1", "key1", "value1", null);
+        ss.create("context1", "key2", "value2", null);
+        ss.create("context2", "key", "value", null);
+        
+        final List<ClientStorageServiceOperation> saved = ss.saveOperations();
+        Assert.assertEquals(saved.size(), 2);
+
+        HttpServletRequestResponseContext.loadCurrent(new MockHttpServletRequest(), new MockHttpServletResponse());
+
+        Assert.assertFalse(ss.isLoaded());
+        
+        ((MockHttpServletRequest) HttpServletRequestResponseContext.getRequest()).setCookies(
+                new Cookie(saved.get(0).getKey(), URISupport.doURLEncode(saved.get(0).getValue())),
+                new Cookie(saved.get(1).getKey(), URISupport.doURLEncode(saved.get(1).getValue())));
+
+        action.setStorageServices(Collections.singletonList(ss));
+        action.initialize();
+
+        action.execute(prc);
+        ActionTestingSupport.assertProceedEvent(prc);
+        
+        checkStorageContent(ss);
+        Assert.assertTrue(ss.saveOperations().isEmpty());
+        
+        // Only the chunk containing the modified context is saved.
+        ss.update("context2", "key", "value3", null);
+        final List<ClientStorageServiceOperation> resaved = ss.saveOperations();
+        Assert.assertEquals(resaved.size(), 1);
+        Assert.assertTrue(resaved.get(0).getKey().equals(saved.get(0).getKey())
+                || resaved.get(0).getKey().equals(saved.get(1).getKey()));
+        Assert.assertNotNull(resaved.get(0).getValue());
+    }
+
+    @Test public void testChunkedCookieMigration() throws ComponentInitializationException, IOException {
+        final ClientStorageService unchunked = getStorageService();
+        unchunked.load(null, ClientStorageSource.COOKIE);
+        unchunked.create("context1", "key1", "value1", null);
+        unchunked.create("context1", "key2", "value2", null);
+        unchunked.create("context2", "key", "value", null);
+        
+        final ClientStorageServiceOperation saved = unchunked.save();
+        Assert.assertNotNull(saved);
+
+        HttpServletRequestResponseContext.loadCurrent(new MockHttpServletRequest(), new MockHttpServletResponse());
+
+        final Cookie cookie = new Cookie(STORAGE_NAME, URISupport.doURLEncode(saved.getValue()));
+        ((MockHttpServletRequest) HttpServletRequestResponseContext.getRequest()).setCookies(cookie);
+
+        final ClientStorageService ss = getStorageService(4);
+        action.setStorageServices(Collections.singletonList(ss));
+        action.initialize();
+
+        action.execute(prc);
+        ActionTestingSupport.assertProceedEvent(prc);
+        
+        checkStorageContent(ss);
+        
+        // The unchunked cookie is cleared and the data saved as chunks.
+        final List<ClientStorageServiceOperation> resaved = ss.saveOperations();
+        Assert.assertEquals(resaved.size(), 3);
+        for (final ClientStorageServiceOperation op : resaved) {
+            if (op.getKey().equals(STORAGE_NAME)) {
+                Assert.assertNull(op.getValue());
+            } else {
+                Assert.assertTrue(ss.getChunkIndex(op.getKey()) >= 0);
+                Assert.assertNotNull(op.getValue());
+            }
+        }
+    }
+
     private void checkStorageContent(final StorageService ss) throws IOException {
         Assert.assertNull(loadCtx.getParent());
 
@@ -0,0 +1,177 @@
+/*
+ * See LICENSE for licensing and NOTICE for copyright.
+ */
+
+package org.opensaml.storage.impl.memcached;
+
+import net.spy.memcached.CASValue;
+import net.spy.memcached.MemcachedClient;
+import net.spy.memcached.internal.OperationFuture;
+import net.spy.memcached.transcoders.Transcoder;
+import org.mockito.InOrder;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.*;
+
+/**
+ * Unit test for the order in which {@link MemcachedStorageService} issues and waits for memcached operations, run
+ * against a mocked client.
+ */
+public class MemcachedStorageServiceMockTest {
+
+    private static final String CONTEXT = "context";
+
+    private static final String NAMESPACE = "namespace";
+
+    private static final String CACHE_KEY = NAMESPACE + ":key";
+
+    private MemcachedClient client;
+
+    private MemcachedStorageService service;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        client = mock(MemcachedClient.class);
+        final OperationFuture<CASValue<String>> namespaceResult = future(new CASValue<>(1L, NAMESPACE));
+        when(client.asyncGets(eq(CONTEXT), any(Transcoder.class))).thenReturn(namespaceResult);
+        service = new MemcachedStorageService(client, 1, true);
+    }
+
+    @Test
+    public void testCreatePipelinesKeyListAppend() throws Exception {
+        final OperationFuture<Boolean> addResult = future(true);
+        final OperationFuture<Boolean> appendResult = future(true);
+        when(client.add(eq(CACHE_KEY), anyInt(), any(MemcachedStorageRecord.class), any(Transcoder.class)))
+                .thenReturn(addResult);
+        when(client.append(eq(NAMESPACE + MemcachedStorageService.CTX_KEY_LIST_SUFFIX), eq(CACHE_KEY + "\n"),
+                any(Transcoder.class))).thenReturn(appendResult);
+
+        assertTrue(service.create(CONTEXT, "key", "value", null));
+
+        final InOrder order = inOrder(client, addResult, appendResult);
+        order.verify(client).add(eq(CACHE_KEY), anyInt(), any(MemcachedStorageRecord.class), any(Transcoder.class));
+        order.verify(client).append(eq(NAMESPACE + MemcachedStorageService.CTX_KEY_LIST_SUFFIX),
+                eq(CACHE_KEY + "\n"), any(Transcoder.class));
+        order.verify(addResult).get(anyLong(), any(TimeUnit.class));
+        order.verify(appendResult).get(anyLong(), any(TimeUnit.class));
+        verify(client, never()).add(eq(NAMESPACE + MemcachedStorageService.CTX_KEY_LIST_SUFFIX), anyInt(),
+                anyString(), any(Transcoder.class));
+        verify(client, never()).delete(anyString());
+    }
+
+    @Test
+    public void testCreateAddsMissingKeyList() throws Exception {
+        final OperationFuture<Boolean> addResult = future(true);
+        final OperationFuture<Boolean> appendResult = future(false);
+        final OperationFuture<Boolean> listResult = future(true);
+        when(client.add(eq(CACHE_KEY), anyInt(), any(MemcachedStorageRecord.class), any(Transcoder.class)))
+                .thenReturn(addResult);
+        when(client.append(eq(NAMESPACE + MemcachedStorageService.CTX_KEY_LIST_SUFFIX), eq(CACHE_KEY + "\n"),
+                any(Transcoder.class))).thenReturn(appendResult);
+        when(client.add(eq(NAMESPACE + MemcachedStorageService.CTX_KEY_LIST_SUFFIX), eq(0), eq(CACHE_KEY + "\n"),
+                any(Transcoder.class))).thenReturn(listResult);
+
+        assertTrue(service.create(CONTEXT, "key", "value", null));
+
+        final InOrder order = inOrder(client, appendResult, listResult);
+        order.verify(client).append(eq(NAMESPACE + MemcachedStorageService.CTX_KEY_LIST_SUFFIX),
+                eq(CACHE_KEY + "\n"), any(Transcoder.class));
+        order.verify(appendResult).get(anyLong(), any(TimeUnit.class));
+        order.verify(client).add(eq(NAMESPACE + MemcachedStorageService.CTX_KEY_LIST_SUFFIX), eq(0),
+                eq(CACHE_KEY + "\n"), any(Transcoder.class));
+        order.verify(listResult).get(anyLong(), any(TimeUnit.class));
+        verify(client, never()).delete(anyString());
+    }
+
+    @Test
+    public void testCreateDuplicateSkipsKeyList() throws Exception {
+        final OperationFuture<Boolean> addResult = future(false);
+        final OperationFuture<Boolean> appendResult = future(true);
+        when(client.add(eq(CACHE_KEY), anyInt(), any(MemcachedStorageRecord.class), any(Transcoder.class)))
+                .thenReturn(addResult);
+        when(client.append(eq(NAMESPACE + MemcachedStorageService.CTX_KEY_LIST_SUFFIX), eq(CACHE_KEY + "\n"),
+                any(Transcoder.class))).thenReturn(appendResult);
+
+        assertFalse(service.create(CONTEXT, "key", "value", null));
+
+        verify(appendResult, never()).get(anyLong(), any(TimeUnit.class));
+        verify(client, never()).add(eq(NAMESPACE + MemcachedStorageService.CTX_KEY_LIST_SUFFIX), anyInt(),
+                anyString(), any(Transcoder.class));
+    }
+
+    @Test
+    public void testUpdateContextExpirationFetchesConcurrently() throws Exception {
+        final OperationFuture<CASValue<String>> keysResult =
+                future(new CASValue<>(2L, NAMESPACE + ":a\n" + NAMESPACE + ":b\n" + NAMESPACE + ":c\n"));
+        final OperationFuture<CASValue<String>> blacklistResult = future(new CASValue<>(3L, NAMESPACE + ":b\n"));
+        final OperationFuture<Boolean> touchResult = future(true);
+        when(client.asyncGets(eq(NAMESPACE + MemcachedStorageService.CTX_KEY_LIST_SUFFIX), any(Transcoder.class)))
+                .thenReturn(keysResult);
+        when(client.asyncGets(eq(NAMESPACE + MemcachedStorageService.CTX_KEY_BLACKLIST_SUFFIX),
+                any(Transcoder.class))).thenReturn(blacklistResult);
+        when(client.touch(anyString(), anyInt())).thenReturn(touchResult);
+
+        service.updateContextExpiration(CONTEXT, System.currentTimeMillis() + 60000);
+
+        final InOrder order = inOrder(client, keysResult, blacklistResult, touchResult);
+        order.verify(client).asyncGets(eq(NAMESPACE + MemcachedStorageService.CTX_KEY_LIST_SUFFIX),
+                any(Transcoder.class));
+        order.verify(client).asyncGets(eq(NAMESPACE + MemcachedStorageService.CTX_KEY_BLACKLIST_SUFFIX),
+                any(Transcoder.class));
+        order.verify(keysResult).get(anyLong(), any(TimeUnit.class));
+        order.verify(blacklistResult).get(anyLong(), any(TimeUnit.class));
+        order.verify(client, times(2)).touch(anyString(), anyInt());
+        order.verify(touchResult, times(2)).get(anyLong(), any(TimeUnit.class));
+        verify(client).touch(eq(NAMESPACE + ":a"), anyInt());
+        verify(client).touch(eq(NAMESPACE + ":c"), anyInt());
+        verify(client, never()).touch(eq(NAMESPACE + ":b"), anyInt());
+    }
+
+    @Test
+    public void testUpdateContextExpirationWithoutKeys() throws Exception {
+        final OperationFuture<CASValue<String>> missing = future(null);
+        when(client.asyncGets(eq(NAMESPACE + MemcachedStorageService.CTX_KEY_LIST_SUFFIX), any(Transcoder.class)))
+                .thenReturn(missing);
+        when(client.asyncGets(eq(NAMESPACE + MemcachedStorageService.CTX_KEY_BLACKLIST_SUFFIX),
+                any(Transcoder.class))).thenReturn(missing);
+
+        service.updateContextExpiration(CONTEXT, null);
+
+        verify(client).asyncGets(eq(NAMESPACE + MemcachedStorageService.CTX_KEY_LIST_SUFFIX), any(Transcoder.class));
+        verify(client).asyncGets(eq(NAMESPACE + MemcachedStorageService.CTX_KEY_BLACKLIST_SUFFIX),
+                any(Transcoder.class));
+        verify(client, never()).touch(anyString(), anyInt());
+    }
+
+    /**
+     * Creates a mocked operation future that has completed with the given value.
+     *
+     * @param value Value of the operation.
+     * @param <T> Type of value.
+     *
+     * @return Mocked future.
+     *
+     * @throws Exception Never, declared by the mocked method.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> OperationFuture<T> future(final T value) throws Exception {
+        final OperationFuture<T> future = mock(OperationFuture.class);
+        when(future.get(anyLong(), any(TimeUnit.class))).thenReturn(value);
+        when(future.get()).thenReturn(value);
+        return future;
+    }
+}
@@ -40,6 +40,8 @@ public class MemcachedStorageServiceTest {
 
     private MemcachedStorageService keyTrackingService;
 
+    private MemcachedStorageService namespaceCachingService;
+
     @BeforeClass
     public void setUp() throws IOException {
         final MemcachedClient client = new MemcachedClient(
@@ -52,6 +54,8 @@ public class MemcachedStorageServiceTest {
         }
         service = new MemcachedStorageService(client, 1);
         keyTrackingService = new MemcachedStorageService(client, 1, true);
+        namespaceCachingService = new MemcachedStorageService(client, 1);
+        namespaceCachingService.setNamespaceCacheTTL(60000);
     }
 
     @DataProvider
@@ -203,10 +207,36 @@ public class MemcachedStorageServiceTest {
         }
     }
 
+    @Test
+    public void testNamespaceCacheRecovery() throws IOException {
+        final IdGenerator generator = new RandomIdGenerator(20);
+        final String context = generator.generate();
+        final String key1 = generator.generate();
+        final String key2 = generator.generate();
+        assertTrue(namespaceCachingService.create(context, key1, "value1", 30000L));
+        assertEquals(namespaceCachingService.read(context, key1).getValue(), "value1");
+
+        // Recreate the context behind the back of the caching service
+        service.deleteContext(context);
+        assertTrue(service.create(context, key2, "value2", 30000L));
+
+        // Miss under the stale cached namespace is recovered
+        assertEquals(namespaceCachingService.read(context, key2).getValue(), "value2");
+        assertTrue(namespaceCachingService.update(context, key2, "value3", 30000L));
+        assertEquals(service.read(context, key2).getValue(), "value3");
+
+        // Local context deletion invalidates the cached namespace
+        namespaceCachingService.deleteContext(context);
+        assertNull(namespaceCachingService.read(context, key2));
+        assertTrue(namespaceCachingService.create(context, key1, "value4", 30000L));
+        assertEquals(service.read(context, key1).getValue(), "value4");
+    }
+
     @AfterClass
     public void tearDown() {
         service.destroy();
         keyTrackingService.destroy();
+        namespaceCachingService.destroy();
     }
 
     private Set<String> createContextKeys(final String context, final IdGenerator generator, final int count)
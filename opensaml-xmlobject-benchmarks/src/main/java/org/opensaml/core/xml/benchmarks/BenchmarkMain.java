@@ -0,0 +1,66 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks jar, which runs JMH with allocation profiling always enabled, along with
+ * {@link RetainedHeapProfiler}.
+ * 
+ * <p>The usual JMH command line options are accepted. Unless a result file is given with <code>-rff</code>, the
+ * results are written as JSON to {@link #DEFAULT_RESULT_FILE}, in the form kept as a baseline.</p>
+ */
+public final class BenchmarkMain {
+
+    /** File the results are written to by default. */
+    public static final String DEFAULT_RESULT_FILE = "benchmarks.json";
+
+    /** Constructor. */
+    private BenchmarkMain() {
+
+    }
+
+    /**
+     * Run the benchmarks selected by the command line with allocation profiling.
+     * 
+     * @param args JMH command line options
+     * 
+     * @throws RunnerException if the benchmarks cannot be run
+     * @throws CommandLineOptionException if the command line is invalid
+     */
+    public static void main(final String[] args) throws RunnerException, CommandLineOptionException {
+        final CommandLineOptions commandLine = new CommandLineOptions(args);
+        final ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .addProfiler(RetainedHeapProfiler.class);
+        if (!commandLine.getResult().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON).result(DEFAULT_RESULT_FILE);
+        }
+        new Runner(options.build()).run();
+    }
+
+}
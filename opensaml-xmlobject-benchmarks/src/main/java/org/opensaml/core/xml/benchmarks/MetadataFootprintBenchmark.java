@@ -0,0 +1,137 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+
+import org.opensaml.core.config.InitializationService;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the heap consumed by unmarshalling a large metadata aggregate.
+ * 
+ * <p>The gc profiler reports the bytes allocated per unmarshalling. The heap retained by each unmarshalled aggregate,
+ * which is what bounds the number of metadata sources a deployment can hold, is measured after each iteration by
+ * holding a number of copies, and is reported as a secondary result by {@link RetainedHeapProfiler}. Both profilers
+ * are enabled by {@link BenchmarkMain}.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetadataFootprintBenchmark {
+
+    /** Whether to release the DOM after unmarshalling, as metadata resolvers do. */
+    @Param({"true", "false"})
+    public boolean releaseDOM;
+
+    /** Number of copies held when measuring the retained heap. */
+    @Param({"10"})
+    public int copies;
+
+    /** Serialized metadata. */
+    private byte[] metadata;
+
+    /**
+     * Initialize the library and load the metadata.
+     * 
+     * @throws Exception if the library cannot be initialized or the metadata cannot be read
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        InitializationService.initialize();
+        metadata = PayloadFactory.create(PayloadFactory.METADATA);
+    }
+
+    /**
+     * Parse and unmarshall the metadata.
+     * 
+     * @return the unmarshalled metadata
+     * @throws XMLParserException if the metadata cannot be parsed
+     * @throws UnmarshallingException if the metadata cannot be unmarshalled
+     */
+    @Benchmark
+    public XMLObject unmarshall() throws XMLParserException, UnmarshallingException {
+        final XMLObject xmlObject = XMLObjectSupport.unmarshallFromInputStream(
+                XMLObjectProviderRegistrySupport.getParserPool(), new ByteArrayInputStream(metadata));
+        if (releaseDOM) {
+            xmlObject.releaseDOM();
+            xmlObject.releaseChildrenDOM(true);
+        }
+        return xmlObject;
+    }
+
+    /**
+     * Measure the heap retained by each unmarshalled copy of the metadata, and record it for reporting.
+     * 
+     * @throws XMLParserException if the metadata cannot be parsed
+     * @throws UnmarshallingException if the metadata cannot be unmarshalled
+     */
+    @TearDown(Level.Iteration)
+    public void measureRetainedHeap() throws XMLParserException, UnmarshallingException {
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        final long before = usedHeap(memory);
+
+        final List<XMLObject> held = new ArrayList<>(copies);
+        for (int i = 0; i < copies; i++) {
+            held.add(unmarshall());
+        }
+        final long after = usedHeap(memory);
+
+        RetainedHeapProfiler.record((double) (after - before) / held.size() / 1024);
+    }
+
+    /**
+     * Get the heap in use once garbage has been collected.
+     * 
+     * @param memory the memory management bean
+     * @return the bytes of heap in use
+     */
+    private long usedHeap(final MemoryMXBean memory) {
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+}
@@ -0,0 +1,228 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.KeyPair;
+
+import javax.annotation.Nonnull;
+
+import net.shibboleth.utilities.java.support.xml.SerializeSupport;
+
+import org.joda.time.DateTime;
+import org.opensaml.core.xml.schema.XSString;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.Attribute;
+import org.opensaml.saml.saml2.core.AttributeStatement;
+import org.opensaml.saml.saml2.core.AttributeValue;
+import org.opensaml.saml.saml2.core.Issuer;
+import org.opensaml.saml.saml2.core.NameID;
+import org.opensaml.saml.saml2.core.Response;
+import org.opensaml.saml.saml2.core.Subject;
+import org.opensaml.saml.saml2.encryption.Encrypter;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.credential.CredentialSupport;
+import org.opensaml.security.crypto.KeySupport;
+import org.opensaml.xmlsec.SignatureSigningParameters;
+import org.opensaml.xmlsec.algorithm.AlgorithmSupport;
+import org.opensaml.xmlsec.encryption.support.DataEncryptionParameters;
+import org.opensaml.xmlsec.encryption.support.EncryptionConstants;
+import org.opensaml.xmlsec.encryption.support.KeyEncryptionParameters;
+import org.opensaml.xmlsec.signature.Signature;
+import org.opensaml.xmlsec.signature.support.SignatureConstants;
+import org.opensaml.xmlsec.signature.support.SignatureSupport;
+import org.opensaml.xmlsec.signature.support.Signer;
+
+/**
+ * Creates the serialized payloads to benchmark, by name.
+ * 
+ * <p>The library must have been initialized before a payload is created.</p>
+ */
+public final class PayloadFactory {
+
+    /** Name of a signed SAML 2 Response carrying an encrypted Assertion. */
+    @Nonnull public static final String SIGNED_RESPONSE = "signedresponse";
+
+    /** Name of a SAML 2 Assertion whose AttributeStatement holds {@link #ATTRIBUTE_COUNT} attributes. */
+    @Nonnull public static final String ATTRIBUTE_STATEMENT = "attributestatement";
+
+    /** Name of the UK federation metadata aggregate. */
+    @Nonnull public static final String METADATA = "metadata";
+
+    /** Classpath location of the metadata aggregate. */
+    @Nonnull public static final String METADATA_RESOURCE =
+            "/data/org/opensaml/saml/saml2/metadata/ukfederation-metadata.xml";
+
+    /** Number of attributes in the {@link #ATTRIBUTE_STATEMENT} payload. */
+    public static final int ATTRIBUTE_COUNT = 200;
+
+    /** Number of attributes in the encrypted Assertion of the {@link #SIGNED_RESPONSE} payload. */
+    private static final int RESPONSE_ATTRIBUTE_COUNT = 10;
+
+    /** Constructor. */
+    private PayloadFactory() {
+
+    }
+
+    /**
+     * Create a serialized payload.
+     * 
+     * @param payload name of the payload
+     * 
+     * @return the serialized payload
+     * @throws Exception if the payload cannot be created
+     */
+    @Nonnull public static byte[] create(@Nonnull final String payload) throws Exception {
+        switch (payload) {
+            case SIGNED_RESPONSE:
+                return createSignedResponse();
+
+            case ATTRIBUTE_STATEMENT:
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                SerializeSupport.writeNode(XMLObjectSupport.marshall(createAssertion(ATTRIBUTE_COUNT)), out);
+                return out.toByteArray();
+
+            case METADATA:
+                return readResource(METADATA_RESOURCE);
+
+            default:
+                throw new IllegalArgumentException("Unknown payload " + payload);
+        }
+    }
+
+    /**
+     * Create a Response carrying an encrypted Assertion, signed with a freshly generated key.
+     * 
+     * @return the serialized Response
+     * @throws Exception if the Response cannot be encrypted, signed or marshalled
+     */
+    @Nonnull private static byte[] createSignedResponse() throws Exception {
+        final DataEncryptionParameters encParams = new DataEncryptionParameters();
+        encParams.setAlgorithm(EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128);
+        encParams.setEncryptionCredential(
+                AlgorithmSupport.generateSymmetricKeyAndCredential(EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128));
+        final KeyEncryptionParameters kekParams = new KeyEncryptionParameters();
+        kekParams.setAlgorithm(EncryptionConstants.ALGO_ID_KEYTRANSPORT_RSAOAEP);
+        kekParams.setEncryptionCredential(
+                AlgorithmSupport.generateKeyPairAndCredential(EncryptionConstants.ALGO_ID_KEYTRANSPORT_RSAOAEP,
+                        2048, false));
+        final Encrypter encrypter = new Encrypter(encParams, kekParams);
+        encrypter.setKeyPlacement(Encrypter.KeyPlacement.INLINE);
+
+        final Response response = (Response) XMLObjectSupport.buildXMLObject(Response.DEFAULT_ELEMENT_NAME);
+        response.setID("_response");
+        response.setIssueInstant(new DateTime());
+        response.setIssuer(createIssuer());
+        response.getEncryptedAssertions().add(encrypter.encrypt(createAssertion(RESPONSE_ATTRIBUTE_COUNT)));
+
+        final KeyPair keyPair = KeySupport.generateKeyPair("RSA", 2048, null);
+        final Credential signingCredential =
+                CredentialSupport.getSimpleCredential(keyPair.getPublic(), keyPair.getPrivate());
+        final SignatureSigningParameters signingParams = new SignatureSigningParameters();
+        signingParams.setSigningCredential(signingCredential);
+        signingParams.setSignatureAlgorithm(SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA256);
+        signingParams.setSignatureReferenceDigestMethod(SignatureConstants.ALGO_ID_DIGEST_SHA256);
+        signingParams.setSignatureCanonicalizationAlgorithm(SignatureConstants.ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+        final Signature signature = (Signature) XMLObjectSupport.buildXMLObject(Signature.DEFAULT_ELEMENT_NAME);
+        response.setSignature(signature);
+        SignatureSupport.prepareSignatureParams(signature, signingParams);
+
+        XMLObjectSupport.marshall(response);
+        Signer.signObject(signature);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SerializeSupport.writeNode(response.getDOM(), out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Create an Assertion with a single AttributeStatement.
+     * 
+     * @param attributeCount number of attributes in the statement
+     * 
+     * @return the Assertion
+     */
+    @Nonnull private static Assertion createAssertion(final int attributeCount) {
+        final Assertion assertion = (Assertion) XMLObjectSupport.buildXMLObject(Assertion.DEFAULT_ELEMENT_NAME);
+        assertion.setID("_assertion");
+        assertion.setIssueInstant(new DateTime());
+        assertion.setIssuer(createIssuer());
+
+        final NameID nameID = (NameID) XMLObjectSupport.buildXMLObject(NameID.DEFAULT_ELEMENT_NAME);
+        nameID.setFormat(NameID.TRANSIENT);
+        nameID.setValue("_d2a9e3b1c8f74a5e9b0c6d1e2f3a4b5c");
+        final Subject subject = (Subject) XMLObjectSupport.buildXMLObject(Subject.DEFAULT_ELEMENT_NAME);
+        subject.setNameID(nameID);
+        assertion.setSubject(subject);
+
+        final AttributeStatement statement =
+                (AttributeStatement) XMLObjectSupport.buildXMLObject(AttributeStatement.DEFAULT_ELEMENT_NAME);
+        for (int i = 0; i < attributeCount; i++) {
+            final Attribute attribute = (Attribute) XMLObjectSupport.buildXMLObject(Attribute.DEFAULT_ELEMENT_NAME);
+            attribute.setName("urn:oid:1.3.6.1.4.1.5923.1.1.1." + i);
+            attribute.setFriendlyName("attribute" + i);
+            attribute.setNameFormat(Attribute.URI_REFERENCE);
+            final XSString value =
+                    (XSString) XMLObjectSupport.buildXMLObject(AttributeValue.DEFAULT_ELEMENT_NAME, XSString.TYPE_NAME);
+            value.setValue("value" + i + "@example.org");
+            attribute.getAttributeValues().add(value);
+            statement.getAttributes().add(attribute);
+        }
+        assertion.getAttributeStatements().add(statement);
+
+        return assertion;
+    }
+
+    /**
+     * Create an Issuer.
+     * 
+     * @return the Issuer
+     */
+    @Nonnull private static Issuer createIssuer() {
+        final Issuer issuer = (Issuer) XMLObjectSupport.buildXMLObject(Issuer.DEFAULT_ELEMENT_NAME);
+        issuer.setValue("https://idp.example.org/idp/shibboleth");
+        return issuer;
+    }
+
+    /**
+     * Read a classpath resource.
+     * 
+     * @param resource location of the resource
+     * 
+     * @return the content of the resource
+     * @throws IOException if the resource cannot be read
+     */
+    @Nonnull private static byte[] readResource(@Nonnull final String resource) throws IOException {
+        try (final InputStream in = PayloadFactory.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IOException("Resource " + resource + " not found on the classpath");
+            }
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+}
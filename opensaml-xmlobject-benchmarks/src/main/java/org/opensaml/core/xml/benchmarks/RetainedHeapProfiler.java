@@ -0,0 +1,75 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.benchmarks;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+/**
+ * Profiler reporting the retained heap recorded by a benchmark during each iteration as a secondary result, so that
+ * it appears alongside the timings and in the JSON results.
+ * 
+ * <p>Enabled by {@link BenchmarkMain}, or with <code>-prof org.opensaml.core.xml.benchmarks.RetainedHeapProfiler</code>.
+ * Iterations of benchmarks which record nothing report nothing.</p>
+ */
+public class RetainedHeapProfiler implements InternalProfiler {
+
+    /** Label of the reported result. */
+    public static final String LABEL = "retained.heap";
+
+    /** Retained heap recorded during the current iteration, in KiB, or NaN if none. */
+    private static volatile double retainedHeap = Double.NaN;
+
+    /**
+     * Record the retained heap measured during the current iteration.
+     * 
+     * @param kib retained heap in KiB
+     */
+    public static void record(final double kib) {
+        retainedHeap = kib;
+    }
+
+    /** {@inheritDoc} */
+    public String getDescription() {
+        return "Retained heap recorded by the benchmark";
+    }
+
+    /** {@inheritDoc} */
+    public void beforeIteration(final BenchmarkParams benchmarkParams, final IterationParams iterationParams) {
+        retainedHeap = Double.NaN;
+    }
+
+    /** {@inheritDoc} */
+    public Collection<? extends Result> afterIteration(final BenchmarkParams benchmarkParams,
+            final IterationParams iterationParams, final IterationResult result) {
+        final double kib = retainedHeap;
+        if (Double.isNaN(kib)) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(new ScalarResult(LABEL, kib, "KiB", AggregationPolicy.AVG));
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import net.shibboleth.utilities.java.support.xml.ParserPool;
+import net.shibboleth.utilities.java.support.xml.SerializeSupport;
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+
+import org.opensaml.core.config.InitializationService;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Benchmarks of the throughput of each stage of XMLObject processing: parsing, unmarshalling, marshalling,
+ * serializing and cloning.
+ * 
+ * <p>Each stage is measured in isolation over the same payload, so a regression can be attributed to the stage that
+ * caused it. {@link BenchmarkMain} runs it with allocation profiling and writes the results as JSON, for
+ * comparison with a baseline.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XMLObjectBenchmark {
+
+    /** Name of the payload to process. */
+    @Param({PayloadFactory.SIGNED_RESPONSE, PayloadFactory.ATTRIBUTE_STATEMENT, PayloadFactory.METADATA})
+    public String payload;
+
+    /** Parser pool. */
+    private ParserPool parserPool;
+
+    /** Serialized payload. */
+    private byte[] serialized;
+
+    /** Parsed payload. */
+    private Document document;
+
+    /** Unmarshalled payload, whose DOM is cached. */
+    private XMLObject xmlObject;
+
+    /**
+     * Initialize the library and prepare the payload at each stage of processing.
+     * 
+     * @throws Exception if the payload cannot be created or processed
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        InitializationService.initialize();
+        parserPool = XMLObjectProviderRegistrySupport.getParserPool();
+
+        serialized = PayloadFactory.create(payload);
+        document = parse();
+        xmlObject = XMLObjectSupport.unmarshallFromInputStream(parserPool, new ByteArrayInputStream(serialized));
+    }
+
+    /**
+     * Parse the serialized payload.
+     * 
+     * @return the parsed payload
+     * @throws XMLParserException if the payload cannot be parsed
+     */
+    @Benchmark
+    public Document parse() throws XMLParserException {
+        return parserPool.parse(new ByteArrayInputStream(serialized));
+    }
+
+    /**
+     * Unmarshall the parsed payload.
+     * 
+     * @return the unmarshalled payload
+     * @throws UnmarshallingException if the payload cannot be unmarshalled
+     */
+    @Benchmark
+    public XMLObject unmarshall() throws UnmarshallingException {
+        final Element element = document.getDocumentElement();
+        return XMLObjectProviderRegistrySupport.getUnmarshallerFactory().getUnmarshaller(element).unmarshall(element);
+    }
+
+    /**
+     * Marshall the unmarshalled payload from scratch, having released its cached DOM.
+     * 
+     * <p>A Signature is marshalled as an unsigned skeleton, since computing a signature is not the cost being
+     * measured here.</p>
+     * 
+     * @return the marshalled payload
+     * @throws MarshallingException if the payload cannot be marshalled
+     */
+    @Benchmark
+    public Element marshall() throws MarshallingException {
+        xmlObject.releaseDOM();
+        xmlObject.releaseChildrenDOM(true);
+        return XMLObjectSupport.marshall(xmlObject);
+    }
+
+    /**
+     * Serialize the parsed payload.
+     * 
+     * @return the serialized payload
+     */
+    @Benchmark
+    public ByteArrayOutputStream serialize() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(serialized.length);
+        SerializeSupport.writeNode(document, out);
+        return out;
+    }
+
+    /**
+     * Clone the unmarshalled payload.
+     * 
+     * @return the clone
+     * @throws MarshallingException if the payload cannot be marshalled
+     * @throws UnmarshallingException if the clone cannot be unmarshalled
+     */
+    @Benchmark
+    public XMLObject cloneXMLObject() throws MarshallingException, UnmarshallingException {
+        return XMLObjectSupport.cloneXMLObject(xmlObject);
+    }
+
+}
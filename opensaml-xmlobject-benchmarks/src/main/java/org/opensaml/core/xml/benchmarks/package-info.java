@@ -0,0 +1,32 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development, 
+ * Inc. (UCAID) under one or more contributor license agreements.  See the 
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache 
+ * License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * JMH benchmarks of XMLObject processing.
+ * 
+ * <p>Build with <code>mvn -Pbenchmarks package</code> from opensaml-parent and run with
+ * <code>java -jar target/benchmarks.jar</code>, passing the usual JMH options. The jar's entry point,
+ * {@link org.opensaml.core.xml.benchmarks.BenchmarkMain}, always enables the <code>gc</code> profiler, so the bytes
+ * allocated per operation are reported alongside the timings, and writes the results as JSON to
+ * <code>benchmarks.json</code> unless <code>-rff</code> is given. Other JMH commands, such as listing the benchmarks,
+ * are available with <code>java -cp target/benchmarks.jar org.openjdk.jmh.Main</code>.</p>
+ * 
+ * <p>Baselines are kept in the <code>baselines</code> directory of this module, one JSON results file per release.
+ * To compare a candidate build against a baseline, run the same benchmarks on the same machine and compare the scores
+ * and <code>gc.alloc.rate.norm</code> of each benchmark and payload.</p>
+ */
+package org.opensaml.core.xml.benchmarks;
@@ -20,7 +20,6 @@ package org.opensaml.xmlsec.keyinfo;
 import java.math.BigInteger;
 import java.security.KeyException;
 import java.security.KeyFactory;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.cert.CRLException;
@@ -51,6 +50,7 @@ import org.opensaml.core.xml.XMLObjectBuilder;
 import org.opensaml.core.xml.XMLObjectBuilderFactory;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
 import org.opensaml.security.credential.Credential;
+import org.opensaml.security.x509.X509CertificateCache;
 import org.opensaml.security.x509.X509Support;
 import org.opensaml.xmlsec.algorithm.AlgorithmSupport;
 import org.opensaml.xmlsec.signature.DEREncodedKeyValue;
@@ -207,7 +207,7 @@ public class KeyInfoSupport {
             return null;
         }
 
-        return X509Support.decodeCertificate(xmlCert.getValue());
+        return X509CertificateCache.decodeCertificate(xmlCert.getValue());
     }
 
     /**
@@ -356,7 +356,7 @@ public class KeyInfoSupport {
         org.opensaml.xmlsec.signature.X509Certificate xmlCert =
                 Constraint.isNotNull(xmlCertBuilder, "X509Certificate builder not available").buildObject(
                         org.opensaml.xmlsec.signature.X509Certificate.DEFAULT_ELEMENT_NAME);
-        xmlCert.setValue(Base64Support.encode(cert.getEncoded(), Base64Support.CHUNKED));
+        xmlCert.setValue(X509CertificateCache.getBase64Encoding(cert));
 
         return xmlCert;
     }
@@ -444,7 +444,7 @@ public class KeyInfoSupport {
      * @return a new X509SKI object, or null if the certificate did not contain the subject key identifier extension
      */
     @Nullable public static X509SKI buildX509SKI(@Nonnull final X509Certificate javaCert) {
-        byte[] skiPlainValue = X509Support.getSubjectKeyIdentifier(javaCert);
+        byte[] skiPlainValue = X509CertificateCache.getSubjectKeyIdentifier(javaCert);
         if (skiPlainValue == null || skiPlainValue.length == 0) {
             return null;
         }
@@ -475,8 +475,7 @@ public class KeyInfoSupport {
         if (jceAlg == null) {
             throw new NoSuchAlgorithmException("No JCE algorithm found for " + algorithmURI);
         }
-        MessageDigest md = MessageDigest.getInstance(jceAlg);
-        byte[] hash = md.digest(javaCert.getEncoded());
+        byte[] hash = X509CertificateCache.getX509Digest(javaCert, jceAlg);
         
         XMLObjectBuilder<X509Digest> builder = (XMLObjectBuilder<X509Digest>)
                 XMLObjectProviderRegistrySupport.getBuilderFactory().getBuilder(X509Digest.DEFAULT_ELEMENT_NAME);
@@ -35,6 +35,7 @@ import org.opensaml.security.SecurityException;
 import org.opensaml.security.credential.Credential;
 import org.opensaml.security.x509.InternalX500DNHandler;
 import org.opensaml.security.x509.X500DNHandler;
+import org.opensaml.security.x509.X509CertificateCache;
 import org.opensaml.security.x509.X509Credential;
 import org.opensaml.security.x509.X509Support;
 import org.opensaml.xmlsec.encryption.support.EncryptionConstants;
@@ -646,7 +647,7 @@ public class X509KeyInfoGeneratorFactory extends BasicKeyInfoGeneratorFactory {
         protected void processSubjectCNKeyName(@Nonnull final KeyInfo keyInfo,
                 @Nullable final java.security.cert.X509Certificate cert) {
             if (options.emitSubjectCNAsKeyName) {
-                List<String> cnames = X509Support.getCommonNames(cert.getSubjectX500Principal());
+                List<String> cnames = X509CertificateCache.getCommonNames(cert);
                 if (cnames != null) {
                     for (String name : cnames) {
                         if (!Strings.isNullOrEmpty(name)) {
@@ -669,7 +670,7 @@ public class X509KeyInfoGeneratorFactory extends BasicKeyInfoGeneratorFactory {
             if (options.emitSubjectAltNamesAsKeyNames && options.subjectAltNames.size() > 0) {
                 Integer[] nameTypes = new Integer[ options.subjectAltNames.size() ];
                 options.subjectAltNames.toArray(nameTypes);
-                List altnames = X509Support.getAltNames(cert, nameTypes);
+                List altnames = X509CertificateCache.getAltNames(cert, nameTypes);
                 if (altnames != null) {
                     for (Object altNameValue : altnames) {
                         // Each returned value should either be a String or a DER-encoded byte array.
@@ -18,6 +18,7 @@
 package org.opensaml.xmlsec.keyinfo.impl.provider;
 
 import java.math.BigInteger;
+import java.security.GeneralSecurityException;
 import java.security.PublicKey;
 import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
@@ -43,7 +44,7 @@ import org.opensaml.security.credential.CredentialContext;
 import org.opensaml.security.x509.BasicX509Credential;
 import org.opensaml.security.x509.InternalX500DNHandler;
 import org.opensaml.security.x509.X500DNHandler;
-import org.opensaml.security.x509.X509Support;
+import org.opensaml.security.x509.X509CertificateCache;
 import org.opensaml.xmlsec.algorithm.AlgorithmSupport;
 import org.opensaml.xmlsec.keyinfo.KeyInfoCredentialResolver;
 import org.opensaml.xmlsec.keyinfo.KeyInfoSupport;
@@ -356,7 +357,7 @@ public class InlineX509DataProvider extends AbstractKeyInfoProvider {
             if (!Strings.isNullOrEmpty(ski.getValue())) {
                 final byte[] xmlValue = Base64Support.decode(ski.getValue());
                 for (final X509Certificate cert : certs) {
-                    final byte[] certValue = X509Support.getSubjectKeyIdentifier(cert);
+                    final byte[] certValue = X509CertificateCache.getSubjectKeyIdentifier(cert);
                     if (certValue != null && Arrays.equals(xmlValue, certValue)) {
                         return cert;
                     }
@@ -386,11 +387,11 @@ public class InlineX509DataProvider extends AbstractKeyInfoProvider {
                 final byte[] xmlValue = Base64Support.decode(digest.getValue());
                 for (X509Certificate cert : certs) {
                     try {
-                        final byte[] certValue = X509Support.getX509Digest(cert, alg);
+                        final byte[] certValue = X509CertificateCache.getX509Digest(cert, alg);
                         if (certValue != null && Arrays.equals(xmlValue, certValue)) {
                             return cert;
                         }
-                    } catch (final SecurityException e) {
+                    } catch (final GeneralSecurityException e) {
                         // Ignore as no match.
                     }
                 }
@@ -23,6 +23,7 @@ import java.util.List;
 
 import org.apache.xml.security.signature.XMLSignature;
 import org.opensaml.core.xml.AbstractXMLObject;
+import org.opensaml.core.xml.FreezableXMLObject;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.security.credential.Credential;
 import org.opensaml.xmlsec.signature.KeyInfo;
@@ -121,9 +122,27 @@ public class SignatureImpl extends AbstractXMLObject implements Signature {
     public List<ContentReference> getContentReferences() {
         // TODO worry about detecting changes and releasing this object's and parent's DOM?
         // would need something like an Observable list/collection impl or something similar
+        if (isFrozen()) {
+            return Collections.unmodifiableList(contentReferences);
+        }
         return contentReferences;
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>The {@link KeyInfo} is frozen too, since it is not one of the ordered children of a signature.</p>
+     */
+    public void freeze() {
+        if (isFrozen()) {
+            return;
+        }
+        if (keyInfo instanceof FreezableXMLObject) {
+            ((FreezableXMLObject) keyInfo).freeze();
+        }
+        super.freeze();
+    }
+
     /** {@inheritDoc} */
     public List<XMLObject> getOrderedChildren() {
         return Collections.EMPTY_LIST;
@@ -131,6 +150,9 @@ public class SignatureImpl extends AbstractXMLObject implements Signature {
 
     /** {@inheritDoc} */
     public void releaseDOM() {
+        if (isFrozen()) {
+            return;
+        }
         super.releaseDOM();
         xmlSignature = null;
         
@@ -156,9 +178,14 @@ public class SignatureImpl extends AbstractXMLObject implements Signature {
     /**
      * Set the Apache XML Security signature instance held by this object.
      * 
+     * <p>Like the cached DOM, the instance is not retained once this object has been frozen.</p>
+     * 
      * @param signature an Apache XML Security signature object
      */
     public void setXMLSignature(XMLSignature signature) {
+        if (isFrozen()) {
+            return;
+        }
         xmlSignature = prepareForAssignment(xmlSignature, signature);
     }
 }
\ No newline at end of file